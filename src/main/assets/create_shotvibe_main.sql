@@ -141,16 +141,24 @@ query_time DATETIME NOT NULL,
 UNIQUE(phone_number, last_name, first_name)
 );
 
--- These indexes are necessary in order to efficiently retrieve all of the
--- photos of a particular album, or all of the members of a particular album
+-- This index is necessary in order to efficiently retrieve all of the members
+-- of a particular album
 
-CREATE INDEX photo_index ON photo(photo_album);
 CREATE INDEX album_member_index ON album_member(album_id);
 
--- This index is necessary in order to efficiently retrieve photos sorted by
--- correct order, and also to efficiently retrieve the latest n photos
+-- These indexes are necessary in order to efficiently retrieve the photos of a
+-- particular album sorted by correct order (and also to efficiently retrieve
+-- the latest n photos), and the glances and comments of a particular photo
+-- sorted by correct order.
+--
+-- Keep these in sync with ShotVibeDBMigrations.upgradeFromVersion_11_to_12
 
-CREATE INDEX photo_num_index ON photo(num);
+CREATE INDEX photo_album_num_index ON photo(photo_album, num);
+CREATE INDEX photo_glance_photo_num_index ON photo_glance(photo_id, num);
+CREATE INDEX photo_comment_photo_date_created_index ON photo_comment(photo_id, date_created);
 
-CREATE INDEX photo_comment_index ON photo_comment(photo_id);
-CREATE INDEX photo_comment_date_created_index ON photo_comment(date_created);
+-- This index is necessary in order to efficiently find out whether a photo is
+-- still in any album, when the glances and comments of removed photos are
+-- deleted
+
+CREATE INDEX photo_photo_id_index ON photo(photo_id);
@@ -3,6 +3,15 @@ package com.shotvibe.shotvibelib;
 public class AlbumContents extends AlbumBase {
 
     public AlbumContents(long id, String etag, String name, AlbumUser creator, DateTime dateCreated, DateTime dateUpdated, long numNewPhotos, DateTime lastAccess, ArrayList<AlbumPhoto> photos, ArrayList<AlbumMember> members) {
+        this(id, etag, name, creator, dateCreated, dateUpdated, numNewPhotos, lastAccess, photos, members, true);
+    }
+
+    /**
+     * @param photoDetailsLoaded If false, then the glances and comments of the photos were not
+     *                           loaded, and the photos only have empty lists for them. See
+     *                           AlbumManager.getAlbumGrid
+     */
+    public AlbumContents(long id, String etag, String name, AlbumUser creator, DateTime dateCreated, DateTime dateUpdated, long numNewPhotos, DateTime lastAccess, ArrayList<AlbumPhoto> photos, ArrayList<AlbumMember> members, boolean photoDetailsLoaded) {
         super(id, etag, name, creator, dateCreated, dateUpdated, numNewPhotos, lastAccess);
 
         if (photos == null) {
@@ -14,6 +23,7 @@ public class AlbumContents extends AlbumBase {
 
         mPhotos = photos;
         mMembers = members;
+        mPhotoDetailsLoaded = photoDetailsLoaded;
     }
 
     public ArrayList<AlbumPhoto> getPhotos() {
@@ -24,7 +34,15 @@ public class AlbumContents extends AlbumBase {
         return mMembers;
     }
 
+    /**
+     * @return false if the glances and comments of the photos were not loaded
+     */
+    public boolean arePhotoDetailsLoaded() {
+        return mPhotoDetailsLoaded;
+    }
+
     private final ArrayList<AlbumPhoto> mPhotos;
     private final ArrayList<AlbumMember> mMembers;
+    private final boolean mPhotoDetailsLoaded;
 
 }
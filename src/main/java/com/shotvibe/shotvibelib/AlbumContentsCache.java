@@ -0,0 +1,329 @@
+package com.shotvibe.shotvibelib;
+
+import java.util.Map;
+
+/**
+ * A bounded in-memory cache of the AlbumContents that are stored in ShotVibeDB
+ *
+ * All writes to the album contents must go through this class (instead of directly through
+ * ShotVibeDB), so that the affected entries are invalidated. As a safety net, entries are also
+ * validated against the etag values that are stored in the database every time that the album
+ * list is written.
+ *
+ * The cache is bounded by the total number of photos of all the cached albums. When it is full
+ * the least recently used albums are evicted. Albums with many photos are kept as
+ * CompactAlbumContents, which use a fraction of the memory but have to be expanded on every hit.
+ *
+ * The cached snapshots are never handed out directly: every call to getAlbumContents returns a
+ * fresh AlbumContents with its own photos and members lists, so that callers are free to add
+ * uploading photos to it. The AlbumPhoto objects themselves are shared and must not be modified.
+ *
+ * This class is thread safe
+ */
+public class AlbumContentsCache {
+    public static final int DEFAULT_MAX_PHOTOS = 5000;
+    public static final int DEFAULT_COMPACT_MIN_PHOTOS = 1000;
+
+    public AlbumContentsCache(ShotVibeDB shotVibeDB) {
+        this(shotVibeDB, DEFAULT_MAX_PHOTOS, DEFAULT_COMPACT_MIN_PHOTOS);
+    }
+
+    /**
+     * @param shotVibeDB
+     * @param maxPhotos The maximum total number of photos of all the albums that are kept in the
+     *                  cache. A single album that is larger than this is never cached
+     * @param compactMinPhotos Albums with at least this many photos are kept in compact form
+     */
+    public AlbumContentsCache(ShotVibeDB shotVibeDB, int maxPhotos, int compactMinPhotos) {
+        if (shotVibeDB == null) {
+            throw new IllegalArgumentException("shotVibeDB cannot be null");
+        }
+        if (maxPhotos < 0) {
+            throw new IllegalArgumentException("maxPhotos cannot be negative: " + maxPhotos);
+        }
+
+        mShotVibeDB = shotVibeDB;
+        mMaxPhotos = maxPhotos;
+        mCompactMinPhotos = compactMinPhotos;
+    }
+
+    private static class Entry {
+        public Entry(AlbumContents albumContents, String etag, boolean compact) {
+            if (compact) {
+                this.albumContents = null;
+                this.compactContents = CompactAlbumContents.fromAlbumContents(albumContents);
+            } else {
+                this.albumContents = albumContents;
+                this.compactContents = null;
+            }
+            this.etag = etag;
+            this.cost = Math.max(1, albumContents.getPhotos().size());
+        }
+
+        /**
+         * @return A new AlbumContents that the caller is free to modify
+         */
+        public AlbumContents copy() {
+            if (compactContents != null) {
+                return compactContents.toAlbumContents();
+            }
+            return copyAlbumContents(albumContents);
+        }
+
+        public AlbumBase album() {
+            return compactContents != null ? compactContents : albumContents;
+        }
+
+        // Exactly one of these is set
+        public final AlbumContents albumContents;
+        public final CompactAlbumContents compactContents;
+
+        // The etag that was stored in the database when the entry was loaded. May be null
+        public final String etag;
+
+        public final int cost;
+
+        public long lastUsed;
+    }
+
+    /**
+     * @param albumId
+     * @return null if the album is not in the database
+     * @throws SQLException
+     */
+    public AlbumContents getAlbumContents(long albumId) throws SQLException {
+        long generation;
+        synchronized (this) {
+            Entry entry = mEntries.get(albumId);
+            if (entry != null) {
+                mHits++;
+                entry.lastUsed = ++mTick;
+                return entry.copy();
+            }
+
+            mMisses++;
+            generation = mGeneration;
+        }
+
+        // The database is read without holding the lock, so that threads that hit the cache
+        // don't have to wait for it. The etag must be read first: if the album is concurrently
+        // written then the etag may be older than the contents (never newer), which will cause
+        // the entry to be invalidated during the next validation
+        String etag = mShotVibeDB.getAlbumEtag(albumId);
+        AlbumContents albumContents = mShotVibeDB.getAlbumContents(albumId);
+        if (albumContents == null) {
+            return null;
+        }
+
+        // Built outside of the lock, since compacting a large album takes a while
+        Entry entry = new Entry(albumContents, etag, albumContents.getPhotos().size() >= mCompactMinPhotos);
+
+        synchronized (this) {
+            // Don't store the result if anything was invalidated while it was being read,
+            // since it might be stale
+            if (generation == mGeneration) {
+                putEntry(albumId, entry);
+            }
+        }
+
+        return copyAlbumContents(albumContents);
+    }
+
+    /**
+     * Like getAlbumContents, but never reads from the database
+     *
+     * @param albumId
+     * @return null if the album is not currently cached
+     */
+    public synchronized AlbumContents peekAlbumContents(long albumId) {
+        Entry entry = mEntries.get(albumId);
+        if (entry == null) {
+            return null;
+        }
+
+        mHits++;
+        entry.lastUsed = ++mTick;
+        return entry.copy();
+    }
+
+    /**
+     * Writes the albumContents through to the database and invalidates the cached entry
+     *
+     * @return The number of rows that were written, see {@link ShotVibeDB#setAlbumContents}
+     */
+    public int setAlbumContents(long albumId, AlbumContents albumContents) throws SQLException {
+        try {
+            return mShotVibeDB.setAlbumContents(albumId, albumContents);
+        } finally {
+            invalidate(albumId);
+        }
+    }
+
+    /**
+     * Writes the lastAccess through to the database and invalidates the cached entry
+     */
+    public void setAlbumLastAccess(long albumId, DateTime lastAccess) throws SQLException {
+        try {
+            mShotVibeDB.setAlbumLastAccess(albumId, lastAccess);
+        } finally {
+            invalidate(albumId);
+        }
+    }
+
+    /**
+     * Writes the album list through to the database. Invalidates the entries of albums that were
+     * removed or whose summary values changed, and of albums whose stored etag is different than
+     * the one that the entry was loaded with
+     */
+    public void setAlbumList(ArrayList<AlbumSummary> albums) throws SQLException {
+        try {
+            mShotVibeDB.setAlbumList(albums);
+        } catch (SQLException e) {
+            invalidateAll();
+            throw e;
+        }
+
+        Map<Long, String> storedEtags = mShotVibeDB.getAlbumListEtagValues();
+
+        HashMap<Long, AlbumSummary> summaries = new HashMap<Long, AlbumSummary>();
+        for (AlbumSummary album : albums) {
+            summaries.put(album.getId(), album);
+        }
+
+        synchronized (this) {
+            // Entries that are currently being loaded might have been read before the album
+            // list was written, so they must not be stored
+            mGeneration++;
+
+            ArrayList<Long> staleAlbumIds = new ArrayList<Long>();
+            for (Map.Entry<Long, Entry> e : mEntries.entrySet()) {
+                Long albumId = e.getKey();
+                Entry entry = e.getValue();
+                AlbumSummary summary = summaries.get(albumId);
+                if (summary == null
+                        || !stringsEqual(storedEtags.get(albumId), entry.etag)
+                        || !summaryMatches(entry.album(), summary)) {
+                    staleAlbumIds.add(albumId);
+                }
+            }
+
+            for (Long albumId : staleAlbumIds) {
+                removeEntry(albumId);
+            }
+        }
+    }
+
+    public synchronized void invalidate(long albumId) {
+        mGeneration++;
+        removeEntry(albumId);
+    }
+
+    public synchronized void invalidateAll() {
+        mGeneration++;
+        mEntries.clear();
+        mTotalCost = 0;
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictions;
+    }
+
+    /**
+     * @return The total number of photos in all the albums that are currently cached
+     */
+    public synchronized int getCachedPhotoCount() {
+        return mTotalCost;
+    }
+
+    private void putEntry(long albumId, Entry entry) {
+        removeEntry(albumId);
+
+        if (entry.cost > mMaxPhotos) {
+            return;
+        }
+
+        // Evict the least recently used entries until there is room. The number of cached
+        // albums is small, so a linear scan is cheaper than maintaining a separate list
+        while (mTotalCost + entry.cost > mMaxPhotos) {
+            Long lruAlbumId = null;
+            long lruTick = Long.MAX_VALUE;
+            for (Map.Entry<Long, Entry> e : mEntries.entrySet()) {
+                if (e.getValue().lastUsed < lruTick) {
+                    lruTick = e.getValue().lastUsed;
+                    lruAlbumId = e.getKey();
+                }
+            }
+            removeEntry(lruAlbumId);
+            mEvictions++;
+        }
+
+        entry.lastUsed = ++mTick;
+        mEntries.put(albumId, entry);
+        mTotalCost += entry.cost;
+    }
+
+    private void removeEntry(long albumId) {
+        Entry entry = mEntries.remove(albumId);
+        if (entry != null) {
+            mTotalCost -= entry.cost;
+        }
+    }
+
+    private static AlbumContents copyAlbumContents(AlbumContents a) {
+        return new AlbumContents(
+                a.getId(),
+                a.getEtag(),
+                a.getName(),
+                a.getCreator(),
+                a.getDateCreated(),
+                a.getDateUpdated(),
+                a.getNumNewPhotos(),
+                a.getLastAccess(),
+                new ArrayList<AlbumPhoto>(a.getPhotos()),
+                new ArrayList<AlbumMember>(a.getMembers()));
+    }
+
+    private static boolean summaryMatches(AlbumBase albumContents, AlbumSummary summary) {
+        return stringsEqual(albumContents.getName(), summary.getName())
+                && albumContents.getCreator().getMemberId() == summary.getCreator().getMemberId()
+                && albumContents.getDateCreated().getTimeStamp() == summary.getDateCreated().getTimeStamp()
+                && albumContents.getDateUpdated().getTimeStamp() == summary.getDateUpdated().getTimeStamp()
+                && albumContents.getNumNewPhotos() == summary.getNumNewPhotos()
+                && dateTimesEqual(albumContents.getLastAccess(), summary.getLastAccess());
+    }
+
+    private static boolean dateTimesEqual(DateTime a, DateTime b) {
+        if (a == null) {
+            return b == null;
+        }
+        return b != null && a.getTimeStamp() == b.getTimeStamp();
+    }
+
+    private static boolean stringsEqual(String a, String b) {
+        if (a == null) {
+            return b == null;
+        }
+        return a.equals(b);
+    }
+
+    private final ShotVibeDB mShotVibeDB;
+    private final int mMaxPhotos;
+    private final int mCompactMinPhotos;
+
+    // All of the following must only be touched while holding the lock:
+    private final HashMap<Long, Entry> mEntries = new HashMap<Long, Entry>();
+    private int mTotalCost = 0;
+    private long mTick = 0;
+    private long mGeneration = 0;
+    private long mHits = 0;
+    private long mMisses = 0;
+    private long mEvictions = 0;
+}
@@ -0,0 +1,468 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * The changes between two versions of the contents of an album, so that listeners don't have to
+ * compare the full AlbumContents themselves. See AlbumManager.addAlbumContentsDeltaListener
+ *
+ * The indexes follow the usual convention of batch updates for lists: the indexes of removed and
+ * moved-from photos refer to the previous contents, and the indexes of all other changes refer to
+ * the new contents.
+ *
+ * Photos are matched by the server photo id, by the temporary file of an uploading photo, and by
+ * the preview image of uploading media. When an uploading photo is replaced by the server photo,
+ * that appears as a removal and an insertion.
+ *
+ * A delta is computed from two Snapshots, which can be done on any thread. Snapshots must be
+ * created on the main thread, since the states of the uploading photos are captured.
+ */
+public final class AlbumContentsDelta {
+    public static final class PhotoInserted {
+        PhotoInserted(int index, AlbumPhoto photo) {
+            mIndex = index;
+            mPhoto = photo;
+        }
+
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public AlbumPhoto getPhoto() {
+            return mPhoto;
+        }
+
+        private final int mIndex;
+        private final AlbumPhoto mPhoto;
+    }
+
+    public static final class PhotoRemoved {
+        PhotoRemoved(int index, AlbumPhoto photo) {
+            mIndex = index;
+            mPhoto = photo;
+        }
+
+        /**
+         * @return The index in the previous contents
+         */
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public AlbumPhoto getPhoto() {
+            return mPhoto;
+        }
+
+        private final int mIndex;
+        private final AlbumPhoto mPhoto;
+    }
+
+    public static final class PhotoMoved {
+        PhotoMoved(int fromIndex, int toIndex, AlbumPhoto photo) {
+            mFromIndex = fromIndex;
+            mToIndex = toIndex;
+            mPhoto = photo;
+        }
+
+        /**
+         * @return The index in the previous contents
+         */
+        public int getFromIndex() {
+            return mFromIndex;
+        }
+
+        public int getToIndex() {
+            return mToIndex;
+        }
+
+        public AlbumPhoto getPhoto() {
+            return mPhoto;
+        }
+
+        private final int mFromIndex;
+        private final int mToIndex;
+        private final AlbumPhoto mPhoto;
+    }
+
+    public static final class CommentsAdded {
+        CommentsAdded(int index, String photoId, ArrayList<AlbumPhotoComment> comments) {
+            mIndex = index;
+            mPhotoId = photoId;
+            mComments = comments;
+        }
+
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public String getPhotoId() {
+            return mPhotoId;
+        }
+
+        /**
+         * @return Only the comments that are new, in the order in which they appear on the photo
+         */
+        public ArrayList<AlbumPhotoComment> getComments() {
+            return mComments;
+        }
+
+        private final int mIndex;
+        private final String mPhotoId;
+        private final ArrayList<AlbumPhotoComment> mComments;
+    }
+
+    public static final class GlanceScoreChanged {
+        GlanceScoreChanged(int index, String photoId, int globalGlanceScore, int myGlanceScoreDelta) {
+            mIndex = index;
+            mPhotoId = photoId;
+            mGlobalGlanceScore = globalGlanceScore;
+            mMyGlanceScoreDelta = myGlanceScoreDelta;
+        }
+
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public String getPhotoId() {
+            return mPhotoId;
+        }
+
+        public int getGlobalGlanceScore() {
+            return mGlobalGlanceScore;
+        }
+
+        public int getMyGlanceScoreDelta() {
+            return mMyGlanceScoreDelta;
+        }
+
+        private final int mIndex;
+        private final String mPhotoId;
+        private final int mGlobalGlanceScore;
+        private final int mMyGlanceScoreDelta;
+    }
+
+    public static final class UploadStateChanged {
+        UploadStateChanged(int index, AlbumPhoto photo) {
+            mIndex = index;
+            mPhoto = photo;
+        }
+
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public AlbumPhoto getPhoto() {
+            return mPhoto;
+        }
+
+        private final int mIndex;
+        private final AlbumPhoto mPhoto;
+    }
+
+    /**
+     * The contents of an album at one point in time
+     */
+    public static final class Snapshot {
+        // Values of mUploadStates for photos that are not AlbumUploadingPhotos
+        private static final int UPLOAD_STATE_SERVER = -1;
+        private static final int UPLOAD_STATE_SERVER_UPLOADING_ORIGINAL = -2;
+        private static final int UPLOAD_STATE_MEDIA = -3;
+
+        private Snapshot(AlbumContents a) {
+            ArrayList<AlbumPhoto> photos = a.getPhotos();
+
+            // AlbumUploadingPhoto objects change their state in place, so the states are
+            // captured now
+            mUploadStates = new int[photos.size()];
+            for (int i = 0; i < photos.size(); ++i) {
+                mUploadStates[i] = uploadStateOf(photos.get(i));
+            }
+
+            mAlbumContents = new AlbumContents(
+                    a.getId(),
+                    a.getEtag(),
+                    a.getName(),
+                    a.getCreator(),
+                    a.getDateCreated(),
+                    a.getDateUpdated(),
+                    a.getNumNewPhotos(),
+                    a.getLastAccess(),
+                    new ArrayList<AlbumPhoto>(photos),
+                    new ArrayList<AlbumMember>(a.getMembers()),
+                    a.arePhotoDetailsLoaded());
+        }
+
+        /**
+         * @return A new AlbumContents that the caller is free to modify
+         */
+        public AlbumContents getAlbumContents() {
+            AlbumContents a = mAlbumContents;
+            return new AlbumContents(
+                    a.getId(),
+                    a.getEtag(),
+                    a.getName(),
+                    a.getCreator(),
+                    a.getDateCreated(),
+                    a.getDateUpdated(),
+                    a.getNumNewPhotos(),
+                    a.getLastAccess(),
+                    new ArrayList<AlbumPhoto>(a.getPhotos()),
+                    new ArrayList<AlbumMember>(a.getMembers()),
+                    a.arePhotoDetailsLoaded());
+        }
+
+        private static int uploadStateOf(AlbumPhoto photo) {
+            if (photo.getUploadingPhoto() != null) {
+                return photo.getUploadingPhoto().getState().ordinal();
+            } else if (photo.getUploadingMedia() != null) {
+                return UPLOAD_STATE_MEDIA;
+            } else if (photo.getServerPhoto().getUploadingOriginal()) {
+                return UPLOAD_STATE_SERVER_UPLOADING_ORIGINAL;
+            } else {
+                return UPLOAD_STATE_SERVER;
+            }
+        }
+
+        // Never modified after construction
+        private final AlbumContents mAlbumContents;
+        private final int[] mUploadStates;
+    }
+
+    /**
+     * Must be called on the main thread
+     *
+     * @param albumContents Is not modified, and may be modified by the caller afterwards
+     */
+    public static Snapshot snapshot(AlbumContents albumContents) {
+        if (albumContents == null) {
+            throw new IllegalArgumentException("albumContents cannot be null");
+        }
+
+        return new Snapshot(albumContents);
+    }
+
+    /**
+     * Can be called on any thread. Takes time proportional to the number of photos, and so should
+     * not be called on the main thread for large albums
+     */
+    public static AlbumContentsDelta compute(Snapshot previous, Snapshot current) {
+        if (previous == null) {
+            throw new IllegalArgumentException("previous cannot be null");
+        }
+        if (current == null) {
+            throw new IllegalArgumentException("current cannot be null");
+        }
+
+        AlbumContentsDelta delta = new AlbumContentsDelta(current.mAlbumContents);
+
+        ArrayList<AlbumPhoto> oldPhotos = previous.mAlbumContents.getPhotos();
+        ArrayList<AlbumPhoto> newPhotos = current.mAlbumContents.getPhotos();
+
+        HashMap<String, Integer> oldIndexes = new HashMap<String, Integer>();
+        for (int i = 0; i < oldPhotos.size(); ++i) {
+            oldIndexes.put(photoKey(oldPhotos.get(i)), i);
+        }
+
+        // For every photo of the new contents, its index in the old contents, or -1 if it is new
+        int[] oldIndexOf = new int[newPhotos.size()];
+        boolean[] keptOld = new boolean[oldPhotos.size()];
+        for (int i = 0; i < newPhotos.size(); ++i) {
+            Integer oldIndex = oldIndexes.get(photoKey(newPhotos.get(i)));
+            if (oldIndex == null) {
+                oldIndexOf[i] = -1;
+                delta.mInserted.add(new PhotoInserted(i, newPhotos.get(i)));
+            } else {
+                oldIndexOf[i] = oldIndex;
+                keptOld[oldIndex] = true;
+            }
+        }
+
+        for (int i = 0; i < oldPhotos.size(); ++i) {
+            if (!keptOld[i]) {
+                delta.mRemoved.add(new PhotoRemoved(i, oldPhotos.get(i)));
+            }
+        }
+
+        boolean[] stays = longestIncreasingSubsequence(oldIndexOf);
+
+        for (int i = 0; i < newPhotos.size(); ++i) {
+            int oldIndex = oldIndexOf[i];
+            if (oldIndex < 0) {
+                continue;
+            }
+
+            AlbumPhoto newPhoto = newPhotos.get(i);
+            if (!stays[i]) {
+                delta.mMoved.add(new PhotoMoved(oldIndex, i, newPhoto));
+            }
+
+            if (previous.mUploadStates[oldIndex] != current.mUploadStates[i]) {
+                delta.mUploadStateChanged.add(new UploadStateChanged(i, newPhoto));
+            }
+
+            AlbumServerPhoto oldServerPhoto = oldPhotos.get(oldIndex).getServerPhoto();
+            AlbumServerPhoto newServerPhoto = newPhoto.getServerPhoto();
+            if (oldServerPhoto == null || newServerPhoto == null || oldServerPhoto == newServerPhoto) {
+                continue;
+            }
+
+            if (oldServerPhoto.getGlobalGlanceScore() != newServerPhoto.getGlobalGlanceScore()
+                    || oldServerPhoto.getMyGlanceScoreDelta() != newServerPhoto.getMyGlanceScoreDelta()) {
+                delta.mGlanceScoreChanged.add(new GlanceScoreChanged(i, newServerPhoto.getId(), newServerPhoto.getGlobalGlanceScore(), newServerPhoto.getMyGlanceScoreDelta()));
+            }
+
+            ArrayList<AlbumPhotoComment> addedComments = addedComments(oldServerPhoto.getComments(), newServerPhoto.getComments());
+            if (!addedComments.isEmpty()) {
+                delta.mCommentsAdded.add(new CommentsAdded(i, newServerPhoto.getId(), addedComments));
+            }
+        }
+
+        return delta;
+    }
+
+    private AlbumContentsDelta(AlbumContents album) {
+        mAlbum = album;
+    }
+
+    /**
+     * @return The new values of the album itself (name, last access, etc)
+     */
+    public AlbumBase getAlbum() {
+        return mAlbum;
+    }
+
+    /**
+     * @return The number of photos in the new contents
+     */
+    public int getPhotoCount() {
+        return mAlbum.getPhotos().size();
+    }
+
+    public ArrayList<PhotoInserted> getInsertedPhotos() {
+        return mInserted;
+    }
+
+    public ArrayList<PhotoRemoved> getRemovedPhotos() {
+        return mRemoved;
+    }
+
+    public ArrayList<PhotoMoved> getMovedPhotos() {
+        return mMoved;
+    }
+
+    public ArrayList<CommentsAdded> getAddedComments() {
+        return mCommentsAdded;
+    }
+
+    public ArrayList<GlanceScoreChanged> getGlanceScoreChanges() {
+        return mGlanceScoreChanged;
+    }
+
+    public ArrayList<UploadStateChanged> getUploadStateChanges() {
+        return mUploadStateChanged;
+    }
+
+    /**
+     * @return true if none of the photos changed. The values of the album itself might still
+     * have changed
+     */
+    public boolean isEmpty() {
+        return mInserted.isEmpty()
+                && mRemoved.isEmpty()
+                && mMoved.isEmpty()
+                && mCommentsAdded.isEmpty()
+                && mGlanceScoreChanged.isEmpty()
+                && mUploadStateChanged.isEmpty();
+    }
+
+    private static String photoKey(AlbumPhoto photo) {
+        if (photo.getServerPhoto() != null) {
+            return "s:" + photo.getServerPhoto().getId();
+        } else if (photo.getUploadingPhoto() != null) {
+            return "u:" + photo.getUploadingPhoto().getTmpFile();
+        } else {
+            AlbumUploadingMedia media = photo.getUploadingMedia();
+            if (media.getMediaType() == MediaType.VIDEO) {
+                return "m:" + media.getVideo().getPreviewImageFile();
+            } else {
+                return "m:" + media.getPhoto().getPreviewImageFile();
+            }
+        }
+    }
+
+    private static ArrayList<AlbumPhotoComment> addedComments(ArrayList<AlbumPhotoComment> oldComments, ArrayList<AlbumPhotoComment> newComments) {
+        ArrayList<AlbumPhotoComment> result = new ArrayList<AlbumPhotoComment>();
+        if (newComments.isEmpty()) {
+            return result;
+        }
+
+        // Comments are identified by their (author_id, client_msg_id), the same as in ShotVibeDB
+        LongPairHashMap<AlbumPhotoComment> oldKeys = new LongPairHashMap<AlbumPhotoComment>(oldComments.size());
+        for (AlbumPhotoComment c : oldComments) {
+            oldKeys.put(c.getAuthor().getMemberId(), c.getClientMsgId(), c);
+        }
+
+        for (AlbumPhotoComment c : newComments) {
+            if (!oldKeys.containsKey(c.getAuthor().getMemberId(), c.getClientMsgId())) {
+                result.add(c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the largest set of photos that kept their relative order, so that all of the other
+     * photos can be reported as moved. O(n log n)
+     *
+     * @param values The old indexes of the photos, in their new order. Negative values (new
+     *               photos) are ignored
+     * @return For every position, whether it is part of the subsequence
+     */
+    private static boolean[] longestIncreasingSubsequence(int[] values) {
+        int n = values.length;
+
+        // tails[k] is the position of the smallest value that ends an increasing subsequence of
+        // length k + 1
+        int[] tails = new int[n];
+        int[] predecessors = new int[n];
+        int length = 0;
+
+        for (int i = 0; i < n; ++i) {
+            if (values[i] < 0) {
+                continue;
+            }
+
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values[tails[mid]] < values[i]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+
+            predecessors[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) {
+                length++;
+            }
+        }
+
+        boolean[] result = new boolean[n];
+        int i = length > 0 ? tails[length - 1] : -1;
+        while (i >= 0) {
+            result[i] = true;
+            i = predecessors[i];
+        }
+        return result;
+    }
+
+    private final AlbumContents mAlbum;
+
+    private final ArrayList<PhotoInserted> mInserted = new ArrayList<PhotoInserted>();
+    private final ArrayList<PhotoRemoved> mRemoved = new ArrayList<PhotoRemoved>();
+    private final ArrayList<PhotoMoved> mMoved = new ArrayList<PhotoMoved>();
+    private final ArrayList<CommentsAdded> mCommentsAdded = new ArrayList<CommentsAdded>();
+    private final ArrayList<GlanceScoreChanged> mGlanceScoreChanged = new ArrayList<GlanceScoreChanged>();
+    private final ArrayList<UploadStateChanged> mUploadStateChanged = new ArrayList<UploadStateChanged>();
+}
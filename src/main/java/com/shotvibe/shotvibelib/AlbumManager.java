@@ -19,6 +19,7 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         }
         mShotVibeAPI = shotVibeAPI;
         mShotVibeDB = shotVibeDB;
+        mAlbumContentsCache = new AlbumContentsCache(shotVibeDB);
         mPhotoDownloadManager = photoDownloadManager;
         mUploadManager = uploadManager;
         mMediaUploader = mediaUploader;
@@ -27,6 +28,7 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         mMediaUploader.setListener(this);
 
         mExecutor = ThreadUtil.createSingleThreadExecutor();
+        mDeltaExecutor = ThreadUtil.createSingleThreadExecutor();
         mAlbumListListeners = new ArrayList<AlbumListListener>();
         mAlbumContentsListeners = new AlbumContentsListenersContainer();
         mAlbumListUserRefreshing = false;
@@ -41,11 +43,19 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         return mShotVibeDB;
     }
 
+    /**
+     * All writes of album contents must go through the returned cache, and not directly through
+     * the ShotVibeDB
+     */
+    public AlbumContentsCache getAlbumContentsCache() {
+        return mAlbumContentsCache;
+    }
+
     public AlbumContents createNewBlankAlbum(final String albumName) throws APIException {
         AlbumContents newAlbum = mShotVibeAPI.createNewBlankAlbum(albumName);
 
         try {
-            mShotVibeDB.setAlbumContents(newAlbum.getId(), newAlbum);
+            mAlbumContentsCache.setAlbumContents(newAlbum.getId(), newAlbum);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -79,6 +89,463 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         void onAlbumContentsUploadsProgressed(long albumId);
     }
 
+    /**
+     * A listener that only sees a range of the photos of an album (for example the rows of the
+     * grid that are visible), so that very large albums never have to be fully loaded
+     */
+    public interface AlbumWindowListener {
+        /**
+         * Called whenever the album changed, with the current contents of the window
+         */
+        void onAlbumWindowNewContent(long albumId, AlbumPhotoWindow window);
+
+        void onAlbumWindowUploadsProgressed(long albumId);
+    }
+
+    /**
+     * A listener that receives the changes to an album instead of the full AlbumContents
+     */
+    public interface AlbumContentsDeltaListener {
+        /**
+         * Called on the main thread. Never called with an empty delta
+         */
+        void onAlbumContentsDelta(long albumId, AlbumContentsDelta delta);
+
+        void onAlbumContentsUploadsProgressed(long albumId);
+    }
+
+    public interface PhotoDetailsListener {
+        /**
+         * Called on the main thread
+         */
+        void onPhotoDetailsLoaded(long albumId, AlbumPhotoDetails photoDetails);
+    }
+
+    /**
+     * Returns the album quickly enough to draw the grid of photos, even for very large albums.
+     *
+     * If the album is not cached then the glances and comments of the photos are not loaded (see
+     * AlbumContents.arePhotoDetailsLoaded). They can be loaded for a single photo with
+     * loadPhotoDetails, or for the whole album with prefetchAlbumContents
+     *
+     * @param albumId
+     * @return null if the album is not in the database
+     */
+    public AlbumContents getAlbumGrid(long albumId) {
+        if (!ThreadUtil.isMainThread()) {
+            throw new IllegalStateException("Must be called from the Main Thread");
+        }
+
+        AlbumContents albumContents = mAlbumContentsCache.peekAlbumContents(albumId);
+        if (albumContents == null) {
+            try {
+                albumContents = mShotVibeDB.getAlbumGrid(albumId);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (albumContents != null) {
+            addUploadingPhotosToAlbumContents(albumContents, mUploadManager.getUploadingPhotos(albumId), mUploadManager.getUploadingOriginalPhotoIds());
+            addUploadingMediaToAlbumContents(albumContents, mMediaUploader.getUploadingMedia(albumId));
+        }
+
+        return albumContents;
+    }
+
+    /**
+     * Loads the glances and comments of a single photo in a background thread
+     *
+     * @param albumId
+     * @param photoId
+     * @param listener Will be called on the main thread
+     */
+    public void loadPhotoDetails(final long albumId, final String photoId, final PhotoDetailsListener listener) {
+        if (photoId == null) {
+            throw new IllegalArgumentException("photoId cannot be null");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("listener cannot be null");
+        }
+
+        ThreadUtil.runInBackgroundThread(new ThreadUtil.Runnable() {
+            @Override
+            public void run() {
+                final AlbumPhotoDetails photoDetails;
+                try {
+                    photoDetails = readPhotoDetails(albumId, photoId);
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+
+                ThreadUtil.runInMainThread(new ThreadUtil.Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onPhotoDetailsLoaded(albumId, photoDetails);
+                    }
+                });
+            }
+        });
+    }
+
+    private AlbumPhotoDetails readPhotoDetails(long albumId, String photoId) throws SQLException {
+        AlbumContents cachedAlbumContents = mAlbumContentsCache.peekAlbumContents(albumId);
+        if (cachedAlbumContents != null) {
+            for (AlbumPhoto p : cachedAlbumContents.getPhotos()) {
+                AlbumServerPhoto serverPhoto = p.getServerPhoto();
+                if (serverPhoto != null && serverPhoto.getId().equals(photoId)) {
+                    // The cached AlbumPhoto objects are shared, so the lists are copied
+                    return new AlbumPhotoDetails(photoId,
+                            new ArrayList<AlbumPhotoGlance>(serverPhoto.getGlances()),
+                            new ArrayList<AlbumPhotoComment>(serverPhoto.getComments()));
+                }
+            }
+        }
+
+        return mShotVibeDB.getPhotoDetails(albumId, photoId);
+    }
+
+    /**
+     * Loads the full album (including all of the glances and comments) into the
+     * AlbumContentsCache in a background thread, so that a later call to addAlbumContentsListener
+     * doesn't have to read it from the database
+     *
+     * @param albumId
+     */
+    public void prefetchAlbumContents(final long albumId) {
+        ThreadUtil.runInBackgroundThread(new ThreadUtil.Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mAlbumContentsCache.getAlbumContents(albumId);
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param albumId
+     * @param start The index of the first photo of the window
+     * @param count The number of photos in the window
+     * @param listener
+     * @return The current contents of the window
+     */
+    public AlbumPhotoWindow addAlbumWindowListener(long albumId, int start, int count, AlbumWindowListener listener) {
+        if (!ThreadUtil.isMainThread()) {
+            throw new IllegalStateException("Must be called from the Main Thread");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("listener cannot be null");
+        }
+
+        ArrayList<AlbumWindow> windows = mAlbumWindows.get(albumId);
+        if (windows == null) {
+            windows = new ArrayList<AlbumWindow>();
+            mAlbumWindows.put(albumId, windows);
+        }
+        if (findAlbumWindow(windows, listener) != null) {
+            throw new IllegalArgumentException("Tried to add an AlbumWindowListener that is already registered in the AlbumManager for this albumId");
+        }
+
+        AlbumWindow window = new AlbumWindow(listener, start, count);
+        windows.add(window);
+
+        return readAlbumWindow(albumId, start, count);
+    }
+
+    /**
+     * Moves the window of a listener, for example when the grid is scrolled
+     *
+     * @return The current contents of the new window
+     */
+    public AlbumPhotoWindow setAlbumWindowRange(long albumId, AlbumWindowListener listener, int start, int count) {
+        if (!ThreadUtil.isMainThread()) {
+            throw new IllegalStateException("Must be called from the Main Thread");
+        }
+
+        ArrayList<AlbumWindow> windows = mAlbumWindows.get(albumId);
+        AlbumWindow window = windows == null ? null : findAlbumWindow(windows, listener);
+        if (window == null) {
+            throw new IllegalStateException("Tried to move the window of an AlbumWindowListener that isn't registered");
+        }
+
+        window.start = start;
+        window.count = count;
+
+        return readAlbumWindow(albumId, start, count);
+    }
+
+    public void removeAlbumWindowListener(long albumId, AlbumWindowListener listener) {
+        if (!ThreadUtil.isMainThread()) {
+            throw new IllegalStateException("Must be called from the Main Thread");
+        }
+
+        ArrayList<AlbumWindow> windows = mAlbumWindows.get(albumId);
+        AlbumWindow window = windows == null ? null : findAlbumWindow(windows, listener);
+        if (window == null) {
+            throw new IllegalStateException("Tried to remove an AlbumWindowListener that isn't registered");
+        }
+
+        windows.remove(window);
+        if (windows.isEmpty()) {
+            mAlbumWindows.remove(albumId);
+        }
+    }
+
+    private static class AlbumWindow {
+        public AlbumWindow(AlbumWindowListener listener, int start, int count) {
+            this.listener = listener;
+            this.start = start;
+            this.count = count;
+        }
+
+        public final AlbumWindowListener listener;
+        public int start;
+        public int count;
+    }
+
+    private static AlbumWindow findAlbumWindow(ArrayList<AlbumWindow> windows, AlbumWindowListener listener) {
+        for (AlbumWindow w : windows) {
+            if (w.listener == listener) {
+                return w;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a window of the album, where the uploading photos and media come after all of the
+     * photos that are stored in the database (the same order as addAlbumContentsListener)
+     */
+    private AlbumPhotoWindow readAlbumWindow(long albumId, int start, int count) {
+        AlbumPhotoWindow serverWindow;
+        ArrayList<AlbumPhoto> uploadingPhotos;
+        try {
+            serverWindow = mShotVibeDB.getAlbumPhotoWindow(albumId, start, count);
+            uploadingPhotos = getUploadingAlbumPhotos(albumId);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        ArrayList<AlbumPhoto> photos = serverWindow.getPhotos();
+        markUploadingOriginalPhotos(photos, mUploadManager.getUploadingOriginalPhotoIds());
+
+        int serverCount = serverWindow.getTotalCount();
+        for (int i = Math.max(0, start - serverCount); i < uploadingPhotos.size() && photos.size() < count; ++i) {
+            photos.add(uploadingPhotos.get(i));
+        }
+
+        return new AlbumPhotoWindow(albumId, start, photos, serverCount + uploadingPhotos.size());
+    }
+
+    /**
+     * @return The uploading photos and media of the album, in the order that they are shown
+     */
+    private ArrayList<AlbumPhoto> getUploadingAlbumPhotos(long albumId) throws SQLException {
+        List<AlbumPhoto> uploadingPhotos = mUploadManager.getUploadingPhotos(albumId);
+
+        // The same duplicate check as in addUploadingPhotosToAlbumContents, but without reading
+        // the ids of all of the photos of the album. Only the photos that are being added to the
+        // album can already be stored, so only they are looked up
+        HashSet<String> storedPhotoIds = mShotVibeDB.getStoredPhotoIds(albumId, getAddingToAlbumPhotoIds(uploadingPhotos));
+
+        ArrayList<AlbumPhoto> result = new ArrayList<AlbumPhoto>();
+        addUploadingPhotosWithoutDuplicates(result, uploadingPhotos, storedPhotoIds);
+        for (AlbumUploadingMedia m : mMediaUploader.getUploadingMedia(albumId)) {
+            result.add(new AlbumPhoto(m));
+        }
+        return result;
+    }
+
+    private void notifyAlbumWindowsNewContent(long albumId) {
+        ArrayList<AlbumWindow> windows = mAlbumWindows.get(albumId);
+        if (windows == null) {
+            return;
+        }
+
+        // Copied, since listeners are allowed to remove themselves or move their windows
+        for (AlbumWindow w : new ArrayList<AlbumWindow>(windows)) {
+            w.listener.onAlbumWindowNewContent(albumId, readAlbumWindow(albumId, w.start, w.count));
+        }
+    }
+
+    private void notifyAlbumWindowsUploadsProgressed(long albumId) {
+        ArrayList<AlbumWindow> windows = mAlbumWindows.get(albumId);
+        if (windows == null) {
+            return;
+        }
+
+        for (AlbumWindow w : new ArrayList<AlbumWindow>(windows)) {
+            w.listener.onAlbumWindowUploadsProgressed(albumId);
+        }
+    }
+
+    /**
+     * The deltas are computed on a background thread, and then delivered in order on the main
+     * thread
+     *
+     * @param albumId
+     * @param listener
+     * @return The current contents of the album, which all of the following deltas are relative
+     * to. null if the album is not in the database
+     */
+    public AlbumContents addAlbumContentsDeltaListener(long albumId, AlbumContentsDeltaListener listener) {
+        if (!ThreadUtil.isMainThread()) {
+            throw new IllegalStateException("Must be called from the Main Thread");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("listener cannot be null");
+        }
+
+        DeltaSubscription subscription = mDeltaSubscriptions.get(albumId);
+        if (subscription == null) {
+            AlbumContents albumContents;
+            try {
+                albumContents = mAlbumContentsCache.getAlbumContents(albumId);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            if (albumContents == null) {
+                return null;
+            }
+            addUploadingPhotosToAlbumContents(albumContents, mUploadManager.getUploadingPhotos(albumId), mUploadManager.getUploadingOriginalPhotoIds());
+            addUploadingMediaToAlbumContents(albumContents, mMediaUploader.getUploadingMedia(albumId));
+
+            subscription = new DeltaSubscription(AlbumContentsDelta.snapshot(albumContents));
+            mDeltaSubscriptions.put(albumId, subscription);
+        } else {
+            for (DeltaListenerEntry e : subscription.listeners) {
+                if (e.listener == listener) {
+                    throw new IllegalArgumentException("Tried to add an AlbumContentsDeltaListener that is already registered in the AlbumManager for this albumId");
+                }
+            }
+        }
+
+        // Deltas that are still being computed are relative to older contents than the snapshot
+        // that this listener starts with, so they must be skipped
+        subscription.listeners.add(new DeltaListenerEntry(listener, subscription.sequence));
+
+        return subscription.snapshot.getAlbumContents();
+    }
+
+    public void removeAlbumContentsDeltaListener(long albumId, AlbumContentsDeltaListener listener) {
+        if (!ThreadUtil.isMainThread()) {
+            throw new IllegalStateException("Must be called from the Main Thread");
+        }
+
+        DeltaSubscription subscription = mDeltaSubscriptions.get(albumId);
+        if (subscription != null) {
+            for (int i = 0; i < subscription.listeners.size(); ++i) {
+                if (subscription.listeners.get(i).listener == listener) {
+                    subscription.listeners.remove(i);
+                    if (subscription.listeners.isEmpty()) {
+                        mDeltaSubscriptions.remove(albumId);
+                    }
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("Tried to remove an AlbumContentsDeltaListener that isn't registered");
+    }
+
+    private static class DeltaListenerEntry {
+        public DeltaListenerEntry(AlbumContentsDeltaListener listener, long sinceSequence) {
+            this.listener = listener;
+            this.sinceSequence = sinceSequence;
+        }
+
+        public final AlbumContentsDeltaListener listener;
+
+        // Only the deltas with a higher sequence number are delivered to the listener
+        public final long sinceSequence;
+    }
+
+    private static class DeltaSubscription {
+        public DeltaSubscription(AlbumContentsDelta.Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        public final ArrayList<DeltaListenerEntry> listeners = new ArrayList<DeltaListenerEntry>();
+
+        // The latest contents, which the next delta will be computed against
+        public AlbumContentsDelta.Snapshot snapshot;
+
+        // The sequence number of the latest delta that was started
+        public long sequence = 0;
+    }
+
+    private boolean hasAlbumContentsDeltaListeners(long albumId) {
+        return mDeltaSubscriptions.containsKey(albumId);
+    }
+
+    /**
+     * @return true if the album is shown by any kind of listener: an AlbumContentsListener, an
+     * AlbumContentsDeltaListener or an AlbumWindowListener. Must be called on the main thread
+     */
+    private boolean hasAnyListeners(long albumId) {
+        return !mAlbumContentsListeners.getAlbumContentsListeners(albumId).isEmpty()
+                || hasAlbumContentsDeltaListeners(albumId)
+                || mAlbumWindows.containsKey(albumId);
+    }
+
+    /**
+     * Must be called on the main thread, with the new contents of the album (including the
+     * uploading photos). albumContents is not modified, and is not referenced afterwards
+     */
+    private void publishAlbumContentsDelta(final long albumId, AlbumContents albumContents) {
+        DeltaSubscription subscription = mDeltaSubscriptions.get(albumId);
+        if (subscription == null || albumContents == null) {
+            return;
+        }
+
+        final AlbumContentsDelta.Snapshot previous = subscription.snapshot;
+        final AlbumContentsDelta.Snapshot current = AlbumContentsDelta.snapshot(albumContents);
+        subscription.snapshot = current;
+        final long sequence = ++subscription.sequence;
+
+        // A single thread, so that the deltas are delivered in the same order as they were
+        // published
+        mDeltaExecutor.execute(new ThreadUtil.Runnable() {
+            @Override
+            public void run() {
+                final AlbumContentsDelta delta = AlbumContentsDelta.compute(previous, current);
+                if (delta.isEmpty()) {
+                    return;
+                }
+
+                ThreadUtil.runInMainThread(new ThreadUtil.Runnable() {
+                    @Override
+                    public void run() {
+                        DeltaSubscription subscription = mDeltaSubscriptions.get(albumId);
+                        if (subscription == null) {
+                            return;
+                        }
+
+                        // Copied, since listeners are allowed to remove themselves
+                        for (DeltaListenerEntry e : new ArrayList<DeltaListenerEntry>(subscription.listeners)) {
+                            if (sequence > e.sinceSequence) {
+                                e.listener.onAlbumContentsDelta(albumId, delta);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void notifyAlbumContentsDeltaUploadsProgressed(long albumId) {
+        DeltaSubscription subscription = mDeltaSubscriptions.get(albumId);
+        if (subscription == null) {
+            return;
+        }
+
+        for (DeltaListenerEntry e : new ArrayList<DeltaListenerEntry>(subscription.listeners)) {
+            e.listener.onAlbumContentsUploadsProgressed(albumId);
+        }
+    }
+
     public ArrayList<AlbumSummary> getCachedAlbums() {
         try {
             return mShotVibeDB.getAlbumList();
@@ -96,7 +563,7 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
             ArrayList<AlbumContents> result = new ArrayList<AlbumContents>();
             ArrayList<AlbumSummary> albumSummaries = mShotVibeDB.getAlbumList();
             for (AlbumSummary a : albumSummaries) {
-                AlbumContents albumContents = mShotVibeDB.getAlbumContents(a.getId());
+                AlbumContents albumContents = mAlbumContentsCache.getAlbumContents(a.getId());
                 if (albumContents != null) {
                     result.add(albumContents);
                 }
@@ -165,7 +632,7 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
 
         AlbumContents cachedAlbumContents;
         try {
-            cachedAlbumContents = mShotVibeDB.getAlbumContents(albumId);
+            cachedAlbumContents = mAlbumContentsCache.getAlbumContents(albumId);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -195,12 +662,10 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         ThreadUtil.runInMainThread(new ThreadUtil.Runnable() {
             @Override
             public void run() {
-                RefreshAlbumContentsTrigerrableAction action = mRefreshAlbumContentsActions.get(albumId);
-                if (action == null) {
-                    action = new RefreshAlbumContentsTrigerrableAction(albumId);
-                    mRefreshAlbumContentsActions.put(albumId, action);
-                }
-                action.trigger(mExecutor);
+                // An explicit refresh jumps ahead of any queued background refresh of the album
+                mPendingBackgroundRefreshes.remove(albumId);
+
+                triggerRefreshAlbumContents(albumId);
             }
         });
 
@@ -212,6 +677,117 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         }
     }
 
+    /**
+     * Must be called on the main thread
+     */
+    private void triggerRefreshAlbumContents(long albumId) {
+        RefreshAlbumContentsTrigerrableAction action = mRefreshAlbumContentsActions.get(albumId);
+        if (action == null) {
+            action = new RefreshAlbumContentsTrigerrableAction(albumId);
+            mRefreshAlbumContentsActions.put(albumId, action);
+        }
+        action.trigger(mExecutor);
+    }
+
+    public static final int DEFAULT_MAX_CONCURRENT_BACKGROUND_REFRESHES = 2;
+
+    /**
+     * Sets the maximum number of background album refreshes (those that are started because the
+     * album list reported a new etag) that may be in progress at the same time. The rest wait in
+     * a queue, so that a large number of changed albums doesn't flood the network and the DB, and
+     * so that explicit refreshes don't have to wait behind all of them.
+     *
+     * Must be called on the main thread
+     *
+     * @param maxConcurrentRefreshes Must be at least 1
+     */
+    public void setMaxConcurrentBackgroundRefreshes(int maxConcurrentRefreshes) {
+        if (maxConcurrentRefreshes < 1) {
+            throw new IllegalArgumentException("maxConcurrentRefreshes must be at least 1: " + maxConcurrentRefreshes);
+        }
+
+        mMaxConcurrentBackgroundRefreshes = maxConcurrentRefreshes;
+        dispatchBackgroundRefreshes();
+    }
+
+    /**
+     * @return The number of background album refreshes that are waiting to be started. Must be
+     * called on the main thread
+     */
+    public int getBackgroundRefreshQueueDepth() {
+        return mPendingBackgroundRefreshes.size();
+    }
+
+    /**
+     * @return The largest number of background album refreshes that were waiting at the same
+     * time. Must be called on the main thread
+     */
+    public int getMaxBackgroundRefreshQueueDepth() {
+        return mMaxBackgroundRefreshQueueDepth;
+    }
+
+    /**
+     * @return The total number of background album refreshes that have been started. Must be
+     * called on the main thread
+     */
+    public long getDispatchedBackgroundRefreshCount() {
+        return mDispatchedBackgroundRefreshCount;
+    }
+
+    /**
+     * Queues a background refresh of an album. Must be called on the main thread
+     *
+     * @param albumId
+     * @param lastUpdated Used for ordering the queue: more recently updated albums are refreshed
+     *                    first
+     */
+    private void queueBackgroundRefresh(long albumId, DateTime lastUpdated) {
+        if (mRefreshAlbumContentsActions.containsKey(albumId)) {
+            // A refresh is already in progress, it will take care of the new changes
+            // (TriggerableAction makes sure that it will run again if it already started)
+            mRefreshAlbumContentsActions.get(albumId).trigger(mExecutor);
+            return;
+        }
+
+        mPendingBackgroundRefreshes.put(albumId, lastUpdated.getTimeStamp());
+        if (mPendingBackgroundRefreshes.size() > mMaxBackgroundRefreshQueueDepth) {
+            mMaxBackgroundRefreshQueueDepth = mPendingBackgroundRefreshes.size();
+        }
+    }
+
+    /**
+     * Starts as many of the queued background refreshes as the concurrency limit allows. Albums
+     * that have listeners are started first, and then the most recently updated albums.
+     *
+     * Must be called on the main thread
+     */
+    private void dispatchBackgroundRefreshes() {
+        while (mRunningBackgroundRefreshes.size() < mMaxConcurrentBackgroundRefreshes
+                && !mPendingBackgroundRefreshes.isEmpty()) {
+            long bestAlbumId = 0;
+            boolean bestHasListeners = false;
+            long bestLastUpdated = Long.MIN_VALUE;
+            boolean found = false;
+            for (Map.Entry<Long, Long> entry : mPendingBackgroundRefreshes.entrySet()) {
+                boolean hasListeners = hasAnyListeners(entry.getKey());
+                long lastUpdated = entry.getValue();
+                if (!found
+                        || (hasListeners && !bestHasListeners)
+                        || (hasListeners == bestHasListeners && lastUpdated > bestLastUpdated)) {
+                    found = true;
+                    bestAlbumId = entry.getKey();
+                    bestHasListeners = hasListeners;
+                    bestLastUpdated = lastUpdated;
+                }
+            }
+
+            mPendingBackgroundRefreshes.remove(bestAlbumId);
+            mRunningBackgroundRefreshes.add(bestAlbumId);
+            mDispatchedBackgroundRefreshCount++;
+            triggerRefreshAlbumContents(bestAlbumId);
+        }
+    }
+
     private final RefreshAlbumListTrigerrableAction mRefreshAlbumList = new RefreshAlbumListTrigerrableAction();
 
     private static class RefreshAlbumListResult {
@@ -247,19 +823,31 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         public void actionComplete(final RefreshAlbumListResult result) {
             if (result.albumsList != null) {
                 try {
-                    mShotVibeDB.setAlbumList(result.albumsList);
+                    mAlbumContentsCache.setAlbumList(result.albumsList);
 
-                    // Loop over the new albumsList, and refresh any albums that have
-                    // an updated etag value:
-                    // TODO Right now all of these refresh requests happen in parallel, they should run in sequence
+                    // Loop over the new albumsList, and queue a refresh of any albums that
+                    // have an updated etag value:
                     Map<Long, String> albumEtags = mShotVibeDB.getAlbumListEtagValues();
+                    final ArrayList<AlbumSummary> changedAlbums = new ArrayList<AlbumSummary>();
                     for (AlbumSummary a : result.albumsList) {
                         String newEtag = a.getEtag();
                         String oldEtag = albumEtags.get(a.getId());
                         if (!newEtag.equals(oldEtag)) {
-                            refreshAlbumContents(a.getId(), false);
+                            changedAlbums.add(a);
                         }
                     }
+
+                    if (!changedAlbums.isEmpty()) {
+                        ThreadUtil.runInMainThread(new ThreadUtil.Runnable() {
+                            @Override
+                            public void run() {
+                                for (AlbumSummary a : changedAlbums) {
+                                    queueBackgroundRefresh(a.getId(), a.getDateUpdated());
+                                }
+                                dispatchBackgroundRefreshes();
+                            }
+                        });
+                    }
                 } catch (SQLException e) {
                     throw new RuntimeException(e);
                 }
@@ -282,13 +870,20 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         }
     }
 
-    private static class RefreshAlbumContentsResult {
+    // Package-private (like RefreshAlbumContentsTrigerrableAction) so that the tests can run a
+    // refresh without a main thread
+    static class RefreshAlbumContentsResult {
         public AlbumContents albumContents = null;
+
+        // true if the server reported that the album didn't change since the version that is
+        // stored in the DB. albumContents will be null
+        public boolean notModified = false;
+
         public APIException error = null;
     }
 
     //@WeakOuter
-    private class RefreshAlbumContentsTrigerrableAction extends TriggerableAction<RefreshAlbumContentsResult> {
+    class RefreshAlbumContentsTrigerrableAction extends TriggerableAction<RefreshAlbumContentsResult> {
         public RefreshAlbumContentsTrigerrableAction(long albumId) {
             mAlbumId = albumId;
         }
@@ -297,9 +892,32 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
 
         @Override
         public RefreshAlbumContentsResult runAction() {
+            try {
+                return fetchAlbumContents();
+            } catch (RuntimeException e) {
+                // actionComplete will never be called, so the slot must be released here
+                postRefreshFinished();
+                throw e;
+            }
+        }
+
+        private RefreshAlbumContentsResult fetchAlbumContents() {
             RefreshAlbumContentsResult result = new RefreshAlbumContentsResult();
+
+            String storedEtag;
             try {
-                AlbumContents albumContents = mShotVibeAPI.getAlbumContents(mAlbumId);
+                storedEtag = mShotVibeDB.getAlbumEtag(mAlbumId);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+
+            try {
+                AlbumContents albumContents = mShotVibeAPI.getAlbumContents(mAlbumId, storedEtag);
+                if (albumContents == null) {
+                    Log.d("AlbumManager", "refreshAlbumContents: " + mAlbumId + " not modified");
+                    result.notModified = true;
+                    return result;
+                }
 
                 CollectionUtils.sortArrayList(albumContents.getMembers(), new CollectionUtils.Comparator<AlbumMember>() {
                     @Override
@@ -322,8 +940,10 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         public void actionComplete(final RefreshAlbumContentsResult result) {
             if (result.albumContents != null) {
                 try {
-                    mShotVibeDB.setAlbumContents(mAlbumId, result.albumContents);
+                    int rowsWritten = mAlbumContentsCache.setAlbumContents(mAlbumId, result.albumContents);
+                    Log.d("AlbumManager", "refreshAlbumContents: " + mAlbumId + " rows written: " + rowsWritten);
                 } catch (SQLException e) {
+                    postRefreshFinished();
                     throw new RuntimeException(e);
                 }
 
@@ -339,27 +959,62 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
             ThreadUtil.runInMainThread(new ThreadUtil.Runnable() {
                 @Override
                 public void run() {
-                    if (result.albumContents != null) {
-                        mMediaUploader.cleanCompletedUploads(result.albumContents.getPhotos());
-                    }
+                    try {
+                        if (result.albumContents != null) {
+                            mMediaUploader.cleanCompletedUploads(result.albumContents.getPhotos());
+                        }
 
-                    List<AlbumContentsListener> listeners = mAlbumContentsListeners.getAlbumContentsListeners(mAlbumId);
-                    if (result.albumContents != null && !listeners.isEmpty()) {
-                        addUploadingPhotosToAlbumContents(result.albumContents, mUploadManager.getUploadingPhotos(mAlbumId), mUploadManager.getUploadingOriginalPhotoIds());
-                        addUploadingMediaToAlbumContents(result.albumContents, mMediaUploader.getUploadingMedia(mAlbumId));
-                    }
+                        List<AlbumContentsListener> listeners = mAlbumContentsListeners.getAlbumContentsListeners(mAlbumId);
+                        if (result.albumContents != null && (!listeners.isEmpty() || hasAlbumContentsDeltaListeners(mAlbumId))) {
+                            addUploadingPhotosToAlbumContents(result.albumContents, mUploadManager.getUploadingPhotos(mAlbumId), mUploadManager.getUploadingOriginalPhotoIds());
+                            addUploadingMediaToAlbumContents(result.albumContents, mMediaUploader.getUploadingMedia(mAlbumId));
+                            publishAlbumContentsDelta(mAlbumId, result.albumContents);
+                        }
 
-                    for (AlbumContentsListener listener : listeners) {
-                        if (result.albumContents != null) {
-                            listener.onAlbumContentsNewContent(mAlbumId, result.albumContents);
+                        for (AlbumContentsListener listener : listeners) {
+                            if (result.albumContents != null) {
+                                listener.onAlbumContentsNewContent(mAlbumId, result.albumContents);
+                            }
+                            if (mUserRefreshingAlbumContents.contains(mAlbumId)) {
+                                listener.onAlbumContentsEndUserRefresh(result.error);
+                            }
                         }
-                        if (mUserRefreshingAlbumContents.contains(mAlbumId)) {
-                            listener.onAlbumContentsEndUserRefresh(result.error);
+                        mUserRefreshingAlbumContents.remove(mAlbumId);
+
+                        if (result.albumContents != null) {
+                            notifyAlbumWindowsNewContent(mAlbumId);
                         }
+                    } finally {
+                        refreshFinished();
                     }
-                    mUserRefreshingAlbumContents.remove(mAlbumId);
+                }
+            });
+        }
 
-                    mRefreshAlbumContentsActions.remove(mAlbumId);
+        /**
+         * Forgets this action and releases its background refresh slot (if it has one), so that
+         * queued background refreshes can start. Must be called on the main thread
+         */
+        private void refreshFinished() {
+            if (mRefreshAlbumContentsActions.get(mAlbumId) == this) {
+                mRefreshAlbumContentsActions.remove(mAlbumId);
+            }
+
+            if (mRunningBackgroundRefreshes.remove(mAlbumId)) {
+                dispatchBackgroundRefreshes();
+            }
+        }
+
+        /**
+         * For when the refresh failed with an exception. A failed action is never run again
+         * (TriggerableAction doesn't recover from exceptions), so it is forgotten and the next
+         * refresh of the album starts with a new one
+         */
+        private void postRefreshFinished() {
+            ThreadUtil.runInMainThread(new ThreadUtil.Runnable() {
+                @Override
+                public void run() {
+                    refreshFinished();
                 }
             });
         }
@@ -374,7 +1029,7 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
                     refreshAlbumList(false);
                 }
 
-                if (!mAlbumContentsListeners.getAlbumContentsListeners(albumId).isEmpty()) {
+                if (hasAnyListeners(albumId)) {
                     refreshAlbumContents(albumId, false);
                 }
             }
@@ -383,7 +1038,7 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
 
     public void updateLastAccess(final long albumId, final DateTime lastAccess) {
         try {
-            mShotVibeDB.setAlbumLastAccess(albumId, lastAccess);
+            mAlbumContentsCache.setAlbumLastAccess(albumId, lastAccess);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -408,31 +1063,28 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         mUploadManager.uploadPhotos(albumId, photoUploadRequests);
 
         List<AlbumContentsListener> listeners = mAlbumContentsListeners.getAlbumContentsListeners(albumId);
-        if (!listeners.isEmpty()) {
+        if (!listeners.isEmpty() || hasAlbumContentsDeltaListeners(albumId)) {
             AlbumContents albumContents;
             try {
-                albumContents = mShotVibeDB.getAlbumContents(albumId);
+                albumContents = mAlbumContentsCache.getAlbumContents(albumId);
             } catch (SQLException e) {
                 throw new RuntimeException(e);
             }
             addUploadingPhotosToAlbumContents(albumContents, mUploadManager.getUploadingPhotos(albumId), mUploadManager.getUploadingOriginalPhotoIds());
             addUploadingMediaToAlbumContents(albumContents, mMediaUploader.getUploadingMedia(albumId));
+            publishAlbumContentsDelta(albumId, albumContents);
 
             for (AlbumContentsListener listener : listeners) {
                 listener.onAlbumContentsNewContent(albumId, albumContents);
             }
         }
+
+        notifyAlbumWindowsNewContent(albumId);
     }
 
     private static void addUploadingPhotosToAlbumContents(AlbumContents albumContents, List<AlbumPhoto> uploadingPhotos, List<String> uploadingOriginalPhotoIds) {
-        // Go over all the existing AlbumServerPhotos, and mark any that are currently uploading original
-        for (AlbumPhoto p : albumContents.getPhotos()) {
-            if (p.getServerPhoto() != null) {
-                if (uploadingOriginalPhotoIds.contains(p.getServerPhoto().getId())) {
-                    p.getServerPhoto().setUploadingOriginal();
-                }
-            }
-        }
+        // Go over all the existing AlbumServerPhotos, and mark any that are currently uploading original.
+        markUploadingOriginalPhotos(albumContents.getPhotos(), uploadingOriginalPhotoIds);
 
         // Bail out early if there are no uploadingPhotos
         if (uploadingPhotos.size() == 0) {
@@ -447,13 +1099,7 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         // But first an optimization: if none of the uploadingPhotos are
         // being isAddingToAlbum, then there can be no duplicates, so just
         // add them all
-        boolean foundAddingToAlbum = false;
-        for (AlbumPhoto u : uploadingPhotos) {
-            if (u.getUploadingPhoto().getState() == AlbumUploadingPhoto.State.AddingToAlbum) {
-                foundAddingToAlbum = true;
-            }
-        }
-        if (!foundAddingToAlbum) {
+        if (getAddingToAlbumPhotoIds(uploadingPhotos).isEmpty()) {
             albumContents.getPhotos().addAll(uploadingPhotos);
             return;
         }
@@ -467,12 +1113,50 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
             }
         }
 
-        // Add only the uploading photos that don't appear in the server photos
+        addUploadingPhotosWithoutDuplicates(albumContents.getPhotos(), uploadingPhotos, serverPhotoIds);
+    }
+
+    /**
+     * @return The photo ids of the uploadingPhotos that are being added to the album. Only these
+     * can already appear among the server photos of the album
+     */
+    private static ArrayList<String> getAddingToAlbumPhotoIds(List<AlbumPhoto> uploadingPhotos) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (AlbumPhoto u : uploadingPhotos) {
+            if (u.getUploadingPhoto().getState() == AlbumUploadingPhoto.State.AddingToAlbum) {
+                result.add(u.getUploadingPhoto().getPhotoId());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds to photos only the uploadingPhotos that don't appear in the server photos
+     *
+     * @param serverPhotoIds Must contain at least those of the ids from getAddingToAlbumPhotoIds
+     *                       that are server photos of the album
+     */
+    private static void addUploadingPhotosWithoutDuplicates(ArrayList<AlbumPhoto> photos, List<AlbumPhoto> uploadingPhotos, HashSet<String> serverPhotoIds) {
         for (AlbumPhoto u : uploadingPhotos) {
-            AlbumUploadingPhoto uploadingPhoto = (AlbumUploadingPhoto) u.getUploadingPhoto();
+            AlbumUploadingPhoto uploadingPhoto = u.getUploadingPhoto();
             if (uploadingPhoto.getState() != AlbumUploadingPhoto.State.AddingToAlbum
                     || !serverPhotoIds.contains(uploadingPhoto.getPhotoId())) {
-                albumContents.getPhotos().add(u);
+                photos.add(u);
+            }
+        }
+    }
+
+    /**
+     * The photos may be shared with the AlbumContentsCache, so they are replaced with marked
+     * copies instead of being modified
+     */
+    private static void markUploadingOriginalPhotos(ArrayList<AlbumPhoto> photos, List<String> uploadingOriginalPhotoIds) {
+        for (int i = 0; i < photos.size(); ++i) {
+            AlbumServerPhoto serverPhoto = photos.get(i).getServerPhoto();
+            if (serverPhoto != null && !serverPhoto.getUploadingOriginal()) {
+                if (uploadingOriginalPhotoIds.contains(serverPhoto.getId())) {
+                    photos.set(i, new AlbumPhoto(serverPhoto.copyAsUploadingOriginal()));
+                }
             }
         }
     }
@@ -491,19 +1175,25 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         for (AlbumContentsListener listener : mAlbumContentsListeners.getAlbumContentsListeners(albumId)) {
             listener.onAlbumContentsUploadsProgressed(albumId);
         }
+        notifyAlbumWindowsUploadsProgressed(albumId);
+        notifyAlbumContentsDeltaUploadsProgressed(albumId);
     }
 
     @Override
     public void photoUploadedOriginal(long albumId) {
+        notifyAlbumWindowsUploadsProgressed(albumId);
+        notifyAlbumWindowsNewContent(albumId);
+        notifyAlbumContentsDeltaUploadsProgressed(albumId);
+
         List<AlbumContentsListener> listeners = mAlbumContentsListeners.getAlbumContentsListeners(albumId);
 
-        if (listeners.isEmpty()) {
+        if (listeners.isEmpty() && !hasAlbumContentsDeltaListeners(albumId)) {
             return;
         }
 
         AlbumContents albumContents;
         try {
-            albumContents = mShotVibeDB.getAlbumContents(albumId);
+            albumContents = mAlbumContentsCache.getAlbumContents(albumId);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -514,6 +1204,7 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
 
         addUploadingPhotosToAlbumContents(albumContents, mUploadManager.getUploadingPhotos(albumId), mUploadManager.getUploadingOriginalPhotoIds());
         addUploadingMediaToAlbumContents(albumContents, mMediaUploader.getUploadingMedia(albumId));
+        publishAlbumContentsDelta(albumId, albumContents);
 
         for (AlbumContentsListener listener : listeners) {
             listener.onAlbumContentsNewContent(albumId, albumContents);
@@ -523,21 +1214,24 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
     @Override
     public void photosAddedToAlbum(long albumId, AlbumContents newAlbumContents) {
         try {
-            mShotVibeDB.setAlbumContents(albumId, newAlbumContents);
+            mAlbumContentsCache.setAlbumContents(albumId, newAlbumContents);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
 
         List<AlbumContentsListener> listeners = mAlbumContentsListeners.getAlbumContentsListeners(albumId);
-        if (!listeners.isEmpty()) {
+        if (!listeners.isEmpty() || hasAlbumContentsDeltaListeners(albumId)) {
             addUploadingPhotosToAlbumContents(newAlbumContents, mUploadManager.getUploadingPhotos(albumId), mUploadManager.getUploadingOriginalPhotoIds());
             addUploadingMediaToAlbumContents(newAlbumContents, mMediaUploader.getUploadingMedia(albumId));
+            publishAlbumContentsDelta(albumId, newAlbumContents);
         }
 
         for (AlbumContentsListener listener : listeners) {
             listener.onAlbumContentsNewContent(albumId, newAlbumContents);
         }
 
+        notifyAlbumWindowsNewContent(albumId);
+
         // Trigger a refresh just in case there was a race condition in which the AlbumContents
         // that was returned from the upload arrived after a requested refresh that was sent earlier
         // arrived
@@ -549,25 +1243,30 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
         for (AlbumContentsListener listener : mAlbumContentsListeners.getAlbumContentsListeners(albumId)) {
             listener.onAlbumContentsUploadsProgressed(albumId);
         }
+        notifyAlbumWindowsUploadsProgressed(albumId);
+        notifyAlbumContentsDeltaUploadsProgressed(albumId);
     }
 
     @Override
     public void onMediaUploadObjectsChanged(long albumId) {
+        notifyAlbumWindowsNewContent(albumId);
+
         List<AlbumContentsListener> listeners = mAlbumContentsListeners.getAlbumContentsListeners(albumId);
 
-        if (listeners.isEmpty()) {
+        if (listeners.isEmpty() && !hasAlbumContentsDeltaListeners(albumId)) {
             return;
         }
 
         AlbumContents albumContents;
         try {
-            albumContents = mShotVibeDB.getAlbumContents(albumId);
+            albumContents = mAlbumContentsCache.getAlbumContents(albumId);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
 
         addUploadingPhotosToAlbumContents(albumContents, mUploadManager.getUploadingPhotos(albumId), mUploadManager.getUploadingOriginalPhotoIds());
         addUploadingMediaToAlbumContents(albumContents, mMediaUploader.getUploadingMedia(albumId));
+        publishAlbumContentsDelta(albumId, albumContents);
 
         for (AlbumContentsListener listener : listeners) {
             listener.onAlbumContentsNewContent(albumId, albumContents);
@@ -596,18 +1295,30 @@ public class AlbumManager implements UploadManager.Listener, MediaUploader.Liste
 
     private final ShotVibeAPI mShotVibeAPI;
     private final ShotVibeDB mShotVibeDB;
+    private final AlbumContentsCache mAlbumContentsCache;
     private final PhotoDownloadManager mPhotoDownloadManager;
     private final UploadManager mUploadManager;
     private final MediaUploader mMediaUploader;
     private final ThreadUtil.Executor mExecutor;
+    private final ThreadUtil.Executor mDeltaExecutor;
 
     // All of the following must only be touched on the main thread:
     private final ArrayList<AlbumListListener> mAlbumListListeners;
     boolean mAlbumListUserRefreshing;
     private final AlbumContentsListenersContainer mAlbumContentsListeners;
     private final HashSet<Long> mUserRefreshingAlbumContents;
+    private final HashMap<Long, DeltaSubscription> mDeltaSubscriptions = new HashMap<Long, DeltaSubscription>();
+    private final HashMap<Long, ArrayList<AlbumWindow>> mAlbumWindows = new HashMap<Long, ArrayList<AlbumWindow>>();
     private final HashMap<Long, RefreshAlbumContentsTrigerrableAction> mRefreshAlbumContentsActions = new HashMap<Long, RefreshAlbumContentsTrigerrableAction>();
 
+    // Background refreshes that are waiting to be started, mapped to the last updated time
+    // stamp of the album
+    private final HashMap<Long, Long> mPendingBackgroundRefreshes = new HashMap<Long, Long>();
+    private final HashSet<Long> mRunningBackgroundRefreshes = new HashSet<Long>();
+    private int mMaxConcurrentBackgroundRefreshes = DEFAULT_MAX_CONCURRENT_BACKGROUND_REFRESHES;
+    private int mMaxBackgroundRefreshQueueDepth = 0;
+    private long mDispatchedBackgroundRefreshCount = 0;
+
     private static class AlbumContentsListenersContainer {
         public void addAlbumContentsListener(long albumId, AlbumContentsListener listener) {
             ArrayList<AlbumContentsListener> list = mMap.get(albumId);
@@ -0,0 +1,39 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * The glances and comments of a single photo, for when they are loaded separately from the rest
+ * of the album. See AlbumManager.getAlbumGrid
+ */
+public class AlbumPhotoDetails {
+    public AlbumPhotoDetails(String photoId, ArrayList<AlbumPhotoGlance> glances, ArrayList<AlbumPhotoComment> comments) {
+        if (photoId == null) {
+            throw new IllegalArgumentException("photoId cannot be null");
+        }
+        if (glances == null) {
+            throw new IllegalArgumentException("glances cannot be null");
+        }
+        if (comments == null) {
+            throw new IllegalArgumentException("comments cannot be null");
+        }
+
+        mPhotoId = photoId;
+        mGlances = glances;
+        mComments = comments;
+    }
+
+    public String getPhotoId() {
+        return mPhotoId;
+    }
+
+    public ArrayList<AlbumPhotoGlance> getGlances() {
+        return mGlances;
+    }
+
+    public ArrayList<AlbumPhotoComment> getComments() {
+        return mComments;
+    }
+
+    private final String mPhotoId;
+    private final ArrayList<AlbumPhotoGlance> mGlances;
+    private final ArrayList<AlbumPhotoComment> mComments;
+}
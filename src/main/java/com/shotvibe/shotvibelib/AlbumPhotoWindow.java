@@ -0,0 +1,56 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * A range of the photos of an album, together with the total number of photos in the album. See
+ * AlbumManager.addAlbumWindowListener
+ */
+public class AlbumPhotoWindow {
+    public AlbumPhotoWindow(long albumId, int start, ArrayList<AlbumPhoto> photos, int totalCount) {
+        if (photos == null) {
+            throw new IllegalArgumentException("photos cannot be null");
+        }
+
+        mAlbumId = albumId;
+        mStart = start;
+        mPhotos = photos;
+        mTotalCount = totalCount;
+    }
+
+    public long getAlbumId() {
+        return mAlbumId;
+    }
+
+    /**
+     * @return The index in the album of the first photo of the window
+     */
+    public int getStart() {
+        return mStart;
+    }
+
+    /**
+     * @return The index in the album that comes after the last photo of the window
+     */
+    public int getEnd() {
+        return mStart + mPhotos.size();
+    }
+
+    /**
+     * @return The photos of the window. Might have fewer photos than were requested, if the
+     * window reaches past the end of the album
+     */
+    public ArrayList<AlbumPhoto> getPhotos() {
+        return mPhotos;
+    }
+
+    /**
+     * @return The total number of photos in the album
+     */
+    public int getTotalCount() {
+        return mTotalCount;
+    }
+
+    private final long mAlbumId;
+    private final int mStart;
+    private final ArrayList<AlbumPhoto> mPhotos;
+    private final int mTotalCount;
+}
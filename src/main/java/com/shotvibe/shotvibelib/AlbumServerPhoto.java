@@ -127,6 +127,30 @@ public class AlbumServerPhoto {
         mUploadingOriginal = true;
     }
 
+    /**
+     * @return A new copy of this photo that is marked as uploading original. Useful for when this
+     * photo is shared (for example by a cached snapshot) and so must not itself be modified
+     */
+    public AlbumServerPhoto copyAsUploadingOriginal() {
+        Params params = new Params();
+        params.id = mId;
+        params.mediaType = mMediaType;
+        params.video = mVideo;
+        params.clientUploadId = mClientUploadId;
+        params.url = mUrl;
+        params.author = mAuthor;
+        params.dateAdded = mDateAdded;
+        params.comments = mComments;
+        params.globalGlanceScore = mGlobalGlanceScore;
+        params.myGlanceScoreDelta = mMyGlanceScoreDelta;
+        params.glances = mGlances;
+        params.youtubeId = mYouTubeId;
+
+        AlbumServerPhoto copy = new AlbumServerPhoto(params);
+        copy.setUploadingOriginal();
+        return copy;
+    }
+
     public boolean getUploadingOriginal() {
         return mUploadingOriginal;
     }
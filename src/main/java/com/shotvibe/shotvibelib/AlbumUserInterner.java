@@ -0,0 +1,70 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * Makes sure that the users of a single album snapshot (or album list) share one AlbumUser object
+ * for every user_id, instead of having a separate copy (with separate nickname and avatar URL
+ * strings) for every photo, glance, comment and member.
+ *
+ * A new instance should be used for every snapshot that is built, so that the registry doesn't
+ * grow forever and doesn't hand out old values of users.
+ *
+ * If the same user appears with different values (for example a member whose last_online is set,
+ * and a photo author whose last_online is not), then each distinct set of values gets its own
+ * object, so no values are ever lost.
+ *
+ * Not thread safe
+ */
+public final class AlbumUserInterner {
+    public AlbumUserInterner() {
+    }
+
+    /**
+     * @return A previously interned AlbumUser with the same values, or a new one (which is then
+     * interned) if there is none
+     */
+    public AlbumUser intern(long memberId, String memberNickname, DateTime lastOnline, String memberAvatarUrl, int userGlanceScore) {
+        AlbumUser existing = mUsers.get(memberId);
+        if (existing != null && hasValues(existing, memberNickname, lastOnline, memberAvatarUrl, userGlanceScore)) {
+            mHits++;
+            return existing;
+        }
+
+        AlbumUser user = new AlbumUser(memberId, memberNickname, lastOnline, memberAvatarUrl, userGlanceScore);
+        if (existing == null) {
+            mUsers.put(memberId, user);
+        }
+        return user;
+    }
+
+    /**
+     * @return The number of times that an existing AlbumUser was reused
+     */
+    public int getHitCount() {
+        return mHits;
+    }
+
+    private static boolean hasValues(AlbumUser user, String memberNickname, DateTime lastOnline, String memberAvatarUrl, int userGlanceScore) {
+        if (user.getUserGlanceScore() != userGlanceScore
+                || !stringsEqual(user.getMemberNickname(), memberNickname)
+                || !stringsEqual(user.getMemberAvatarUrl(), memberAvatarUrl)) {
+            return false;
+        }
+
+        DateTime userLastOnline = user.getLastOnline();
+        if (userLastOnline == null) {
+            return lastOnline == null;
+        }
+        return lastOnline != null && userLastOnline.getTimeStamp() == lastOnline.getTimeStamp();
+    }
+
+    // The values come from LEFT OUTER JOINs, so either side may be null
+    private static boolean stringsEqual(String a, String b) {
+        if (a == null) {
+            return b == null;
+        }
+        return a.equals(b);
+    }
+
+    private final HashMap<Long, AlbumUser> mUsers = new HashMap<Long, AlbumUser>();
+    private int mHits = 0;
+}
@@ -1,5 +1,11 @@
 package com.shotvibe.shotvibelib;
 
+/**
+ * UploadManagerImpl calls createResizedAndThumbnail from a single worker thread. An
+ * implementation that has been checked to be thread safe (no unprotected shared state, such as a
+ * reused bitmap or decoder object) can be passed with bitmapProcessorThreadSafe set, and is then
+ * called from several worker threads at the same time, each with its own files.
+ */
 public interface BitmapProcessor {
     int RESIZED_PHOTO_WIDTH = 1920;
     int RESIZED_PHOTO_HEIGHT = 1080;
@@ -32,6 +38,10 @@ public interface BitmapProcessor {
      *
      * The size for the thumbnail image should be an appropriate size suitable for the device.
      *
+     * Only called from several threads at the same time if the UploadManagerImpl was told that
+     * the implementation is thread safe, and even then never twice at the same time for the same
+     * originalPath.
+     *
      * @param originalPath
      * @param resizedSavePath
      * @param thumbSavePath
@@ -0,0 +1,163 @@
+package com.shotvibe.shotvibelib;
+
+import java.util.Map;
+
+/**
+ * Wraps a SQLConnection, and keeps the statements that are executed through
+ * {@link #update(String, SQLValues)} compiled, so that statements that are executed many times
+ * (for example inside a loop) are only compiled once.
+ *
+ * Statements are cached by their query text, so the query text must not contain any values
+ * (they should be passed through SQLValues). The number of cached statements is limited: when
+ * the limit is reached the least recently used statement is closed to make room, so that a burst
+ * of rarely used queries can't keep the frequently used ones out of the cache.
+ *
+ * Has the same thread safety requirements as the wrapped connection
+ */
+public final class CachingSQLConnection implements SQLConnection {
+    public static final int DEFAULT_MAX_CACHED_STATEMENTS = 32;
+
+    public CachingSQLConnection(SQLConnection conn) {
+        this(conn, DEFAULT_MAX_CACHED_STATEMENTS);
+    }
+
+    public CachingSQLConnection(SQLConnection conn, int maxCachedStatements) {
+        if (conn == null) {
+            throw new IllegalArgumentException("conn cannot be null");
+        }
+
+        mConn = conn;
+        mMaxCachedStatements = maxCachedStatements;
+        mStatements = new HashMap<String, CachedStatement>();
+    }
+
+    @Override
+    public void beginTransaction() {
+        mConn.beginTransaction();
+    }
+
+    @Override
+    public void beginReadTransaction() {
+        mConn.beginReadTransaction();
+    }
+
+    @Override
+    public void setTransactionSuccesful() {
+        mConn.setTransactionSuccesful();
+    }
+
+    @Override
+    public void endTransaction() {
+        mConn.endTransaction();
+    }
+
+    @Override
+    public SQLCursor query(String query) throws SQLException {
+        return mConn.query(query);
+    }
+
+    @Override
+    public SQLCursor query(String query, SQLValues sqlValues) throws SQLException {
+        return mConn.query(query, sqlValues);
+    }
+
+    @Override
+    public void update(String query) throws SQLException {
+        mConn.update(query);
+    }
+
+    @Override
+    public void update(String query, SQLValues sqlValues) throws SQLException {
+        CachedStatement cached = mStatements.get(query);
+        if (cached == null) {
+            if (mMaxCachedStatements <= 0) {
+                mConn.update(query, sqlValues);
+                return;
+            }
+            if (mStatements.size() >= mMaxCachedStatements) {
+                evictLeastRecentlyUsed();
+            }
+
+            cached = new CachedStatement(mConn.prepareStatement(query));
+            mStatements.put(query, cached);
+        }
+
+        cached.lastUsed = ++mUseCount;
+        cached.statement.update(sqlValues);
+    }
+
+    @Override
+    public int changes() {
+        return mConn.changes();
+    }
+
+    @Override
+    public void executeSQLScript(String filename) throws SQLException {
+        // The script may change the schema, which invalidates compiled statements
+        closeCachedStatements();
+        mConn.executeSQLScript(filename);
+    }
+
+    @Override
+    public SQLStatement prepareStatement(String query) throws SQLException {
+        return mConn.prepareStatement(query);
+    }
+
+    /**
+     * Closes all of the cached statements. They will be compiled again the next time that they
+     * are used
+     */
+    public void closeCachedStatements() {
+        for (CachedStatement cached : mStatements.values()) {
+            cached.statement.close();
+        }
+        mStatements.clear();
+    }
+
+    /**
+     * @return The number of statements that are currently compiled and cached
+     */
+    public int getCachedStatementCount() {
+        return mStatements.size();
+    }
+
+    /**
+     * @return The number of statements that were closed to make room for other statements
+     */
+    public long getEvictedStatementCount() {
+        return mEvictedCount;
+    }
+
+    private void evictLeastRecentlyUsed() {
+        // The cache is small, so a scan is cheaper than keeping the statements in a list ordered
+        // by use. It only happens when a statement that isn't cached is executed
+        String oldestQuery = null;
+        long oldestUse = Long.MAX_VALUE;
+        for (Map.Entry<String, CachedStatement> entry : mStatements.entrySet()) {
+            if (entry.getValue().lastUsed < oldestUse) {
+                oldestUse = entry.getValue().lastUsed;
+                oldestQuery = entry.getKey();
+            }
+        }
+
+        if (oldestQuery != null) {
+            mStatements.remove(oldestQuery).statement.close();
+            mEvictedCount++;
+        }
+    }
+
+    private static final class CachedStatement {
+        CachedStatement(SQLStatement statement) {
+            this.statement = statement;
+        }
+
+        final SQLStatement statement;
+        long lastUsed = 0;
+    }
+
+    private final SQLConnection mConn;
+    private final int mMaxCachedStatements;
+    private final HashMap<String, CachedStatement> mStatements;
+    private long mUseCount = 0;
+    private long mEvictedCount = 0;
+}
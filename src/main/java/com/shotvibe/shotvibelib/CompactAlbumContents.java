@@ -0,0 +1,192 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * A memory efficient, read-only form of AlbumContents for very large albums.
+ *
+ * Instead of an AlbumPhoto, AlbumServerPhoto, DateTime and two (usually empty) lists for every
+ * photo, the photo values are stored in parallel arrays (the author objects are shared, see
+ * AlbumUserInterner), and glances and comments are only stored for the photos that actually have
+ * any.
+ *
+ * AlbumPhoto objects are created on demand by getPhoto, and a full AlbumContents by
+ * toAlbumContents. Every call creates new objects with new lists, so callers are free to modify
+ * the lists.
+ *
+ * This class is immutable and so it is thread safe
+ */
+public final class CompactAlbumContents extends AlbumBase {
+    /**
+     * @param albumContents Must contain only photos of type AlbumServerPhoto
+     * @return A compact copy of albumContents
+     */
+    public static CompactAlbumContents fromAlbumContents(AlbumContents albumContents) {
+        if (albumContents == null) {
+            throw new IllegalArgumentException("albumContents cannot be null");
+        }
+
+        return new CompactAlbumContents(albumContents);
+    }
+
+    private CompactAlbumContents(AlbumContents a) {
+        super(a.getId(), a.getEtag(), a.getName(), a.getCreator(), a.getDateCreated(), a.getDateUpdated(), a.getNumNewPhotos(), a.getLastAccess());
+
+        ArrayList<AlbumPhoto> photos = a.getPhotos();
+        int count = photos.size();
+
+        mPhotoIds = new String[count];
+        mUrls = new String[count];
+        mAuthors = new AlbumUser[count];
+        mDateAddedTimeStamps = new long[count];
+        mGlobalGlanceScores = new int[count];
+        mMyGlanceScoreDeltas = new int[count];
+
+        for (int i = 0; i < count; ++i) {
+            AlbumServerPhoto photo = photos.get(i).getServerPhoto();
+            if (photo == null) {
+                throw new IllegalArgumentException("albumContents is not allowed to contain an AlbumUploadingPhoto: " + photos.get(i).getUploadingPhoto());
+            }
+
+            mPhotoIds[i] = photo.getId();
+            mUrls[i] = photo.getUrl();
+            mAuthors[i] = photo.getAuthor();
+            mDateAddedTimeStamps[i] = photo.getDateAdded().getTimeStamp();
+            mGlobalGlanceScores[i] = photo.getGlobalGlanceScore();
+            mMyGlanceScoreDeltas[i] = photo.getMyGlanceScoreDelta();
+
+            if (!photo.getGlances().isEmpty()) {
+                mGlances.put(i, new ArrayList<AlbumPhotoGlance>(photo.getGlances()));
+            }
+            if (!photo.getComments().isEmpty()) {
+                mComments.put(i, new ArrayList<AlbumPhotoComment>(photo.getComments()));
+            }
+
+            // The values that are only used by videos and YouTube photos
+            if (photo.getMediaType() != MediaType.PHOTO
+                    || photo.getClientUploadId() != null
+                    || photo.getYouTubeId() != null) {
+                mExtras.put(i, new Extras(photo));
+            }
+        }
+
+        mMembers = new ArrayList<AlbumMember>(a.getMembers());
+    }
+
+    /**
+     * The values of a photo that are rarely set, stored only for the photos that have them
+     */
+    private static final class Extras {
+        Extras(AlbumServerPhoto photo) {
+            this.mediaType = photo.getMediaType();
+            this.video = photo.getVideo();
+            this.clientUploadId = photo.getClientUploadId();
+            this.youtubeId = photo.getYouTubeId();
+        }
+
+        final MediaType mediaType;
+        final AlbumServerVideo video;
+        final String clientUploadId;
+        final String youtubeId;
+    }
+
+    public int getPhotoCount() {
+        return mPhotoIds.length;
+    }
+
+    public String getPhotoId(int index) {
+        return mPhotoIds[index];
+    }
+
+    public String getPhotoUrl(int index) {
+        return mUrls[index];
+    }
+
+    public AlbumUser getPhotoAuthor(int index) {
+        return mAuthors[index];
+    }
+
+    public long getPhotoDateAddedTimeStamp(int index) {
+        return mDateAddedTimeStamps[index];
+    }
+
+    public int getPhotoGlobalGlanceScore(int index) {
+        return mGlobalGlanceScores[index];
+    }
+
+    public int getPhotoMyGlanceScoreDelta(int index) {
+        return mMyGlanceScoreDeltas[index];
+    }
+
+    /**
+     * @return A new AlbumPhoto with all of the values of the photo at index
+     */
+    public AlbumPhoto getPhoto(int index) {
+        AlbumServerPhoto.Params params = new AlbumServerPhoto.Params();
+        params.id = mPhotoIds[index];
+        params.url = mUrls[index];
+        params.author = getPhotoAuthor(index);
+        params.dateAdded = DateTime.FromTimeStamp(mDateAddedTimeStamps[index]);
+        params.globalGlanceScore = mGlobalGlanceScores[index];
+        params.myGlanceScoreDelta = mMyGlanceScoreDeltas[index];
+
+        ArrayList<AlbumPhotoGlance> glances = mGlances.get(index);
+        params.glances = glances == null ? new ArrayList<AlbumPhotoGlance>() : new ArrayList<AlbumPhotoGlance>(glances);
+
+        ArrayList<AlbumPhotoComment> comments = mComments.get(index);
+        params.comments = comments == null ? new ArrayList<AlbumPhotoComment>() : new ArrayList<AlbumPhotoComment>(comments);
+
+        Extras extras = mExtras.get(index);
+        if (extras == null) {
+            params.mediaType = MediaType.PHOTO;
+        } else {
+            params.mediaType = extras.mediaType;
+            params.video = extras.video;
+            params.clientUploadId = extras.clientUploadId;
+            params.youtubeId = extras.youtubeId;
+        }
+
+        return new AlbumPhoto(new AlbumServerPhoto(params));
+    }
+
+    /**
+     * @return A new list with the members of the album
+     */
+    public ArrayList<AlbumMember> getMembers() {
+        return new ArrayList<AlbumMember>(mMembers);
+    }
+
+    /**
+     * @return A new AlbumContents with all of the photos of the album
+     */
+    public AlbumContents toAlbumContents() {
+        ArrayList<AlbumPhoto> photos = new ArrayList<AlbumPhoto>(mPhotoIds.length);
+        for (int i = 0; i < mPhotoIds.length; ++i) {
+            photos.add(getPhoto(i));
+        }
+
+        return new AlbumContents(
+                getId(),
+                getEtag(),
+                getName(),
+                getCreator(),
+                getDateCreated(),
+                getDateUpdated(),
+                getNumNewPhotos(),
+                getLastAccess(),
+                photos,
+                getMembers());
+    }
+
+    private final String[] mPhotoIds;
+    private final String[] mUrls;
+    private final AlbumUser[] mAuthors;
+    private final long[] mDateAddedTimeStamps;
+    private final int[] mGlobalGlanceScores;
+    private final int[] mMyGlanceScoreDeltas;
+
+    // Keyed by photo index. Photos without glances, comments or extras are not included
+    private final HashMap<Integer, ArrayList<AlbumPhotoGlance>> mGlances = new HashMap<Integer, ArrayList<AlbumPhotoGlance>>();
+    private final HashMap<Integer, ArrayList<AlbumPhotoComment>> mComments = new HashMap<Integer, ArrayList<AlbumPhotoComment>>();
+    private final HashMap<Integer, Extras> mExtras = new HashMap<Integer, Extras>();
+
+    private final ArrayList<AlbumMember> mMembers;
+}
@@ -3,6 +3,7 @@ package com.shotvibe.shotvibelib;
 import java.util.Map;
 
 public interface HTTPLib {
+    int HTTP_NOT_MODIFIED = 304;
     int HTTP_BAD_REQUEST = 400;
     int HTTP_FORBIDDEN = 403;
     int HTTP_GONE = 410;
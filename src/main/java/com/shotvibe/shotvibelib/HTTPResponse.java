@@ -44,6 +44,21 @@ public abstract class HTTPResponse {
 
     public abstract String bodyAsUTF8String();
 
+    /**
+     * Creates a pull parser over the body, for parsing large responses without building a
+     * JSONObject tree of the whole body.
+     *
+     * This default implementation still holds the whole body in memory as a String. Platforms
+     * that can read the body as a stream should override it and return a reader over a
+     * JSONCharSource that decodes the body as it arrives, so that only a small buffer of the
+     * body is in memory while it is parsed
+     *
+     * @return A new JSONTokenReader positioned at the beginning of the body
+     */
+    public JSONTokenReader bodyAsJSONTokenReader() {
+        return new JSONTokenReader(new JSONStringCharSource(bodyAsUTF8String()));
+    }
+
     /**
      * Get HTTP Header
      *
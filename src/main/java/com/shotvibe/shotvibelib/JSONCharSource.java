@@ -0,0 +1,22 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * The characters that a JSONTokenReader parses.
+ *
+ * JSONStringCharSource reads from a String that holds the whole document. A platform can instead
+ * provide a source that decodes an HTTP response body as it arrives, so that only a small buffer
+ * of the body is in memory at any time while it is parsed.
+ */
+public interface JSONCharSource {
+    /**
+     * Reads up to count characters. Blocks until at least one character is available or the end
+     * of the input is reached
+     *
+     * @param buffer
+     * @param offset Where in buffer to store the first character
+     * @param count The maximum number of characters to read. At least 1
+     * @return The number of characters that were read, or -1 at the end of the input
+     * @throws JSONException If the input could not be read
+     */
+    int read(char[] buffer, int offset, int count) throws JSONException;
+}
@@ -0,0 +1,33 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * A JSONCharSource that reads from a String
+ */
+public final class JSONStringCharSource implements JSONCharSource {
+    public JSONStringCharSource(String input) {
+        if (input == null) {
+            throw new IllegalArgumentException("input cannot be null");
+        }
+
+        mInput = input;
+        mLength = input.length();
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int count) {
+        if (mPos == mLength) {
+            return -1;
+        }
+
+        int n = Math.min(count, mLength - mPos);
+        for (int i = 0; i < n; ++i) {
+            buffer[offset + i] = mInput.charAt(mPos + i);
+        }
+        mPos += n;
+        return n;
+    }
+
+    private final String mInput;
+    private final int mLength;
+    private int mPos = 0;
+}
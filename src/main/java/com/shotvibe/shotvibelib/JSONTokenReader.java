@@ -0,0 +1,534 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * A pull parser that reads a JSON document one token at a time.
+ *
+ * Unlike JSONObject and JSONArray, this never builds a tree of the whole document in memory, so it
+ * can be used to build model objects directly while reading large responses.
+ *
+ * The characters are read through a JSONCharSource in chunks of BUFFER_SIZE, so the parser itself
+ * never needs more than one chunk of the input in memory, plus the text of the current token.
+ *
+ * Example:
+ *
+ * <pre>
+ *     reader.beginObject();
+ *     while (reader.hasNext()) {
+ *         String name = reader.nextName();
+ *         if (name.equals("id")) {
+ *             id = reader.nextLong();
+ *         } else {
+ *             reader.skipValue();
+ *         }
+ *     }
+ *     reader.endObject();
+ * </pre>
+ *
+ * Not thread safe
+ */
+public final class JSONTokenReader {
+    public enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    public JSONTokenReader(String input) {
+        this(new JSONStringCharSource(input));
+    }
+
+    public JSONTokenReader(JSONCharSource source) {
+        if (source == null) {
+            throw new IllegalArgumentException("source cannot be null");
+        }
+
+        mSource = source;
+        mStack[mStackSize++] = SCOPE_EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @return The type of the next token, without consuming it
+     * @throws JSONException
+     */
+    public Token peek() throws JSONException {
+        if (mPeeked == null) {
+            mPeeked = doPeek();
+        }
+        return mPeeked;
+    }
+
+    /**
+     * @return true if the current object or array has another element
+     * @throws JSONException
+     */
+    public boolean hasNext() throws JSONException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws JSONException {
+        expect(Token.BEGIN_OBJECT);
+        push(SCOPE_EMPTY_OBJECT);
+    }
+
+    public void endObject() throws JSONException {
+        expect(Token.END_OBJECT);
+        mStackSize--;
+    }
+
+    public void beginArray() throws JSONException {
+        expect(Token.BEGIN_ARRAY);
+        push(SCOPE_EMPTY_ARRAY);
+    }
+
+    public void endArray() throws JSONException {
+        expect(Token.END_ARRAY);
+        mStackSize--;
+    }
+
+    public String nextName() throws JSONException {
+        expect(Token.NAME);
+        return mPeekedText;
+    }
+
+    /**
+     * Consumes the next value, which must be a string or a number
+     */
+    public String nextString() throws JSONException {
+        Token token = peek();
+        if (token != Token.STRING && token != Token.NUMBER) {
+            throw syntaxError("Expected a string but was " + token);
+        }
+        mPeeked = null;
+        return mPeekedText;
+    }
+
+    /**
+     * Consumes the next value, which must be a number or a string that contains a number. A
+     * fractional part is truncated
+     */
+    public long nextLong() throws JSONException {
+        String text = nextNumberText();
+
+        int i = 0;
+        boolean negative = false;
+        if (i < text.length() && text.charAt(i) == '-') {
+            negative = true;
+            i++;
+        }
+        if (i == text.length()) {
+            throw syntaxError("Invalid number: " + text);
+        }
+
+        long result = 0;
+        for (; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                result = result * 10 + (c - '0');
+            } else if (c == '.') {
+                break;
+            } else {
+                throw syntaxError("Invalid integer: " + text);
+            }
+        }
+        for (i++; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw syntaxError("Invalid integer: " + text);
+            }
+        }
+
+        return negative ? -result : result;
+    }
+
+    /**
+     * Consumes the next value, which must be a number or a string that contains a number
+     */
+    public int nextInt() throws JSONException {
+        return (int) nextLong();
+    }
+
+    public boolean nextBoolean() throws JSONException {
+        expect(Token.BOOLEAN);
+        return mPeekedText.equals("true");
+    }
+
+    public void nextNull() throws JSONException {
+        expect(Token.NULL);
+    }
+
+    /**
+     * Consumes and discards the next value. If the value is an object or an array then all of its
+     * nested values are skipped as well
+     */
+    public void skipValue() throws JSONException {
+        int depth = 0;
+        do {
+            Token token = peek();
+            if (token == Token.BEGIN_OBJECT) {
+                beginObject();
+                depth++;
+            } else if (token == Token.BEGIN_ARRAY) {
+                beginArray();
+                depth++;
+            } else if (token == Token.END_OBJECT) {
+                endObject();
+                depth--;
+            } else if (token == Token.END_ARRAY) {
+                endArray();
+                depth--;
+            } else if (token == Token.END_DOCUMENT) {
+                throw syntaxError("Unexpected end of document");
+            } else {
+                // Scalar values and names
+                mPeeked = null;
+            }
+        } while (depth > 0);
+    }
+
+    private static final int SCOPE_EMPTY_DOCUMENT = 0;
+    private static final int SCOPE_NONEMPTY_DOCUMENT = 1;
+    private static final int SCOPE_EMPTY_OBJECT = 2;
+    private static final int SCOPE_DANGLING_NAME = 3;
+    private static final int SCOPE_NONEMPTY_OBJECT = 4;
+    private static final int SCOPE_EMPTY_ARRAY = 5;
+    private static final int SCOPE_NONEMPTY_ARRAY = 6;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final JSONCharSource mSource;
+
+    // The characters of the input from mPos to mLimit have not been parsed yet
+    private final char[] mBuffer = new char[BUFFER_SIZE];
+    private int mPos = 0;
+    private int mLimit = 0;
+    private boolean mEndOfInput = false;
+
+    // Reused for the tokens that don't fit in a single run of the buffer: strings with escape
+    // sequences, and tokens that continue past the end of the buffer
+    private final StringBuilder mTextBuilder = new StringBuilder();
+
+    private int[] mStack = new int[32];
+    private int mStackSize = 0;
+
+    private Token mPeeked = null;
+
+    // The contents of the peeked token, for tokens of type NAME, STRING, NUMBER and BOOLEAN
+    private String mPeekedText = null;
+
+    private void expect(Token expected) throws JSONException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        mPeeked = null;
+    }
+
+    private void push(int scope) {
+        if (mStackSize == mStack.length) {
+            int[] newStack = new int[mStack.length * 2];
+            System.arraycopy(mStack, 0, newStack, 0, mStackSize);
+            mStack = newStack;
+        }
+        mStack[mStackSize++] = scope;
+    }
+
+    private String nextNumberText() throws JSONException {
+        Token token = peek();
+        if (token != Token.NUMBER && token != Token.STRING) {
+            throw syntaxError("Expected a number but was " + token);
+        }
+        mPeeked = null;
+        return mPeekedText;
+    }
+
+    private Token doPeek() throws JSONException {
+        int top = mStackSize - 1;
+        int scope = mStack[top];
+
+        if (scope == SCOPE_EMPTY_ARRAY) {
+            mStack[top] = SCOPE_NONEMPTY_ARRAY;
+            if (peekNonWhitespace() == ']') {
+                readChar();
+                return Token.END_ARRAY;
+            }
+        } else if (scope == SCOPE_NONEMPTY_ARRAY) {
+            int c = readNonWhitespace();
+            if (c == ']') {
+                return Token.END_ARRAY;
+            } else if (c != ',') {
+                throw syntaxError("Expected ',' or ']'");
+            }
+        } else if (scope == SCOPE_EMPTY_OBJECT || scope == SCOPE_NONEMPTY_OBJECT) {
+            int c = readNonWhitespace();
+            if (c == '}') {
+                return Token.END_OBJECT;
+            }
+            if (scope == SCOPE_NONEMPTY_OBJECT) {
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or '}'");
+                }
+                c = readNonWhitespace();
+            }
+            if (c != '"') {
+                throw syntaxError("Expected a name");
+            }
+            mStack[top] = SCOPE_DANGLING_NAME;
+            mPeekedText = readQuotedString();
+            return Token.NAME;
+        } else if (scope == SCOPE_DANGLING_NAME) {
+            mStack[top] = SCOPE_NONEMPTY_OBJECT;
+            if (readNonWhitespace() != ':') {
+                throw syntaxError("Expected ':'");
+            }
+        } else if (scope == SCOPE_EMPTY_DOCUMENT) {
+            mStack[top] = SCOPE_NONEMPTY_DOCUMENT;
+        } else if (scope == SCOPE_NONEMPTY_DOCUMENT) {
+            if (peekNonWhitespace() == -1) {
+                return Token.END_DOCUMENT;
+            }
+            throw syntaxError("Unexpected data after the end of the document");
+        }
+
+        int c = readNonWhitespace();
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                mPeekedText = readQuotedString();
+                return Token.STRING;
+            case 't':
+                readLiteral("rue");
+                mPeekedText = "true";
+                return Token.BOOLEAN;
+            case 'f':
+                readLiteral("alse");
+                mPeekedText = "false";
+                return Token.BOOLEAN;
+            case 'n':
+                readLiteral("ull");
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    mPeekedText = readNumber();
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Reads the next chunk of the input into the buffer, replacing what is there. Must only be
+     * called once all of the buffer was consumed
+     *
+     * @return false at the end of the input
+     */
+    private boolean fillBuffer() throws JSONException {
+        if (mEndOfInput) {
+            return false;
+        }
+
+        int n = mSource.read(mBuffer, 0, mBuffer.length);
+        if (n <= 0) {
+            mEndOfInput = true;
+            mPos = 0;
+            mLimit = 0;
+            return false;
+        }
+        mPos = 0;
+        mLimit = n;
+        return true;
+    }
+
+    /**
+     * @return The next character without consuming it, or -1 at the end of the input
+     */
+    private int peekChar() throws JSONException {
+        if (mPos == mLimit && !fillBuffer()) {
+            return -1;
+        }
+        return mBuffer[mPos];
+    }
+
+    /**
+     * @return The next character, or -1 at the end of the input
+     */
+    private int readChar() throws JSONException {
+        if (mPos == mLimit && !fillBuffer()) {
+            return -1;
+        }
+        return mBuffer[mPos++];
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private int peekNonWhitespace() throws JSONException {
+        int c = peekChar();
+        while (isWhitespace(c)) {
+            mPos++;
+            c = peekChar();
+        }
+        return c;
+    }
+
+    private int readNonWhitespace() throws JSONException {
+        int c = readChar();
+        while (isWhitespace(c)) {
+            c = readChar();
+        }
+        return c;
+    }
+
+    private void readLiteral(String rest) throws JSONException {
+        for (int i = 0; i < rest.length(); ++i) {
+            if (readChar() != rest.charAt(i)) {
+                throw syntaxError("Invalid literal");
+            }
+        }
+    }
+
+    private static boolean isNumberChar(int c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-';
+    }
+
+    /**
+     * Reads a number whose first character has already been consumed
+     */
+    private String readNumber() throws JSONException {
+        // The first character is still in the buffer, since nothing was read after it
+        int runStart = mPos - 1;
+        boolean building = false;
+        while (true) {
+            if (mPos == mLimit) {
+                // The number continues in the next chunk of the input
+                if (!building) {
+                    mTextBuilder.setLength(0);
+                    building = true;
+                }
+                mTextBuilder.append(mBuffer, runStart, mPos - runStart);
+                if (!fillBuffer()) {
+                    return mTextBuilder.toString();
+                }
+                runStart = mPos;
+            }
+
+            if (isNumberChar(mBuffer[mPos])) {
+                mPos++;
+            } else if (building) {
+                mTextBuilder.append(mBuffer, runStart, mPos - runStart);
+                return mTextBuilder.toString();
+            } else {
+                return new String(mBuffer, runStart, mPos - runStart);
+            }
+        }
+    }
+
+    private static int hexDigit(int c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a string whose opening quote has already been consumed.
+     *
+     * Strings without escape sequences (almost all of them) are copied out of the buffer in one
+     * piece. Once an escape sequence is seen, the string is built in mTextBuilder, so that a
+     * string with many escapes (such as a non-ASCII caption where every character is a unicode
+     * escape) takes linear time
+     */
+    private String readQuotedString() throws JSONException {
+        boolean building = false;
+        int runStart = mPos;
+        while (true) {
+            if (mPos == mLimit) {
+                // The string continues in the next chunk of the input
+                if (!building) {
+                    mTextBuilder.setLength(0);
+                    building = true;
+                }
+                mTextBuilder.append(mBuffer, runStart, mPos - runStart);
+                if (!fillBuffer()) {
+                    throw syntaxError("Unterminated string");
+                }
+                runStart = mPos;
+            }
+
+            char c = mBuffer[mPos++];
+            if (c == '"') {
+                if (!building) {
+                    return new String(mBuffer, runStart, mPos - 1 - runStart);
+                }
+                mTextBuilder.append(mBuffer, runStart, mPos - 1 - runStart);
+                return mTextBuilder.toString();
+            } else if (c == '\\') {
+                if (!building) {
+                    mTextBuilder.setLength(0);
+                    building = true;
+                }
+                mTextBuilder.append(mBuffer, runStart, mPos - 1 - runStart);
+                mTextBuilder.append(readEscapedChar());
+                runStart = mPos;
+            }
+        }
+    }
+
+    /**
+     * Reads an escape sequence whose backslash has already been consumed
+     */
+    private char readEscapedChar() throws JSONException {
+        int escaped = readChar();
+        switch (escaped) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) escaped;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; ++i) {
+                    int digit = hexDigit(readChar());
+                    if (digit < 0) {
+                        throw syntaxError("Invalid unicode escape sequence");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case -1:
+                throw syntaxError("Unterminated string");
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message);
+    }
+}
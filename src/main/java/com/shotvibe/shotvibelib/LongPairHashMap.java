@@ -0,0 +1,210 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * A hash map whose keys are pairs of primitive long values.
+ *
+ * This avoids allocating a key object (such as a String or a boxed pair) for every entry and for
+ * every lookup. Uses open addressing with linear probing.
+ *
+ * Not thread safe
+ *
+ * @param <V> The type of the values. null values are not allowed
+ */
+public final class LongPairHashMap<V> {
+    private static final int MIN_CAPACITY = 8;
+
+    public LongPairHashMap() {
+        this(0);
+    }
+
+    /**
+     * @param expectedSize The number of entries that the map should be able to hold without
+     *                     resizing
+     */
+    public LongPairHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize cannot be negative: " + expectedSize);
+        }
+
+        int capacity = MIN_CAPACITY;
+        // Keep the load factor at most 1/2
+        while (capacity < expectedSize * 2) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return The value for the key, or null if the key is not in the map
+     */
+    public V get(long key1, long key2) {
+        int index = findIndex(key1, key2);
+        if (index < 0) {
+            return null;
+        }
+        return valueAt(index);
+    }
+
+    public boolean containsKey(long key1, long key2) {
+        return findIndex(key1, key2) >= 0;
+    }
+
+    /**
+     * @return The previous value for the key, or null if there was none
+     */
+    public V put(long key1, long key2, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+
+        int index = findIndex(key1, key2);
+        if (index >= 0) {
+            V old = valueAt(index);
+            mValues[index] = value;
+            return old;
+        }
+
+        if ((mSize + 1) * 2 > mValues.length) {
+            resize(mValues.length * 2);
+        }
+
+        insert(key1, key2, value);
+        mSize++;
+        return null;
+    }
+
+    /**
+     * @return The value that was removed, or null if the key was not in the map
+     */
+    public V remove(long key1, long key2) {
+        int index = findIndex(key1, key2);
+        if (index < 0) {
+            return null;
+        }
+
+        V old = valueAt(index);
+        deleteAt(index);
+        mSize--;
+        return old;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mValues.length; ++i) {
+            mValues[i] = null;
+        }
+        mSize = 0;
+    }
+
+    /**
+     * @return A new list with all of the values in the map, in no particular order
+     */
+    public ArrayList<V> values() {
+        ArrayList<V> result = new ArrayList<V>(mSize);
+        for (int i = 0; i < mValues.length; ++i) {
+            if (mValues[i] != null) {
+                result.add(valueAt(i));
+            }
+        }
+        return result;
+    }
+
+    private long[] mKeys1;
+    private long[] mKeys2;
+
+    // A null value marks an empty slot
+    private Object[] mValues;
+
+    private int mSize = 0;
+
+    private void allocate(int capacity) {
+        mKeys1 = new long[capacity];
+        mKeys2 = new long[capacity];
+        mValues = new Object[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V) mValues[index];
+    }
+
+    private int slotFor(long key1, long key2) {
+        long h = key1 * 0x9E3779B97F4A7C15L + key2;
+        h ^= (h >>> 32);
+        h *= 0xC2B2AE3D27D4EB4FL;
+        h ^= (h >>> 29);
+        return (int) h & (mValues.length - 1);
+    }
+
+    private int findIndex(long key1, long key2) {
+        int mask = mValues.length - 1;
+        int index = slotFor(key1, key2);
+        while (mValues[index] != null) {
+            if (mKeys1[index] == key1 && mKeys2[index] == key2) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(long key1, long key2, Object value) {
+        int mask = mValues.length - 1;
+        int index = slotFor(key1, key2);
+        while (mValues[index] != null) {
+            index = (index + 1) & mask;
+        }
+        mKeys1[index] = key1;
+        mKeys2[index] = key2;
+        mValues[index] = value;
+    }
+
+    /**
+     * Empties the slot, and moves back any following entries of the same probe sequence so that
+     * they can still be found
+     */
+    private void deleteAt(int index) {
+        int mask = mValues.length - 1;
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (mValues[next] != null) {
+            int home = slotFor(mKeys1[next], mKeys2[next]);
+            // The entry can fill the hole only if the hole lies between its home slot and its
+            // current slot (cyclically)
+            boolean canMove;
+            if (hole <= next) {
+                canMove = home <= hole || home > next;
+            } else {
+                canMove = home <= hole && home > next;
+            }
+            if (canMove) {
+                mKeys1[hole] = mKeys1[next];
+                mKeys2[hole] = mKeys2[next];
+                mValues[hole] = mValues[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        mValues[hole] = null;
+    }
+
+    private void resize(int newCapacity) {
+        long[] oldKeys1 = mKeys1;
+        long[] oldKeys2 = mKeys2;
+        Object[] oldValues = mValues;
+
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; ++i) {
+            if (oldValues[i] != null) {
+                insert(oldKeys1[i], oldKeys2[i], oldValues[i]);
+            }
+        }
+    }
+}
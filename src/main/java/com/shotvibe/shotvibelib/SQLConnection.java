@@ -4,6 +4,15 @@ public interface SQLConnection {
 
     void beginTransaction();
 
+    /**
+     * Begins a deferred transaction that will only be used for reading. In WAL journal mode all
+     * of the queries inside of it see the same snapshot of the database, without blocking (or
+     * being blocked by) a write transaction on another connection.
+     *
+     * Must be finished with setTransactionSuccesful and endTransaction, just like beginTransaction
+     */
+    void beginReadTransaction();
+
     void setTransactionSuccesful();
 
     void endTransaction();
@@ -18,5 +27,15 @@ public interface SQLConnection {
 
     int changes();
 
+    /**
+     * Compiles a statement so that it can be executed many times without being compiled again.
+     * The statement must not return any rows
+     *
+     * @param query
+     * @return A statement that the caller must close when it is no longer needed
+     * @throws SQLException
+     */
+    SQLStatement prepareStatement(String query) throws SQLException;
+
     void executeSQLScript(String filename) throws SQLException;
 }
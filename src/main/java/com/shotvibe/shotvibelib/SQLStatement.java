@@ -0,0 +1,22 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * A compiled SQL statement, that can be executed many times with different values
+ *
+ * Must only be used by one thread at a time, and must not be used after the SQLConnection that
+ * created it is closed
+ */
+public interface SQLStatement {
+    /**
+     * Binds the values to the parameters of the statement and executes it
+     *
+     * @param sqlValues Must contain exactly one value for each parameter of the statement
+     * @throws SQLException
+     */
+    void update(SQLValues sqlValues) throws SQLException;
+
+    /**
+     * Releases the compiled statement. The statement must not be used afterwards
+     */
+    void close();
+}
@@ -1,6 +1,7 @@
 package com.shotvibe.shotvibelib;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public final class SQLValues implements Iterable<SQLValues.Val> {
 
@@ -83,33 +84,103 @@ public final class SQLValues implements Iterable<SQLValues.Val> {
 
     }
 
-    private SQLValues() {
-        final int INITIAL_CAPACITY = 15;
+    private static final int INITIAL_CAPACITY = 8;
 
-        mVals = new ArrayList<Val>(INITIAL_CAPACITY);
+    private SQLValues() {
+        // The arrays are allocated when the first value that needs them is added
+        mTypes = null;
+        mLongs = null;
+        mDoubles = null;
+        mStrings = null;
+        mSize = 0;
     }
 
     public static SQLValues create() {
         return new SQLValues();
     }
 
+    /**
+     * Removes all of the values, so that this object can be reused for binding the next row
+     * without allocating anything
+     *
+     * @return this
+     */
+    public SQLValues reset() {
+        // Release the references to the strings so that they can be garbage collected
+        if (mStrings != null) {
+            for (int i = 0; i < mSize; ++i) {
+                mStrings[i] = null;
+            }
+        }
+        mSize = 0;
+        return this;
+    }
+
+    /**
+     * All of the arrays that are allocated have the same length as mTypes
+     */
+    private int append(Type type) {
+        if (mTypes == null) {
+            mTypes = new Type[INITIAL_CAPACITY];
+        } else if (mSize == mTypes.length) {
+            int newCapacity = mTypes.length * 2;
+
+            Type[] newTypes = new Type[newCapacity];
+            System.arraycopy(mTypes, 0, newTypes, 0, mSize);
+            mTypes = newTypes;
+
+            if (mLongs != null) {
+                long[] newLongs = new long[newCapacity];
+                System.arraycopy(mLongs, 0, newLongs, 0, mSize);
+                mLongs = newLongs;
+            }
+
+            if (mDoubles != null) {
+                double[] newDoubles = new double[newCapacity];
+                System.arraycopy(mDoubles, 0, newDoubles, 0, mSize);
+                mDoubles = newDoubles;
+            }
+
+            if (mStrings != null) {
+                String[] newStrings = new String[newCapacity];
+                System.arraycopy(mStrings, 0, newStrings, 0, mSize);
+                mStrings = newStrings;
+            }
+        }
+
+        mTypes[mSize] = type;
+        return mSize++;
+    }
+
     public SQLValues addNull() {
-        mVals.add(new Val());
+        append(Type.NULL);
         return this;
     }
 
     public SQLValues add(int intValue) {
-        mVals.add(new Val(intValue));
+        int i = append(Type.INT);
+        if (mLongs == null) {
+            mLongs = new long[mTypes.length];
+        }
+        mLongs[i] = intValue;
         return this;
     }
 
     public SQLValues add(long longValue) {
-        mVals.add(new Val(longValue));
+        int i = append(Type.LONG);
+        if (mLongs == null) {
+            mLongs = new long[mTypes.length];
+        }
+        mLongs[i] = longValue;
         return this;
     }
 
     public SQLValues add(double doubleValue) {
-        mVals.add(new Val(doubleValue));
+        int i = append(Type.DOUBLE);
+        if (mDoubles == null) {
+            mDoubles = new double[mTypes.length];
+        }
+        mDoubles[i] = doubleValue;
         return this;
     }
 
@@ -118,7 +189,11 @@ public final class SQLValues implements Iterable<SQLValues.Val> {
             throw new IllegalArgumentException("stringValue cannot be null");
         }
 
-        mVals.add(new Val(stringValue));
+        int i = append(Type.STRING);
+        if (mStrings == null) {
+            mStrings = new String[mTypes.length];
+        }
+        mStrings[i] = stringValue;
         return this;
     }
 
@@ -154,21 +229,126 @@ public final class SQLValues implements Iterable<SQLValues.Val> {
         }
     }
 
+    // The following indexed getters allow SQLConnection implementations to bind the values
+    // directly, without allocating a Val for each one
+
+    public Type getType(int index) {
+        checkIndex(index);
+        return mTypes[index];
+    }
+
+    public int getInt(int index) {
+        checkType(index, Type.INT);
+        return (int) mLongs[index];
+    }
+
+    public long getLong(int index) {
+        checkType(index, Type.LONG);
+        return mLongs[index];
+    }
+
+    public double getDouble(int index) {
+        checkType(index, Type.DOUBLE);
+        return mDoubles[index];
+    }
+
+    public String getString(int index) {
+        checkType(index, Type.STRING);
+        return mStrings[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Invalid index " + index + ", size is " + mSize);
+        }
+    }
+
+    private void checkType(int index, Type type) {
+        checkIndex(index);
+        if (mTypes[index] != type) {
+            throw new IllegalArgumentException("Tried to get as " + type + " when type is: " + mTypes[index]);
+        }
+    }
+
+    /**
+     * Iterating allocates a Val for each value as it is visited (the same as before the values
+     * were stored in arrays). Prefer the indexed getters.
+     *
+     * The values must not be modified while iterating
+     */
     @Override
     public Iterator<Val> iterator() {
-        return mVals.iterator();
+        return new Iterator<Val>() {
+            private int mNext = 0;
+
+            @Override
+            public boolean hasNext() {
+                return mNext < mSize;
+            }
+
+            @Override
+            public Val next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return valAt(mNext++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
     public int size() {
-        return mVals.size();
+        return mSize;
+    }
+
+    private Val valAt(int index) {
+        switch (mTypes[index]) {
+            case INT:
+                return new Val((int) mLongs[index]);
+            case LONG:
+                return new Val(mLongs[index]);
+            case DOUBLE:
+                return new Val(mDoubles[index]);
+            case STRING:
+                return new Val(mStrings[index]);
+            default:
+                return new Val();
+        }
     }
 
-    private ArrayList<Val> mVals;
+    // Each array is null until a value that is stored in it is added
+    private Type[] mTypes;
+
+    // INT and LONG values are both stored here
+    private long[] mLongs;
+
+    private double[] mDoubles;
+    private String[] mStrings;
+    private int mSize;
 
     /*-[
 
     - (NSUInteger)countByEnumeratingWithState:(NSFastEnumerationState *)state objects:(__unsafe_unretained id *)stackbuf count:(NSUInteger)len {
-        return [mVals_ countByEnumeratingWithState:state objects:stackbuf count:len];
+        // state->state is the index of the next value. The values must not be modified while
+        // enumerating, so the mutations pointer just needs to point at something that never changes
+        if (state->state == 0) {
+            state->mutationsPtr = &state->extra[0];
+        }
+
+        NSUInteger n = 0;
+        while (n < len && state->state < (unsigned long) mSize_) {
+            SLSQLValues_Val *__autoreleasing val = [self valAtWithInt:(jint) state->state];
+            stackbuf[n] = val;
+            ++n;
+            ++state->state;
+        }
+
+        state->itemsPtr = stackbuf;
+        return n;
     }
 
     ]-*/;
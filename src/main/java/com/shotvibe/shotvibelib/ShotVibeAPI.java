@@ -560,109 +560,472 @@ public class ShotVibeAPI {
         return new AlbumUser(id, nickname, lastOnline, avatarUrl, userGlanceScore);
     }
 
-    private ArrayList<AlbumPhoto> parsePhotoList(JSONArray photos_array) throws JSONException {
-        ArrayList<AlbumPhoto> result = new ArrayList<AlbumPhoto>();
-        for (int i = 0; i < photos_array.length(); ++i) {
-            JSONObject photo_obj = photos_array.getJSONObject(i);
-            String photo_id = photo_obj.getString("photo_id");
-            String youtube_id = null;
+    private static JSONException missingKeyException(String key) {
+        return new JSONException("Missing key \"" + key + "\"");
+    }
 
-            if(!photo_obj.isNull("youtube_id")) {
-                youtube_id = photo_obj.getString("youtube_id");
-            }
+    private static DateTime parseDate(JSONTokenReader reader, String field) throws JSONException {
+        String input = reader.nextString();
+        DateTime result = DateTime.ParseISO8601(input);
+        if (result == null) {
+            throw new JSONException("Field `" + field + "` contains an invalid date value: " + input);
+        }
+        return result;
+    }
 
-            String mediaTypeStr = photo_obj.getString("media_type");
-            MediaType mediaType;
-            if (mediaTypeStr == "photo") {
-                mediaType = MediaType.PHOTO;
-            } else if (mediaTypeStr == "video") {
-                mediaType = MediaType.VIDEO;
-            } else if(mediaTypeStr == "youtube"){
-                mediaType = MediaType.YOUTUBE;
-//
+    /**
+     * @return null if the next value is null, otherwise the string value
+     */
+    private static String nextNullableString(JSONTokenReader reader) throws JSONException {
+        if (reader.peek() == JSONTokenReader.Token.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static AlbumUser parseAlbumUser(JSONTokenReader reader, AlbumUserInterner users) throws JSONException {
+        Long id = null;
+        String nickname = null;
+        DateTime lastOnline = null;
+        String avatarUrl = null;
+        Integer userGlanceScore = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (key.equals("id")) {
+                id = reader.nextLong();
+            } else if (key.equals("nickname")) {
+                nickname = reader.nextString();
+            } else if (key.equals("last_online")) {
+                lastOnline = parseDate(reader, key);
+            } else if (key.equals("avatar_url")) {
+                avatarUrl = reader.nextString();
+            } else if (key.equals("user_glance_score")) {
+                userGlanceScore = reader.nextInt();
             } else {
-                throw new JSONException("Invalid `media_type` value: " + mediaTypeStr);
+                reader.skipValue();
             }
+        }
+        reader.endObject();
 
-            AlbumServerVideo video = null;
-            if (mediaType == MediaType.VIDEO) {
-                String statusStr = photo_obj.getString("video_status");
-                AlbumServerVideo.Status status;
-                if (statusStr == "ready") {
-                    status = AlbumServerVideo.Status.READY;
-                } else if (statusStr == "processing") {
-                    status = AlbumServerVideo.Status.PROCESSING;
-                } else if (statusStr == "invalid") {
-                    status = AlbumServerVideo.Status.INVALID;
+        if (id == null) {
+            throw missingKeyException("id");
+        }
+        if (nickname == null) {
+            throw missingKeyException("nickname");
+        }
+        if (lastOnline == null) {
+            throw missingKeyException("last_online");
+        }
+        if (avatarUrl == null) {
+            throw missingKeyException("avatar_url");
+        }
+        if (userGlanceScore == null) {
+            throw missingKeyException("user_glance_score");
+        }
+
+        return users.intern(id, nickname, lastOnline, avatarUrl, userGlanceScore);
+    }
+
+    private static ArrayList<AlbumPhotoGlance> parseGlanceList(JSONTokenReader reader, AlbumUserInterner users) throws JSONException {
+        ArrayList<AlbumPhotoGlance> glances = new ArrayList<AlbumPhotoGlance>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String emoticonName = null;
+            AlbumUser glanceAuthor = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (key.equals("emoticon_name")) {
+                    emoticonName = reader.nextString();
+                } else if (key.equals("author")) {
+                    glanceAuthor = parseAlbumUser(reader, users);
                 } else {
-                    throw new JSONException("Invalid `video_status` value: " + statusStr);
+                    reader.skipValue();
                 }
+            }
+            reader.endObject();
+
+            if (emoticonName == null) {
+                throw missingKeyException("emoticon_name");
+            }
+            if (glanceAuthor == null) {
+                throw missingKeyException("author");
+            }
 
-                String videoUrl = photo_obj.getString("video_url");
-                String videoThumbnailUrl = photo_obj.getString("video_thumbnail_url");
-                int videoDuration = photo_obj.getInt("video_duration");
+            glances.add(new AlbumPhotoGlance(glanceAuthor, emoticonName));
+        }
+        reader.endArray();
+        return glances;
+    }
 
-                video = new AlbumServerVideo(status, videoUrl, videoThumbnailUrl, videoDuration);
+    private static ArrayList<AlbumPhotoComment> parseCommentList(JSONTokenReader reader, AlbumUserInterner users) throws JSONException {
+        ArrayList<AlbumPhotoComment> comments = new ArrayList<AlbumPhotoComment>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Long clientMsgId = null;
+            AlbumUser commentAuthor = null;
+            DateTime dateCreated = null;
+            String commentText = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (key.equals("client_msg_id")) {
+                    clientMsgId = reader.nextLong();
+                } else if (key.equals("author")) {
+                    commentAuthor = parseAlbumUser(reader, users);
+                } else if (key.equals("date_created")) {
+                    dateCreated = parseDate(reader, key);
+                } else if (key.equals("comment")) {
+                    commentText = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (clientMsgId == null) {
+                throw missingKeyException("client_msg_id");
+            }
+            if (commentAuthor == null) {
+                throw missingKeyException("author");
+            }
+            if (dateCreated == null) {
+                throw missingKeyException("date_created");
+            }
+            if (commentText == null) {
+                throw missingKeyException("comment");
             }
 
-            String clientUploadId = null;
-            if (photo_obj.has("client_upload_id")) {
-                clientUploadId = photo_obj.getString("client_upload_id");
+            comments.add(new AlbumPhotoComment(commentAuthor, clientMsgId, dateCreated, commentText));
+        }
+        reader.endArray();
+        return comments;
+    }
+
+    /**
+     * Reads a single photo object
+     *
+     * @return null if the photo should be skipped
+     * @throws JSONException
+     */
+    private static AlbumPhoto parsePhoto(JSONTokenReader reader, AlbumUserInterner users) throws JSONException {
+        String photoId = null;
+        String youtubeId = null;
+        String mediaTypeStr = null;
+        String videoStatusStr = null;
+        String videoUrl = null;
+        String videoThumbnailUrl = null;
+        Integer videoDuration = null;
+        String clientUploadId = null;
+        String photoUrl = null;
+        DateTime photoDateCreated = null;
+        AlbumUser author = null;
+        Integer globalGlanceScore = null;
+        Integer myGlanceScoreDelta = null;
+        ArrayList<AlbumPhotoGlance> glances = null;
+        ArrayList<AlbumPhotoComment> comments = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (key.equals("photo_id")) {
+                photoId = reader.nextString();
+            } else if (key.equals("youtube_id")) {
+                // Missing is the same as null
+                youtubeId = nextNullableString(reader);
+            } else if (key.equals("media_type")) {
+                mediaTypeStr = reader.nextString();
+            } else if (key.equals("video_status")) {
+                videoStatusStr = nextNullableString(reader);
+            } else if (key.equals("video_url")) {
+                videoUrl = nextNullableString(reader);
+            } else if (key.equals("video_thumbnail_url")) {
+                videoThumbnailUrl = nextNullableString(reader);
+            } else if (key.equals("video_duration")) {
+                if (reader.peek() == JSONTokenReader.Token.NULL) {
+                    reader.nextNull();
+                } else {
+                    videoDuration = reader.nextInt();
+                }
+            } else if (key.equals("client_upload_id")) {
+                clientUploadId = nextNullableString(reader);
+            } else if (key.equals("photo_url")) {
+                photoUrl = reader.nextString();
+            } else if (key.equals("date_created")) {
+                photoDateCreated = parseDate(reader, key);
+            } else if (key.equals("author")) {
+                author = parseAlbumUser(reader, users);
+            } else if (key.equals("global_glance_score")) {
+                globalGlanceScore = reader.nextInt();
+            } else if (key.equals("my_glance_score_delta")) {
+                myGlanceScoreDelta = reader.nextInt();
+            } else if (key.equals("glances")) {
+                glances = parseGlanceList(reader, users);
+            } else if (key.equals("comments")) {
+                comments = parseCommentList(reader, users);
+            } else {
+                reader.skipValue();
             }
+        }
+        reader.endObject();
 
-            String photo_url = photo_obj.getString("photo_url");
-            DateTime photo_date_created = parseDate(photo_obj, "date_created");
+        if (photoId == null) {
+            throw missingKeyException("photo_id");
+        }
+        if (mediaTypeStr == null) {
+            throw missingKeyException("media_type");
+        }
 
-            AlbumUser author = parseAlbumUser(photo_obj.getJSONObject("author"));
+        MediaType mediaType;
+        if (mediaTypeStr.equals("photo")) {
+            mediaType = MediaType.PHOTO;
+        } else if (mediaTypeStr.equals("video")) {
+            mediaType = MediaType.VIDEO;
+        } else if (mediaTypeStr.equals("youtube")) {
+            mediaType = MediaType.YOUTUBE;
+        } else {
+            throw new JSONException("Invalid `media_type` value: " + mediaTypeStr);
+        }
 
-            int globalGlanceScore = photo_obj.getInt("global_glance_score");
-            int myGlanceScoreDelta = photo_obj.getInt("my_glance_score_delta");
+        AlbumServerVideo video = null;
+        if (mediaType == MediaType.VIDEO) {
+            if (videoStatusStr == null) {
+                throw missingKeyException("video_status");
+            }
+            AlbumServerVideo.Status status;
+            if (videoStatusStr.equals("ready")) {
+                status = AlbumServerVideo.Status.READY;
+            } else if (videoStatusStr.equals("processing")) {
+                status = AlbumServerVideo.Status.PROCESSING;
+            } else if (videoStatusStr.equals("invalid")) {
+                status = AlbumServerVideo.Status.INVALID;
+            } else {
+                throw new JSONException("Invalid `video_status` value: " + videoStatusStr);
+            }
 
-            JSONArray glancesArray = photo_obj.getJSONArray("glances");
-            ArrayList<AlbumPhotoGlance> glances = new ArrayList<AlbumPhotoGlance>();
-            for (int j = 0; j < glancesArray.length(); ++j) {
-                JSONObject glanceObj = glancesArray.getJSONObject(j);
-                String emoticonName = glanceObj.getString("emoticon_name");
-                AlbumUser glanceAuthor = parseAlbumUser(glanceObj.getJSONObject("author"));
+            if (videoUrl == null) {
+                throw missingKeyException("video_url");
+            }
+            if (videoThumbnailUrl == null) {
+                throw missingKeyException("video_thumbnail_url");
+            }
+            if (videoDuration == null) {
+                throw missingKeyException("video_duration");
+            }
+
+            video = new AlbumServerVideo(status, videoUrl, videoThumbnailUrl, videoDuration);
+        }
+
+        if (photoUrl == null) {
+            throw missingKeyException("photo_url");
+        }
+        if (photoDateCreated == null) {
+            throw missingKeyException("date_created");
+        }
+        if (author == null) {
+            throw missingKeyException("author");
+        }
+        if (globalGlanceScore == null) {
+            throw missingKeyException("global_glance_score");
+        }
+        if (myGlanceScoreDelta == null) {
+            throw missingKeyException("my_glance_score_delta");
+        }
+        if (glances == null) {
+            throw missingKeyException("glances");
+        }
+        if (comments == null) {
+            throw missingKeyException("comments");
+        }
 
-                glances.add(new AlbumPhotoGlance(glanceAuthor, emoticonName));
+        // Skip photos that are in "processing" state
+        if (mediaType == MediaType.VIDEO) {
+            if (video.getStatus() == AlbumServerVideo.Status.PROCESSING) {
+                return null;
             }
+        }
 
-            JSONArray commentsArray = photo_obj.getJSONArray("comments");
-            ArrayList<AlbumPhotoComment> comments = new ArrayList<AlbumPhotoComment>();
-            for (int j = 0; j < commentsArray.length(); ++j) {
-                JSONObject commentObj = commentsArray.getJSONObject(j);
-                long clientMsgId = commentObj.getLong("client_msg_id");
-                AlbumUser commentAuthor = parseAlbumUser(commentObj.getJSONObject("author"));
-                DateTime dateCreated = parseDate(commentObj, "date_created");
-                String commentText = commentObj.getString("comment");
+        AlbumServerPhoto.Params albumServerPhotoParams = new AlbumServerPhoto.Params();
+        albumServerPhotoParams.id = photoId;
+        albumServerPhotoParams.mediaType = mediaType;
+        albumServerPhotoParams.video = video;
+        albumServerPhotoParams.clientUploadId = clientUploadId;
+        albumServerPhotoParams.url = photoUrl;
+        albumServerPhotoParams.author = author;
+        albumServerPhotoParams.dateAdded = photoDateCreated;
+        albumServerPhotoParams.comments = comments;
+        albumServerPhotoParams.globalGlanceScore = globalGlanceScore;
+        albumServerPhotoParams.myGlanceScoreDelta = myGlanceScoreDelta;
+        albumServerPhotoParams.glances = glances;
+        albumServerPhotoParams.youtubeId = youtubeId;
+        return new AlbumPhoto(new AlbumServerPhoto(albumServerPhotoParams));
+    }
 
-                comments.add(new AlbumPhotoComment(commentAuthor, clientMsgId, dateCreated, commentText));
+    private static ArrayList<AlbumPhoto> parsePhotoList(JSONTokenReader reader, AlbumUserInterner users) throws JSONException {
+        ArrayList<AlbumPhoto> result = new ArrayList<AlbumPhoto>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            AlbumPhoto photo = parsePhoto(reader, users);
+            if (photo != null) {
+                result.add(photo);
             }
+        }
+        reader.endArray();
+        return result;
+    }
 
-            // Skip photos that are in "processing" state
-            if (mediaType == MediaType.VIDEO) {
-                if (video.getStatus() == AlbumServerVideo.Status.PROCESSING) {
-                    continue;
+    private static AlbumMember parseAlbumMember(JSONTokenReader reader, AlbumUserInterner users) throws JSONException {
+        Long memberId = null;
+        String memberNickname = null;
+        DateTime memberLastOnline = null;
+        String memberAvatarUrl = null;
+        Integer memberUserGlanceScore = null;
+        Boolean memberAlbumAdmin = null;
+        Long addedByUserId = null;
+        String inviteStatusStr = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (key.equals("id")) {
+                memberId = reader.nextLong();
+            } else if (key.equals("nickname")) {
+                memberNickname = reader.nextString();
+            } else if (key.equals("last_online")) {
+                memberLastOnline = parseDate(reader, key);
+            } else if (key.equals("avatar_url")) {
+                memberAvatarUrl = reader.nextString();
+            } else if (key.equals("user_glance_score")) {
+                memberUserGlanceScore = reader.nextInt();
+            } else if (key.equals("album_admin")) {
+                memberAlbumAdmin = reader.nextBoolean();
+            } else if (key.equals("added_by_user_id")) {
+                addedByUserId = reader.nextLong();
+            } else if (key.equals("invite_status")) {
+                inviteStatusStr = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (memberId == null) {
+            throw missingKeyException("id");
+        }
+        if (memberNickname == null) {
+            throw missingKeyException("nickname");
+        }
+        if (memberLastOnline == null) {
+            throw missingKeyException("last_online");
+        }
+        if (memberAvatarUrl == null) {
+            throw missingKeyException("avatar_url");
+        }
+        if (memberUserGlanceScore == null) {
+            throw missingKeyException("user_glance_score");
+        }
+        if (memberAlbumAdmin == null) {
+            throw missingKeyException("album_admin");
+        }
+        if (addedByUserId == null) {
+            throw missingKeyException("added_by_user_id");
+        }
+        if (inviteStatusStr == null) {
+            throw missingKeyException("invite_status");
+        }
+
+        AlbumMember.InviteStatus inviteStatus;
+        if (inviteStatusStr.equals("joined")) {
+            inviteStatus = AlbumMember.InviteStatus.JOINED;
+        } else if (inviteStatusStr.equals("sms_sent")) {
+            inviteStatus = AlbumMember.InviteStatus.SMS_SENT;
+        } else if (inviteStatusStr.equals("invitation_viewed")) {
+            inviteStatus = AlbumMember.InviteStatus.INVITATION_VIEWED;
+        } else {
+            throw new JSONException("Invalid `invite_status` value: " + inviteStatusStr);
+        }
+
+        AlbumUser user = users.intern(memberId, memberNickname, memberLastOnline, memberAvatarUrl, memberUserGlanceScore);
+        return new AlbumMember(user, memberAlbumAdmin, addedByUserId, inviteStatus);
+    }
+
+    /**
+     * Reads a single album object of the "GET /albums/" response
+     */
+    private static AlbumSummary parseAlbumSummary(JSONTokenReader reader, AlbumUserInterner users) throws JSONException {
+        String etag = null;
+        Long id = null;
+        String name = null;
+        AlbumUser creator = null;
+        DateTime date_created = null;
+        DateTime date_updated = null;
+        ArrayList<AlbumPhoto> latestPhotos = null;
+        Long num_new_photos = null;
+        DateTime last_access = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (key.equals("etag")) {
+                etag = reader.nextString();
+            } else if (key.equals("id")) {
+                id = reader.nextLong();
+            } else if (key.equals("name")) {
+                name = reader.nextString();
+            } else if (key.equals("creator")) {
+                creator = parseAlbumUser(reader, users);
+            } else if (key.equals("date_created")) {
+                date_created = parseDate(reader, key);
+            } else if (key.equals("last_updated")) {
+                date_updated = parseDate(reader, key);
+            } else if (key.equals("latest_photos")) {
+                latestPhotos = parsePhotoList(reader, users);
+            } else if (key.equals("num_new_photos")) {
+                num_new_photos = reader.nextLong();
+            } else if (key.equals("last_access")) {
+                // Missing is the same as null
+                if (reader.peek() == JSONTokenReader.Token.NULL) {
+                    reader.nextNull();
+                } else {
+                    last_access = parseDate(reader, key);
                 }
+            } else {
+                reader.skipValue();
             }
+        }
+        reader.endObject();
 
-            AlbumServerPhoto.Params albumServerPhotoParams = new AlbumServerPhoto.Params();
-            albumServerPhotoParams.id = photo_id;
-            albumServerPhotoParams.mediaType = mediaType;
-            albumServerPhotoParams.video = video;
-            albumServerPhotoParams.clientUploadId = clientUploadId;
-            albumServerPhotoParams.url = photo_url;
-            albumServerPhotoParams.author = author;
-            albumServerPhotoParams.dateAdded = photo_date_created;
-            albumServerPhotoParams.comments = comments;
-            albumServerPhotoParams.globalGlanceScore = globalGlanceScore;
-            albumServerPhotoParams.myGlanceScoreDelta = myGlanceScoreDelta;
-            albumServerPhotoParams.glances = glances;
-            albumServerPhotoParams.youtubeId = youtube_id;
-            result.add(new AlbumPhoto(new AlbumServerPhoto(albumServerPhotoParams)));
+        if (etag == null) {
+            throw missingKeyException("etag");
         }
-        return result;
+        if (id == null) {
+            throw missingKeyException("id");
+        }
+        if (name == null) {
+            throw missingKeyException("name");
+        }
+        if (creator == null) {
+            throw missingKeyException("creator");
+        }
+        if (date_created == null) {
+            throw missingKeyException("date_created");
+        }
+        if (date_updated == null) {
+            throw missingKeyException("last_updated");
+        }
+        if (latestPhotos == null) {
+            throw missingKeyException("latest_photos");
+        }
+        if (num_new_photos == null) {
+            throw missingKeyException("num_new_photos");
+        }
+
+        return new AlbumSummary(id, etag, name, creator, date_created, date_updated, num_new_photos, last_access, latestPhotos);
     }
 
     public ArrayList<AlbumSummary> getAlbums() throws APIException {
@@ -677,26 +1040,17 @@ public class ShotVibeAPI {
                     throw APIException.ErrorStatusCodeException(response);
                 }
 
+                // The creators and latest photo authors of all the albums share their AlbumUser
+                // objects
+                AlbumUserInterner users = new AlbumUserInterner();
+
+                JSONTokenReader reader = response.bodyAsJSONTokenReader();
                 try {
-                    JSONArray response_array = response.bodyAsJSONArray();
-                    for (int i = 0; i < response_array.length(); ++i) {
-                        JSONObject albumObj = response_array.getJSONObject(i);
-
-                        String etag = albumObj.getString("etag");
-                        long id = albumObj.getLong("id");
-                        String name = albumObj.getString("name");
-                        AlbumUser creator = parseAlbumUser(albumObj.getJSONObject("creator"));
-                        DateTime date_created = parseDate(albumObj, "date_created");
-                        DateTime date_updated = parseDate(albumObj, "last_updated");
-                        ArrayList<AlbumPhoto> latestPhotos = parsePhotoList(albumObj.getJSONArray("latest_photos"));
-                        long num_new_photos = albumObj.getLong("num_new_photos");
-                        DateTime last_access = null;
-                        if (!albumObj.isNull("last_access")) {
-                            last_access = parseDate(albumObj, "last_access");
-                        }
-                        AlbumSummary newAlbum = new AlbumSummary(id, etag, name, creator, date_created, date_updated, num_new_photos, last_access, latestPhotos);
-                        result.add(newAlbum);
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        result.add(parseAlbumSummary(reader, users));
                     }
+                    reader.endArray();
                 } catch (JSONException e) {
                     throw APIException.FromJSONException(response, e);
                 }
@@ -724,29 +1078,68 @@ public class ShotVibeAPI {
             return null;
         }
 
-        // Remove the quote('"') characters from the beginning and end of the string.
-        // TODO To be really correct, should properly unescape the string
+        // Remove the quote('"') characters from the beginning and end of the string. An entity
+        // tag has no escape sequences (RFC 7232), so the rest is exactly the opaque value
         return value.substring(1, value.length() - 1);
     }
 
-    public AlbumContents getAlbumContents(final long albumId) throws APIException {
+    /**
+     * The inverse of ParseETagValue: returns the ETag exactly as the server sent it in the
+     * header
+     *
+     * @param etag A value that was returned by ParseETagValue
+     */
+    private static String FormatETagValue(String etag) {
+        if (etag == null) {
+            throw new IllegalArgumentException("etag cannot be null");
+        }
+
+        return "\"" + etag + "\"";
+    }
+
+    public AlbumContents getAlbumContents(long albumId) throws APIException {
+        return getAlbumContents(albumId, null);
+    }
+
+    /**
+     * Conditionally get the contents of an album
+     *
+     * @param albumId
+     * @param etag The etag value of the copy of the album that the client already has (as
+     *             returned by a previous call). May be null, in which case the album is always
+     *             returned
+     * @return null if the album was not modified since the version with the given etag
+     * @throws APIException
+     */
+    public AlbumContents getAlbumContents(final long albumId, final String etag) throws APIException {
         return runAndLogNetworkRequestAction(new NetworkRequestAction<AlbumContents>() {
             @Override
             public NetworkRequestResult<AlbumContents> runAction() throws APIException, HTTPException {
-                HTTPResponse response = sendRequest("GET", "/albums/" + albumId + "/");
+                HTTPResponse response;
+                if (etag != null && etag.length() > 0) {
+                    Map<String, String> requestHeaders = new HashMap<String, String>(mJsonRequestHeaders);
+                    requestHeaders.put("If-None-Match", FormatETagValue(etag));
+                    response = mHttpLib.sendRequest("GET", BASE_URL + "/albums/" + albumId + "/", requestHeaders, (String) null);
+                } else {
+                    response = sendRequest("GET", "/albums/" + albumId + "/");
+                }
+
+                if (response.getStatusCode() == HTTPLib.HTTP_NOT_MODIFIED) {
+                    // The body is empty, there is nothing to parse
+                    return new NetworkRequestResult<AlbumContents>(null, response);
+                }
 
                 if (response.isError()) {
                     throw APIException.ErrorStatusCodeException(response);
                 }
 
                 try {
-                    JSONObject json = response.bodyAsJSONObject();
                     String etagValue = response.getHeaderValue("etag");
                     if (etagValue != null) {
                         etagValue = ParseETagValue(etagValue);
                     }
 
-                    AlbumContents result = parseAlbumContents(json, etagValue);
+                    AlbumContents result = parseAlbumContents(response, etagValue);
                     return new NetworkRequestResult<AlbumContents>(result, response);
                 } catch (JSONException e) {
                     throw APIException.FromJSONException(response, e);
@@ -760,48 +1153,87 @@ public class ShotVibeAPI {
      * @return AlbumContents object
      * @throws JSONException
      */
-    private AlbumContents parseAlbumContents(JSONObject obj, String etag) throws JSONException {
-        long id = obj.getLong("id");
-
-        String name = obj.getString("name");
-        AlbumUser creator = parseAlbumUser(obj.getJSONObject("creator"));
-        DateTime date_created = parseDate(obj, "date_created");
-        DateTime date_updated = parseDate(obj, "last_updated");
+    private static AlbumContents parseAlbumContents(HTTPResponse response, String etag) throws JSONException {
+        return parseAlbumContents(response.bodyAsJSONTokenReader(), etag);
+    }
 
-        long num_new_photos = obj.has("num_new_photos") ? obj.getLong("num_new_photos") : 0;
+    /**
+     * Reads an album object token by token, building the photos and members one at a time
+     * without a JSONObject tree of the whole body
+     *
+     * @param etag ETag value from HTTP header, may be null
+     * @return AlbumContents object
+     * @throws JSONException
+     */
+    private static AlbumContents parseAlbumContents(JSONTokenReader reader, String etag) throws JSONException {
+        AlbumUserInterner users = new AlbumUserInterner();
+
+        Long id = null;
+        String name = null;
+        AlbumUser creator = null;
+        DateTime date_created = null;
+        DateTime date_updated = null;
+        long num_new_photos = 0;
         DateTime last_access = null;
-        if (obj.has("last_access") && !obj.isNull("last_access")) {
-            last_access = parseDate(obj, "last_access");
-        }
-
-        JSONArray members_array = obj.getJSONArray("members");
-
-        ArrayList<AlbumPhoto> photos = parsePhotoList(obj.getJSONArray("photos"));
-
-        ArrayList<AlbumMember> members = new ArrayList<AlbumMember>();
-        for (int i = 0; i < members_array.length(); ++i) {
-            JSONObject member_obj = members_array.getJSONObject(i);
-            long member_id = member_obj.getLong("id");
-            String member_nickname = member_obj.getString("nickname");
-            DateTime memberLastOnline = parseDate(member_obj, "last_online");
-            String member_avatar_url = member_obj.getString("avatar_url");
-            int memberUserGlanceScore = member_obj.getInt("user_glance_score");
-            boolean memberAlbumAdmin = member_obj.getBoolean("album_admin");
-            long addedByUserId = member_obj.getLong("added_by_user_id");
-            String inviteStatusStr = member_obj.getString("invite_status");
-            AlbumMember.InviteStatus inviteStatus;
-            if (inviteStatusStr.equals("joined")) {
-                inviteStatus = AlbumMember.InviteStatus.JOINED;
-            } else if (inviteStatusStr.equals("sms_sent")) {
-                inviteStatus = AlbumMember.InviteStatus.SMS_SENT;
-            } else if (inviteStatusStr.equals("invitation_viewed")) {
-                inviteStatus = AlbumMember.InviteStatus.INVITATION_VIEWED;
+        ArrayList<AlbumPhoto> photos = null;
+        ArrayList<AlbumMember> members = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (key.equals("id")) {
+                id = reader.nextLong();
+            } else if (key.equals("name")) {
+                name = reader.nextString();
+            } else if (key.equals("creator")) {
+                creator = parseAlbumUser(reader, users);
+            } else if (key.equals("date_created")) {
+                date_created = parseDate(reader, key);
+            } else if (key.equals("last_updated")) {
+                date_updated = parseDate(reader, key);
+            } else if (key.equals("num_new_photos")) {
+                num_new_photos = reader.nextLong();
+            } else if (key.equals("last_access")) {
+                if (reader.peek() == JSONTokenReader.Token.NULL) {
+                    reader.nextNull();
+                } else {
+                    last_access = parseDate(reader, key);
+                }
+            } else if (key.equals("photos")) {
+                photos = parsePhotoList(reader, users);
+            } else if (key.equals("members")) {
+                members = new ArrayList<AlbumMember>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    members.add(parseAlbumMember(reader, users));
+                }
+                reader.endArray();
             } else {
-                throw new JSONException("Invalid `invite_status` value: " + inviteStatusStr);
+                reader.skipValue();
             }
+        }
+        reader.endObject();
 
-            AlbumUser user = new AlbumUser(member_id, member_nickname, memberLastOnline, member_avatar_url, memberUserGlanceScore);
-            members.add(new AlbumMember(user, memberAlbumAdmin, addedByUserId, inviteStatus));
+        if (id == null) {
+            throw missingKeyException("id");
+        }
+        if (name == null) {
+            throw missingKeyException("name");
+        }
+        if (creator == null) {
+            throw missingKeyException("creator");
+        }
+        if (date_created == null) {
+            throw missingKeyException("date_created");
+        }
+        if (date_updated == null) {
+            throw missingKeyException("last_updated");
+        }
+        if (members == null) {
+            throw missingKeyException("members");
+        }
+        if (photos == null) {
+            throw missingKeyException("photos");
         }
 
         return new AlbumContents(id, etag, name, creator, date_created, date_updated, num_new_photos, last_access, photos, members);
@@ -864,8 +1296,7 @@ public class ShotVibeAPI {
                 }
 
                 try {
-                    JSONObject json = response.bodyAsJSONObject();
-                    AlbumContents result = parseAlbumContents(json, etagValue);
+                    AlbumContents result = parseAlbumContents(response, etagValue);
                     return new NetworkRequestResult<AlbumContents>(result, response);
                 } catch (JSONException e) {
                     throw APIException.FromJSONException(response, e);
@@ -966,9 +1397,7 @@ public class ShotVibeAPI {
                 }
 
                 try {
-                    JSONObject json = response.bodyAsJSONObject();
-
-                    AlbumContents result = parseAlbumContents(json, etagValue);
+                    AlbumContents result = parseAlbumContents(response, etagValue);
                     return new NetworkRequestResult<AlbumContents>(result, response);
                 } catch (JSONException e) {
                     throw APIException.FromJSONException(response, e);
@@ -1007,9 +1436,7 @@ public class ShotVibeAPI {
                 }
 
                 try {
-                    JSONObject json = response.bodyAsJSONObject();
-
-                    AlbumContents result = parseAlbumContents(json, etagValue);
+                    AlbumContents result = parseAlbumContents(response, etagValue);
                     return new NetworkRequestResult<AlbumContents>(result, response);
                 } catch (JSONException e) {
                     throw APIException.FromJSONException(response, e);
@@ -5,7 +5,7 @@ import java.util.Map;
 
 public final class ShotVibeDB {
     private static final String DATABASE_FILENAME = "shotvibe_main.db";
-    private static final int DATABASE_VERSION = 11;
+    private static final int DATABASE_VERSION = 12;
 
     public static class Recipe extends SQLDatabaseRecipe<ShotVibeDB> {
         public Recipe() {
@@ -19,8 +19,15 @@ public final class ShotVibeDB {
 
         @Override
         public void upgradeDB(SQLConnection conn, int oldVersion) throws SQLException {
-            // Poor man's migration: just clear the database
-            clearDB(conn);
+            if (oldVersion < 11) {
+                // Poor man's migration: just clear the database
+                clearDB(conn);
+                return;
+            }
+
+            if (oldVersion < 12) {
+                ShotVibeDBMigrations.upgradeFromVersion_11_to_12(conn);
+            }
         }
 
         @Override
@@ -65,100 +72,303 @@ public final class ShotVibeDB {
     }
 
     private ShotVibeDB(SQLConnection conn) {
-        mConn = conn;
+        // Keep the statements that are executed for every row compiled for the lifetime of the
+        // connection
+        mConn = new CachingSQLConnection(conn);
+    }
+
+    /**
+     * Sets a second connection to the same database file that will be used for all reads, so
+     * that reads (such as getAlbumList from the main thread) don't have to wait for a long write
+     * transaction to finish. The database must be in WAL journal mode for this to be useful.
+     *
+     * If no read connection is set, then reads and writes are all serialized on the single
+     * connection. Writes are always serialized.
+     *
+     * Should be called right after the database is opened, before it is used by any other thread
+     *
+     * @param readConn
+     */
+    public void setReadConnection(SQLConnection readConn) {
+        if (readConn == null) {
+            throw new IllegalArgumentException("readConn cannot be null");
+        }
+
+        mReadConn = readConn;
+    }
+
+    /**
+     * @return The total time (in nanoseconds) that reads have spent waiting for access to the
+     * database
+     */
+    public long getReadWaitNanos() {
+        synchronized (mStatsLock) {
+            return mReadWaitNanos;
+        }
+    }
+
+    /**
+     * @return The total time (in nanoseconds) that writes have spent waiting for access to the
+     * database
+     */
+    public long getWriteWaitNanos() {
+        synchronized (mStatsLock) {
+            return mWriteWaitNanos;
+        }
+    }
+
+    /**
+     * @return The longest time (in nanoseconds) that a single read or write has waited for access
+     * to the database
+     */
+    public long getMaxWaitNanos() {
+        synchronized (mStatsLock) {
+            return mMaxWaitNanos;
+        }
+    }
+
+    /**
+     * @return The number of user rows that were not written because the same values were already
+     * stored
+     */
+    public long getUserWritesSkipped() {
+        synchronized (mStatsLock) {
+            return mUserWritesSkipped;
+        }
+    }
+
+    /**
+     * @return The number of user rows that were written
+     */
+    public long getUserWritesPerformed() {
+        synchronized (mStatsLock) {
+            return mUserWritesPerformed;
+        }
+    }
+
+    /**
+     * Must be followed by a call to endRead (in a finally block)
+     *
+     * @return The connection that should be used for the read
+     */
+    private SQLConnection beginRead() {
+        SQLConnection readConn = mReadConn;
+        if (readConn == null) {
+            // Reads must share the lock with the writes
+            long waited = lockAndMeasure(mWriteLock);
+            recordWait(waited, true);
+            return mConn;
+        }
+
+        long waited = lockAndMeasure(mReadLock);
+        recordWait(waited, true);
+        return readConn;
+    }
+
+    private void endRead(SQLConnection conn) {
+        if (conn == mConn) {
+            mWriteLock.unlock();
+        } else {
+            mReadLock.unlock();
+        }
+    }
+
+    /**
+     * Must be followed by a call to endWrite (in a finally block)
+     */
+    private void beginWrite() {
+        long waited = lockAndMeasure(mWriteLock);
+        recordWait(waited, false);
+    }
+
+    private void endWrite() {
+        mWriteLock.unlock();
+    }
+
+    private static long lockAndMeasure(ConditionVar lock) {
+        long start = System.nanoTime();
+        lock.lock();
+        return System.nanoTime() - start;
+    }
+
+    private void recordWait(long waited, boolean read) {
+        synchronized (mStatsLock) {
+            if (read) {
+                mReadWaitNanos += waited;
+            } else {
+                mWriteWaitNanos += waited;
+            }
+            if (waited > mMaxWaitNanos) {
+                mMaxWaitNanos = waited;
+            }
+        }
     }
 
     private SQLConnection mConn;
 
+    // Optional, see setReadConnection
+    private volatile SQLConnection mReadConn = null;
+
+    // Serializes all access to mConn. The connection is not thread safe, and also there must be
+    // only one write transaction at a time
+    private final ConditionVar mWriteLock = new ConditionVar();
+
+    // Serializes all access to mReadConn
+    private final ConditionVar mReadLock = new ConditionVar();
+
+    // The values of the rows of the user table that are known to be committed to the database,
+    // so that writing the same values again can be skipped. Must only be accessed while holding
+    // mWriteLock. Users are never deleted, so this is bounded by the size of the user table
+    private final HashMap<Long, AlbumUser> mPersistedUsers = new HashMap<Long, AlbumUser>();
+
+    private final Object mStatsLock = new Object();
+    private long mReadWaitNanos = 0;
+    private long mWriteWaitNanos = 0;
+    private long mMaxWaitNanos = 0;
+    private long mUserWritesSkipped = 0;
+    private long mUserWritesPerformed = 0;
+
     private static DateTime cursorGetDateTime(SQLCursor cursor, int columnIndex) throws SQLException {
         return DateTime.FromTimeStamp(cursor.getLong(columnIndex));
     }
 
-    public synchronized ArrayList<AlbumSummary> getAlbumList() throws SQLException {
-        SQLCursor cursor = mConn.query(""
-                + "SELECT album_id, name, date_created, last_updated, num_new_photos, last_access, user.user_id, user.nickname, user.avatar_url, user.user_glance_score"
-                + " FROM album"
-                + " LEFT OUTER JOIN user"
-                + " ON album.creator_id = user.user_id"
-                + " ORDER BY last_updated DESC");
+    public ArrayList<AlbumSummary> getAlbumList() throws SQLException {
+        final int NUM_LATEST_PHOTOS = 2;
 
+        SQLConnection conn = beginRead();
         try {
-            ArrayList<AlbumSummary> results = new ArrayList<AlbumSummary>();
-            while (cursor.moveToNext()) {
-                long id = cursor.getLong(0);
-                String name = cursor.getString(1);
-                DateTime dateCreated = cursorGetDateTime(cursor, 2);
-                DateTime lastUpdated = cursorGetDateTime(cursor, 3);
-                final String etag = null;
-                final int NUM_LATEST_PHOTOS = 2;
-                long numNewPhotos = cursor.getLong(4);
-                DateTime lastAccess = cursor.isNull(5) ? null : cursorGetDateTime(cursor, 5);
-                ArrayList<AlbumPhoto> latestPhotos = getLatestPhotos(id, NUM_LATEST_PHOTOS);
-
-                long creatorAuthorUserId = cursor.getLong(6);
-                String creatorAuthorNickname = cursor.getString(7);
-                String creatorAuthorAvatarUrl = cursor.getString(8);
-                DateTime creatorLastOnline = null;
-                int creatorUserGlanceScore = cursor.getInt(9);
-                AlbumUser creator = new AlbumUser(creatorAuthorUserId, creatorAuthorNickname, creatorLastOnline, creatorAuthorAvatarUrl, creatorUserGlanceScore);
-
-                AlbumSummary album = new AlbumSummary(id, etag, name, creator, dateCreated, lastUpdated, numNewPhotos, lastAccess, latestPhotos);
-                results.add(album);
+            // Both queries must see the same snapshot of the database
+            conn.beginReadTransaction();
+            try {
+                AlbumUserInterner users = new AlbumUserInterner();
+
+                HashMap<Long, ArrayList<AlbumPhoto>> allLatestPhotos = readLatestPhotos(conn, NUM_LATEST_PHOTOS, users);
+
+                SQLCursor cursor = conn.query(""
+                        + "SELECT album_id, name, date_created, last_updated, num_new_photos, last_access, user.user_id, user.nickname, user.avatar_url, user.user_glance_score"
+                        + " FROM album"
+                        + " LEFT OUTER JOIN user"
+                        + " ON album.creator_id = user.user_id"
+                        + " ORDER BY last_updated DESC");
+
+                ArrayList<AlbumSummary> results = new ArrayList<AlbumSummary>();
+                try {
+                    while (cursor.moveToNext()) {
+                        long id = cursor.getLong(0);
+                        String name = cursor.getString(1);
+                        DateTime dateCreated = cursorGetDateTime(cursor, 2);
+                        DateTime lastUpdated = cursorGetDateTime(cursor, 3);
+                        final String etag = null;
+                        long numNewPhotos = cursor.getLong(4);
+                        DateTime lastAccess = cursor.isNull(5) ? null : cursorGetDateTime(cursor, 5);
+                        ArrayList<AlbumPhoto> latestPhotos = allLatestPhotos.get(id);
+                        if (latestPhotos == null) {
+                            latestPhotos = new ArrayList<AlbumPhoto>();
+                        }
+
+                        long creatorAuthorUserId = cursor.getLong(6);
+                        String creatorAuthorNickname = cursor.getString(7);
+                        String creatorAuthorAvatarUrl = cursor.getString(8);
+                        DateTime creatorLastOnline = null;
+                        int creatorUserGlanceScore = cursor.getInt(9);
+                        AlbumUser creator = users.intern(creatorAuthorUserId, creatorAuthorNickname, creatorLastOnline, creatorAuthorAvatarUrl, creatorUserGlanceScore);
+
+                        AlbumSummary album = new AlbumSummary(id, etag, name, creator, dateCreated, lastUpdated, numNewPhotos, lastAccess, latestPhotos);
+                        results.add(album);
+                    }
+                } finally {
+                    cursor.close();
+                }
+
+                conn.setTransactionSuccesful();
+                return results;
+            } finally {
+                conn.endTransaction();
             }
-            return results;
         } finally {
-            cursor.close();
+            endRead(conn);
         }
     }
 
-    public synchronized HashMap<Long, String> getAlbumListEtagValues() throws SQLException {
-        SQLCursor cursor = mConn.query(""
-                + "SELECT album_id, last_etag"
-                + " FROM album");
-
+    public HashMap<Long, String> getAlbumListEtagValues() throws SQLException {
+        SQLConnection conn = beginRead();
         try {
-            HashMap<Long, String> results = new HashMap<Long, String>();
-            while (cursor.moveToNext()) {
-                long id = cursor.getLong(0);
+            SQLCursor cursor = conn.query(""
+                    + "SELECT album_id, last_etag"
+                    + " FROM album");
+
+            try {
+                HashMap<Long, String> results = new HashMap<Long, String>();
+                while (cursor.moveToNext()) {
+                    long id = cursor.getLong(0);
 
-                // etag may be NULL if the full album hasn't been loaded yet
-                if (!cursor.isNull(1)) {
-                    String last_etag = cursor.getString(1);
-                    results.put(id, last_etag);
+                    // etag may be NULL if the full album hasn't been loaded yet
+                    if (!cursor.isNull(1)) {
+                        String last_etag = cursor.getString(1);
+                        results.put(id, last_etag);
+                    }
                 }
+                return results;
+            } finally {
+                cursor.close();
             }
-            return results;
         } finally {
-            cursor.close();
+            endRead(conn);
         }
     }
 
-    private ArrayList<AlbumPhoto> getLatestPhotos(long albumId, int numPhotos) throws SQLException {
-        SQLCursor cursor = mConn.query(""
-                + "SELECT photo.photo_id, photo.url, photo.created, photo.global_glance_score, photo.my_glance_score_delta, user.user_id, user.nickname, user.avatar_url, user.user_glance_score"
-                + " FROM photo"
+    /**
+     * Reads the latest photos of all of the albums with a single query, instead of a separate
+     * query for every album
+     *
+     * @param conn
+     * @param numPhotos The maximum number of photos to read for each album
+     * @param users
+     * @return A map from album ids to the latest photos of the album (newest first). Albums
+     * without any photos are not included
+     * @throws SQLException
+     */
+    private static HashMap<Long, ArrayList<AlbumPhoto>> readLatestPhotos(SQLConnection conn, int numPhotos, AlbumUserInterner users) throws SQLException {
+        // The correlated subquery picks the rowids of the latest photos of each album, which
+        // SQLite evaluates with a single index search per album
+        SQLCursor cursor = conn.query(""
+                + "SELECT photo.photo_album, photo.photo_id, photo.url, photo.created, photo.global_glance_score, photo.my_glance_score_delta, user.user_id, user.nickname, user.avatar_url, user.user_glance_score"
+                + " FROM album"
+                + " JOIN photo"
+                + " ON photo.rowid IN ("
+                + "  SELECT latest.rowid"
+                + "  FROM photo AS latest"
+                + "  WHERE latest.photo_album = album.album_id"
+                + "  ORDER BY latest.num DESC"
+                + "  LIMIT ?)"
                 + " LEFT OUTER JOIN user"
                 + " ON photo.author_id = user.user_id"
-                + " WHERE photo.photo_album=?"
-                + " ORDER BY photo.num DESC"
-                + " LIMIT ?",
+                + " ORDER BY photo.photo_album, photo.num DESC",
                 SQLValues.create()
-                        .add(albumId)
                         .add(numPhotos));
         try {
-            ArrayList<AlbumPhoto> results = new ArrayList<AlbumPhoto>();
+            HashMap<Long, ArrayList<AlbumPhoto>> results = new HashMap<Long, ArrayList<AlbumPhoto>>();
+            long currentAlbumId = 0;
+            ArrayList<AlbumPhoto> albumResults = null;
             while (cursor.moveToNext()) {
-                String photoId = cursor.getString(0);
-                String photoUrl = cursor.getString(1);
-                DateTime photoDateAdded = cursorGetDateTime(cursor, 2);
-                int globalGlanceScore = cursor.getInt(3);
-                int myGlanceScoreDelta = cursor.getInt(4);
-                long photoAuthorUserId = cursor.getLong(5);
-                String photoAuthorNickname = cursor.getString(6);
-                String photoAuthorAvatarUrl = cursor.getString(7);
+                long albumId = cursor.getLong(0);
+                if (albumResults == null || albumId != currentAlbumId) {
+                    currentAlbumId = albumId;
+                    albumResults = new ArrayList<AlbumPhoto>();
+                    results.put(albumId, albumResults);
+                }
+
+                String photoId = cursor.getString(1);
+                String photoUrl = cursor.getString(2);
+                DateTime photoDateAdded = cursorGetDateTime(cursor, 3);
+                int globalGlanceScore = cursor.getInt(4);
+                int myGlanceScoreDelta = cursor.getInt(5);
+                long photoAuthorUserId = cursor.getLong(6);
+                String photoAuthorNickname = cursor.getString(7);
+                String photoAuthorAvatarUrl = cursor.getString(8);
                 DateTime photoAuthorLastOnline = null;
-                int photoAuthorUserGlanceScore = cursor.getInt(8);
-                AlbumUser photoAuthor = new AlbumUser(photoAuthorUserId, photoAuthorNickname, photoAuthorLastOnline, photoAuthorAvatarUrl, photoAuthorUserGlanceScore);
+                int photoAuthorUserGlanceScore = cursor.getInt(9);
+                AlbumUser photoAuthor = users.intern(photoAuthorUserId, photoAuthorNickname, photoAuthorLastOnline, photoAuthorAvatarUrl, photoAuthorUserGlanceScore);
 
                 // TODO Load real values from DB
                 ArrayList<AlbumPhotoGlance> dummy = new ArrayList<AlbumPhotoGlance>();
@@ -181,7 +391,7 @@ public final class ShotVibeDB {
                 albumServerPhotoParams.globalGlanceScore = globalGlanceScore;
                 albumServerPhotoParams.myGlanceScoreDelta = myGlanceScoreDelta;
                 albumServerPhotoParams.glances = dummy;
-                results.add(new AlbumPhoto(new AlbumServerPhoto(albumServerPhotoParams)));
+                albumResults.add(new AlbumPhoto(new AlbumServerPhoto(albumServerPhotoParams)));
             }
             return results;
         } finally {
@@ -189,42 +399,53 @@ public final class ShotVibeDB {
         }
     }
 
-    public synchronized void setAlbumList(ArrayList<AlbumSummary> albums) throws SQLException {
-        mConn.beginTransaction();
+    /**
+     * @param albumId
+     * @return The etag value of the album that was stored by the last call to setAlbumContents.
+     * null if the album doesn't exist or if its full contents haven't been loaded yet
+     * @throws SQLException
+     */
+    public String getAlbumEtag(long albumId) throws SQLException {
+        SQLConnection conn = beginRead();
         try {
-            // Keep track of all the new albumIds in an efficient data structure
-            HashSet<Long> albumIds = new HashSet<Long>();
-            for (AlbumSummary album : albums) {
-                albumIds.add(album.getId());
+            SQLCursor cursor = conn.query(""
+                    + "SELECT last_etag"
+                    + " FROM album"
+                    + " WHERE album_id=?",
+                    SQLValues.create()
+                            .add(albumId));
+
+            try {
+                if (!cursor.moveToNext() || cursor.isNull(0)) {
+                    return null;
+                }
+                return cursor.getString(0);
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            endRead(conn);
+        }
+    }
 
-                saveUserToDB(mConn, album.getCreator());
+    public void setAlbumList(ArrayList<AlbumSummary> albums) throws SQLException {
+        beginWrite();
+        try {
+            HashMap<Long, AlbumUser> writtenUsers = new HashMap<Long, AlbumUser>();
+            mConn.beginTransaction();
+            try {
+                // Keep track of all the new albumIds in an efficient data structure
+                HashSet<Long> albumIds = new HashSet<Long>();
+                for (AlbumSummary album : albums) {
+                    albumIds.add(album.getId());
 
-                // First try updating an existing row, in order to not erase an existing etag value
-                mConn.update(""
-                        + "UPDATE album"
-                        + " SET album_id=?, name=?, creator_id=?, date_created=?, last_updated=?, num_new_photos=?, last_access=?"
-                        + " WHERE album_id=?",
-                        SQLValues.create()
-                                .add(album.getId())
-                                .add(album.getName())
-                                .add(album.getCreator().getMemberId())
-                                .add(dateTimeToSQLValue(album.getDateCreated()))
-                                .add(dateTimeToSQLValue(album.getDateUpdated()))
-                                .add(album.getNumNewPhotos())
-                                .addNullable(album.getLastAccess() == null ? null : dateTimeToSQLValue(album.getLastAccess()))
-                                .add(album.getId()));
-
-                if (mConn.changes() == 0) {
-                    // A row didn't exist for the album, this will insert a new row
-                    // (while also not failing in the case of a rare race condition
-                    // where a row actually was just now added -- if that actually
-                    // does happen then we will unfortunately overwrite the etag
-                    // with a null value, but that won't cause much harm, it will
-                    // just cause the album to be unnecessary refreshed one more time)
+                    saveUserIfChanged(album.getCreator(), writtenUsers);
 
+                    // First try updating an existing row, in order to not erase an existing etag value
                     mConn.update(""
-                                    + "INSERT OR REPLACE INTO album (album_id, name, creator_id, date_created, last_updated, num_new_photos, last_access)"
-                                    + " VALUES (?, ?, ?, ?, ?, ?, ?)",
+                            + "UPDATE album"
+                            + " SET album_id=?, name=?, creator_id=?, date_created=?, last_updated=?, num_new_photos=?, last_access=?"
+                            + " WHERE album_id=?",
                             SQLValues.create()
                                     .add(album.getId())
                                     .add(album.getName())
@@ -232,460 +453,1161 @@ public final class ShotVibeDB {
                                     .add(dateTimeToSQLValue(album.getDateCreated()))
                                     .add(dateTimeToSQLValue(album.getDateUpdated()))
                                     .add(album.getNumNewPhotos())
-                                    .addNullable(album.getLastAccess() == null ? null : dateTimeToSQLValue(album.getLastAccess())));
-                }
-            }
+                                    .addNullable(album.getLastAccess() == null ? null : dateTimeToSQLValue(album.getLastAccess()))
+                                    .add(album.getId()));
 
-            // Delete any old rows in the database that are not in albums:
-            SQLCursor cursor = mConn.query(""
-                    + "SELECT album_id"
-                    + " FROM album");
+                    if (mConn.changes() == 0) {
+                        // A row didn't exist for the album, this will insert a new row
+                        // (while also not failing in the case of a rare race condition
+                        // where a row actually was just now added -- if that actually
+                        // does happen then we will unfortunately overwrite the etag
+                        // with a null value, but that won't cause much harm, it will
+                        // just cause the album to be unnecessary refreshed one more time)
 
-            try {
-                while (cursor.moveToNext()) {
-                    long id = cursor.getLong(0);
-                    if (!albumIds.contains(id)) {
                         mConn.update(""
-                                + "DELETE FROM album"
-                                + " WHERE album_id=?",
+                                        + "INSERT OR REPLACE INTO album (album_id, name, creator_id, date_created, last_updated, num_new_photos, last_access)"
+                                        + " VALUES (?, ?, ?, ?, ?, ?, ?)",
                                 SQLValues.create()
-                                        .add(id));
+                                        .add(album.getId())
+                                        .add(album.getName())
+                                        .add(album.getCreator().getMemberId())
+                                        .add(dateTimeToSQLValue(album.getDateCreated()))
+                                        .add(dateTimeToSQLValue(album.getDateUpdated()))
+                                        .add(album.getNumNewPhotos())
+                                        .addNullable(album.getLastAccess() == null ? null : dateTimeToSQLValue(album.getLastAccess())));
+                    }
+                }
+
+                // Delete any old rows in the database that are not in albums:
+                ArrayList<Long> staleAlbumIds = new ArrayList<Long>();
+                SQLCursor cursor = mConn.query(""
+                        + "SELECT album_id"
+                        + " FROM album");
+
+                try {
+                    while (cursor.moveToNext()) {
+                        long id = cursor.getLong(0);
+                        if (!albumIds.contains(id)) {
+                            staleAlbumIds.add(id);
+                        }
                     }
+                } finally {
+                    cursor.close();
                 }
+
+                deleteRowsById(mConn, "album", "album_id", staleAlbumIds);
+
+                mConn.setTransactionSuccesful();
             } finally {
-                cursor.close();
+                mConn.endTransaction();
             }
 
-            mConn.setTransactionSuccesful();
+            rememberPersistedUsers(writtenUsers);
         } finally {
-            mConn.endTransaction();
+            endWrite();
         }
     }
 
-    public synchronized AlbumContents getAlbumContents(long albumId) throws SQLException {
-        mConn.beginTransaction();
-        try {
-            SQLCursor cursor;
-            cursor = mConn.query(""
-                    + "SELECT name, date_created, last_updated, num_new_photos, last_access, user.user_id, user.nickname, user.avatar_url, user.user_glance_score"
-                    + " FROM album"
-                    + " LEFT OUTER JOIN user"
-                    + " ON album.creator_id = user.user_id"
-                    + " WHERE album_id=?",
-                    SQLValues.create()
-                            .add(albumId));
+    public AlbumContents getAlbumContents(long albumId) throws SQLException {
+        return readAlbumContents(albumId, true);
+    }
 
-            String albumName;
-            DateTime albumDateCreated;
-            DateTime albumLastUpdated;
-            String albumEtag;
-            long albumNumNewPhotos;
-            DateTime albumLastAccess;
-            AlbumUser albumCreator;
+    /**
+     * Reads the album without the glances and comments of the photos, which is much faster for
+     * albums with many photos. See AlbumContents.arePhotoDetailsLoaded
+     *
+     * @param albumId
+     * @return null if the album is not in the database
+     * @throws SQLException
+     */
+    public AlbumContents getAlbumGrid(long albumId) throws SQLException {
+        return readAlbumContents(albumId, false);
+    }
 
+    /**
+     * @param albumId
+     * @param photoId
+     * @return The glances and comments of a single photo. Empty if the photo is not in the database
+     * @throws SQLException
+     */
+    public AlbumPhotoDetails getPhotoDetails(long albumId, String photoId) throws SQLException {
+        SQLConnection conn = beginRead();
+        try {
+            conn.beginReadTransaction();
             try {
-                if (!cursor.moveToNext()) {
-                    // No cached AlbumContents available
-                    return null;
+                AlbumUserInterner users = new AlbumUserInterner();
+                String condition = "photo.photo_album=? AND photo.photo_id=?";
+
+                ArrayList<AlbumPhotoGlance> glances = readPhotoGlances(conn, condition, SQLValues.create().add(albumId).add(photoId), users).get(photoId);
+                if (glances == null) {
+                    glances = new ArrayList<AlbumPhotoGlance>();
                 }
 
-                albumName = cursor.getString(0);
-                albumDateCreated = cursorGetDateTime(cursor, 1);
-                albumLastUpdated = cursorGetDateTime(cursor, 2);
-                albumEtag = null;
-                albumNumNewPhotos = cursor.getLong(3);
-                albumLastAccess = cursor.isNull(4) ? null : cursorGetDateTime(cursor, 4);
-
-                long creatorAuthorUserId = cursor.getLong(5);
-                String creatorAuthorNickname = cursor.getString(6);
-                String creatorAuthorAvatarUrl = cursor.getString(7);
-                DateTime creatorLastOnline = null;
-                int creatorUserGlanceScore = cursor.getInt(8);
-                albumCreator = new AlbumUser(creatorAuthorUserId, creatorAuthorNickname, creatorLastOnline, creatorAuthorAvatarUrl, creatorUserGlanceScore);
+                ArrayList<AlbumPhotoComment> comments = readPhotoComments(conn, condition, SQLValues.create().add(albumId).add(photoId), users).get(photoId);
+                if (comments == null) {
+                    comments = new ArrayList<AlbumPhotoComment>();
+                }
+
+                conn.setTransactionSuccesful();
+                return new AlbumPhotoDetails(photoId, glances, comments);
             } finally {
-                cursor.close();
+                conn.endTransaction();
             }
+        } finally {
+            endRead(conn);
+        }
+    }
 
-            cursor = mConn.query(""
-                    + "SELECT photo.photo_id, photo.url, photo.created, photo.global_glance_score, photo.my_glance_score_delta, user.user_id, user.nickname, user.avatar_url, user.user_glance_score"
-                    + " FROM photo"
-                    + " LEFT OUTER JOIN user"
-                    + " ON photo.author_id = user.user_id"
-                    + " WHERE photo.photo_album=?"
-                    + " ORDER BY photo.num ASC",
-                    SQLValues.create()
-                            .add(albumId));
+    /**
+     * Reads a range of the photos of an album, without reading the rest of the album.
+     *
+     * setAlbumContents numbers the photos of an album 0, 1, 2, ... so the range is read with a
+     * keyset query on photo.num (using photo_album_num_index) instead of with OFFSET, which would
+     * have to step over all of the photos that come before the range.
+     *
+     * The glances and comments are read only for the photos in the range
+     *
+     * @param albumId
+     * @param start The index of the first photo
+     * @param count The maximum number of photos to read
+     * @return An empty window if the album is not in the database
+     * @throws SQLException
+     */
+    public AlbumPhotoWindow getAlbumPhotoWindow(long albumId, int start, int count) throws SQLException {
+        if (start < 0) {
+            throw new IllegalArgumentException("start cannot be negative: " + start);
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("count cannot be negative: " + count);
+        }
 
-            ArrayList<AlbumPhoto> albumPhotos = new ArrayList<AlbumPhoto>();
+        SQLConnection conn = beginRead();
+        try {
+            conn.beginReadTransaction();
             try {
-                while (cursor.moveToNext()) {
-                    String photoId = cursor.getString(0);
-                    String photoUrl = cursor.getString(1);
-                    DateTime photoDateAdded = cursorGetDateTime(cursor, 2);
-                    int globalGlanceScore = cursor.getInt(3);
-                    int myGlanceScoreDelta = cursor.getInt(4);
-                    long photoAuthorUserId = cursor.getLong(5);
-                    String photoAuthorNickname = cursor.getString(6);
-                    String photoAuthorAvatarUrl = cursor.getString(7);
-                    DateTime photoAuthorLastOnline = null;
-                    int photoAuthorUserGlanceScore = cursor.getInt(8);
-                    AlbumUser photoAuthor = new AlbumUser(photoAuthorUserId, photoAuthorNickname, photoAuthorLastOnline, photoAuthorAvatarUrl, photoAuthorUserGlanceScore);
-
-                    ArrayList<AlbumPhotoGlance> photoGlances = new ArrayList<AlbumPhotoGlance>();
-                    SQLCursor gCursor = mConn.query(""
-                            + "SELECT photo_glance.author_id, user.nickname, user.avatar_url, user.user_glance_score, photo_glance.emoticon_name"
-                            + " FROM photo_glance"
-                            + " LEFT OUTER JOIN user"
-                            + " ON photo_glance.author_id = user.user_id"
-                            + " WHERE photo_glance.photo_id=?"
-                            + " ORDER BY photo_glance.num ASC",
-                            SQLValues.create()
-                                    .add(photoId));
-                    try {
-                        while (gCursor.moveToNext()) {
-                            long authorId = gCursor.getLong(0);
-                            String authorNickname = gCursor.getString(1);
-                            String authorAvatarUrl = gCursor.getString(2);
-                            int userGlanceScore = gCursor.getInt(3);
-                            String emoticonName = gCursor.getString(4);
-                            DateTime authorLastOnline = null;
-                            AlbumUser author = new AlbumUser(authorId, authorNickname, authorLastOnline, authorAvatarUrl, userGlanceScore);
-                            photoGlances.add(new AlbumPhotoGlance(author, emoticonName));
-                        }
-                    } finally {
-                        gCursor.close();
-                    }
+                int totalCount;
+                SQLCursor cursor = conn.query(""
+                        + "SELECT COUNT(*)"
+                        + " FROM photo"
+                        + " WHERE photo_album=?",
+                        SQLValues.create()
+                                .add(albumId));
+                try {
+                    cursor.moveToNext();
+                    totalCount = cursor.getInt(0);
+                } finally {
+                    cursor.close();
+                }
 
-                    ArrayList<AlbumPhotoComment> photoComments = readPhotoComments(mConn, photoId);
-
-                    MediaType mediaType = MediaType.PHOTO;
-                    AlbumServerVideo video = null;
-
-                    AlbumServerPhoto.Params albumServerPhotoParams = new AlbumServerPhoto.Params();
-                    albumServerPhotoParams.id = photoId;
-                    albumServerPhotoParams.mediaType = mediaType;
-                    albumServerPhotoParams.video = video;
-                    albumServerPhotoParams.clientUploadId = null;
-                    albumServerPhotoParams.url = photoUrl;
-                    albumServerPhotoParams.author = photoAuthor;
-                    albumServerPhotoParams.dateAdded = photoDateAdded;
-                    albumServerPhotoParams.comments = photoComments;
-                    albumServerPhotoParams.globalGlanceScore = globalGlanceScore;
-                    albumServerPhotoParams.myGlanceScoreDelta = myGlanceScoreDelta;
-                    albumServerPhotoParams.glances = photoGlances;
-                    albumPhotos.add(new AlbumPhoto(new AlbumServerPhoto(albumServerPhotoParams)));
+                ArrayList<AlbumPhoto> photos = new ArrayList<AlbumPhoto>();
+                if (count == 0 || start >= totalCount) {
+                    conn.setTransactionSuccesful();
+                    return new AlbumPhotoWindow(albumId, start, photos, totalCount);
                 }
-            } finally {
-                cursor.close();
-            }
 
-            cursor = mConn.query(""
-                    + "SELECT album_member.user_id, user.nickname, user.avatar_url, user.user_glance_score, album_member.album_admin, album_member.added_by_user_id"
-                    + " FROM album_member"
-                    + " LEFT OUTER JOIN user"
-                    + " ON album_member.user_id = user.user_id"
-                    + " WHERE album_member.album_id=?"
-                    + " ORDER BY user.nickname ASC",
-                    SQLValues.create()
-                            .add(albumId));
+                AlbumUserInterner users = new AlbumUserInterner();
 
-            ArrayList<AlbumMember> albumMembers = new ArrayList<AlbumMember>();
-            try {
-                while (cursor.moveToNext()) {
-                    long memberId = cursor.getLong(0);
-                    String memberNickname = cursor.getString(1);
-                    String memberAvatarUrl = cursor.getString(2);
-                    int userGlanceScore = cursor.getInt(3);
-                    boolean albumAdmin = cursor.getInt(4) != 0;
-                    long addedByUserId = cursor.getLong(5);
-                    DateTime lastOnline = null;
-                    AlbumUser user = new AlbumUser(memberId, memberNickname, lastOnline, memberAvatarUrl, userGlanceScore);
-                    albumMembers.add(new AlbumMember(user, albumAdmin, addedByUserId, null));
+                String rangeCondition = "photo.photo_album=? AND photo.num>=? AND photo.num<?";
+                long end = (long) start + count;
+                HashMap<String, ArrayList<AlbumPhotoGlance>> glances = readPhotoGlances(conn, rangeCondition, SQLValues.create().add(albumId).add(start).add(end), users);
+                HashMap<String, ArrayList<AlbumPhotoComment>> comments = readPhotoComments(conn, rangeCondition, SQLValues.create().add(albumId).add(start).add(end), users);
+
+                cursor = conn.query(""
+                        + "SELECT photo.photo_id, photo.url, photo.created, photo.global_glance_score, photo.my_glance_score_delta, user.user_id, user.nickname, user.avatar_url, user.user_glance_score"
+                        + " FROM photo"
+                        + " LEFT OUTER JOIN user"
+                        + " ON photo.author_id = user.user_id"
+                        + " WHERE photo.photo_album=? AND photo.num>=?"
+                        + " ORDER BY photo.num ASC"
+                        + " LIMIT ?",
+                        SQLValues.create()
+                                .add(albumId)
+                                .add(start)
+                                .add(count));
+                try {
+                    while (cursor.moveToNext()) {
+                        photos.add(photoFromCursor(cursor, glances, comments, users));
+                    }
+                } finally {
+                    cursor.close();
                 }
+
+                conn.setTransactionSuccesful();
+                return new AlbumPhotoWindow(albumId, start, photos, totalCount);
             } finally {
-                cursor.close();
+                conn.endTransaction();
             }
-
-            mConn.setTransactionSuccesful();
-            return new AlbumContents(albumId, albumEtag, albumName, albumCreator, albumDateCreated, albumLastUpdated, albumNumNewPhotos, albumLastAccess, albumPhotos, albumMembers);
         } finally {
-            mConn.endTransaction();
+            endRead(conn);
         }
     }
 
-    private static ArrayList<AlbumPhotoComment> readPhotoComments(SQLConnection conn, String photoId) throws SQLException {
-        ArrayList<AlbumPhotoComment> photoComments = new ArrayList<AlbumPhotoComment>();
-        SQLCursor cursor = conn.query(""
-                        + "SELECT photo_comment.author_id, user.nickname, user.avatar_url, user.user_glance_score, photo_comment.date_created, photo_comment.client_msg_id, photo_comment.comment_text"
-                        + " FROM photo_comment"
-                        + " LEFT OUTER JOIN user"
-                        + " ON photo_comment.author_id = user.user_id"
-                        + " WHERE photo_comment.photo_id=?"
-                        + " ORDER BY photo_comment.date_created ASC",
-                SQLValues.create()
-                        .add(photoId));
-        try {
-            while (cursor.moveToNext()) {
-                long authorId = cursor.getLong(0);
-                String authorNickname = cursor.getString(1);
-                String authorAvatarUrl = cursor.getString(2);
-                int userGlanceScore = cursor.getInt(3);
-                DateTime dateCreated = cursorGetDateTime(cursor, 4);
-                long clientMsgId = cursor.getLong(5);
-                String commentText = cursor.getString(6);
-                DateTime lastOnline = null;
-                AlbumUser author = new AlbumUser(authorId, authorNickname, lastOnline, authorAvatarUrl, userGlanceScore);
-                photoComments.add(new AlbumPhotoComment(author, clientMsgId, dateCreated, commentText));
-            }
-        } finally {
-            cursor.close();
-        }
+    // The largest number of photo ids in a single getStoredPhotoIds query. Must stay below the
+    // SQLite limit on the number of host parameters (999 on older versions)
+    private static final int MAX_PHOTO_ID_QUERY_SIZE = 256;
 
-        return photoComments;
-    }
+    /**
+     * @param albumId
+     * @param photoIds The photos to look for
+     * @return The ones of photoIds that are stored in the album
+     * @throws SQLException
+     */
+    public HashSet<String> getStoredPhotoIds(long albumId, List<String> photoIds) throws SQLException {
+        HashSet<String> result = new HashSet<String>();
+        if (photoIds.isEmpty()) {
+            return result;
+        }
 
-    private static void setAlbumRow(SQLConnection conn, AlbumContents albumContents) throws SQLException {
-        conn.update(""
-                        + "INSERT OR REPLACE INTO album (album_id, name, creator_id, date_created, last_updated, last_etag, num_new_photos, last_access)"
-                        + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
-                SQLValues.create()
-                        .add(albumContents.getId())
-                        .add(albumContents.getName())
-                        .add(albumContents.getCreator().getMemberId())
-                        .add(dateTimeToSQLValue(albumContents.getDateCreated()))
-                        .add(dateTimeToSQLValue(albumContents.getDateUpdated()))
-                        .add(albumContents.getEtag())
-                        .add(albumContents.getNumNewPhotos())
-                        .addNullable(albumContents.getLastAccess() == null ? null : dateTimeToSQLValue(albumContents.getLastAccess())));
-    }
+        SQLConnection conn = beginRead();
+        try {
+            int start = 0;
+            while (start < photoIds.size()) {
+                int count = Math.min(photoIds.size() - start, MAX_PHOTO_ID_QUERY_SIZE);
+
+                SQLValues values = SQLValues.create()
+                        .add(albumId);
+                for (int i = 0; i < count; ++i) {
+                    values.add(photoIds.get(start + i));
+                }
 
-    private static void saveAlbumPhotos(SQLConnection conn, long albumId, List<AlbumPhoto> photos, HashMap<Long, AlbumUser> allUsers) throws SQLException {
-        // Keep track of all the new photoIds in an efficient data structure
-        HashSet<String> photoIds = new HashSet<String>();
+                SQLCursor cursor = conn.query(""
+                        + "SELECT photo_id"
+                        + " FROM photo"
+                        + " WHERE photo_album=? AND photo_id IN (" + sqlPlaceholders(count) + ")",
+                        values);
+                try {
+                    while (cursor.moveToNext()) {
+                        result.add(cursor.getString(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
 
-        int num = 0;
-        for (AlbumPhoto albumPhoto : photos) {
-            AlbumServerPhoto photo = albumPhoto.getServerPhoto();
-            if (photo == null) {
-                throw new IllegalArgumentException("albumContents is not allowed to contain an AlbumUploadingPhoto: " + albumPhoto.getUploadingPhoto().toString());
+                start += count;
             }
+        } finally {
+            endRead(conn);
+        }
+        return result;
+    }
 
-            photoIds.add(photo.getId());
-
-            conn.update(""
-                            + "INSERT OR REPLACE INTO photo (photo_album, num, photo_id, url, author_id, created, global_glance_score, my_glance_score_delta)"
-                            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
-                    SQLValues.create()
-                            .add(albumId)
-                            .add(num++)
-                            .add(photo.getId())
-                            .add(photo.getUrl())
-                            .add(photo.getAuthor().getMemberId())
-                            .add(dateTimeToSQLValue(photo.getDateAdded()))
-                            .add(photo.getGlobalGlanceScore())
-                            .add(photo.getMyGlanceScoreDelta()));
+    /**
+     * Reads a photo from a row of the columns:
+     *
+     * photo.photo_id, photo.url, photo.created, photo.global_glance_score, photo.my_glance_score_delta,
+     * user.user_id, user.nickname, user.avatar_url, user.user_glance_score
+     *
+     * @param glances The glances of the photos, by photoId. Photos that are missing get no glances
+     * @param comments The comments of the photos, by photoId. Photos that are missing get no comments
+     */
+    private static AlbumPhoto photoFromCursor(SQLCursor cursor, HashMap<String, ArrayList<AlbumPhotoGlance>> glances, HashMap<String, ArrayList<AlbumPhotoComment>> comments, AlbumUserInterner users) throws SQLException {
+        String photoId = cursor.getString(0);
+        String photoUrl = cursor.getString(1);
+        DateTime photoDateAdded = cursorGetDateTime(cursor, 2);
+        int globalGlanceScore = cursor.getInt(3);
+        int myGlanceScoreDelta = cursor.getInt(4);
+        long photoAuthorUserId = cursor.getLong(5);
+        String photoAuthorNickname = cursor.getString(6);
+        String photoAuthorAvatarUrl = cursor.getString(7);
+        DateTime photoAuthorLastOnline = null;
+        int photoAuthorUserGlanceScore = cursor.getInt(8);
+        AlbumUser photoAuthor = users.intern(photoAuthorUserId, photoAuthorNickname, photoAuthorLastOnline, photoAuthorAvatarUrl, photoAuthorUserGlanceScore);
+
+        ArrayList<AlbumPhotoGlance> photoGlances = glances.get(photoId);
+        if (photoGlances == null) {
+            photoGlances = new ArrayList<AlbumPhotoGlance>();
+        }
 
-            AlbumUser user = photo.getAuthor();
-            allUsers.put(user.getMemberId(), user);
+        ArrayList<AlbumPhotoComment> photoComments = comments.get(photoId);
+        if (photoComments == null) {
+            photoComments = new ArrayList<AlbumPhotoComment>();
+        }
 
-            // Save Photo Glances:
+        MediaType mediaType = MediaType.PHOTO;
+        AlbumServerVideo video = null;
+
+        AlbumServerPhoto.Params albumServerPhotoParams = new AlbumServerPhoto.Params();
+        albumServerPhotoParams.id = photoId;
+        albumServerPhotoParams.mediaType = mediaType;
+        albumServerPhotoParams.video = video;
+        albumServerPhotoParams.clientUploadId = null;
+        albumServerPhotoParams.url = photoUrl;
+        albumServerPhotoParams.author = photoAuthor;
+        albumServerPhotoParams.dateAdded = photoDateAdded;
+        albumServerPhotoParams.comments = photoComments;
+        albumServerPhotoParams.globalGlanceScore = globalGlanceScore;
+        albumServerPhotoParams.myGlanceScoreDelta = myGlanceScoreDelta;
+        albumServerPhotoParams.glances = photoGlances;
+        return new AlbumPhoto(new AlbumServerPhoto(albumServerPhotoParams));
+    }
 
-            // Keep track of all the new authorIds in an efficient data structure
-            HashSet<Long> authorIds = new HashSet<Long>();
+    /**
+     * @param photoDetailsLoaded If false, then the glances and comments are not read
+     */
+    private AlbumContents readAlbumContents(long albumId, boolean photoDetailsLoaded) throws SQLException {
+        SQLConnection conn = beginRead();
+        try {
+            conn.beginReadTransaction();
+            try {
+                SQLCursor cursor;
+                cursor = conn.query(""
+                        + "SELECT name, date_created, last_updated, num_new_photos, last_access, user.user_id, user.nickname, user.avatar_url, user.user_glance_score"
+                        + " FROM album"
+                        + " LEFT OUTER JOIN user"
+                        + " ON album.creator_id = user.user_id"
+                        + " WHERE album_id=?",
+                        SQLValues.create()
+                                .add(albumId));
+
+                // All of the photo authors, glance authors, comment authors and members of the
+                // album will share their AlbumUser objects
+                AlbumUserInterner users = new AlbumUserInterner();
+
+                String albumName;
+                DateTime albumDateCreated;
+                DateTime albumLastUpdated;
+                String albumEtag;
+                long albumNumNewPhotos;
+                DateTime albumLastAccess;
+                AlbumUser albumCreator;
+
+                try {
+                    if (!cursor.moveToNext()) {
+                        // No cached AlbumContents available
+                        return null;
+                    }
 
-            int glanceNum = 0;
-            for (AlbumPhotoGlance glance : photo.getGlances()) {
-                AlbumUser glanceAuthor = glance.getAuthor();
+                    albumName = cursor.getString(0);
+                    albumDateCreated = cursorGetDateTime(cursor, 1);
+                    albumLastUpdated = cursorGetDateTime(cursor, 2);
+                    albumEtag = null;
+                    albumNumNewPhotos = cursor.getLong(3);
+                    albumLastAccess = cursor.isNull(4) ? null : cursorGetDateTime(cursor, 4);
+
+                    long creatorAuthorUserId = cursor.getLong(5);
+                    String creatorAuthorNickname = cursor.getString(6);
+                    String creatorAuthorAvatarUrl = cursor.getString(7);
+                    DateTime creatorLastOnline = null;
+                    int creatorUserGlanceScore = cursor.getInt(8);
+                    albumCreator = users.intern(creatorAuthorUserId, creatorAuthorNickname, creatorLastOnline, creatorAuthorAvatarUrl, creatorUserGlanceScore);
+                } finally {
+                    cursor.close();
+                }
 
-                authorIds.add(glanceAuthor.getMemberId());
-
-                conn.update(""
-                                + "INSERT OR REPLACE INTO photo_glance (photo_id, author_id, emoticon_name, num)"
-                                + " VALUES (?, ?, ?, ?)",
+                cursor = conn.query(""
+                        + "SELECT photo.photo_id, photo.url, photo.created, photo.global_glance_score, photo.my_glance_score_delta, user.user_id, user.nickname, user.avatar_url, user.user_glance_score"
+                        + " FROM photo"
+                        + " LEFT OUTER JOIN user"
+                        + " ON photo.author_id = user.user_id"
+                        + " WHERE photo.photo_album=?"
+                        + " ORDER BY photo.num ASC",
                         SQLValues.create()
-                                .add(photo.getId())
-                                .add(glanceAuthor.getMemberId())
-                                .add(glance.getEmoticonName())
-                                .add(glanceNum));
-                glanceNum++;
+                                .add(albumId));
+
+                ArrayList<AlbumPhoto> albumPhotos = new ArrayList<AlbumPhoto>();
+                try {
+                    // The glances and comments of all the photos are read up front with a single
+                    // query each, instead of issuing 2 queries for every photo in the album
+                    HashMap<String, ArrayList<AlbumPhotoGlance>> albumGlances;
+                    HashMap<String, ArrayList<AlbumPhotoComment>> albumComments;
+                    if (photoDetailsLoaded) {
+                        albumGlances = readPhotoGlances(conn, "photo.photo_album=?", SQLValues.create().add(albumId), users);
+                        albumComments = readPhotoComments(conn, "photo.photo_album=?", SQLValues.create().add(albumId), users);
+                    } else {
+                        albumGlances = new HashMap<String, ArrayList<AlbumPhotoGlance>>();
+                        albumComments = new HashMap<String, ArrayList<AlbumPhotoComment>>();
+                    }
 
-                allUsers.put(glanceAuthor.getMemberId(), glanceAuthor);
-            }
+                    while (cursor.moveToNext()) {
+                        albumPhotos.add(photoFromCursor(cursor, albumGlances, albumComments, users));
+                    }
+                } finally {
+                    cursor.close();
+                }
 
-            // Delete any old rows in the database that are not in authorIds:
-            SQLCursor glancesCursor = conn.query(""
-                            + "SELECT author_id"
-                            + " FROM photo_glance"
-                            + " WHERE photo_id=?",
-                    SQLValues.create()
-                            .add(photo.getId()));
-            try {
-                while (glancesCursor.moveToNext()) {
-                    long id = glancesCursor.getLong(0);
-                    if (!authorIds.contains(id)) {
-                        conn.update(""
-                                        + "DELETE FROM photo_glance"
-                                        + " WHERE photo_id=? AND author_id=?",
-                                SQLValues.create()
-                                        .add(photo.getId())
-                                        .add(id));
+                cursor = conn.query(""
+                        + "SELECT album_member.user_id, user.nickname, user.avatar_url, user.user_glance_score, album_member.album_admin, album_member.added_by_user_id"
+                        + " FROM album_member"
+                        + " LEFT OUTER JOIN user"
+                        + " ON album_member.user_id = user.user_id"
+                        + " WHERE album_member.album_id=?"
+                        + " ORDER BY user.nickname ASC",
+                        SQLValues.create()
+                                .add(albumId));
+
+                ArrayList<AlbumMember> albumMembers = new ArrayList<AlbumMember>();
+                try {
+                    while (cursor.moveToNext()) {
+                        long memberId = cursor.getLong(0);
+                        String memberNickname = cursor.getString(1);
+                        String memberAvatarUrl = cursor.getString(2);
+                        int userGlanceScore = cursor.getInt(3);
+                        boolean albumAdmin = cursor.getInt(4) != 0;
+                        long addedByUserId = cursor.getLong(5);
+                        DateTime lastOnline = null;
+                        AlbumUser user = users.intern(memberId, memberNickname, lastOnline, memberAvatarUrl, userGlanceScore);
+                        albumMembers.add(new AlbumMember(user, albumAdmin, addedByUserId, null));
                     }
+                } finally {
+                    cursor.close();
                 }
+
+                conn.setTransactionSuccesful();
+                return new AlbumContents(albumId, albumEtag, albumName, albumCreator, albumDateCreated, albumLastUpdated, albumNumNewPhotos, albumLastAccess, albumPhotos, albumMembers, photoDetailsLoaded);
             } finally {
-                glancesCursor.close();
+                conn.endTransaction();
             }
+        } finally {
+            endRead(conn);
+        }
+    }
 
-            savePhotoComments(conn, photo.getId(), photo.getComments(), allUsers);
+    /**
+     * Reads the glances of all the photos that match a condition
+     *
+     * @param condition An SQL expression on the "photo" table, such as "photo.photo_album=?"
+     * @param values The values for the parameters of condition
+     * @return A map from photoId to the glances of the photo, in the correct order. Photos that
+     * don't have any glances will not appear in the map
+     * @throws SQLException
+     */
+    private static HashMap<String, ArrayList<AlbumPhotoGlance>> readPhotoGlances(SQLConnection conn, String condition, SQLValues values, AlbumUserInterner users) throws SQLException {
+        HashMap<String, ArrayList<AlbumPhotoGlance>> albumGlances = new HashMap<String, ArrayList<AlbumPhotoGlance>>();
+        SQLCursor cursor = conn.query(""
+                        + "SELECT photo_glance.photo_id, photo_glance.author_id, user.nickname, user.avatar_url, user.user_glance_score, photo_glance.emoticon_name"
+                        + " FROM photo"
+                        + " JOIN photo_glance"
+                        + " ON photo_glance.photo_id = photo.photo_id"
+                        + " LEFT OUTER JOIN user"
+                        + " ON photo_glance.author_id = user.user_id"
+                        + " WHERE " + condition
+                        + " ORDER BY photo_glance.num ASC",
+                values);
+        try {
+            while (cursor.moveToNext()) {
+                String photoId = cursor.getString(0);
+                long authorId = cursor.getLong(1);
+                String authorNickname = cursor.getString(2);
+                String authorAvatarUrl = cursor.getString(3);
+                int userGlanceScore = cursor.getInt(4);
+                String emoticonName = cursor.getString(5);
+                DateTime authorLastOnline = null;
+                AlbumUser author = users.intern(authorId, authorNickname, authorLastOnline, authorAvatarUrl, userGlanceScore);
+
+                ArrayList<AlbumPhotoGlance> photoGlances = albumGlances.get(photoId);
+                if (photoGlances == null) {
+                    photoGlances = new ArrayList<AlbumPhotoGlance>();
+                    albumGlances.put(photoId, photoGlances);
+                }
+                photoGlances.add(new AlbumPhotoGlance(author, emoticonName));
+            }
+        } finally {
+            cursor.close();
         }
 
-        // Delete any old rows in the database that are not in photIds:
-        SQLCursor photosCursor = conn.query(""
-                        + "SELECT photo_id"
+        return albumGlances;
+    }
+
+    /**
+     * Reads the comments of all the photos that match a condition
+     *
+     * @param condition An SQL expression on the "photo" table, such as "photo.photo_album=?"
+     * @param values The values for the parameters of condition
+     * @return A map from photoId to the comments of the photo, sorted by date. Photos that don't
+     * have any comments will not appear in the map
+     * @throws SQLException
+     */
+    private static HashMap<String, ArrayList<AlbumPhotoComment>> readPhotoComments(SQLConnection conn, String condition, SQLValues values, AlbumUserInterner users) throws SQLException {
+        HashMap<String, ArrayList<AlbumPhotoComment>> albumComments = new HashMap<String, ArrayList<AlbumPhotoComment>>();
+        SQLCursor cursor = conn.query(""
+                        + "SELECT photo_comment.photo_id, photo_comment.author_id, user.nickname, user.avatar_url, user.user_glance_score, photo_comment.date_created, photo_comment.client_msg_id, photo_comment.comment_text"
+                        + " FROM photo"
+                        + " JOIN photo_comment"
+                        + " ON photo_comment.photo_id = photo.photo_id"
+                        + " LEFT OUTER JOIN user"
+                        + " ON photo_comment.author_id = user.user_id"
+                        + " WHERE " + condition
+                        + " ORDER BY photo_comment.date_created ASC",
+                values);
+        try {
+            while (cursor.moveToNext()) {
+                String photoId = cursor.getString(0);
+                long authorId = cursor.getLong(1);
+                String authorNickname = cursor.getString(2);
+                String authorAvatarUrl = cursor.getString(3);
+                int userGlanceScore = cursor.getInt(4);
+                DateTime dateCreated = cursorGetDateTime(cursor, 5);
+                long clientMsgId = cursor.getLong(6);
+                String commentText = cursor.getString(7);
+                DateTime lastOnline = null;
+                AlbumUser author = users.intern(authorId, authorNickname, lastOnline, authorAvatarUrl, userGlanceScore);
+
+                ArrayList<AlbumPhotoComment> photoComments = albumComments.get(photoId);
+                if (photoComments == null) {
+                    photoComments = new ArrayList<AlbumPhotoComment>();
+                    albumComments.put(photoId, photoComments);
+                }
+                photoComments.add(new AlbumPhotoComment(author, clientMsgId, dateCreated, commentText));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return albumComments;
+    }
+
+    private static boolean stringsEqual(String a, String b) {
+        if (a == null) {
+            return b == null;
+        }
+        return a.equals(b);
+    }
+
+    /**
+     * The values of a row of the "photo" table, as currently stored in the database
+     */
+    private static final class StoredPhoto {
+        long rowId;
+        long num;
+        String url;
+        long authorId;
+        long created;
+        int globalGlanceScore;
+        int myGlanceScoreDelta;
+    }
+
+    /**
+     * The values of a row of the "photo_glance" table, as currently stored in the database
+     */
+    private static final class StoredGlance {
+        long rowId;
+        String emoticonName;
+        int num;
+    }
+
+    /**
+     * The values of a row of the "photo_comment" table, as currently stored in the database
+     */
+    private static final class StoredComment {
+        long rowId;
+        long dateCreated;
+        String commentText;
+    }
+
+    /**
+     * The values of a row of the "album_member" table, as currently stored in the database
+     */
+    private static final class StoredMember {
+        long rowId;
+        boolean albumAdmin;
+        long addedByUserId;
+    }
+
+    // The largest number of ids that are deleted by a single statement. Must stay below the
+    // SQLite limit on the number of host parameters (999 on older versions)
+    private static final int MAX_DELETE_BATCH_SIZE = 128;
+
+    /**
+     * Deletes the rows of a table whose idColumn is one of the given ids, with one statement for
+     * every MAX_DELETE_BATCH_SIZE ids instead of one statement for every id.
+     *
+     * The last batch is padded (by repeating its last id) up to the next power of 2, so that
+     * only a few distinct statements are ever prepared for each table
+     *
+     * @param conn
+     * @param table
+     * @param idColumn Should be "rowid" or another indexed integer column
+     * @param ids
+     * @return The number of ids that were given (the number of rows that were deleted, if all of
+     * them exist)
+     * @throws SQLException
+     */
+    private static int deleteRowsById(SQLConnection conn, String table, String idColumn, ArrayList<Long> ids) throws SQLException {
+        SQLValues batchValues = SQLValues.create();
+        int start = 0;
+        while (start < ids.size()) {
+            int count = Math.min(ids.size() - start, MAX_DELETE_BATCH_SIZE);
+            int batchSize = paddedBatchSize(count);
+
+            batchValues.reset();
+            for (int i = 0; i < batchSize; ++i) {
+                batchValues.add(ids.get(start + Math.min(i, count - 1)));
+            }
+
+            conn.update(""
+                            + "DELETE FROM " + table
+                            + " WHERE " + idColumn + " IN (" + sqlPlaceholders(batchSize) + ")",
+                    batchValues);
+            start += count;
+        }
+        return ids.size();
+    }
+
+    /**
+     * Deletes the rows of a table (photo_glance or photo_comment) that belong to one of the
+     * given photos, but only for the photos that are no longer in any album. Photo ids can be
+     * shared between albums, so a photo that was removed from one album may still have its
+     * glances and comments shown in another one.
+     *
+     * Whether a photo is still in some album is looked up with photo_photo_id_index, since the
+     * UNIQUE(photo_album, photo_id) index can't be searched by photo_id alone.
+     *
+     * Batched and padded in the same way as deleteRowsById
+     *
+     * @return The number of rows that were deleted
+     */
+    private static int deleteOrphanedPhotoRows(SQLConnection conn, String table, ArrayList<String> photoIds) throws SQLException {
+        int rowsDeleted = 0;
+        SQLValues batchValues = SQLValues.create();
+        int start = 0;
+        while (start < photoIds.size()) {
+            int count = Math.min(photoIds.size() - start, MAX_DELETE_BATCH_SIZE);
+            int batchSize = paddedBatchSize(count);
+
+            batchValues.reset();
+            for (int i = 0; i < batchSize; ++i) {
+                batchValues.add(photoIds.get(start + Math.min(i, count - 1)));
+            }
+
+            conn.update(""
+                            + "DELETE FROM " + table
+                            + " WHERE photo_id IN (" + sqlPlaceholders(batchSize) + ")"
+                            + " AND NOT EXISTS (SELECT 1 FROM photo WHERE photo.photo_id = " + table + ".photo_id)",
+                    batchValues);
+            rowsDeleted += conn.changes();
+            start += count;
+        }
+        return rowsDeleted;
+    }
+
+    /**
+     * @return count rounded up to the next power of 2, but at most MAX_DELETE_BATCH_SIZE
+     */
+    private static int paddedBatchSize(int count) {
+        int batchSize = 1;
+        while (batchSize < count) {
+            batchSize *= 2;
+        }
+        return Math.min(batchSize, MAX_DELETE_BATCH_SIZE);
+    }
+
+    /**
+     * @return "?, ?, ..., ?" with count question marks
+     */
+    private static String sqlPlaceholders(int count) {
+        String result = "?";
+        for (int i = 1; i < count; ++i) {
+            result += ", ?";
+        }
+        return result;
+    }
+
+    /**
+     * Writes the album row, but only if it doesn't exist or if any of its values are different
+     * than the ones that are already stored
+     *
+     * @return The number of rows that were written
+     * @throws SQLException
+     */
+    private static int setAlbumRow(SQLConnection conn, AlbumContents albumContents) throws SQLException {
+        long dateCreated = dateTimeToSQLValue(albumContents.getDateCreated());
+        long lastUpdated = dateTimeToSQLValue(albumContents.getDateUpdated());
+        Long lastAccess = albumContents.getLastAccess() == null ? null : dateTimeToSQLValue(albumContents.getLastAccess());
+
+        SQLCursor cursor = conn.query(""
+                        + "SELECT name, creator_id, date_created, last_updated, last_etag, num_new_photos, last_access"
+                        + " FROM album"
+                        + " WHERE album_id=?",
+                SQLValues.create()
+                        .add(albumContents.getId()));
+        try {
+            if (cursor.moveToNext()) {
+                boolean lastAccessEqual;
+                if (cursor.isNull(6)) {
+                    lastAccessEqual = lastAccess == null;
+                } else {
+                    lastAccessEqual = lastAccess != null && cursor.getLong(6) == lastAccess;
+                }
+
+                if (stringsEqual(cursor.getString(0), albumContents.getName())
+                        && cursor.getLong(1) == albumContents.getCreator().getMemberId()
+                        && cursor.getLong(2) == dateCreated
+                        && cursor.getLong(3) == lastUpdated
+                        && stringsEqual(cursor.getString(4), albumContents.getEtag())
+                        && !cursor.isNull(5) && cursor.getLong(5) == albumContents.getNumNewPhotos()
+                        && lastAccessEqual) {
+                    return 0;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        conn.update(""
+                        + "INSERT OR REPLACE INTO album (album_id, name, creator_id, date_created, last_updated, last_etag, num_new_photos, last_access)"
+                        + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                SQLValues.create()
+                        .add(albumContents.getId())
+                        .add(albumContents.getName())
+                        .add(albumContents.getCreator().getMemberId())
+                        .add(dateCreated)
+                        .add(lastUpdated)
+                        .add(albumContents.getEtag())
+                        .add(albumContents.getNumNewPhotos())
+                        .addNullable(lastAccess));
+        return 1;
+    }
+
+    private static HashMap<String, StoredPhoto> readStoredPhotos(SQLConnection conn, long albumId) throws SQLException {
+        HashMap<String, StoredPhoto> result = new HashMap<String, StoredPhoto>();
+        SQLCursor cursor = conn.query(""
+                        + "SELECT photo_id, num, url, author_id, created, global_glance_score, my_glance_score_delta, rowid"
                         + " FROM photo"
                         + " WHERE photo_album=?",
                 SQLValues.create()
                         .add(albumId));
+        try {
+            while (cursor.moveToNext()) {
+                StoredPhoto storedPhoto = new StoredPhoto();
+                storedPhoto.num = cursor.getLong(1);
+                storedPhoto.url = cursor.getString(2);
+                storedPhoto.authorId = cursor.getLong(3);
+                storedPhoto.created = cursor.getLong(4);
+                storedPhoto.globalGlanceScore = cursor.getInt(5);
+                storedPhoto.myGlanceScoreDelta = cursor.getInt(6);
+                storedPhoto.rowId = cursor.getLong(7);
+                result.put(cursor.getString(0), storedPhoto);
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
 
+    /**
+     * @return A map from photoId to the stored glances of the photo, keyed by authorId
+     */
+    private static HashMap<String, HashMap<Long, StoredGlance>> readStoredGlances(SQLConnection conn, long albumId) throws SQLException {
+        HashMap<String, HashMap<Long, StoredGlance>> result = new HashMap<String, HashMap<Long, StoredGlance>>();
+        SQLCursor cursor = conn.query(""
+                        + "SELECT photo_glance.photo_id, photo_glance.author_id, photo_glance.emoticon_name, photo_glance.num, photo_glance.rowid"
+                        + " FROM photo"
+                        + " JOIN photo_glance"
+                        + " ON photo_glance.photo_id = photo.photo_id"
+                        + " WHERE photo.photo_album=?",
+                SQLValues.create()
+                        .add(albumId));
         try {
-            while (photosCursor.moveToNext()) {
-                String id = photosCursor.getString(0);
-                if (!photoIds.contains(id)) {
-                    conn.update(""
-                                    + "DELETE FROM photo"
-                                    + " WHERE photo_album=? AND photo_id=?",
-                            SQLValues.create()
-                                    .add(albumId)
-                                    .add(id));
+            while (cursor.moveToNext()) {
+                String photoId = cursor.getString(0);
+                HashMap<Long, StoredGlance> photoGlances = result.get(photoId);
+                if (photoGlances == null) {
+                    photoGlances = new HashMap<Long, StoredGlance>();
+                    result.put(photoId, photoGlances);
                 }
+
+                StoredGlance storedGlance = new StoredGlance();
+                storedGlance.emoticonName = cursor.getString(2);
+                storedGlance.num = cursor.getInt(3);
+                storedGlance.rowId = cursor.getLong(4);
+                photoGlances.put(cursor.getLong(1), storedGlance);
             }
         } finally {
-            photosCursor.close();
+            cursor.close();
         }
+        return result;
     }
 
-    private static void savePhotoComments(SQLConnection conn, String photoId, List<AlbumPhotoComment> comments, HashMap<Long, AlbumUser> allUsers) throws SQLException {
-        for (AlbumPhotoComment comment : comments) {
-            conn.update(""
-                            + "INSERT OR REPLACE INTO photo_comment (photo_id, date_created, author_id, client_msg_id, comment_text)"
-                            + " VALUES (?, ?, ?, ?, ?)",
-                    SQLValues.create()
-                            .add(photoId)
-                            .add(dateTimeToSQLValue(comment.getDateCreated()))
-                            .add(comment.getAuthor().getMemberId())
-                            .add(comment.getClientMsgId())
-                            .add(comment.getCommentText()));
+    /**
+     * @return A map from photoId to the stored comments of the photo, keyed by
+     * (author_id, client_msg_id)
+     */
+    private static HashMap<String, LongPairHashMap<StoredComment>> readStoredComments(SQLConnection conn, long albumId) throws SQLException {
+        HashMap<String, LongPairHashMap<StoredComment>> result = new HashMap<String, LongPairHashMap<StoredComment>>();
+        SQLCursor cursor = conn.query(""
+                        + "SELECT photo_comment.photo_id, photo_comment.author_id, photo_comment.client_msg_id, photo_comment.date_created, photo_comment.comment_text, photo_comment.rowid"
+                        + " FROM photo"
+                        + " JOIN photo_comment"
+                        + " ON photo_comment.photo_id = photo.photo_id"
+                        + " WHERE photo.photo_album=?",
+                SQLValues.create()
+                        .add(albumId));
+        try {
+            while (cursor.moveToNext()) {
+                String photoId = cursor.getString(0);
+                LongPairHashMap<StoredComment> photoComments = result.get(photoId);
+                if (photoComments == null) {
+                    photoComments = new LongPairHashMap<StoredComment>();
+                    result.put(photoId, photoComments);
+                }
 
-            allUsers.put(comment.getAuthor().getMemberId(), comment.getAuthor());
+                StoredComment storedComment = new StoredComment();
+                storedComment.dateCreated = cursor.getLong(3);
+                storedComment.commentText = cursor.getString(4);
+                storedComment.rowId = cursor.getLong(5);
+                photoComments.put(cursor.getLong(1), cursor.getLong(2), storedComment);
+            }
+        } finally {
+            cursor.close();
         }
+        return result;
+    }
 
-        // Delete any old comments in the database that are not in comments:
-        SQLCursor commentsCursor = conn.query(""
-                        + "SELECT author_id, client_msg_id"
-                        + " FROM photo_comment"
-                        + " WHERE photo_id=?",
+    /**
+     * @return A map from userId to the stored values of all the users that are referenced by the
+     * album
+     */
+    private static HashMap<Long, AlbumUser> readStoredAlbumUsers(SQLConnection conn, long albumId) throws SQLException {
+        HashMap<Long, AlbumUser> result = new HashMap<Long, AlbumUser>();
+        SQLCursor cursor = conn.query(""
+                        + "SELECT user_id, nickname, avatar_url, user_glance_score"
+                        + " FROM user"
+                        + " WHERE user_id IN ("
+                        + "   SELECT creator_id FROM album WHERE album_id=?"
+                        + "   UNION SELECT author_id FROM photo WHERE photo_album=?"
+                        + "   UNION SELECT user_id FROM album_member WHERE album_id=?"
+                        + "   UNION SELECT photo_glance.author_id FROM photo JOIN photo_glance ON photo_glance.photo_id = photo.photo_id WHERE photo.photo_album=?"
+                        + "   UNION SELECT photo_comment.author_id FROM photo JOIN photo_comment ON photo_comment.photo_id = photo.photo_id WHERE photo.photo_album=?"
+                        + " )",
                 SQLValues.create()
-                        .add(photoId));
+                        .add(albumId)
+                        .add(albumId)
+                        .add(albumId)
+                        .add(albumId)
+                        .add(albumId));
         try {
-            while (commentsCursor.moveToNext()) {
-                long authorId = commentsCursor.getLong(0);
-                long clientMsgId = commentsCursor.getLong(1);
-                // Check if there is a comment matching authorId + clientMsgId
-                boolean foundMatch = false;
-                for (AlbumPhotoComment c : comments) {
-                    if (c.getAuthor().getMemberId() == authorId && c.getClientMsgId() == clientMsgId) {
-                        foundMatch = true;
-                        break;
-                    }
-                }
-                if (!foundMatch) {
-                    conn.update(""
-                                    + "DELETE FROM photo_comment"
-                                    + " WHERE photo_id=? AND author_id=? AND client_msg_id",
-                            SQLValues.create()
-                                    .add(photoId)
-                                    .add(authorId)
-                                    .add(clientMsgId));
-                }
+            while (cursor.moveToNext()) {
+                long userId = cursor.getLong(0);
+                DateTime lastOnline = null;
+                result.put(userId, new AlbumUser(userId, cursor.getString(1), lastOnline, cursor.getString(2), cursor.getInt(3)));
             }
         } finally {
-            commentsCursor.close();
+            cursor.close();
         }
+        return result;
     }
 
-    private static void saveAlbumMembers(SQLConnection conn, long albumId, List<AlbumMember> albumMembers, HashMap<Long, AlbumUser> allUsers) throws SQLException {
-        // Keep track of all the new memberIds in an efficient data structure
-        HashSet<Long> memberIds = new HashSet<Long>();
+    /**
+     * @return The number of rows that were written or deleted
+     */
+    private static int saveAlbumPhotos(SQLConnection conn, long albumId, List<AlbumPhoto> photos, HashMap<Long, AlbumUser> allUsers) throws SQLException {
+        int rowsWritten = 0;
 
-        for (AlbumMember member : albumMembers) {
-            AlbumUser user = member.getUser();
+        HashMap<String, StoredPhoto> storedPhotos = readStoredPhotos(conn, albumId);
+        HashMap<String, HashMap<Long, StoredGlance>> storedGlances = readStoredGlances(conn, albumId);
+        HashMap<String, LongPairHashMap<StoredComment>> storedComments = readStoredComments(conn, albumId);
 
-            memberIds.add(user.getMemberId());
+        // A single buffer is reused for all of the rows, since the values are bound as soon as
+        // each statement is executed
+        SQLValues rowValues = SQLValues.create();
 
-            conn.update(""
-                            + "INSERT OR REPLACE INTO album_member (album_id, user_id, album_admin, added_by_user_id)"
-                            + " VALUES (?, ?, ?, ?)",
-                    SQLValues.create()
-                            .add(albumId)
-                            .add(user.getMemberId())
-                            .add(member.getAlbumAdmin() ? 1 : 0)
-                            .add(member.getAddedByUserId()));
+        ArrayList<Long> staleGlanceRowIds = new ArrayList<Long>();
+        ArrayList<Long> staleCommentRowIds = new ArrayList<Long>();
 
+        int num = 0;
+        for (AlbumPhoto albumPhoto : photos) {
+            AlbumServerPhoto photo = albumPhoto.getServerPhoto();
+            if (photo == null) {
+                throw new IllegalArgumentException("albumContents is not allowed to contain an AlbumUploadingPhoto: " + albumPhoto.getUploadingPhoto().toString());
+            }
+
+            long photoNum = num++;
+            long created = dateTimeToSQLValue(photo.getDateAdded());
+
+            // Entries are removed as they are matched, so that whatever remains at the end is stale
+            StoredPhoto storedPhoto = storedPhotos.remove(photo.getId());
+            if (storedPhoto == null
+                    || storedPhoto.num != photoNum
+                    || !stringsEqual(storedPhoto.url, photo.getUrl())
+                    || storedPhoto.authorId != photo.getAuthor().getMemberId()
+                    || storedPhoto.created != created
+                    || storedPhoto.globalGlanceScore != photo.getGlobalGlanceScore()
+                    || storedPhoto.myGlanceScoreDelta != photo.getMyGlanceScoreDelta()) {
+                conn.update(""
+                                + "INSERT OR REPLACE INTO photo (photo_album, num, photo_id, url, author_id, created, global_glance_score, my_glance_score_delta)"
+                                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                        rowValues.reset()
+                                .add(albumId)
+                                .add(photoNum)
+                                .add(photo.getId())
+                                .add(photo.getUrl())
+                                .add(photo.getAuthor().getMemberId())
+                                .add(created)
+                                .add(photo.getGlobalGlanceScore())
+                                .add(photo.getMyGlanceScoreDelta()));
+                rowsWritten++;
+            }
+
+            AlbumUser user = photo.getAuthor();
             allUsers.put(user.getMemberId(), user);
+
+            // The glances and comments that remain after the save are the ones that were removed
+            // from this photo
+            HashMap<Long, StoredGlance> photoStoredGlances = storedGlances.get(photo.getId());
+            rowsWritten += savePhotoGlances(conn, photo.getId(), photo.getGlances(), photoStoredGlances, allUsers, rowValues);
+            if (photoStoredGlances != null) {
+                for (StoredGlance storedGlance : photoStoredGlances.values()) {
+                    staleGlanceRowIds.add(storedGlance.rowId);
+                }
+            }
+
+            LongPairHashMap<StoredComment> photoStoredComments = storedComments.get(photo.getId());
+            rowsWritten += savePhotoComments(conn, photo.getId(), photo.getComments(), photoStoredComments, allUsers, rowValues);
+            if (photoStoredComments != null) {
+                for (StoredComment storedComment : photoStoredComments.values()) {
+                    staleCommentRowIds.add(storedComment.rowId);
+                }
+            }
+        }
+
+        rowsWritten += deleteRowsById(conn, "photo_glance", "rowid", staleGlanceRowIds);
+        rowsWritten += deleteRowsById(conn, "photo_comment", "rowid", staleCommentRowIds);
+
+        // Delete any old rows in the database that are not in photos
+        ArrayList<Long> stalePhotoRowIds = new ArrayList<Long>();
+        ArrayList<String> removedPhotoIds = new ArrayList<String>();
+        for (Map.Entry<String, StoredPhoto> entry : storedPhotos.entrySet()) {
+            stalePhotoRowIds.add(entry.getValue().rowId);
+            removedPhotoIds.add(entry.getKey());
+        }
+        rowsWritten += deleteRowsById(conn, "photo", "rowid", stalePhotoRowIds);
+
+        // The removed photos may still be in other albums, together with their glances and
+        // comments. Only the ones that are now in no album at all are deleted
+        rowsWritten += deleteOrphanedPhotoRows(conn, "photo_glance", removedPhotoIds);
+        rowsWritten += deleteOrphanedPhotoRows(conn, "photo_comment", removedPhotoIds);
+
+        return rowsWritten;
+    }
+
+    /**
+     * @param storedGlances The glances of the photo that are currently stored in the database, or
+     *                      null if there are none. The glances that are still in glances are
+     *                      removed from it, and the remaining ones must be deleted by the caller
+     * @param rowValues A buffer that is reset and reused for every row that is written
+     * @return The number of rows that were written
+     */
+    private static int savePhotoGlances(SQLConnection conn, String photoId, List<AlbumPhotoGlance> glances, HashMap<Long, StoredGlance> storedGlances, HashMap<Long, AlbumUser> allUsers, SQLValues rowValues) throws SQLException {
+        int rowsWritten = 0;
+
+        int glanceNum = 0;
+        for (AlbumPhotoGlance glance : glances) {
+            AlbumUser glanceAuthor = glance.getAuthor();
+
+            StoredGlance storedGlance = storedGlances == null ? null : storedGlances.remove(glanceAuthor.getMemberId());
+            if (storedGlance == null
+                    || storedGlance.num != glanceNum
+                    || !stringsEqual(storedGlance.emoticonName, glance.getEmoticonName())) {
+                conn.update(""
+                                + "INSERT OR REPLACE INTO photo_glance (photo_id, author_id, emoticon_name, num)"
+                                + " VALUES (?, ?, ?, ?)",
+                        rowValues.reset()
+                                .add(photoId)
+                                .add(glanceAuthor.getMemberId())
+                                .add(glance.getEmoticonName())
+                                .add(glanceNum));
+                rowsWritten++;
+            }
+            glanceNum++;
+
+            allUsers.put(glanceAuthor.getMemberId(), glanceAuthor);
         }
 
-        // Delete any old rows in the database that are not in memberIds:
+        return rowsWritten;
+    }
+
+    /**
+     * @param storedComments The comments of the photo that are currently stored in the database,
+     *                       or null if there are none. The comments that are still in comments
+     *                       are removed from it, and the remaining ones must be deleted by the
+     *                       caller
+     * @param rowValues A buffer that is reset and reused for every row that is written
+     * @return The number of rows that were written
+     */
+    private static int savePhotoComments(SQLConnection conn, String photoId, List<AlbumPhotoComment> comments, LongPairHashMap<StoredComment> storedComments, HashMap<Long, AlbumUser> allUsers, SQLValues rowValues) throws SQLException {
+        int rowsWritten = 0;
+
+        for (AlbumPhotoComment comment : comments) {
+            long authorId = comment.getAuthor().getMemberId();
+            long dateCreated = dateTimeToSQLValue(comment.getDateCreated());
+
+            StoredComment storedComment = storedComments == null ? null : storedComments.remove(authorId, comment.getClientMsgId());
+            if (storedComment == null
+                    || storedComment.dateCreated != dateCreated
+                    || !stringsEqual(storedComment.commentText, comment.getCommentText())) {
+                conn.update(""
+                                + "INSERT OR REPLACE INTO photo_comment (photo_id, date_created, author_id, client_msg_id, comment_text)"
+                                + " VALUES (?, ?, ?, ?, ?)",
+                        rowValues.reset()
+                                .add(photoId)
+                                .add(dateCreated)
+                                .add(authorId)
+                                .add(comment.getClientMsgId())
+                                .add(comment.getCommentText()));
+                rowsWritten++;
+            }
+
+            allUsers.put(authorId, comment.getAuthor());
+        }
+
+        return rowsWritten;
+    }
+
+    /**
+     * @return The number of rows that were written or deleted
+     */
+    private static int saveAlbumMembers(SQLConnection conn, long albumId, List<AlbumMember> albumMembers, HashMap<Long, AlbumUser> allUsers) throws SQLException {
+        int rowsWritten = 0;
+
+        HashMap<Long, StoredMember> storedMembers = new HashMap<Long, StoredMember>();
         SQLCursor membersCursor = conn.query(""
-                        + "SELECT user_id"
+                        + "SELECT user_id, album_admin, added_by_user_id, rowid"
                         + " FROM album_member"
                         + " WHERE album_member.album_id=?",
                 SQLValues.create()
                         .add(albumId));
         try {
             while (membersCursor.moveToNext()) {
-                long id = membersCursor.getLong(0);
-                if (!memberIds.contains(id)) {
-                    conn.update(""
-                                    + "DELETE FROM album_member"
-                                    + " WHERE album_member.album_id=? AND user_id=?",
-                            SQLValues.create()
-                                    .add(albumId)
-                                    .add(id));
-                }
+                StoredMember storedMember = new StoredMember();
+                storedMember.albumAdmin = membersCursor.getInt(1) != 0;
+                storedMember.addedByUserId = membersCursor.getLong(2);
+                storedMember.rowId = membersCursor.getLong(3);
+                storedMembers.put(membersCursor.getLong(0), storedMember);
             }
         } finally {
             membersCursor.close();
         }
+
+        SQLValues rowValues = SQLValues.create();
+
+        for (AlbumMember member : albumMembers) {
+            AlbumUser user = member.getUser();
+
+            StoredMember storedMember = storedMembers.remove(user.getMemberId());
+            if (storedMember == null
+                    || storedMember.albumAdmin != member.getAlbumAdmin()
+                    || storedMember.addedByUserId != member.getAddedByUserId()) {
+                conn.update(""
+                                + "INSERT OR REPLACE INTO album_member (album_id, user_id, album_admin, added_by_user_id)"
+                                + " VALUES (?, ?, ?, ?)",
+                        rowValues.reset()
+                                .add(albumId)
+                                .add(user.getMemberId())
+                                .add(member.getAlbumAdmin() ? 1 : 0)
+                                .add(member.getAddedByUserId()));
+                rowsWritten++;
+            }
+
+            allUsers.put(user.getMemberId(), user);
+        }
+
+        // Delete any old rows in the database that are not in albumMembers:
+        ArrayList<Long> staleRowIds = new ArrayList<Long>();
+        for (StoredMember storedMember : storedMembers.values()) {
+            staleRowIds.add(storedMember.rowId);
+        }
+        rowsWritten += deleteRowsById(conn, "album_member", "rowid", staleRowIds);
+
+        return rowsWritten;
     }
 
     /**
+     * Compares the new albumContents with what is currently stored in the database, and only
+     * writes the rows that were inserted, changed or deleted
+     *
      * @param albumId
      * @param albumContents Must contain only photos of type AlbumServerPhoto, no AlbumUploadingPhotos allowed!
+     * @return The number of rows that were written or deleted
      */
-    public synchronized void setAlbumContents(long albumId, AlbumContents albumContents) throws SQLException {
-        mConn.beginTransaction();
+    public int setAlbumContents(long albumId, AlbumContents albumContents) throws SQLException {
+        beginWrite();
         try {
-            saveUserToDB(mConn, albumContents.getCreator());
+            int rowsWritten = 0;
+            HashMap<Long, AlbumUser> writtenUsers = new HashMap<Long, AlbumUser>();
+            mConn.beginTransaction();
+            try {
+                // Must be read before anything is written, since the query finds the users through
+                // the existing album rows. These are the committed values, so they can go straight
+                // into the cache
+                rememberPersistedUsers(readStoredAlbumUsers(mConn, albumId));
+
+                rowsWritten += setAlbumRow(mConn, albumContents);
+
+                // Will be filled with all the users from:
+                //  - The creator of the album
+                //  - The authors of all the photos
+                //  - The album member list
+                // And then will be written to the DB
+                HashMap<Long, AlbumUser> allUsers = new HashMap<Long, AlbumUser>();
+                allUsers.put(albumContents.getCreator().getMemberId(), albumContents.getCreator());
+
+                rowsWritten += saveAlbumPhotos(mConn, albumId, albumContents.getPhotos(), allUsers);
+                rowsWritten += saveAlbumMembers(mConn, albumId, albumContents.getMembers(), allUsers);
+
+                for (AlbumUser user : allUsers.values()) {
+                    if (saveUserIfChanged(user, writtenUsers)) {
+                        rowsWritten++;
+                    }
+                }
 
-            setAlbumRow(mConn, albumContents);
+                mConn.setTransactionSuccesful();
+            } finally {
+                mConn.endTransaction();
+            }
 
-            // Will be filled with all the users from:
-            //  - The authors of all the photos
-            //  - The album member list
-            // And then will be written to the DB
-            HashMap<Long, AlbumUser> allUsers = new HashMap<Long, AlbumUser>();
+            rememberPersistedUsers(writtenUsers);
 
-            saveAlbumPhotos(mConn, albumId, albumContents.getPhotos(), allUsers);
-            saveAlbumMembers(mConn, albumId, albumContents.getMembers(), allUsers);
+            return rowsWritten;
+        } finally {
+            endWrite();
+        }
+    }
 
-            for (Map.Entry<Long, AlbumUser> entry : allUsers.entrySet()) {
-                AlbumUser user = entry.getValue();
+    /**
+     * Writes the user, unless the same values are already stored in the database (according to
+     * mPersistedUsers) or were already written in the current transaction.
+     *
+     * Must be called while holding the write lock, inside of a transaction
+     *
+     * @param user
+     * @param writtenUsers The users that were written in the current transaction. The user is
+     *                     added to it if it is written. Must be passed to rememberPersistedUsers
+     *                     after the transaction is committed
+     * @return true if the user was written
+     * @throws SQLException
+     */
+    private boolean saveUserIfChanged(AlbumUser user, HashMap<Long, AlbumUser> writtenUsers) throws SQLException {
+        AlbumUser storedUser = writtenUsers.get(user.getMemberId());
+        if (storedUser == null) {
+            storedUser = mPersistedUsers.get(user.getMemberId());
+        }
 
-                saveUserToDB(mConn, user);
+        if (storedUser != null
+                && stringsEqual(storedUser.getMemberNickname(), user.getMemberNickname())
+                && stringsEqual(storedUser.getMemberAvatarUrl(), user.getMemberAvatarUrl())
+                && storedUser.getUserGlanceScore() == user.getUserGlanceScore()) {
+            synchronized (mStatsLock) {
+                mUserWritesSkipped++;
             }
+            return false;
+        }
 
-            mConn.setTransactionSuccesful();
-        } finally {
-            mConn.endTransaction();
+        saveUserToDB(mConn, user);
+        writtenUsers.put(user.getMemberId(), user);
+        synchronized (mStatsLock) {
+            mUserWritesPerformed++;
+        }
+        return true;
+    }
+
+    /**
+     * Must be called while holding the write lock, and only with values that are committed to the
+     * database. Values from a transaction that was rolled back must never be added, since then the
+     * database would never be corrected
+     */
+    private void rememberPersistedUsers(HashMap<Long, AlbumUser> users) {
+        for (Map.Entry<Long, AlbumUser> entry : users.entrySet()) {
+            mPersistedUsers.put(entry.getKey(), entry.getValue());
         }
     }
 
@@ -700,20 +1622,25 @@ public final class ShotVibeDB {
                         .add(user.getUserGlanceScore()));
     }
 
-    public synchronized void setAlbumLastAccess(long albumId, DateTime lastAccess) throws SQLException {
-        mConn.beginTransaction();
+    public void setAlbumLastAccess(long albumId, DateTime lastAccess) throws SQLException {
+        beginWrite();
         try {
-            mConn.update(""
-                    + "UPDATE album"
-                    + " SET num_new_photos=0, last_access=?"
-                    + " WHERE album_id=?",
-                    SQLValues.create()
-                            .add(dateTimeToSQLValue(lastAccess))
-                            .add(albumId));
+            mConn.beginTransaction();
+            try {
+                mConn.update(""
+                        + "UPDATE album"
+                        + " SET num_new_photos=0, last_access=?"
+                        + " WHERE album_id=?",
+                        SQLValues.create()
+                                .add(dateTimeToSQLValue(lastAccess))
+                                .add(albumId));
 
-            mConn.setTransactionSuccesful();
+                mConn.setTransactionSuccesful();
+            } finally {
+                mConn.endTransaction();
+            }
         } finally {
-            mConn.endTransaction();
+            endWrite();
         }
     }
 
@@ -721,105 +1648,120 @@ public final class ShotVibeDB {
      * @return Returns null if no result found
      * @throws SQLException
      */
-    public synchronized String getUserNickname(long userId) throws SQLException {
-        SQLCursor cursor = mConn.query(""
-                + "SELECT nickname"
-                + " FROM user"
-                + " WHERE user_id=?",
-                SQLValues.create()
-        .add(userId));
-
+    public String getUserNickname(long userId) throws SQLException {
+        SQLConnection conn = beginRead();
         try {
-            if (cursor.moveToNext()) {
-                String nickname = cursor.getString(0);
-                return nickname;
-            } else {
-                return null;
+            SQLCursor cursor = conn.query(""
+                    + "SELECT nickname"
+                    + " FROM user"
+                    + " WHERE user_id=?",
+                    SQLValues.create()
+            .add(userId));
+
+            try {
+                if (cursor.moveToNext()) {
+                    String nickname = cursor.getString(0);
+                    return nickname;
+                } else {
+                    return null;
+                }
+            } finally {
+                cursor.close();
             }
         } finally {
-            cursor.close();
+            endRead(conn);
         }
     }
 
 
-    public synchronized void addQueriedPhoneContacts(ArrayList<PhoneContactServerResult> contacts) throws SQLException {
-        mConn.beginTransaction();
+    public void addQueriedPhoneContacts(ArrayList<PhoneContactServerResult> contacts) throws SQLException {
+        beginWrite();
         try {
-            for (PhoneContactServerResult contact : contacts) {
-                if (contact.getPhoneType() == PhoneContactServerResult.PhoneType.MOBILE) {
-                    mConn.update(""
-                            + "INSERT OR REPLACE INTO phone_contact (phone_number, last_name, first_name, is_mobile, user_id, avatar_url, canonical_number, query_time)"
-                            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
-                            SQLValues.create()
-                                    .add(contact.getPhoneContact().getPhoneNumber())
-                                    .add(contact.getPhoneContact().getLastName())
-                                    .add(contact.getPhoneContact().getFirstName())
-                                    .add(1)
-                                    .addNullable(contact.getUserId())
-                                    .add(contact.getAvatarUrl())
-                                    .add(contact.getCanonicalPhoneNumber())
-                                    .add(dateTimeToSQLValue(contact.getQueryTime())));
-                } else {
-                    mConn.update(""
-                            + "INSERT OR REPLACE INTO phone_contact (phone_number, last_name, first_name, is_mobile, user_id, avatar_url, canonical_number, query_time)"
-                            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
-                            SQLValues.create()
-                                    .add(contact.getPhoneContact().getPhoneNumber())
-                                    .add(contact.getPhoneContact().getLastName())
-                                    .add(contact.getPhoneContact().getFirstName())
-                                    .add(0)
-                                    .addNull()
-                                    .addNull()
-                                    .addNull()
-                                    .add(dateTimeToSQLValue(contact.getQueryTime())));
+            mConn.beginTransaction();
+            try {
+                for (PhoneContactServerResult contact : contacts) {
+                    if (contact.getPhoneType() == PhoneContactServerResult.PhoneType.MOBILE) {
+                        mConn.update(""
+                                + "INSERT OR REPLACE INTO phone_contact (phone_number, last_name, first_name, is_mobile, user_id, avatar_url, canonical_number, query_time)"
+                                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                                SQLValues.create()
+                                        .add(contact.getPhoneContact().getPhoneNumber())
+                                        .add(contact.getPhoneContact().getLastName())
+                                        .add(contact.getPhoneContact().getFirstName())
+                                        .add(1)
+                                        .addNullable(contact.getUserId())
+                                        .add(contact.getAvatarUrl())
+                                        .add(contact.getCanonicalPhoneNumber())
+                                        .add(dateTimeToSQLValue(contact.getQueryTime())));
+                    } else {
+                        mConn.update(""
+                                + "INSERT OR REPLACE INTO phone_contact (phone_number, last_name, first_name, is_mobile, user_id, avatar_url, canonical_number, query_time)"
+                                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                                SQLValues.create()
+                                        .add(contact.getPhoneContact().getPhoneNumber())
+                                        .add(contact.getPhoneContact().getLastName())
+                                        .add(contact.getPhoneContact().getFirstName())
+                                        .add(0)
+                                        .addNull()
+                                        .addNull()
+                                        .addNull()
+                                        .add(dateTimeToSQLValue(contact.getQueryTime())));
+                    }
                 }
+                mConn.setTransactionSuccesful();
+            } finally {
+                mConn.endTransaction();
             }
-            mConn.setTransactionSuccesful();
         } finally {
-            mConn.endTransaction();
+            endWrite();
         }
     }
 
-    public synchronized HashMap<PhoneContact, PhoneContactServerResult> getAllCachedPhoneContacts() throws SQLException {
-        SQLCursor cursor = mConn.query(""
-                + "SELECT phone_number, last_name, first_name, is_mobile, user_id, avatar_url, canonical_number, query_time"
-                + " FROM phone_contact");
-
+    public HashMap<PhoneContact, PhoneContactServerResult> getAllCachedPhoneContacts() throws SQLException {
+        SQLConnection conn = beginRead();
         try {
-            HashMap<PhoneContact, PhoneContactServerResult> results = new HashMap<PhoneContact, PhoneContactServerResult>();
-            while (cursor.moveToNext()) {
-                String phoneNumber = cursor.getString(0);
-                String lastName = cursor.getString(1);
-                String firstName = cursor.getString(2);
-                boolean isMobile = cursor.getInt(3) != 0;
-
-                DateTime queryTime = cursorGetDateTime(cursor, 7);
-
-                PhoneContact phoneContact = new PhoneContact(phoneNumber, lastName, firstName);
+            SQLCursor cursor = conn.query(""
+                    + "SELECT phone_number, last_name, first_name, is_mobile, user_id, avatar_url, canonical_number, query_time"
+                    + " FROM phone_contact");
 
-                PhoneContactServerResult serverResult;
-                if (isMobile) {
-                    Long userId;
-                    if (cursor.isNull(4)) {
-                        userId = null;
+            try {
+                HashMap<PhoneContact, PhoneContactServerResult> results = new HashMap<PhoneContact, PhoneContactServerResult>();
+                while (cursor.moveToNext()) {
+                    String phoneNumber = cursor.getString(0);
+                    String lastName = cursor.getString(1);
+                    String firstName = cursor.getString(2);
+                    boolean isMobile = cursor.getInt(3) != 0;
+
+                    DateTime queryTime = cursorGetDateTime(cursor, 7);
+
+                    PhoneContact phoneContact = new PhoneContact(phoneNumber, lastName, firstName);
+
+                    PhoneContactServerResult serverResult;
+                    if (isMobile) {
+                        Long userId;
+                        if (cursor.isNull(4)) {
+                            userId = null;
+                        } else {
+                            userId = cursor.getLong(4);
+                        }
+                        String avatarUrl = cursor.getString(5);
+                        String canonicalPhoneNumber = cursor.getString(6);
+                        serverResult = PhoneContactServerResult.createMobileResult(phoneContact, userId, avatarUrl, canonicalPhoneNumber, queryTime);
                     } else {
-                        userId = cursor.getLong(4);
-                    }
-                    String avatarUrl = cursor.getString(5);
-                    String canonicalPhoneNumber = cursor.getString(6);
-                    serverResult = PhoneContactServerResult.createMobileResult(phoneContact, userId, avatarUrl, canonicalPhoneNumber, queryTime);
-                } else {
-                    // TODO Arbitrarily specifying INVALID is not the cleanest. But the phone type
-                    // isn't currently used for anything (other than checking if MOBILE)
-                    PhoneContactServerResult.PhoneType phoneType = PhoneContactServerResult.PhoneType.INVALID;
+                        // TODO Arbitrarily specifying INVALID is not the cleanest. But the phone type
+                        // isn't currently used for anything (other than checking if MOBILE)
+                        PhoneContactServerResult.PhoneType phoneType = PhoneContactServerResult.PhoneType.INVALID;
 
-                    serverResult = PhoneContactServerResult.createNonMobileResult(phoneContact, phoneType, queryTime);
+                        serverResult = PhoneContactServerResult.createNonMobileResult(phoneContact, phoneType, queryTime);
+                    }
+                    results.put(phoneContact, serverResult);
                 }
-                results.put(phoneContact, serverResult);
+                return results;
+            } finally {
+                cursor.close();
             }
-            return results;
         } finally {
-            cursor.close();
+            endRead(conn);
         }
     }
 
@@ -0,0 +1,28 @@
+package com.shotvibe.shotvibelib;
+
+public final class ShotVibeDBMigrations {
+    static void upgradeFromVersion_11_to_12(SQLConnection conn) throws SQLException {
+        Log.d("ShotVibeDB", "Migrating DB from version 11 to 12");
+
+        // The single column indexes are replaced with composite indexes that match the filter
+        // and sort order of the queries in ShotVibeDB. Lookups by photo_album alone are already
+        // covered by the UNIQUE(photo_album, photo_id) index, and lookups of comments by
+        // photo_id alone by the UNIQUE(photo_id, author_id, client_msg_id) index
+        conn.update("DROP INDEX IF EXISTS photo_index");
+        conn.update("DROP INDEX IF EXISTS photo_num_index");
+        conn.update("DROP INDEX IF EXISTS photo_comment_index");
+        conn.update("DROP INDEX IF EXISTS photo_comment_date_created_index");
+
+        conn.update("CREATE INDEX IF NOT EXISTS photo_album_num_index ON photo(photo_album, num)");
+        conn.update("CREATE INDEX IF NOT EXISTS photo_glance_photo_num_index ON photo_glance(photo_id, num)");
+        conn.update("CREATE INDEX IF NOT EXISTS photo_comment_photo_date_created_index ON photo_comment(photo_id, date_created)");
+
+        // Needed to find out whether a photo is still in any album, when the glances and
+        // comments of removed photos are deleted
+        conn.update("CREATE INDEX IF NOT EXISTS photo_photo_id_index ON photo(photo_id)");
+    }
+
+    private ShotVibeDBMigrations() {
+        // Not used
+    }
+}
@@ -9,10 +9,22 @@
 @interface SLThreadUtil : NSObject {
 }
 
++ (void)setBackgroundPoolLimitsWithInt:(int)maxThreads
+                              withInt:(int)maxQueuedTasks
+                          withBoolean:(BOOL)runRejectedInCaller;
 + (void)runInBackgroundThreadWithSLThreadUtil_Runnable:(id<SLThreadUtil_Runnable>)runnable;
++ (void)runInBackgroundThreadDelayedWithSLThreadUtil_Runnable:(id<SLThreadUtil_Runnable>)runnable
+                                                      withInt:(int)delayMillis;
++ (int)getBackgroundActiveCount;
++ (int)getBackgroundQueuedCount;
++ (long long int)getBackgroundCompletedCount;
++ (long long int)getBackgroundRejectedCount;
 + (void)runInMainThreadWithSLThreadUtil_Runnable:(id<SLThreadUtil_Runnable>)runnable;
++ (void)runInMainThreadDelayedWithSLThreadUtil_Runnable:(id<SLThreadUtil_Runnable>)runnable
+                                                withInt:(int)delayMillis;
 + (BOOL)isMainThread;
 + (id<SLThreadUtil_Executor>)createSingleThreadExecutor;
++ (int)getNumberOfProcessors;
 + (void)sleepWithInt:(int)milliseconds;
 - (id)init;
 @end
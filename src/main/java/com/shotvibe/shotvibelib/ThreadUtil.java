@@ -5,22 +5,186 @@ import android.os.Looper;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class ThreadUtil {
     public interface Runnable {
         void run();
     }
 
+    public static final int DEFAULT_BACKGROUND_MAX_THREADS = 8;
+    public static final int DEFAULT_BACKGROUND_MAX_QUEUED_TASKS = 128;
+
+    private static final long BACKGROUND_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private static final Object sBackgroundPoolLock = new Object();
+    private static ThreadPoolExecutor sBackgroundPool = null;
+    private static int sBackgroundMaxThreads = DEFAULT_BACKGROUND_MAX_THREADS;
+    private static int sBackgroundMaxQueuedTasks = DEFAULT_BACKGROUND_MAX_QUEUED_TASKS;
+    private static boolean sBackgroundRunRejectedInCaller = false;
+    private static final AtomicLong sBackgroundRejectedCount = new AtomicLong();
+    private static final AtomicLong sBackgroundCompletedCount = new AtomicLong();
+    private static final AtomicInteger sBackgroundThreadNum = new AtomicInteger();
+
+    // Only waits for the delays of runInBackgroundThreadDelayed, the tasks themselves run in the
+    // background pool
+    private static ScheduledThreadPoolExecutor sDelayScheduler = null;
+
+    /**
+     * Configures the shared pool of threads that is used by runInBackgroundThread. Tasks that are
+     * already queued in the old pool still run.
+     *
+     * @param maxThreads The maximum number of pool threads. Idle threads are stopped after a
+     *                   while
+     * @param maxQueuedTasks The maximum number of tasks that may wait for a free pool thread
+     * @param runRejectedInCaller What to do with a task when the queue is full: if true then it
+     *                            runs synchronously in the calling thread, otherwise it runs in
+     *                            a new dedicated thread
+     */
+    public static void setBackgroundPoolLimits(int maxThreads, int maxQueuedTasks, boolean runRejectedInCaller) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be at least 1: " + maxThreads);
+        }
+        if (maxQueuedTasks < 1) {
+            throw new IllegalArgumentException("maxQueuedTasks must be at least 1: " + maxQueuedTasks);
+        }
+
+        ThreadPoolExecutor oldPool;
+        synchronized (sBackgroundPoolLock) {
+            sBackgroundMaxThreads = maxThreads;
+            sBackgroundMaxQueuedTasks = maxQueuedTasks;
+            sBackgroundRunRejectedInCaller = runRejectedInCaller;
+            oldPool = sBackgroundPool;
+            sBackgroundPool = null;
+        }
+
+        if (oldPool != null) {
+            oldPool.shutdown();
+        }
+    }
+
+    private static ThreadPoolExecutor getBackgroundPool() {
+        synchronized (sBackgroundPoolLock) {
+            if (sBackgroundPool == null) {
+                final boolean runRejectedInCaller = sBackgroundRunRejectedInCaller;
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                        sBackgroundMaxThreads,
+                        sBackgroundMaxThreads,
+                        BACKGROUND_THREAD_KEEP_ALIVE_SECONDS,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<java.lang.Runnable>(sBackgroundMaxQueuedTasks),
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(java.lang.Runnable r) {
+                                return new Thread(r, "ShotVibeBackground-" + sBackgroundThreadNum.incrementAndGet());
+                            }
+                        },
+                        new RejectedExecutionHandler() {
+                            @Override
+                            public void rejectedExecution(java.lang.Runnable r, ThreadPoolExecutor executor) {
+                                sBackgroundRejectedCount.incrementAndGet();
+                                if (runRejectedInCaller) {
+                                    r.run();
+                                } else {
+                                    new Thread(r, "ShotVibeBackground-overflow").start();
+                                }
+                            }
+                        });
+                pool.allowCoreThreadTimeOut(true);
+                sBackgroundPool = pool;
+            }
+            return sBackgroundPool;
+        }
+    }
+
+    /**
+     * Runs the runnable in the shared pool of background threads, see setBackgroundPoolLimits.
+     *
+     * The runnable should not block for long periods of time (such as running an endless loop),
+     * since it occupies a pool thread while it runs. Use createSingleThreadExecutor for that
+     */
     public static void runInBackgroundThread(Runnable runnable) {
         final Runnable finalRunnable = runnable;
-        Thread backgroundThread = new Thread(new java.lang.Runnable() {
+        getBackgroundPool().execute(new java.lang.Runnable() {
             @Override
             public void run() {
-                finalRunnable.run();
+                try {
+                    finalRunnable.run();
+                } finally {
+                    sBackgroundCompletedCount.incrementAndGet();
+                }
             }
         });
+    }
+
+    /**
+     * Runs the runnable in the shared pool of background threads, after at least delayMillis
+     * milliseconds. No thread is occupied while waiting, so this is the way for a task to retry
+     * itself later, instead of sleeping in a pool thread
+     */
+    public static void runInBackgroundThreadDelayed(Runnable runnable, int delayMillis) {
+        final Runnable finalRunnable = runnable;
+        ScheduledThreadPoolExecutor scheduler;
+        synchronized (sBackgroundPoolLock) {
+            if (sDelayScheduler == null) {
+                sDelayScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(java.lang.Runnable r) {
+                        Thread thread = new Thread(r, "ShotVibeBackground-delay");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            scheduler = sDelayScheduler;
+        }
+
+        scheduler.schedule(new java.lang.Runnable() {
+            @Override
+            public void run() {
+                runInBackgroundThread(finalRunnable);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The number of background threads that are currently running a task
+     */
+    public static int getBackgroundActiveCount() {
+        synchronized (sBackgroundPoolLock) {
+            return sBackgroundPool == null ? 0 : sBackgroundPool.getActiveCount();
+        }
+    }
+
+    /**
+     * @return The number of background tasks that are waiting for a free thread
+     */
+    public static int getBackgroundQueuedCount() {
+        synchronized (sBackgroundPoolLock) {
+            return sBackgroundPool == null ? 0 : sBackgroundPool.getQueue().size();
+        }
+    }
 
-        backgroundThread.start();
+    /**
+     * @return The total number of background tasks that have finished running
+     */
+    public static long getBackgroundCompletedCount() {
+        return sBackgroundCompletedCount.get();
+    }
+
+    /**
+     * @return The total number of background tasks that didn't fit in the queue and were handled
+     * according to the rejection policy
+     */
+    public static long getBackgroundRejectedCount() {
+        return sBackgroundRejectedCount.get();
     }
 
     public static void runInMainThread(Runnable runnable) {
@@ -34,6 +198,20 @@ public final class ThreadUtil {
         });
     }
 
+    /**
+     * Runs the runnable in the main thread, after at least delayMillis milliseconds
+     */
+    public static void runInMainThreadDelayed(Runnable runnable, int delayMillis) {
+        final Runnable finalRunnable = runnable;
+        Handler handler = new Handler(Looper.getMainLooper());
+        handler.postDelayed(new java.lang.Runnable() {
+            @Override
+            public void run() {
+                finalRunnable.run();
+            }
+        }, delayMillis);
+    }
+
     public static boolean isMainThread() {
         return Thread.currentThread() == Looper.getMainLooper().getThread();
     }
@@ -57,6 +235,13 @@ public final class ThreadUtil {
         };
     }
 
+    /**
+     * @return The number of processor cores that are available to the app
+     */
+    public static int getNumberOfProcessors() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
     public static void sleep(int milliseconds) {
         try {
             Thread.sleep(milliseconds);
@@ -1,5 +1,11 @@
 #include "ThreadUtil.h"
 
+#include <stdatomic.h>
+
+static atomic_int backgroundActiveCount_ = 0;
+static atomic_int backgroundQueuedCount_ = 0;
+static atomic_llong backgroundCompletedCount_ = 0;
+
 @interface IosExecutor : NSObject <SLThreadUtil_Executor>
 
 @end
@@ -35,15 +41,63 @@
 @implementation SLThreadUtil
 
 
++ (void)setBackgroundPoolLimitsWithInt:(int)maxThreads
+                              withInt:(int)maxQueuedTasks
+                          withBoolean:(BOOL)runRejectedInCaller
+{
+    // GCD already manages a bounded pool of threads for the global queues, so there is nothing
+    // to configure. Tasks are never rejected
+}
+
+
 + (void)runInBackgroundThreadWithSLThreadUtil_Runnable:(id<SLThreadUtil_Runnable>)runnable
 {
+    atomic_fetch_add(&backgroundQueuedCount_, 1);
     dispatch_async(dispatch_get_global_queue(DISPATCH_QUEUE_PRIORITY_BACKGROUND, 0), ^{
+        atomic_fetch_sub(&backgroundQueuedCount_, 1);
+        atomic_fetch_add(&backgroundActiveCount_, 1);
         // TODO Maybe also catch any exceptions
         [runnable run];
+        atomic_fetch_sub(&backgroundActiveCount_, 1);
+        atomic_fetch_add(&backgroundCompletedCount_, 1);
     });
 }
 
 
++ (void)runInBackgroundThreadDelayedWithSLThreadUtil_Runnable:(id<SLThreadUtil_Runnable>)runnable
+                                                      withInt:(int)delayMillis
+{
+    dispatch_time_t when = dispatch_time(DISPATCH_TIME_NOW, (int64_t)delayMillis * NSEC_PER_MSEC);
+    dispatch_after(when, dispatch_get_global_queue(DISPATCH_QUEUE_PRIORITY_BACKGROUND, 0), ^{
+        [SLThreadUtil runInBackgroundThreadWithSLThreadUtil_Runnable:runnable];
+    });
+}
+
+
++ (int)getBackgroundActiveCount
+{
+    return atomic_load(&backgroundActiveCount_);
+}
+
+
++ (int)getBackgroundQueuedCount
+{
+    return atomic_load(&backgroundQueuedCount_);
+}
+
+
++ (long long int)getBackgroundCompletedCount
+{
+    return atomic_load(&backgroundCompletedCount_);
+}
+
+
++ (long long int)getBackgroundRejectedCount
+{
+    return 0;
+}
+
+
 + (void)runInMainThreadWithSLThreadUtil_Runnable:(id<SLThreadUtil_Runnable>)runnable
 {
     dispatch_async(dispatch_get_main_queue(), ^{
@@ -52,6 +106,16 @@
 }
 
 
++ (void)runInMainThreadDelayedWithSLThreadUtil_Runnable:(id<SLThreadUtil_Runnable>)runnable
+                                                withInt:(int)delayMillis
+{
+    dispatch_time_t when = dispatch_time(DISPATCH_TIME_NOW, (int64_t)delayMillis * NSEC_PER_MSEC);
+    dispatch_after(when, dispatch_get_main_queue(), ^{
+        [runnable run];
+    });
+}
+
+
 + (BOOL)isMainThread
 {
     return [NSThread isMainThread];
@@ -64,6 +128,12 @@
 }
 
 
++ (int)getNumberOfProcessors
+{
+    return (int)[[NSProcessInfo processInfo] activeProcessorCount];
+}
+
+
 + (void)sleepWithInt:(int)milliseconds
 {
     double time = (double)milliseconds / 1000.0;
@@ -0,0 +1,282 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * Chooses how many for-album uploads run at the same time, and how many processed photos
+ * UploadManagerImpl should keep ready ahead of the uploads (the "process buffer").
+ *
+ * The number of concurrent uploads is found by hill climbing on the observed upload throughput:
+ * every control interval it keeps moving in the same direction while the throughput improves, and
+ * turns around when the throughput drops. The limit is only adjusted while it is actually
+ * reached, since otherwise the throughput says nothing about it.
+ *
+ * The limit is only applied while the app is in the foreground, which is assumed until the
+ * platform reports otherwise (see UploadSystemDirector.setAppInForeground). In the background all
+ * of the ready photos are handed to the OS, which then paces the uploads by itself.
+ *
+ * The process buffer is one more than the number of concurrent uploads (so that a processed photo
+ * is ready whenever an upload finishes), and is doubled when the uploads finish photos faster
+ * than they are processed.
+ *
+ * This class is thread safe
+ */
+public class UploadConcurrencyController {
+    public static final int DEFAULT_MIN_CONCURRENT_UPLOADS = 1;
+    public static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 6;
+
+    // The same as the old fixed values of 2 concurrent uploads and a buffer of 3
+    private static final int INITIAL_CONCURRENT_UPLOADS = 2;
+
+    private static final int MIN_PROCESS_BUFFER = 2;
+    private static final int MAX_PROCESS_BUFFER = 12;
+
+    private static final long CONTROL_INTERVAL_NANOS = 2000L * 1000L * 1000L;
+
+    // A change in throughput that is smaller than this fraction is treated as noise
+    private static final double THROUGHPUT_TOLERANCE = 0.05;
+
+    // The number of control intervals without a significant change in throughput after which
+    // another step is tried anyway
+    private static final int PROBE_AFTER_STABLE_INTERVALS = 5;
+
+    // The weight of the newest sample in the smoothed rates
+    private static final double SMOOTHING = 0.5;
+
+    public UploadConcurrencyController() {
+        this(DEFAULT_MIN_CONCURRENT_UPLOADS, DEFAULT_MAX_CONCURRENT_UPLOADS);
+    }
+
+    public UploadConcurrencyController(int minConcurrentUploads, int maxConcurrentUploads) {
+        if (minConcurrentUploads < 1) {
+            throw new IllegalArgumentException("minConcurrentUploads must be at least 1: " + minConcurrentUploads);
+        }
+        if (maxConcurrentUploads < minConcurrentUploads) {
+            throw new IllegalArgumentException("maxConcurrentUploads cannot be less than minConcurrentUploads: " + maxConcurrentUploads);
+        }
+
+        mMinConcurrentUploads = minConcurrentUploads;
+        mMaxConcurrentUploads = maxConcurrentUploads;
+        mConcurrentUploads = Math.max(minConcurrentUploads, Math.min(INITIAL_CONCURRENT_UPLOADS, maxConcurrentUploads));
+        mProcessBuffer = clampProcessBuffer(mConcurrentUploads + 1);
+
+        mMinChosenConcurrentUploads = mConcurrentUploads;
+        mMaxChosenConcurrentUploads = mConcurrentUploads;
+        mMaxChosenProcessBuffer = mProcessBuffer;
+    }
+
+    /**
+     * Should be called from BackgroundUploadSession.Listener.onTaskUploadProgress
+     *
+     * @param tmpFile Identifies the upload task
+     * @param bytesSent The total number of bytes that the task sent so far
+     * @param bytesTotal The size of the upload
+     */
+    public synchronized void reportUploadProgress(String tmpFile, long bytesSent, long bytesTotal) {
+        Long lastBytesSent = mTaskBytesSent.get(tmpFile);
+        long delta;
+        if (lastBytesSent == null || bytesSent < lastBytesSent) {
+            // A new task, or a task that was restarted
+            delta = bytesSent;
+        } else {
+            delta = bytesSent - lastBytesSent;
+        }
+        mTaskBytesSent.put(tmpFile, bytesSent);
+        mTaskBytesTotal.put(tmpFile, bytesTotal);
+
+        mIntervalBytes += delta;
+        mTotalBytes += delta;
+
+        long now = System.nanoTime();
+        if (!mIntervalStarted) {
+            mIntervalStarted = true;
+            mIntervalStart = now;
+            return;
+        }
+
+        long elapsed = now - mIntervalStart;
+        if (elapsed >= CONTROL_INTERVAL_NANOS) {
+            double throughput = (double) mIntervalBytes * 1e9 / (double) elapsed;
+            mIntervalStart = now;
+            mIntervalBytes = 0;
+            onIntervalCompleted(throughput);
+        }
+    }
+
+    /**
+     * Should be called when an upload task finished or was cancelled, whether or not it succeeded
+     */
+    public synchronized void reportUploadFinished(String tmpFile) {
+        mTaskBytesSent.remove(tmpFile);
+        Long bytesTotal = mTaskBytesTotal.remove(tmpFile);
+        if (bytesTotal != null && bytesTotal > 0) {
+            mPhotoBytes = smooth(mPhotoBytes, bytesTotal);
+        }
+    }
+
+    /**
+     * Should be called by UploadManagerImpl for every photo that was resized
+     *
+     * @param processNanos The time that the worker spent on the photo
+     * @param numWorkers The number of workers that process photos in parallel
+     */
+    public synchronized void reportPhotoProcessed(long processNanos, int numWorkers) {
+        if (processNanos <= 0 || numWorkers <= 0) {
+            return;
+        }
+
+        double photosPerSecond = 1e9 * numWorkers / (double) processNanos;
+        mProcessedPhotosPerSecond = smooth(mProcessedPhotosPerSecond, photosPerSecond);
+        updateProcessBuffer();
+    }
+
+    /**
+     * @return The maximum number of for-album uploads that should run at the same time
+     */
+    public synchronized int getMaxConcurrentUploads() {
+        return mConcurrentUploads;
+    }
+
+    /**
+     * @return The number of processed photos that should be ready for uploading before more save
+     * jobs are done
+     */
+    public synchronized int getProcessBuffer() {
+        return mProcessBuffer;
+    }
+
+    /**
+     * @return The smoothed upload throughput of all the for-album uploads together, in bytes per
+     * second. 0 until the first control interval completed
+     */
+    public synchronized double getUploadBytesPerSecond() {
+        return mUploadBytesPerSecond;
+    }
+
+    /**
+     * @return The smoothed rate at which photos are processed, or 0 if none were processed yet
+     */
+    public synchronized double getProcessedPhotosPerSecond() {
+        return mProcessedPhotosPerSecond;
+    }
+
+    public synchronized long getTotalBytesUploaded() {
+        return mTotalBytes;
+    }
+
+    /**
+     * @return The number of times that the number of concurrent uploads was changed
+     */
+    public synchronized int getAdjustmentCount() {
+        return mAdjustmentCount;
+    }
+
+    public synchronized int getMinChosenConcurrentUploads() {
+        return mMinChosenConcurrentUploads;
+    }
+
+    public synchronized int getMaxChosenConcurrentUploads() {
+        return mMaxChosenConcurrentUploads;
+    }
+
+    public synchronized int getMaxChosenProcessBuffer() {
+        return mMaxChosenProcessBuffer;
+    }
+
+    private void onIntervalCompleted(double throughput) {
+        double previous = mUploadBytesPerSecond;
+        mUploadBytesPerSecond = smooth(mUploadBytesPerSecond, throughput);
+
+        // While fewer uploads are running than allowed, the limit isn't what is holding back
+        // the throughput
+        boolean limitReached = mTaskBytesSent.size() >= mConcurrentUploads;
+        if (limitReached && previous > 0) {
+            if (mUploadBytesPerSecond < previous * (1.0 - THROUGHPUT_TOLERANCE)) {
+                // The last step made things worse
+                mDirection = -mDirection;
+                step();
+            } else if (mUploadBytesPerSecond > previous * (1.0 + THROUGHPUT_TOLERANCE)) {
+                step();
+            } else if (++mStableIntervals >= PROBE_AFTER_STABLE_INTERVALS) {
+                // Nothing changed for a while, so probe whether another step helps
+                step();
+            }
+        }
+
+        updateProcessBuffer();
+    }
+
+    private void step() {
+        mStableIntervals = 0;
+
+        int next = Math.max(mMinConcurrentUploads, Math.min(mConcurrentUploads + mDirection, mMaxConcurrentUploads));
+        if (next == mConcurrentUploads) {
+            // Reached a bound, so try the other way next time
+            mDirection = -mDirection;
+            return;
+        }
+
+        mConcurrentUploads = next;
+        mAdjustmentCount++;
+        if (next < mMinChosenConcurrentUploads) {
+            mMinChosenConcurrentUploads = next;
+        }
+        if (next > mMaxChosenConcurrentUploads) {
+            mMaxChosenConcurrentUploads = next;
+        }
+        Log.d("UploadConcurrencyController", "concurrent uploads: " + next + " (" + (long) mUploadBytesPerSecond + " bytes/s)");
+    }
+
+    private void updateProcessBuffer() {
+        int buffer = mConcurrentUploads + 1;
+
+        if (mPhotoBytes > 0 && mProcessedPhotosPerSecond > 0) {
+            double uploadedPhotosPerSecond = mUploadBytesPerSecond / mPhotoBytes;
+            if (uploadedPhotosPerSecond > mProcessedPhotosPerSecond) {
+                // Processing can't keep up, so it gets priority over saving for longer
+                buffer = 2 * mConcurrentUploads + 1;
+            }
+        }
+
+        mProcessBuffer = clampProcessBuffer(buffer);
+        if (mProcessBuffer > mMaxChosenProcessBuffer) {
+            mMaxChosenProcessBuffer = mProcessBuffer;
+        }
+    }
+
+    private static int clampProcessBuffer(int buffer) {
+        return Math.max(MIN_PROCESS_BUFFER, Math.min(buffer, MAX_PROCESS_BUFFER));
+    }
+
+    private static double smooth(double current, double sample) {
+        if (current <= 0) {
+            return sample;
+        }
+        return SMOOTHING * sample + (1.0 - SMOOTHING) * current;
+    }
+
+    private final int mMinConcurrentUploads;
+    private final int mMaxConcurrentUploads;
+
+    // All of the following must only be touched while holding the lock:
+    private int mConcurrentUploads;
+    private int mProcessBuffer;
+    private int mDirection = 1;
+    private int mStableIntervals = 0;
+
+    // The bytes sent so far and the size of every running upload task, by tmpFile
+    private final HashMap<String, Long> mTaskBytesSent = new HashMap<String, Long>();
+    private final HashMap<String, Long> mTaskBytesTotal = new HashMap<String, Long>();
+
+    private boolean mIntervalStarted = false;
+    private long mIntervalStart = 0;
+    private long mIntervalBytes = 0;
+    private long mTotalBytes = 0;
+
+    private double mUploadBytesPerSecond = 0;
+    private double mProcessedPhotosPerSecond = 0;
+    private double mPhotoBytes = 0;
+
+    private int mAdjustmentCount = 0;
+    private int mMinChosenConcurrentUploads;
+    private int mMaxChosenConcurrentUploads;
+    private int mMaxChosenProcessBuffer;
+}
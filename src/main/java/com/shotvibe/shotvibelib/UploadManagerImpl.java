@@ -10,8 +10,10 @@ public class UploadManagerImpl implements UploadManager {
             String uploadFilesDir,
             PhotoDownloadManager photoDownloadManager,
             BitmapProcessor bitmapProcessor,
+            boolean bitmapProcessorThreadSafe,
             List<UploadingPhoto> storedUploads,
-            BackgroundTaskManager backgroundTaskManager) {
+            BackgroundTaskManager backgroundTaskManager,
+            UploadConcurrencyController concurrencyController) {
         if (shotVibeAPI == null) {
             throw new IllegalArgumentException("shotVibeAPI cannot be null");
         }
@@ -27,6 +29,9 @@ public class UploadManagerImpl implements UploadManager {
         if (storedUploads == null) {
             throw new IllegalArgumentException("storedUploads cannot be null");
         }
+        if (concurrencyController == null) {
+            throw new IllegalArgumentException("concurrencyController cannot be null");
+        }
 
         mShotVibeAPI = shotVibeAPI;
         mUploadSystemDirector = uploadSystemDirector;
@@ -34,41 +39,65 @@ public class UploadManagerImpl implements UploadManager {
         mPhotoDownloadManager = photoDownloadManager;
         mBitmapProcessor = bitmapProcessor;
         mBackgroundTaskManager = backgroundTaskManager;
+        mConcurrencyController = concurrencyController;
 
         mListener = null;
 
+        mProgressBus = new UploadProgressBus(new UploadProgressBus.Target() {
+            @Override
+            public void onAlbumUploadProgress(long albumId) {
+                if (mListener != null) {
+                    mListener.refreshAlbum(albumId);
+                }
+            }
+        });
+
         mUploadingPhotos = new UploadingPhotosContainer();
 
         initFromStoredUploads(storedUploads);
 
-        ThreadUtil.runInBackgroundThread(new ThreadUtil.Runnable() {
+        // The job processing loops never end, so they get their own threads instead of
+        // permanently taking the shared background threads.
+        //
+        // Saving reads from the photo library and is mostly I/O, so a single worker keeps the
+        // save jobs in order. Resizing is CPU bound, so it gets a worker for each core, but only
+        // if the BitmapProcessor supports being called from several threads at the same time
+        ThreadUtil.createSingleThreadExecutor().execute(new ThreadUtil.Runnable() {
             @Override
             public void run() {
                 while (true) {
-                    processNextJob();
+                    processNextSaveJob();
                 }
             }
         });
 
+        mNumProcessWorkers = bitmapProcessorThreadSafe ? defaultNumProcessWorkers() : 1;
+        for (int i = 0; i < mNumProcessWorkers; ++i) {
+            ThreadUtil.createSingleThreadExecutor().execute(new ThreadUtil.Runnable() {
+                @Override
+                public void run() {
+                    while (true) {
+                        processNextProcessJob();
+                    }
+                }
+            });
+        }
+
         for (Long albumId : mUploadingPhotos.getAlbums()) {
             checkAndAddToAlbum(albumId);
         }
     }
 
-    public void reportUploadProgress(final long albumId, String tmpFile, double uploadProgress) {
+    public void reportUploadProgress(long albumId, String tmpFile, double uploadProgress) {
         AlbumUploadingPhoto albumUploadingPhoto;
         synchronized (mUploadingPhotos) {
             albumUploadingPhoto = mUploadingPhotos.findUploadingPhoto(albumId, tmpFile);
         }
         albumUploadingPhoto.setUploadProgress(uploadProgress);
-        ThreadUtil.runInMainThread(new ThreadUtil.Runnable() {
-            @Override
-            public void run() {
-                if (mListener != null) {
-                    mListener.refreshAlbum(albumId);
-                }
-            }
-        });
+
+        // Progress is reported much more often than it can be displayed, so the refreshes are
+        // coalesced
+        mProgressBus.postProgress(albumId);
     }
 
     public void reportUploadComplete(final long albumId, String tmpFile, String photoId) {
@@ -173,15 +202,32 @@ public class UploadManagerImpl implements UploadManager {
             tmpFiles.add(p.getTmpFile());
         }
 
-        AlbumContents newAlbumContents = null;
-        while (newAlbumContents == null) {
-            try {
-                Log.d("UploadSystem", "Adding photos to album...");
-                newAlbumContents = mShotVibeAPI.albumAddPhotos(albumId, photoIds);
-            } catch (APIException e) {
-                Log.d("UploadSystem", "Error Adding photos to album: " + e);
-                ThreadUtil.sleep(ADD_PHOTOS_ERROR_RETRY_TIME);
-            }
+        tryAddPhotosToAlbum(albumId, photos, photoIds, tmpFiles, addToAlbumBackgroundTask);
+    }
+
+    /**
+     * On failure this schedules itself to run again later, instead of sleeping in a background
+     * thread until the server can be reached
+     */
+    private void tryAddPhotosToAlbum(
+            final long albumId,
+            final ArrayList<AlbumUploadingPhoto> photos,
+            final ArrayList<String> photoIds,
+            final HashSet<String> tmpFiles,
+            final BackgroundTaskManager.BackgroundTask addToAlbumBackgroundTask) {
+        AlbumContents newAlbumContents;
+        try {
+            Log.d("UploadSystem", "Adding photos to album...");
+            newAlbumContents = mShotVibeAPI.albumAddPhotos(albumId, photoIds);
+        } catch (APIException e) {
+            Log.d("UploadSystem", "Error Adding photos to album: " + e);
+            ThreadUtil.runInBackgroundThreadDelayed(new ThreadUtil.Runnable() {
+                @Override
+                public void run() {
+                    tryAddPhotosToAlbum(albumId, photos, photoIds, tmpFiles, addToAlbumBackgroundTask);
+                }
+            }, ADD_PHOTOS_ERROR_RETRY_TIME);
+            return;
         }
         Log.d("UploadSystem", "Added photos to album");
 
@@ -225,7 +271,7 @@ public class UploadManagerImpl implements UploadManager {
 
                 if (photo.getUploadStrategy() == UploadingPhoto.UploadStrategy.Unknown) {
                     albumUploadingPhoto = AlbumUploadingPhoto.NewPreparingFiles(photo.getTmpFilename());
-                    mPhotoProcessJobQueue.add(new PhotoProcessJob(albumUploadingPhoto, photo.getAlbumId()));
+                    mPhotoProcessJobQueue.add(new PhotoProcessJob(albumUploadingPhoto, photo.getAlbumId(), nextHandOffSequence(photo.getAlbumId())));
 
                     startBackgroundActivity();
                 } else {
@@ -256,7 +302,17 @@ public class UploadManagerImpl implements UploadManager {
     private final PhotoDownloadManager mPhotoDownloadManager;
     private final BitmapProcessor mBitmapProcessor;
     private final BackgroundTaskManager mBackgroundTaskManager;
+    private final UploadConcurrencyController mConcurrencyController;
     private Listener mListener;
+    private final UploadProgressBus mProgressBus;
+
+    /**
+     * @return The bus that delivers the upload progress to the Listener. Can be used to configure
+     * the frame interval, and for its statistics
+     */
+    public UploadProgressBus getProgressBus() {
+        return mProgressBus;
+    }
 
     private final Object mBackgroundTaskLock = new Object();
     private BackgroundTaskManager.BackgroundTask mBackgroundTask = null;
@@ -355,15 +411,154 @@ public class UploadManagerImpl implements UploadManager {
     }
 
     private static class PhotoProcessJob {
-        public PhotoProcessJob(AlbumUploadingPhoto albumUploadingPhoto, long albumId) {
+        public PhotoProcessJob(AlbumUploadingPhoto albumUploadingPhoto, long albumId, long handOffSequence) {
             if (albumUploadingPhoto == null) {
                 throw new IllegalArgumentException("albumUploadingPhoto cannot be null");
             }
             this.AlbumUploadingPhoto = albumUploadingPhoto;
             this.AlbumId = albumId;
+            this.HandOffSequence = handOffSequence;
         }
         public final AlbumUploadingPhoto AlbumUploadingPhoto;
         public final long AlbumId;
+
+        // The position of the photo among the processed photos of the album, see AlbumHandOffQueue
+        public final long HandOffSequence;
+    }
+
+    /**
+     * The result of a PhotoProcessJob that is waiting for its turn to be handed off to the
+     * UploadSystemDirector
+     */
+    private static class ProcessedPhoto {
+        public ProcessedPhoto(PhotoProcessJob job, UploadingPhoto.UploadStrategy uploadStrategy) {
+            this.Job = job;
+            this.UploadStrategy = uploadStrategy;
+        }
+        public final PhotoProcessJob Job;
+
+        // null if the processing failed
+        public final UploadingPhoto.UploadStrategy UploadStrategy;
+    }
+
+    /**
+     * The process workers finish photos in any order, but the photos of an album are handed off
+     * for uploading in the same order that they were added
+     */
+    private static class AlbumHandOffQueue {
+        // The sequence number that the next PhotoProcessJob of the album will get
+        public long nextSequence = 0;
+
+        // The sequence number of the next photo that will be handed off
+        public long nextToHandOff = 0;
+
+        // Photos that finished before a photo that comes before them
+        public final HashMap<Long, ProcessedPhoto> waiting = new HashMap<Long, ProcessedPhoto>();
+    }
+
+    // The maximum number of resize workers. Every worker holds a full size decoded bitmap in
+    // memory while it works, so more workers than this risk running out of memory on phones
+    // with many cores
+    private static final int MAX_PROCESS_WORKERS = 3;
+
+    private static int defaultNumProcessWorkers() {
+        // One core is left for the save worker, the uploads and the UI
+        int workers = ThreadUtil.getNumberOfProcessors() - 1;
+        return Math.max(1, Math.min(workers, MAX_PROCESS_WORKERS));
+    }
+
+    private final int mNumProcessWorkers;
+
+    // When both are needed, mHandOffLock must be taken before mJobsConditionVar.
+    // initFromStoredUploads is the only exception, since it runs before the workers are started
+    private final Object mHandOffLock = new Object();
+
+    // Must be accessed only while holding mHandOffLock
+    private final HashMap<Long, AlbumHandOffQueue> mHandOffQueues = new HashMap<Long, AlbumHandOffQueue>();
+
+    private long nextHandOffSequence(long albumId) {
+        synchronized (mHandOffLock) {
+            AlbumHandOffQueue queue = mHandOffQueues.get(albumId);
+            if (queue == null) {
+                queue = new AlbumHandOffQueue();
+                mHandOffQueues.put(albumId, queue);
+            }
+            return queue.nextSequence++;
+        }
+    }
+
+    private final Object mStatsLock = new Object();
+
+    // Must be accessed only while holding mStatsLock:
+    private long mNumSaved = 0;
+    private long mSaveNanos = 0;
+    private long mNumProcessed = 0;
+    private long mProcessNanos = 0;
+    private long mNumHandedOff = 0;
+    private int mMaxHandOffBacklog = 0;
+
+    /**
+     * @return The number of resize/thumbnail workers. Always 1 unless the UploadManagerImpl was
+     * created with bitmapProcessorThreadSafe
+     */
+    public int getNumProcessWorkers() {
+        return mNumProcessWorkers;
+    }
+
+    /**
+     * @return The number of photos that finished the save stage
+     */
+    public long getSavedPhotoCount() {
+        synchronized (mStatsLock) {
+            return mNumSaved;
+        }
+    }
+
+    /**
+     * @return The total time spent in the save stage, in nanoseconds
+     */
+    public long getSaveStageNanos() {
+        synchronized (mStatsLock) {
+            return mSaveNanos;
+        }
+    }
+
+    /**
+     * @return The number of photos that finished the resize/thumbnail stage (including failures)
+     */
+    public long getProcessedPhotoCount() {
+        synchronized (mStatsLock) {
+            return mNumProcessed;
+        }
+    }
+
+    /**
+     * @return The total time spent by all the workers in the resize/thumbnail stage, in
+     * nanoseconds. Divide by getNumProcessWorkers for the wall time
+     */
+    public long getProcessStageNanos() {
+        synchronized (mStatsLock) {
+            return mProcessNanos;
+        }
+    }
+
+    /**
+     * @return The number of photos that were handed off to the UploadSystemDirector
+     */
+    public long getHandedOffPhotoCount() {
+        synchronized (mStatsLock) {
+            return mNumHandedOff;
+        }
+    }
+
+    /**
+     * @return The largest number of processed photos of a single album that had to wait for an
+     * earlier photo before they could be handed off
+     */
+    public int getMaxHandOffBacklog() {
+        synchronized (mStatsLock) {
+            return mMaxHandOffBacklog;
+        }
     }
 
     private final ConditionVar mJobsConditionVar = new ConditionVar();
@@ -416,67 +611,82 @@ public class UploadManagerImpl implements UploadManager {
             mJobsConditionVar.lock();
             try {
                 mPhotoSaveJobQueue.add(new PhotoSaveJob(albumUploadingPhoto, tmpFile, photoUploadRequest, albumId));
-                mJobsConditionVar.signal();
+                mJobsConditionVar.signalAll();
             } finally {
                 mJobsConditionVar.unlock();
             }
         }
     }
 
-    private void processNextJob() {
-        // We want to have at least this number of available photos processed and ready for
-        // uploading, before we do any more save jobs. Should be equal to the number
-        // of concurrent uploads + 1
-        final int PROCESS_BUFFER = 3;
+    private void processNextSaveJob() {
+        PhotoSaveJob photoSaveJob;
+
+        mJobsConditionVar.lock();
+        try {
+            // Saving is held back while we urgently need more process jobs handled due to a low
+            // buffer, so that the resize workers don't have to compete with it.
+            //
+            // We want to have at least the process buffer number of available photos processed
+            // and ready for uploading, before we do any more save jobs. It is chosen by the
+            // UploadConcurrencyController according to the number of concurrent uploads
+            while (mPhotoSaveJobQueue.isEmpty()
+                    || (mNumProcessedAndReady < mConcurrencyController.getProcessBuffer() && !mPhotoProcessJobQueue.isEmpty())) {
+                mJobsConditionVar.await();
+            }
 
-        PhotoSaveJob photoSaveJob = null;
-        PhotoProcessJob photoProcessJob = null;
+            photoSaveJob = mPhotoSaveJobQueue.get(0);
+            mPhotoSaveJobQueue.remove(0);
+        } finally {
+            mJobsConditionVar.unlock();
+        }
 
-        while (true) {
-            mJobsConditionVar.lock();
-            try {
-                // First priority is to handle the save jobs (but only if we don't urgently need
-                // more process jobs handled due to a low buffer)
-                if (!mPhotoSaveJobQueue.isEmpty() && (mNumProcessedAndReady >= PROCESS_BUFFER || mPhotoProcessJobQueue.isEmpty())) {
-                    photoSaveJob = mPhotoSaveJobQueue.get(0);
-                    mPhotoSaveJobQueue.remove(0);
-                    break;
-                }
+        processPhotoSaveJob(photoSaveJob);
+    }
 
-                // Otherwise, handle any process jobs
-                if (!mPhotoProcessJobQueue.isEmpty()) {
-                    photoProcessJob = mPhotoProcessJobQueue.get(0);
-                    mPhotoProcessJobQueue.remove(0);
-                    break;
-                }
+    private void processNextProcessJob() {
+        PhotoProcessJob photoProcessJob;
 
-                // No jobs at all available, wait for one to be added to a queue
+        mJobsConditionVar.lock();
+        try {
+            while (mPhotoProcessJobQueue.isEmpty()) {
                 mJobsConditionVar.await();
-            } finally {
-                mJobsConditionVar.unlock();
             }
-        }
 
-        if (photoSaveJob != null) {
-            processPhotoSaveJob(photoSaveJob);
-        } else if (photoProcessJob != null) {
-            processPhotoProcessJob(photoProcessJob);
-        } else {
-            throw new IllegalStateException("Impossible happened");
+            photoProcessJob = mPhotoProcessJobQueue.get(0);
+            mPhotoProcessJobQueue.remove(0);
+
+            // The save worker might be waiting for the process queue to drain
+            mJobsConditionVar.signalAll();
+        } finally {
+            mJobsConditionVar.unlock();
         }
+
+        processPhotoProcessJob(photoProcessJob);
     }
 
     private void processPhotoSaveJob(final PhotoSaveJob photoSaveJob) {
         Log.d("UploadManager", "saving file: " + photoSaveJob.TmpFile);
+        long startTime = System.nanoTime();
         photoSaveJob.PhotoUploadRequest.saveToFile(photoSaveJob.TmpFile);
+        long elapsed = System.nanoTime() - startTime;
         Log.d("UploadManager", "saved file: " + photoSaveJob.TmpFile);
 
+        synchronized (mStatsLock) {
+            mNumSaved++;
+            mSaveNanos += elapsed;
+        }
+
         photoSaveJob.AlbumUploadingPhoto.setPreparingFiles();
         mUploadSystemDirector.reportNewUploadingPhoto(photoSaveJob.AlbumId, photoSaveJob.TmpFile);
 
+        // There is only one save worker, so the sequence numbers of an album are assigned in the
+        // order that its photos were added
+        PhotoProcessJob photoProcessJob = new PhotoProcessJob(photoSaveJob.AlbumUploadingPhoto, photoSaveJob.AlbumId, nextHandOffSequence(photoSaveJob.AlbumId));
+
         mJobsConditionVar.lock();
         try {
-            mPhotoProcessJobQueue.add(new PhotoProcessJob(photoSaveJob.AlbumUploadingPhoto, photoSaveJob.AlbumId));
+            mPhotoProcessJobQueue.add(photoProcessJob);
+            mJobsConditionVar.signalAll();
         } finally {
             mJobsConditionVar.unlock();
         }
@@ -497,26 +707,78 @@ public class UploadManagerImpl implements UploadManager {
         final String thumbPath = tmpFile + UploadManager.THUMB_FILE_SUFFIX;
 
         Log.d("UploadManager", "processing file: " + tmpFile);
+        long startTime = System.nanoTime();
         BitmapProcessor.ResizedResult result = mBitmapProcessor.createResizedAndThumbnail(tmpFile, resizedPath, thumbPath);
-        if (!result.success) {
+        long elapsed = System.nanoTime() - startTime;
+
+        synchronized (mStatsLock) {
+            mNumProcessed++;
+            mProcessNanos += elapsed;
+        }
+        mConcurrencyController.reportPhotoProcessed(elapsed, mNumProcessWorkers);
+
+        UploadingPhoto.UploadStrategy uploadStrategy = null;
+        if (result.success) {
+            Log.d("UploadManager", "processed file: " + tmpFile);
+
+            boolean shouldUploadOriginalDirectly = shouldUploadOriginalDirectly(result.originalWidth, result.originalHeight, result.resizedWidth, result.resizedHeight);
+
+            uploadStrategy = shouldUploadOriginalDirectly
+                    ? UploadingPhoto.UploadStrategy.UploadOriginalDirectly
+                    : UploadingPhoto.UploadStrategy.UploadTwoStage;
+        } else {
             // TODO ! Uh oh...
             // Could be an invalid image file or something...
-            return;
+            // The photo must still take its turn, so that the photos after it are not held back
         }
-        Log.d("UploadManager", "processed file: " + tmpFile);
 
-        boolean shouldUploadOriginalDirectly = shouldUploadOriginalDirectly(result.originalWidth, result.originalHeight, result.resizedWidth, result.resizedHeight);
+        handOffProcessedPhoto(new ProcessedPhoto(photoProcessJob, uploadStrategy));
+    }
+
+    /**
+     * Hands off the photo to the UploadSystemDirector, together with any photos of the same album
+     * that were waiting for it. The hand-off is done while holding mHandOffLock, so that two
+     * workers can never hand off the photos of an album out of order
+     */
+    private void handOffProcessedPhoto(ProcessedPhoto processedPhoto) {
+        long albumId = processedPhoto.Job.AlbumId;
+        synchronized (mHandOffLock) {
+            AlbumHandOffQueue queue = mHandOffQueues.get(albumId);
+            queue.waiting.put(processedPhoto.Job.HandOffSequence, processedPhoto);
+
+            ProcessedPhoto next;
+            while ((next = queue.waiting.remove(queue.nextToHandOff)) != null) {
+                queue.nextToHandOff++;
+                if (next.UploadStrategy != null) {
+                    handOffToDirector(next);
+                }
+            }
+
+            int backlog = queue.waiting.size();
+            synchronized (mStatsLock) {
+                if (backlog > mMaxHandOffBacklog) {
+                    mMaxHandOffBacklog = backlog;
+                }
+            }
 
-        final UploadingPhoto.UploadStrategy uploadStrategy = shouldUploadOriginalDirectly
-                ? UploadingPhoto.UploadStrategy.UploadOriginalDirectly
-                : UploadingPhoto.UploadStrategy.UploadTwoStage;
+            if (queue.nextToHandOff == queue.nextSequence) {
+                mHandOffQueues.remove(albumId);
+            }
+        }
+    }
+
+    private void handOffToDirector(final ProcessedPhoto processedPhoto) {
+        processedPhoto.Job.AlbumUploadingPhoto.setUploading();
+        mUploadSystemDirector.reportUploadingPhotoReady(processedPhoto.Job.AlbumUploadingPhoto.getTmpFile(), processedPhoto.UploadStrategy);
 
-        photoProcessJob.AlbumUploadingPhoto.setUploading();
-        mUploadSystemDirector.reportUploadingPhotoReady(tmpFile, uploadStrategy);
+        synchronized (mStatsLock) {
+            mNumHandedOff++;
+        }
 
         mJobsConditionVar.lock();
         try {
             mNumProcessedAndReady++;
+            mJobsConditionVar.signalAll();
         } finally {
             mJobsConditionVar.unlock();
         }
@@ -525,7 +787,7 @@ public class UploadManagerImpl implements UploadManager {
             @Override
             public void run() {
                 if (mListener != null) {
-                    mListener.refreshAlbum(photoProcessJob.AlbumId);
+                    mListener.refreshAlbum(processedPhoto.Job.AlbumId);
                 }
             }
         });
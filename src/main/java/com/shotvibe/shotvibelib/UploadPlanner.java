@@ -0,0 +1,324 @@
+package com.shotvibe.shotvibelib;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Keeps the UploadPlan of the UploadSystemDirector up to date as the UploadingPhotos change,
+ * instead of computing it again from all of the photos after every change.
+ *
+ * The plan is the same as the one that the full computation gives:
+ *
+ * - While some photo is not yet AddedToAlbum, the plan is to upload (for album) all of the Queued
+ *   photos whose UploadStrategy is known, in order
+ * - Once all of the photos are AddedToAlbum, the plan is to upload the originals of all of them,
+ *   in order
+ * - Otherwise there is nothing to do
+ *
+ * Every photo must be reported here in the same order as it is added to the UploadingPhotoStore,
+ * and every change to it must be reported as well.
+ *
+ * Not thread safe
+ */
+public final class UploadPlanner {
+    public enum Phase {
+        /**
+         * There is nothing to upload
+         */
+        Idle,
+
+        /**
+         * Queued photos are uploaded so that they can be added to their album
+         */
+        ForAlbum,
+
+        /**
+         * All of the photos were added to their album, their originals are uploaded
+         */
+        Originals
+    }
+
+    public UploadPlanner() {
+    }
+
+    /**
+     * @param photos Added in order
+     */
+    public UploadPlanner(Iterable<UploadingPhoto> photos) {
+        for (UploadingPhoto photo : photos) {
+            add(photo);
+        }
+    }
+
+    /**
+     * Should be called for every photo that is added to the end of the UploadingPhotoStore
+     */
+    public void add(UploadingPhoto photo) {
+        if (photo == null) {
+            throw new IllegalArgumentException("photo cannot be null");
+        }
+        if (mNodes.containsKey(photo.getTmpFilename())) {
+            throw new IllegalArgumentException("photo already exists: " + photo.getTmpFilename());
+        }
+
+        Node node = new Node(photo.getTmpFilename(), mNextSequence++);
+        mNodes.put(node.tmpFile, node);
+
+        node.allPrev = mAllTail;
+        if (mAllTail != null) {
+            mAllTail.allNext = node;
+        } else {
+            mAllHead = node;
+        }
+        mAllTail = node;
+
+        setPhoto(node, photo);
+    }
+
+    /**
+     * Should be called whenever a photo is replaced in the UploadingPhotoStore
+     */
+    public void update(UploadingPhoto updatedPhoto) {
+        if (updatedPhoto == null) {
+            throw new IllegalArgumentException("updatedPhoto cannot be null");
+        }
+
+        Node node = mNodes.get(updatedPhoto.getTmpFilename());
+        if (node == null) {
+            throw new IllegalStateException("photo not found: " + updatedPhoto.getTmpFilename());
+        }
+
+        clearPhoto(node);
+        setPhoto(node, updatedPhoto);
+    }
+
+    /**
+     * Should be called whenever a photo is removed from the UploadingPhotoStore
+     */
+    public void remove(String tmpFile) {
+        Node node = mNodes.remove(tmpFile);
+        if (node == null) {
+            throw new IllegalStateException("photo not found: " + tmpFile);
+        }
+
+        clearPhoto(node);
+
+        if (node.allPrev != null) {
+            node.allPrev.allNext = node.allNext;
+        } else {
+            mAllHead = node.allNext;
+        }
+        if (node.allNext != null) {
+            node.allNext.allPrev = node.allPrev;
+        } else {
+            mAllTail = node.allPrev;
+        }
+    }
+
+    public Phase getPhase() {
+        if (mNodes.isEmpty()) {
+            return Phase.Idle;
+        }
+        if (mNumNotAddedToAlbum == 0) {
+            return Phase.Originals;
+        }
+        if (mNumReady > 0) {
+            return Phase.ForAlbum;
+        }
+        return Phase.Idle;
+    }
+
+    /**
+     * @return true if the photo is part of the current plan in the ForAlbum phase
+     */
+    public boolean isPlannedForAlbum(String tmpFile) {
+        if (getPhase() != Phase.ForAlbum) {
+            return false;
+        }
+        Node node = mNodes.get(tmpFile);
+        return node != null && node.forAlbum != null;
+    }
+
+    /**
+     * @return true if the photo is part of the current plan in the Originals phase
+     */
+    public boolean isPlannedOriginal(String tmpFile) {
+        return getPhase() == Phase.Originals && mNodes.containsKey(tmpFile);
+    }
+
+    /**
+     * The items of the ForAlbum phase, in order. Only the items that are actually visited are
+     * looked at, so a caller that stops early doesn't pay for the rest of the queue.
+     *
+     * The planner must not be modified while iterating
+     */
+    public Iterable<UploadSystemDirector.UploadPlan.ForAlbum> getForAlbumItems() {
+        return new Iterable<UploadSystemDirector.UploadPlan.ForAlbum>() {
+            @Override
+            public Iterator<UploadSystemDirector.UploadPlan.ForAlbum> iterator() {
+                return new Iterator<UploadSystemDirector.UploadPlan.ForAlbum>() {
+                    private Node mNext = getPhase() == Phase.ForAlbum ? mReadyHead : null;
+
+                    @Override
+                    public boolean hasNext() {
+                        return mNext != null;
+                    }
+
+                    @Override
+                    public UploadSystemDirector.UploadPlan.ForAlbum next() {
+                        if (mNext == null) {
+                            throw new NoSuchElementException();
+                        }
+                        UploadSystemDirector.UploadPlan.ForAlbum item = mNext.forAlbum;
+                        mNext = mNext.readyNext;
+                        return item;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return A new list with the items of the Originals phase, in order. Empty when not in the
+     * Originals phase
+     */
+    public ArrayList<UploadSystemDirector.UploadPlan.Original> getOriginals() {
+        ArrayList<UploadSystemDirector.UploadPlan.Original> result = new ArrayList<UploadSystemDirector.UploadPlan.Original>();
+        if (getPhase() != Phase.Originals) {
+            return result;
+        }
+        for (Node node = mAllHead; node != null; node = node.allNext) {
+            result.add(new UploadSystemDirector.UploadPlan.Original(node.tmpFile, node.photoId));
+        }
+        return result;
+    }
+
+    /**
+     * @return The complete current plan, or null if there is nothing to do
+     */
+    public UploadSystemDirector.UploadPlan getUploadPlan() {
+        switch (getPhase()) {
+            case ForAlbum:
+                ArrayList<UploadSystemDirector.UploadPlan.ForAlbum> uploadForAlbum = new ArrayList<UploadSystemDirector.UploadPlan.ForAlbum>(mNumReady);
+                for (UploadSystemDirector.UploadPlan.ForAlbum item : getForAlbumItems()) {
+                    uploadForAlbum.add(item);
+                }
+                return UploadSystemDirector.UploadPlan.CreateUploadPlanForAlbum(uploadForAlbum);
+            case Originals:
+                return UploadSystemDirector.UploadPlan.CreateUploadPlanOriginals(getOriginals());
+            default:
+                return null;
+        }
+    }
+
+    private void setPhoto(Node node, UploadingPhoto photo) {
+        node.addedToAlbum = photo.getUploadState() == UploadingPhoto.UploadState.AddedToAlbum;
+        if (node.addedToAlbum) {
+            node.photoId = photo.getPhotoId();
+        } else {
+            mNumNotAddedToAlbum++;
+        }
+
+        if (photo.getUploadState() == UploadingPhoto.UploadState.Queued
+                && photo.getUploadStrategy() != UploadingPhoto.UploadStrategy.Unknown) {
+            node.forAlbum = new UploadSystemDirector.UploadPlan.ForAlbum(node.tmpFile, photo.getUploadStrategy());
+            insertReady(node);
+        }
+    }
+
+    private void clearPhoto(Node node) {
+        if (!node.addedToAlbum) {
+            mNumNotAddedToAlbum--;
+        }
+        node.addedToAlbum = false;
+        node.photoId = null;
+
+        if (node.forAlbum != null) {
+            removeReady(node);
+            node.forAlbum = null;
+        }
+    }
+
+    private void insertReady(Node node) {
+        // Photos usually become ready in the order in which they were added, so the search from
+        // the end of the queue almost always stops right away
+        Node prev = mReadyTail;
+        while (prev != null && prev.sequence > node.sequence) {
+            prev = prev.readyPrev;
+        }
+
+        Node next = prev != null ? prev.readyNext : mReadyHead;
+        node.readyPrev = prev;
+        node.readyNext = next;
+        if (prev != null) {
+            prev.readyNext = node;
+        } else {
+            mReadyHead = node;
+        }
+        if (next != null) {
+            next.readyPrev = node;
+        } else {
+            mReadyTail = node;
+        }
+        mNumReady++;
+    }
+
+    private void removeReady(Node node) {
+        if (node.readyPrev != null) {
+            node.readyPrev.readyNext = node.readyNext;
+        } else {
+            mReadyHead = node.readyNext;
+        }
+        if (node.readyNext != null) {
+            node.readyNext.readyPrev = node.readyPrev;
+        } else {
+            mReadyTail = node.readyPrev;
+        }
+        node.readyPrev = null;
+        node.readyNext = null;
+        mNumReady--;
+    }
+
+    private static final class Node {
+        Node(String tmpFile, long sequence) {
+            this.tmpFile = tmpFile;
+            this.sequence = sequence;
+        }
+
+        final String tmpFile;
+
+        // The order in which the photo was added
+        final long sequence;
+
+        String photoId;
+        boolean addedToAlbum;
+
+        // Not null while the photo is Queued with a known UploadStrategy
+        UploadSystemDirector.UploadPlan.ForAlbum forAlbum;
+
+        // All of the photos, in order
+        Node allPrev;
+        Node allNext;
+
+        // Only the photos that have forAlbum, in order
+        Node readyPrev;
+        Node readyNext;
+    }
+
+    private final HashMap<String, Node> mNodes = new HashMap<String, Node>();
+    private long mNextSequence = 0;
+
+    private Node mAllHead = null;
+    private Node mAllTail = null;
+
+    private Node mReadyHead = null;
+    private Node mReadyTail = null;
+    private int mNumReady = 0;
+
+    private int mNumNotAddedToAlbum = 0;
+}
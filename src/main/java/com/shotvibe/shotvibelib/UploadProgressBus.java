@@ -0,0 +1,138 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * Coalesces upload progress events on their way to the main thread.
+ *
+ * Every BackgroundUploadSession progress callback used to post its own main thread task, which
+ * with several concurrent uploads floods the main thread with far more refreshes than can ever be
+ * displayed. The progress values themselves are already stored in the AlbumUploadingPhotos, so
+ * all that needs to reach the main thread is which albums changed. This bus delivers at most one
+ * update per album per frame interval: a progress event for an album that already has an update
+ * pending is dropped, since the pending update will show the newest progress anyway.
+ *
+ * This class is thread safe
+ */
+public class UploadProgressBus {
+    public interface Target {
+        /**
+         * Called on the main thread
+         */
+        void onAlbumUploadProgress(long albumId);
+    }
+
+    public static final int DEFAULT_FRAME_INTERVAL_MILLIS = 16;
+
+    public UploadProgressBus(Target target) {
+        this(target, DEFAULT_FRAME_INTERVAL_MILLIS);
+    }
+
+    public UploadProgressBus(Target target, int frameIntervalMillis) {
+        if (target == null) {
+            throw new IllegalArgumentException("target cannot be null");
+        }
+
+        mTarget = target;
+        setFrameIntervalMillis(frameIntervalMillis);
+    }
+
+    /**
+     * @param frameIntervalMillis The minimum time between two updates of the same album. 0
+     *                            delivers every update that isn't already pending right away
+     */
+    public synchronized void setFrameIntervalMillis(int frameIntervalMillis) {
+        if (frameIntervalMillis < 0) {
+            throw new IllegalArgumentException("frameIntervalMillis cannot be negative: " + frameIntervalMillis);
+        }
+
+        mFrameIntervalNanos = frameIntervalMillis * 1000L * 1000L;
+    }
+
+    public synchronized int getFrameIntervalMillis() {
+        return (int) (mFrameIntervalNanos / (1000L * 1000L));
+    }
+
+    /**
+     * Can be called from any thread
+     */
+    public void postProgress(final long albumId) {
+        long delayNanos;
+        synchronized (this) {
+            mNumPosted++;
+
+            if (mPendingAlbums.contains(albumId)) {
+                mNumDropped++;
+                return;
+            }
+            mPendingAlbums.add(albumId);
+
+            delayNanos = 0;
+            Long lastDelivered = mLastDeliveredNanos.get(albumId);
+            if (lastDelivered != null) {
+                delayNanos = lastDelivered + mFrameIntervalNanos - System.nanoTime();
+            }
+        }
+
+        ThreadUtil.Runnable deliver = new ThreadUtil.Runnable() {
+            @Override
+            public void run() {
+                deliver(albumId);
+            }
+        };
+
+        if (delayNanos > 0) {
+            // Rounded up, so that the update never comes before the end of the interval
+            int delayMillis = (int) ((delayNanos + 999999L) / (1000L * 1000L));
+            ThreadUtil.runInMainThreadDelayed(deliver, delayMillis);
+        } else {
+            ThreadUtil.runInMainThread(deliver);
+        }
+    }
+
+    /**
+     * @return The total number of progress events that were posted
+     */
+    public synchronized long getPostedCount() {
+        return mNumPosted;
+    }
+
+    /**
+     * @return The number of updates that were delivered to the Target
+     */
+    public synchronized long getDeliveredCount() {
+        return mNumDelivered;
+    }
+
+    /**
+     * @return The number of progress events that were merged into an update that was already
+     * pending
+     */
+    public synchronized long getDroppedCount() {
+        return mNumDropped;
+    }
+
+    private void deliver(long albumId) {
+        synchronized (this) {
+            mPendingAlbums.remove(albumId);
+            mLastDeliveredNanos.put(albumId, System.nanoTime());
+            mNumDelivered++;
+        }
+
+        // Outside of the lock, so that a new progress event that arrives while the target is
+        // running schedules another update instead of waiting for the lock
+        mTarget.onAlbumUploadProgress(albumId);
+    }
+
+    private final Target mTarget;
+
+    // All of the following must only be touched while holding the lock:
+    private long mFrameIntervalNanos;
+
+    // The albums that have an update scheduled on the main thread
+    private final HashSet<Long> mPendingAlbums = new HashSet<Long>();
+
+    private final HashMap<Long, Long> mLastDeliveredNanos = new HashMap<Long, Long>();
+
+    private long mNumPosted = 0;
+    private long mNumDelivered = 0;
+    private long mNumDropped = 0;
+}
@@ -37,7 +37,9 @@ public final class UploadStateDB {
     }
 
     private UploadStateDB(SQLConnection conn) {
-        mConn = conn;
+        // Keep the statements that are executed for every row compiled for the lifetime of the
+        // connection
+        mConn = new CachingSQLConnection(conn);
     }
 
     private SQLConnection mConn;
@@ -13,32 +13,52 @@ public class UploadSystemDirector {
             String uploadFilesDir,
             BitmapProcessor bitmapProcessor,
             BackgroundTaskManager backgroundTaskManager) {
+        this(backgroundUploadSessionFactory, originalUploadSessionFactory, uploadStateDB, shotVibeAPI,
+                fileSystemManager, photoDownloadManager, uploadFilesDir, bitmapProcessor, false,
+                backgroundTaskManager);
+    }
+
+    /**
+     * @param bitmapProcessorThreadSafe Set only if bitmapProcessor has been checked to be thread
+     *                                  safe. Photos are then resized on several threads at the
+     *                                  same time, see UploadManagerImpl.getNumProcessWorkers
+     */
+    public UploadSystemDirector(
+            BackgroundUploadSession.Factory<ForAlbumTaskData> backgroundUploadSessionFactory,
+            BackgroundUploadSession.Factory<OriginalTaskData> originalUploadSessionFactory,
+            UploadStateDB uploadStateDB,
+            ShotVibeAPI shotVibeAPI,
+            FileSystemManager fileSystemManager,
+            PhotoDownloadManager photoDownloadManager,
+            String uploadFilesDir,
+            BitmapProcessor bitmapProcessor,
+            boolean bitmapProcessorThreadSafe,
+            BackgroundTaskManager backgroundTaskManager) {
         mUploadStateDB = uploadStateDB;
         mShotVibeAPI = shotVibeAPI;
         mFileSystemManager = fileSystemManager;
         mBackgroundTaskManager = backgroundTaskManager;
 
         mUploadingPhotos = loadUploadingPhotosFromDB();
-        mUploadManager = new UploadManagerImpl(shotVibeAPI, this, uploadFilesDir, photoDownloadManager, bitmapProcessor, mUploadingPhotos, backgroundTaskManager);
+        mUploadPlanner = new UploadPlanner(mUploadingPhotos);
+        mConcurrencyController = new UploadConcurrencyController();
+        mUploadManager = new UploadManagerImpl(shotVibeAPI, this, uploadFilesDir, photoDownloadManager, bitmapProcessor, bitmapProcessorThreadSafe, mUploadingPhotos.getAll(), backgroundTaskManager, mConcurrencyController);
 
         final BackgroundUploadSession.Listener<ForAlbumTaskData> listener = new BackgroundUploadSession.Listener<ForAlbumTaskData>() {
             @Override
             public void onTaskUploadProgress(ForAlbumTaskData taskData, long bytesSent, long bytesTotal) {
                 Log.d("UploadSystem", "onTaskUploadProgress: " + bytesSent + "/" + bytesTotal + " " + taskData.getTmpFile());
 
+                mConcurrencyController.reportUploadProgress(taskData.getTmpFile(), bytesSent, bytesTotal);
+
                 double uploadProgress = (double) bytesSent / (double) bytesTotal;
-                long albumId = -1;
 
-                for (UploadingPhoto photo : mUploadingPhotos) {
-                    if (taskData.getTmpFile().equals(photo.getTmpFilename())) {
-                        albumId = photo.getAlbumId();
-                    }
-                }
-                if (albumId == -1) {
+                UploadingPhoto photo = mUploadingPhotos.get(taskData.getTmpFile());
+                if (photo == null) {
                     throw new IllegalStateException("reportUploadProgress photo not found: " + taskData.getTmpFile());
                 }
 
-                mUploadManager.reportUploadProgress(albumId, taskData.getTmpFile(), uploadProgress);
+                mUploadManager.reportUploadProgress(photo.getAlbumId(), taskData.getTmpFile(), uploadProgress);
             }
 
             @Override
@@ -51,30 +71,40 @@ public class UploadSystemDirector {
                 final String photoId = finishedTask.getTaskData().getPhotoId();
                 final String tmpFile = finishedTask.getTaskData().getTmpFile();
 
+                mConcurrencyController.reportUploadFinished(tmpFile);
+
                 if (successfullyUploaded) {
                     long albumId = setPhotoUploaded(tmpFile, photoId);
 
                     mUploadManager.reportUploadComplete(albumId, tmpFile, photoId);
-                }
 
-                if (!successfullyUploaded) {
+                    // A slot became free, so the next photo that is waiting can be launched
                     ThreadUtil.runInBackgroundThread(new ThreadUtil.Runnable() {
                         @Override
                         public void run() {
-                            ThreadUtil.sleep(5000); // TODO Magic Constant
+                            mBackgroundUploads.processCurrentTasks(new BackgroundUploadSession.TaskProcessor<ForAlbumTaskData>() {
+                                @Override
+                                public void processTasks(List<BackgroundUploadSession.Task<ForAlbumTaskData>> currentTasks) {
+                                    processUploadPlan(currentTasks);
+                                }
+                            });
+                        }
+                    });
+                }
 
+                if (!successfullyUploaded) {
+                    ThreadUtil.runInBackgroundThreadDelayed(new ThreadUtil.Runnable() {
+                        @Override
+                        public void run() {
                             Log.d("UploadSystem", "Starting new uploadPlan because of failed: " + tmpFile);
                             mBackgroundUploads.processCurrentTasks(new BackgroundUploadSession.TaskProcessor<ForAlbumTaskData>() {
                                 @Override
                                 public void processTasks(List<BackgroundUploadSession.Task<ForAlbumTaskData>> currentTasks) {
-                                    UploadPlan uploadPlan = getUploadPlan(mUploadingPhotos);
-                                    if (uploadPlan != null) {
-                                        processUploadPlan(uploadPlan, currentTasks);
-                                    }
+                                    processUploadPlan(currentTasks);
                                 }
                             });
                         }
-                    });
+                    }, 5000); // TODO Magic Constant
                 }
             }
         };
@@ -119,16 +149,21 @@ public class UploadSystemDirector {
         mBackgroundUploads.processCurrentTasks(new BackgroundUploadSession.TaskProcessor<ForAlbumTaskData>() {
             @Override
             public void processTasks(List<BackgroundUploadSession.Task<ForAlbumTaskData>> currentTasks) {
-                UploadPlan uploadPlan = getUploadPlan(mUploadingPhotos);
-                if (uploadPlan != null) {
-                    processUploadPlan(uploadPlan, currentTasks);
-                }
+                processUploadPlan(currentTasks);
             }
         });
     }
 
     private final UploadStateDB mUploadStateDB;
-    private final ArrayList<UploadingPhoto> mUploadingPhotos;
+    private final UploadingPhotoStore mUploadingPhotos;
+
+    // Must be kept in sync with mUploadingPhotos
+    private final UploadPlanner mUploadPlanner;
+    private final UploadConcurrencyController mConcurrencyController;
+
+    public UploadConcurrencyController getConcurrencyController() {
+        return mConcurrencyController;
+    }
 
     private final ShotVibeAPI mShotVibeAPI;
     private final FileSystemManager mFileSystemManager;
@@ -145,76 +180,156 @@ public class UploadSystemDirector {
 
     private final ArrayList<String> mAvailablePhotoIds = new ArrayList<String>();
 
-    private ArrayList<UploadingPhoto> loadUploadingPhotosFromDB() {
+    // true while a fetchMorePhotoIds is scheduled or running. Must be accessed only while holding
+    // the lock of mAvailablePhotoIds
+    private boolean mFetchingPhotoIds = false;
+
+    private static final int FETCH_PHOTO_IDS_RETRY_TIME = 5000;
+
+    // Must be accessed only while holding the lock of mAvailablePhotoIds
+    private boolean mAppInForeground = true;
+
+    /**
+     * Should be called by the platform whenever the app moves to or from the foreground.
+     *
+     * The number of concurrent for-album uploads is only limited while the app is in the
+     * foreground, since the rest of the photos are launched as running uploads finish, and that
+     * needs the process to be running. When the app is not in the foreground, all of the ready
+     * photos are handed to the BackgroundUploadSession at once, so that the OS can upload them
+     * while the app is suspended. Until this is first called the app is assumed to be in the
+     * foreground, so a platform that never calls this always has the limit applied, and the
+     * waiting photos are launched only as running uploads finish, even in the background.
+     *
+     * May be called from any thread
+     */
+    public void setAppInForeground(boolean appInForeground) {
+        synchronized (mAvailablePhotoIds) {
+            if (mAppInForeground == appInForeground) {
+                return;
+            }
+            mAppInForeground = appInForeground;
+        }
+
+        if (!appInForeground) {
+            // Launch the photos that were waiting for a free upload slot
+            ThreadUtil.runInBackgroundThread(new ThreadUtil.Runnable() {
+                @Override
+                public void run() {
+                    mBackgroundUploads.processCurrentTasks(new BackgroundUploadSession.TaskProcessor<ForAlbumTaskData>() {
+                        @Override
+                        public void processTasks(List<BackgroundUploadSession.Task<ForAlbumTaskData>> currentTasks) {
+                            processUploadPlan(currentTasks);
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    private UploadingPhotoStore loadUploadingPhotosFromDB() {
         try {
-            return mUploadStateDB.getAllUploadingPhotos();
+            return new UploadingPhotoStore(mUploadStateDB.getAllUploadingPhotos());
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void fetchMorePhotoIds() {
-        ArrayList<String> newPhotoIds = null;
-        while (newPhotoIds == null) {
-            try {
-                newPhotoIds = mShotVibeAPI.photosUploadRequest(10); // TODO Magic constant
-            } catch (APIException e) {
-                Log.d("UploadSystem", e.getTechnicalMessage());
-                ThreadUtil.sleep(5000); // TODO Magic constant
+    /**
+     * Starts fetching more photo ids, unless a fetch is already in progress. Must be called while
+     * holding the lock of mAvailablePhotoIds
+     */
+    private void startFetchingPhotoIds() {
+        if (mFetchingPhotoIds) {
+            return;
+        }
+        mFetchingPhotoIds = true;
+
+        ThreadUtil.runInBackgroundThread(new ThreadUtil.Runnable() {
+            @Override
+            public void run() {
+                fetchMorePhotoIds();
             }
+        });
+    }
+
+    private void fetchMorePhotoIds() {
+        ArrayList<String> newPhotoIds;
+        try {
+            newPhotoIds = mShotVibeAPI.photosUploadRequest(10); // TODO Magic constant
+        } catch (APIException e) {
+            Log.d("UploadSystem", e.getTechnicalMessage());
+
+            // Try again later, without holding on to a background thread in the meantime
+            ThreadUtil.runInBackgroundThreadDelayed(new ThreadUtil.Runnable() {
+                @Override
+                public void run() {
+                    fetchMorePhotoIds();
+                }
+            }, FETCH_PHOTO_IDS_RETRY_TIME);
+            return;
         }
 
         synchronized (mAvailablePhotoIds) {
             mAvailablePhotoIds.addAll(newPhotoIds);
+            mFetchingPhotoIds = false;
         }
 
         mBackgroundUploads.processCurrentTasks(new BackgroundUploadSession.TaskProcessor<ForAlbumTaskData>() {
             @Override
             public void processTasks(List<BackgroundUploadSession.Task<ForAlbumTaskData>> currentTasks) {
-                UploadPlan uploadPlan = getUploadPlan(mUploadingPhotos);
-                if (uploadPlan != null) {
+                if (mUploadPlanner.getPhase() != UploadPlanner.Phase.Idle) {
                     Log.d("UploadSystem", "fetchMorePhotoIds: processUploadPlan");
-                    processUploadPlan(uploadPlan, currentTasks);
+                    processUploadPlan(currentTasks);
                 }
             }
         });
     }
 
-    private void processUploadPlan(final UploadPlan uploadPlan, List<BackgroundUploadSession.Task<ForAlbumTaskData>> currentTasks) {
-        if (uploadPlan.uploadForAlbum != null) {
+    /**
+     * Brings the running uploads in line with the current plan of mUploadPlanner. Does nothing if
+     * there is nothing to do.
+     *
+     * The work is proportional to the number of running tasks and the number of tasks that are
+     * launched, and not to the number of queued photos (except for the originals, which are all
+     * launched at once)
+     */
+    private void processUploadPlan(List<BackgroundUploadSession.Task<ForAlbumTaskData>> currentTasks) {
+        UploadPlanner.Phase phase = mUploadPlanner.getPhase();
+        if (phase == UploadPlanner.Phase.ForAlbum) {
             cancelAllOriginalUploads();
 
-            int index = 0;
-
-            HashSet<String> currentTaskFiles = new HashSet<String>();
-            HashSet<String> newItemFiles = new HashSet<String>();
-            for (BackgroundUploadSession.Task<ForAlbumTaskData> task : currentTasks) {
-                currentTaskFiles.add(task.getTaskData().getTmpFile());
-            }
-            for (UploadPlan.ForAlbum item : uploadPlan.uploadForAlbum) {
-                newItemFiles.add(item.uploadFile);
-            }
-
             // Cancel currently active tasks that are not part of the new upload plan:
 
+            HashSet<String> currentTaskFiles = new HashSet<String>();
+            int runningTasks = 0;
             for (BackgroundUploadSession.Task<ForAlbumTaskData> task : currentTasks) {
-                if (!newItemFiles.contains(task.getTaskData().getTmpFile())) {
+                String tmpFile = task.getTaskData().getTmpFile();
+                currentTaskFiles.add(tmpFile);
+                if (!mUploadPlanner.isPlannedForAlbum(tmpFile)) {
                     mBackgroundUploads.cancelTask(task);
+                    mConcurrencyController.reportUploadFinished(tmpFile);
+                } else {
+                    runningTasks++;
                 }
             }
 
-            // Add any new tasks:
+            // Add any new tasks. In the foreground only as long as there are free upload slots.
+            // Tasks that are already running are never cancelled when the limit goes down, they
+            // just aren't replaced until enough of them finish. See setAppInForeground
+
+            int maxConcurrentUploads = mConcurrencyController.getMaxConcurrentUploads();
 
             synchronized (mAvailablePhotoIds) {
-                for (UploadPlan.ForAlbum forAlbum : uploadPlan.uploadForAlbum) {
+                for (UploadPlan.ForAlbum forAlbum : mUploadPlanner.getForAlbumItems()) {
                     if (!currentTaskFiles.contains(forAlbum.uploadFile)) {
+                        if (mAppInForeground && runningTasks >= maxConcurrentUploads) {
+                            // The rest will be launched when running uploads finish, or all at
+                            // once when the app leaves the foreground
+                            return;
+                        }
+
                         if (mAvailablePhotoIds.isEmpty()) {
-                            ThreadUtil.runInBackgroundThread(new ThreadUtil.Runnable() {
-                                @Override
-                                public void run() {
-                                    fetchMorePhotoIds();
-                                }
-                            });
+                            startFetchingPhotoIds();
                             return;
                         }
 
@@ -222,6 +337,7 @@ public class UploadSystemDirector {
                         mAvailablePhotoIds.remove(0);
 
                         launchForAlbumUpload(forAlbum, photoId);
+                        runningTasks++;
                     }
                 }
 
@@ -229,8 +345,9 @@ public class UploadSystemDirector {
                 // in the background
                 mUploadManager.reportAllUploadsLaunched();
             }
-        } else if (uploadPlan.uploadOriginals != null) {
-            Log.d("UPLOADSYSTEM", "Uploading original photos: " + uploadPlan.uploadOriginals.size());
+        } else if (phase == UploadPlanner.Phase.Originals) {
+            final ArrayList<UploadPlan.Original> uploadOriginals = mUploadPlanner.getOriginals();
+            Log.d("UPLOADSYSTEM", "Uploading original photos: " + uploadOriginals.size());
 
 
             mOriginalUploads.processCurrentTasks(new BackgroundUploadSession.TaskProcessor<OriginalTaskData>() {
@@ -241,7 +358,7 @@ public class UploadSystemDirector {
                     for (BackgroundUploadSession.Task<OriginalTaskData> task : currentTasks) {
                         currentTaskFiles.add(task.getTaskData().getTmpFile());
                     }
-                    for (UploadPlan.Original item : uploadPlan.uploadOriginals) {
+                    for (UploadPlan.Original item : uploadOriginals) {
                         newItemFiles.add(item.uploadFile);
                     }
 
@@ -254,7 +371,7 @@ public class UploadSystemDirector {
                     }
 
                     // Add any new tasks:
-                    for (UploadPlan.Original original : uploadPlan.uploadOriginals) {
+                    for (UploadPlan.Original original : uploadOriginals) {
                         if (!currentTaskFiles.contains(original.uploadFile)) {
                             OriginalTaskData taskData = new OriginalTaskData(original.uploadFile, original.photoId);
                             launchOriginalUpload(taskData);
@@ -360,43 +477,6 @@ public class UploadSystemDirector {
         }
     }
 
-    /**
-     * @return Returns null if there is nothing to do
-     */
-    private static UploadPlan getUploadPlan(List<UploadingPhoto> uploadingPhotos) {
-        ArrayList<UploadPlan.ForAlbum> uploadForAlbum = new ArrayList<UploadPlan.ForAlbum>();
-        ArrayList<UploadPlan.Original> uploadOriginals = new ArrayList<UploadPlan.Original>();
-
-        boolean allAddedToAlbum = true;
-
-        for (UploadingPhoto photo : uploadingPhotos) {
-            if (photo.getUploadState() == UploadingPhoto.UploadState.Queued) {
-                allAddedToAlbum = false;
-                if (photo.getUploadStrategy() != UploadingPhoto.UploadStrategy.Unknown) {
-                    uploadForAlbum.add(new UploadPlan.ForAlbum(photo.getTmpFilename(), photo.getUploadStrategy()));
-                }
-            } else if (allAddedToAlbum && photo.getUploadState() == UploadingPhoto.UploadState.AddedToAlbum) {
-                uploadOriginals.add(new UploadPlan.Original(photo.getTmpFilename(), photo.getPhotoId()));
-            } else {
-                allAddedToAlbum = false;
-            }
-        }
-
-        if (allAddedToAlbum) {
-            if (!uploadOriginals.isEmpty()) {
-                return UploadPlan.CreateUploadPlanOriginals(uploadOriginals);
-            } else {
-                return null;
-            }
-        } else {
-            if (!uploadForAlbum.isEmpty()) {
-                return UploadPlan.CreateUploadPlanForAlbum(uploadForAlbum);
-            } else {
-                return null;
-            }
-        }
-    }
-
     /**
      * Report that a new photo is queued to be uploaded. The new photo is not yet done processing
      */
@@ -412,6 +492,7 @@ public class UploadSystemDirector {
             @Override
             public void processTasks(List<BackgroundUploadSession.Task<ForAlbumTaskData>> currentTasks) {
                 mUploadingPhotos.add(newUploadingPhoto);
+                mUploadPlanner.add(newUploadingPhoto);
                 try {
                     mUploadStateDB.insertUploadingPhoto(newUploadingPhoto);
                 } catch (SQLException e) {
@@ -425,18 +506,8 @@ public class UploadSystemDirector {
         mBackgroundUploads.processCurrentTasks(new BackgroundUploadSession.TaskProcessor<ForAlbumTaskData>() {
             @Override
             public void processTasks(List<BackgroundUploadSession.Task<ForAlbumTaskData>> currentTasks) {
-                UploadingPhoto oldUploadingPhoto = null;
-                int index = -1;
-                for (int i = 0; i < mUploadingPhotos.size(); ++i) {
-                    UploadingPhoto photo = mUploadingPhotos.get(i);
-                    if (photo.getTmpFilename().equals(tmpFilename)) {
-                        oldUploadingPhoto = photo;
-                        index = i;
-                        break;
-                    }
-                }
-
-                if (index == -1) {
+                UploadingPhoto oldUploadingPhoto = mUploadingPhotos.get(tmpFilename);
+                if (oldUploadingPhoto == null) {
                     throw new IllegalStateException("tmpFile not found: " + tmpFilename);
                 }
                 if (oldUploadingPhoto.getUploadState() != UploadingPhoto.UploadState.Queued) {
@@ -453,7 +524,8 @@ public class UploadSystemDirector {
                         UploadingPhoto.UploadState.Queued,
                         null);
 
-                mUploadingPhotos.set(index, updatedUploadingPhoto);
+                mUploadingPhotos.replace(updatedUploadingPhoto);
+                mUploadPlanner.update(updatedUploadingPhoto);
 
                 try {
                     mUploadStateDB.setPhotoUploadStrategy(updatedUploadingPhoto);
@@ -461,12 +533,11 @@ public class UploadSystemDirector {
                     throw new RuntimeException(e);
                 }
 
-                UploadPlan uploadPlan = getUploadPlan(mUploadingPhotos);
-                if (uploadPlan == null) {
+                if (mUploadPlanner.getPhase() == UploadPlanner.Phase.Idle) {
                     throw new IllegalStateException("The Impossible Happened");
                 }
                 Log.d("UploadSystem", "addUploadingPhoto: processUploadPlan");
-                processUploadPlan(uploadPlan, currentTasks);
+                processUploadPlan(currentTasks);
 
                 // TODO End background task
             }
@@ -474,20 +545,11 @@ public class UploadSystemDirector {
     }
 
     private long setPhotoUploaded(String tmpFilename, String photoId) {
-        UploadingPhoto oldUploadingPhoto = null;
-        int index = -1;
-        for (int i = 0; i < mUploadingPhotos.size(); ++i) {
-            UploadingPhoto photo = mUploadingPhotos.get(i);
-            if (photo.getTmpFilename().equals(tmpFilename)) {
-                oldUploadingPhoto = photo;
-                index = i;
-                break;
-            }
-        }
+        UploadingPhoto oldUploadingPhoto = mUploadingPhotos.get(tmpFilename);
 
         // TODO: We should actually allow this to be called for a missing tmpFilename and simply
         // ignore the call. Due to a race the client can't
-        if (index == -1) {
+        if (oldUploadingPhoto == null) {
             throw new IllegalStateException("setPhotoUploaded not found");
         }
         if (oldUploadingPhoto.getUploadState() == UploadingPhoto.UploadState.AddedToAlbum) {
@@ -501,7 +563,8 @@ public class UploadSystemDirector {
                 UploadingPhoto.UploadState.Uploaded,
                 photoId);
 
-        mUploadingPhotos.set(index, updatedUploadingPhoto);
+        mUploadingPhotos.replace(updatedUploadingPhoto);
+        mUploadPlanner.update(updatedUploadingPhoto);
 
         try {
             mUploadStateDB.setPhotoUploaded(updatedUploadingPhoto);
@@ -513,25 +576,17 @@ public class UploadSystemDirector {
     }
 
     private long setPhotoOriginalUploaded(String tmpFilename, String photoId) {
-        UploadingPhoto oldUploadingPhoto = null;
-        int index = -1;
-        for (int i = 0; i < mUploadingPhotos.size(); ++i) {
-            UploadingPhoto photo = mUploadingPhotos.get(i);
-            if (photo.getTmpFilename().equals(tmpFilename)) {
-                oldUploadingPhoto = photo;
-                index = i;
-                break;
-            }
-        }
+        UploadingPhoto oldUploadingPhoto = mUploadingPhotos.get(tmpFilename);
 
-        if (index == -1) {
+        if (oldUploadingPhoto == null) {
             throw new IllegalStateException("setPhotoOriginalUploaded not found");
         }
         if (oldUploadingPhoto.getUploadState() != UploadingPhoto.UploadState.AddedToAlbum) {
             throw new IllegalStateException("setPhotoOriginalUploaded with photo that was not AddedToAlbum");
         }
 
-        mUploadingPhotos.remove(index);
+        mUploadingPhotos.remove(tmpFilename);
+        mUploadPlanner.remove(tmpFilename);
 
         try {
             mUploadStateDB.setPhotoOriginalUploaded(oldUploadingPhoto);
@@ -551,37 +606,41 @@ public class UploadSystemDirector {
                 // Delete the rows that have strategy UploadOriginalDirectly
                 // Set state to AddedToAlbum for rows that have strategy UploadTwoStage
 
-                ArrayList<UploadingPhoto> newUploadingPhotos = new ArrayList<UploadingPhoto>();
+                // The photos are visited in the order of the store (and not of the tmpFiles set),
+                // so that the originals are uploaded in order
+                ArrayList<UploadingPhoto> addedPhotos = new ArrayList<UploadingPhoto>(tmpFiles.size());
+                for (UploadingPhoto photo : mUploadingPhotos) {
+                    if (tmpFiles.contains(photo.getTmpFilename())) {
+                        addedPhotos.add(photo);
+                    }
+                }
 
                 ArrayList<String> newUploadOriginalPhotoIds = new ArrayList<String>();
 
-                for (UploadingPhoto photo : mUploadingPhotos) {
-                    if (tmpFiles.contains(photo.getTmpFilename())) {
-                        // Delete the RESIZED file, it is not longer needed
-                        //mFileSystemManager.deleteFile(photo.getTmpFilename() + UploadManager.RESIZED_FILE_SUFFIX);
-                        // Note: The THUMB file is not removed, UploadManagerImpl handles it
-
-                        if (photo.getUploadStrategy() == UploadingPhoto.UploadStrategy.UploadTwoStage) {
-                            newUploadingPhotos.add(new UploadingPhoto(
-                                    photo.getAlbumId(),
-                                    photo.getTmpFilename(),
-                                    photo.getUploadStrategy(),
-                                    UploadingPhoto.UploadState.AddedToAlbum,
-                                    photo.getPhotoId()));
-
-                            newUploadOriginalPhotoIds.add(photo.getPhotoId());
-                        } else {
-                            // The original file was directly uploaded, so it can be deleted now
-                            mFileSystemManager.deleteFile(photo.getTmpFilename());
-                        }
+                for (UploadingPhoto photo : addedPhotos) {
+                    // Delete the RESIZED file, it is not longer needed
+                    //mFileSystemManager.deleteFile(photo.getTmpFilename() + UploadManager.RESIZED_FILE_SUFFIX);
+                    // Note: The THUMB file is not removed, UploadManagerImpl handles it
+
+                    if (photo.getUploadStrategy() == UploadingPhoto.UploadStrategy.UploadTwoStage) {
+                        UploadingPhoto updatedPhoto = new UploadingPhoto(
+                                photo.getAlbumId(),
+                                photo.getTmpFilename(),
+                                photo.getUploadStrategy(),
+                                UploadingPhoto.UploadState.AddedToAlbum,
+                                photo.getPhotoId());
+                        mUploadingPhotos.replace(updatedPhoto);
+                        mUploadPlanner.update(updatedPhoto);
+
+                        newUploadOriginalPhotoIds.add(photo.getPhotoId());
                     } else {
-                        newUploadingPhotos.add(photo);
+                        // The original file was directly uploaded, so it can be deleted now
+                        mFileSystemManager.deleteFile(photo.getTmpFilename());
+                        mUploadingPhotos.remove(photo.getTmpFilename());
+                        mUploadPlanner.remove(photo.getTmpFilename());
                     }
                 }
 
-                mUploadingPhotos.clear();
-                mUploadingPhotos.addAll(newUploadingPhotos);
-
                 try {
                     mUploadStateDB.photosAddedToAlbum(tmpFiles);
                 } catch (SQLException e) {
@@ -592,9 +651,8 @@ public class UploadSystemDirector {
                     mUploadManager.reportNewOriginalUploads(albumId, newUploadOriginalPhotoIds);
                 }
 
-                UploadPlan uploadPlan = getUploadPlan(mUploadingPhotos);
-                if (uploadPlan != null) {
-                    processUploadPlan(uploadPlan, currentTasks);
+                if (mUploadPlanner.getPhase() != UploadPlanner.Phase.Idle) {
+                    processUploadPlan(currentTasks);
                 } else {
                     // TODO This is the place to indicate to iOS that we are done processing background tasks
                 }
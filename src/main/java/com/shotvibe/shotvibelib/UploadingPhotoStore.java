@@ -0,0 +1,200 @@
+package com.shotvibe.shotvibelib;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The UploadingPhotos of the UploadSystemDirector, in the order in which they were added, with
+ * hash lookups by tmp file and by photo id.
+ *
+ * Removed photos leave an empty slot behind, so that removal doesn't have to shift all of the
+ * following photos (and renumber them in the index). The slots are compacted once more than half
+ * of them are empty.
+ *
+ * Not thread safe
+ */
+public final class UploadingPhotoStore implements Iterable<UploadingPhoto> {
+    public UploadingPhotoStore() {
+    }
+
+    /**
+     * @param photos Added in the order of the list
+     */
+    public UploadingPhotoStore(List<UploadingPhoto> photos) {
+        for (UploadingPhoto photo : photos) {
+            add(photo);
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Adds the photo after all of the existing photos
+     */
+    public void add(UploadingPhoto photo) {
+        if (photo == null) {
+            throw new IllegalArgumentException("photo cannot be null");
+        }
+        if (mSlotsByTmpFile.containsKey(photo.getTmpFilename())) {
+            throw new IllegalArgumentException("photo already exists: " + photo.getTmpFilename());
+        }
+
+        mSlotsByTmpFile.put(photo.getTmpFilename(), mSlots.size());
+        mSlots.add(photo);
+        indexPhotoId(photo);
+        mSize++;
+    }
+
+    /**
+     * @return null if there is no photo with the tmpFile
+     */
+    public UploadingPhoto get(String tmpFile) {
+        Integer slot = mSlotsByTmpFile.get(tmpFile);
+        if (slot == null) {
+            return null;
+        }
+        return mSlots.get(slot);
+    }
+
+    /**
+     * @return null if there is no photo with the photoId
+     */
+    public UploadingPhoto getByPhotoId(String photoId) {
+        String tmpFile = mTmpFilesByPhotoId.get(photoId);
+        if (tmpFile == null) {
+            return null;
+        }
+        return get(tmpFile);
+    }
+
+    /**
+     * Replaces the photo that has the same tmp file as updatedPhoto. The photo keeps its position
+     *
+     * @return The photo that was replaced
+     */
+    public UploadingPhoto replace(UploadingPhoto updatedPhoto) {
+        if (updatedPhoto == null) {
+            throw new IllegalArgumentException("updatedPhoto cannot be null");
+        }
+
+        Integer slot = mSlotsByTmpFile.get(updatedPhoto.getTmpFilename());
+        if (slot == null) {
+            throw new IllegalStateException("photo not found: " + updatedPhoto.getTmpFilename());
+        }
+
+        UploadingPhoto oldPhoto = mSlots.get(slot);
+        unindexPhotoId(oldPhoto);
+        mSlots.set(slot, updatedPhoto);
+        indexPhotoId(updatedPhoto);
+        return oldPhoto;
+    }
+
+    /**
+     * @return The photo that was removed, or null if there is no photo with the tmpFile
+     */
+    public UploadingPhoto remove(String tmpFile) {
+        Integer slot = mSlotsByTmpFile.remove(tmpFile);
+        if (slot == null) {
+            return null;
+        }
+
+        UploadingPhoto photo = mSlots.get(slot);
+        unindexPhotoId(photo);
+        mSlots.set(slot, null);
+        mSize--;
+
+        if (mSlots.size() > MIN_COMPACT_SLOTS && mSize * 2 < mSlots.size()) {
+            compact();
+        }
+        return photo;
+    }
+
+    /**
+     * @return A new list with all of the photos, in order
+     */
+    public ArrayList<UploadingPhoto> getAll() {
+        ArrayList<UploadingPhoto> result = new ArrayList<UploadingPhoto>(mSize);
+        for (UploadingPhoto photo : mSlots) {
+            if (photo != null) {
+                result.add(photo);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The store must not be modified while iterating
+     */
+    @Override
+    public Iterator<UploadingPhoto> iterator() {
+        return new Iterator<UploadingPhoto>() {
+            private int mNext = skipEmpty(0);
+
+            @Override
+            public boolean hasNext() {
+                return mNext < mSlots.size();
+            }
+
+            @Override
+            public UploadingPhoto next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                UploadingPhoto photo = mSlots.get(mNext);
+                mNext = skipEmpty(mNext + 1);
+                return photo;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    // Small stores are never compacted, the empty slots don't cost anything worth reclaiming
+    private static final int MIN_COMPACT_SLOTS = 16;
+
+    private int skipEmpty(int slot) {
+        while (slot < mSlots.size() && mSlots.get(slot) == null) {
+            slot++;
+        }
+        return slot;
+    }
+
+    private void compact() {
+        ArrayList<UploadingPhoto> photos = getAll();
+        mSlots.clear();
+        mSlotsByTmpFile.clear();
+        for (UploadingPhoto photo : photos) {
+            mSlotsByTmpFile.put(photo.getTmpFilename(), mSlots.size());
+            mSlots.add(photo);
+        }
+    }
+
+    private void indexPhotoId(UploadingPhoto photo) {
+        // Queued photos don't have a photoId yet
+        if (photo.getUploadState() != UploadingPhoto.UploadState.Queued) {
+            mTmpFilesByPhotoId.put(photo.getPhotoId(), photo.getTmpFilename());
+        }
+    }
+
+    private void unindexPhotoId(UploadingPhoto photo) {
+        if (photo.getUploadState() != UploadingPhoto.UploadState.Queued) {
+            mTmpFilesByPhotoId.remove(photo.getPhotoId());
+        }
+    }
+
+    // In insertion order. A null slot is a photo that was removed
+    private final ArrayList<UploadingPhoto> mSlots = new ArrayList<UploadingPhoto>();
+    private final HashMap<String, Integer> mSlotsByTmpFile = new HashMap<String, Integer>();
+    private final HashMap<String, String> mTmpFilesByPhotoId = new HashMap<String, String>();
+    private int mSize = 0;
+}
@@ -0,0 +1,262 @@
+package com.shotvibe.shotvibelib;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AlbumContentsDeltaTest {
+    private static final AlbumUser AUTHOR = TestAlbums.user(1);
+
+    private static AlbumPhoto serverPhoto(String photoId, AlbumPhotoComment... comments) {
+        ArrayList<AlbumPhotoComment> commentList = new ArrayList<AlbumPhotoComment>();
+        for (AlbumPhotoComment c : comments) {
+            commentList.add(c);
+        }
+        return new AlbumPhoto(TestAlbums.serverPhoto(photoId, AUTHOR, 0, new ArrayList<AlbumPhotoGlance>(), commentList));
+    }
+
+    private static AlbumPhotoComment comment(long authorId, long clientMsgId) {
+        return new AlbumPhotoComment(TestAlbums.user(authorId), clientMsgId, DateTime.FromTimeStamp(clientMsgId), "comment " + clientMsgId);
+    }
+
+    private static AlbumContents contents(AlbumPhoto... photos) {
+        ArrayList<AlbumPhoto> photoList = new ArrayList<AlbumPhoto>();
+        for (AlbumPhoto p : photos) {
+            photoList.add(p);
+        }
+        return new AlbumContents(1, "etag", "album", AUTHOR, DateTime.FromTimeStamp(0), DateTime.FromTimeStamp(0),
+                0, null, photoList, new ArrayList<AlbumMember>());
+    }
+
+    private static AlbumContentsDelta compute(AlbumContents previous, AlbumContents current) {
+        AlbumContentsDelta delta = AlbumContentsDelta.compute(AlbumContentsDelta.snapshot(previous), AlbumContentsDelta.snapshot(current));
+        checkAppliesTo(previous, current, delta);
+        return delta;
+    }
+
+    /**
+     * Applies the delta to the previous photos like a list view does with a batch update: first
+     * the removed and moved-from indexes are taken out of the previous list, then the inserted
+     * and moved-to photos are put in at their indexes in increasing order. The result must be
+     * the current photos
+     */
+    private static void checkAppliesTo(AlbumContents previous, AlbumContents current, AlbumContentsDelta delta) {
+        ArrayList<AlbumPhoto> oldPhotos = previous.getPhotos();
+        ArrayList<AlbumPhoto> newPhotos = current.getPhotos();
+
+        boolean[] takenOut = new boolean[oldPhotos.size()];
+        for (AlbumContentsDelta.PhotoRemoved r : delta.getRemovedPhotos()) {
+            assertSame(oldPhotos.get(r.getIndex()), r.getPhoto());
+            takenOut[r.getIndex()] = true;
+        }
+        AlbumPhoto[] putIn = new AlbumPhoto[newPhotos.size()];
+        for (AlbumContentsDelta.PhotoMoved m : delta.getMovedPhotos()) {
+            takenOut[m.getFromIndex()] = true;
+            putIn[m.getToIndex()] = m.getPhoto();
+        }
+        for (AlbumContentsDelta.PhotoInserted i : delta.getInsertedPhotos()) {
+            putIn[i.getIndex()] = i.getPhoto();
+        }
+
+        java.util.ArrayList<AlbumPhoto> result = new java.util.ArrayList<AlbumPhoto>();
+        for (int i = 0; i < oldPhotos.size(); ++i) {
+            if (!takenOut[i]) {
+                result.add(oldPhotos.get(i));
+            }
+        }
+        for (int i = 0; i < putIn.length; ++i) {
+            if (putIn[i] != null) {
+                result.add(i, putIn[i]);
+            }
+        }
+
+        assertEquals(newPhotos.size(), delta.getPhotoCount());
+        assertEquals(newPhotos.size(), result.size());
+        for (int i = 0; i < newPhotos.size(); ++i) {
+            assertEquals("index " + i, key(newPhotos.get(i)), key(result.get(i)));
+        }
+    }
+
+    private static String key(AlbumPhoto photo) {
+        if (photo.getServerPhoto() != null) {
+            return photo.getServerPhoto().getId();
+        }
+        return photo.getUploadingPhoto().getTmpFile();
+    }
+
+    @Test
+    public void unchangedContentsGiveEmptyDelta() {
+        AlbumPhoto a = serverPhoto("a");
+        AlbumPhoto b = serverPhoto("b");
+        AlbumContentsDelta delta = compute(contents(a, b), contents(a, serverPhoto("b")));
+
+        assertTrue(delta.isEmpty());
+    }
+
+    @Test
+    public void insertedPhotoHasNewIndex() {
+        AlbumPhoto a = serverPhoto("a");
+        AlbumPhoto b = serverPhoto("b");
+        AlbumPhoto x = serverPhoto("x");
+        AlbumContentsDelta delta = compute(contents(a, b), contents(a, x, b));
+
+        assertEquals(1, delta.getInsertedPhotos().size());
+        assertEquals(1, delta.getInsertedPhotos().get(0).getIndex());
+        assertSame(x, delta.getInsertedPhotos().get(0).getPhoto());
+        assertTrue(delta.getRemovedPhotos().isEmpty());
+        assertTrue(delta.getMovedPhotos().isEmpty());
+    }
+
+    @Test
+    public void removedPhotoHasOldIndex() {
+        AlbumPhoto a = serverPhoto("a");
+        AlbumPhoto b = serverPhoto("b");
+        AlbumPhoto c = serverPhoto("c");
+        AlbumContentsDelta delta = compute(contents(a, b, c), contents(a, c));
+
+        assertEquals(1, delta.getRemovedPhotos().size());
+        assertEquals(1, delta.getRemovedPhotos().get(0).getIndex());
+        assertSame(b, delta.getRemovedPhotos().get(0).getPhoto());
+        assertTrue(delta.getInsertedPhotos().isEmpty());
+        assertTrue(delta.getMovedPhotos().isEmpty());
+    }
+
+    @Test
+    public void movedPhotoHasOldAndNewIndex() {
+        AlbumPhoto a = serverPhoto("a");
+        AlbumPhoto b = serverPhoto("b");
+        AlbumPhoto c = serverPhoto("c");
+        AlbumPhoto d = serverPhoto("d");
+        AlbumContentsDelta delta = compute(contents(a, b, c, d), contents(d, a, b, c));
+
+        // Only the one photo that moved, not the three that kept their order
+        assertEquals(1, delta.getMovedPhotos().size());
+        AlbumContentsDelta.PhotoMoved moved = delta.getMovedPhotos().get(0);
+        assertEquals(3, moved.getFromIndex());
+        assertEquals(0, moved.getToIndex());
+        assertSame(d, moved.getPhoto());
+        assertTrue(delta.getInsertedPhotos().isEmpty());
+        assertTrue(delta.getRemovedPhotos().isEmpty());
+    }
+
+    @Test
+    public void uploadingPhotoReplacedByServerPhoto() {
+        AlbumPhoto a = serverPhoto("a");
+        AlbumPhoto uploading = new AlbumPhoto(AlbumUploadingPhoto.NewAddingToAlbum("/tmp/1.jpg", "p1"));
+        AlbumPhoto uploaded = serverPhoto("p1");
+        AlbumContentsDelta delta = compute(contents(a, uploading), contents(a, uploaded));
+
+        assertEquals(1, delta.getRemovedPhotos().size());
+        assertEquals(1, delta.getRemovedPhotos().get(0).getIndex());
+        assertSame(uploading, delta.getRemovedPhotos().get(0).getPhoto());
+        assertEquals(1, delta.getInsertedPhotos().size());
+        assertEquals(1, delta.getInsertedPhotos().get(0).getIndex());
+        assertSame(uploaded, delta.getInsertedPhotos().get(0).getPhoto());
+        assertTrue(delta.getUploadStateChanges().isEmpty());
+    }
+
+    @Test
+    public void uploadStateChangeHasNewIndex() {
+        AlbumUploadingPhoto uploadingPhoto = AlbumUploadingPhoto.NewSaving("/tmp/1.jpg");
+        AlbumPhoto uploading = new AlbumPhoto(uploadingPhoto);
+        AlbumPhoto a = serverPhoto("a");
+        AlbumPhoto x = serverPhoto("x");
+
+        // The state changes in place, so the snapshot has to capture it
+        AlbumContentsDelta.Snapshot previous = AlbumContentsDelta.snapshot(contents(a, uploading));
+        uploadingPhoto.setPreparingFiles();
+        AlbumContentsDelta.Snapshot current = AlbumContentsDelta.snapshot(contents(x, a, uploading));
+        AlbumContentsDelta delta = AlbumContentsDelta.compute(previous, current);
+
+        assertEquals(1, delta.getUploadStateChanges().size());
+        assertEquals(2, delta.getUploadStateChanges().get(0).getIndex());
+        assertSame(uploading, delta.getUploadStateChanges().get(0).getPhoto());
+        assertEquals(1, delta.getInsertedPhotos().size());
+        assertTrue(delta.getMovedPhotos().isEmpty());
+
+        AlbumContentsDelta unchanged = AlbumContentsDelta.compute(current, AlbumContentsDelta.snapshot(contents(x, a, uploading)));
+        assertTrue(unchanged.isEmpty());
+    }
+
+    @Test
+    public void addedCommentsHaveNewIndex() {
+        AlbumPhoto a = serverPhoto("a");
+        AlbumPhotoComment first = comment(1, 1);
+        AlbumPhotoComment second = comment(2, 1);
+        AlbumPhotoComment third = comment(1, 2);
+        AlbumPhoto before = serverPhoto("b", first);
+        AlbumPhoto after = serverPhoto("b", first, second, third);
+        AlbumContentsDelta delta = compute(contents(a, before), contents(after));
+
+        assertEquals(1, delta.getAddedComments().size());
+        AlbumContentsDelta.CommentsAdded added = delta.getAddedComments().get(0);
+        assertEquals(0, added.getIndex());
+        assertEquals("b", added.getPhotoId());
+        assertEquals(2, added.getComments().size());
+        assertSame(second, added.getComments().get(0));
+        assertSame(third, added.getComments().get(1));
+        assertEquals(1, delta.getRemovedPhotos().size());
+        assertTrue(delta.getMovedPhotos().isEmpty());
+    }
+
+    @Test
+    public void randomChangesApplyAndMoveAsFewPhotosAsPossible() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; ++round) {
+            int numOld = random.nextInt(30);
+            java.util.ArrayList<AlbumPhoto> oldPhotos = new java.util.ArrayList<AlbumPhoto>();
+            for (int i = 0; i < numOld; ++i) {
+                oldPhotos.add(serverPhoto("p" + i));
+            }
+
+            java.util.ArrayList<AlbumPhoto> newPhotos = new java.util.ArrayList<AlbumPhoto>();
+            for (AlbumPhoto p : oldPhotos) {
+                if (random.nextInt(5) != 0) {
+                    newPhotos.add(p);
+                }
+            }
+            java.util.Collections.shuffle(newPhotos.subList(0, random.nextInt(newPhotos.size() + 1)), random);
+            int numInserted = random.nextInt(5);
+            for (int i = 0; i < numInserted; ++i) {
+                newPhotos.add(random.nextInt(newPhotos.size() + 1), serverPhoto("new" + i));
+            }
+
+            AlbumContents previous = contents(oldPhotos.toArray(new AlbumPhoto[0]));
+            AlbumContents current = contents(newPhotos.toArray(new AlbumPhoto[0]));
+            AlbumContentsDelta delta = compute(previous, current);
+
+            assertEquals(numInserted, delta.getInsertedPhotos().size());
+            int numKept = newPhotos.size() - numInserted;
+            assertEquals(numOld - numKept, delta.getRemovedPhotos().size());
+            assertEquals(numKept - longestIncreasingLength(previous.getPhotos(), newPhotos), delta.getMovedPhotos().size());
+        }
+    }
+
+    // Quadratic, but obviously correct
+    private static int longestIncreasingLength(ArrayList<AlbumPhoto> oldPhotos, java.util.ArrayList<AlbumPhoto> newPhotos) {
+        java.util.ArrayList<Integer> oldIndexes = new java.util.ArrayList<Integer>();
+        for (AlbumPhoto p : newPhotos) {
+            int oldIndex = oldPhotos.indexOf(p);
+            if (oldIndex >= 0) {
+                oldIndexes.add(oldIndex);
+            }
+        }
+
+        int best = 0;
+        int[] lengths = new int[oldIndexes.size()];
+        for (int i = 0; i < lengths.length; ++i) {
+            lengths[i] = 1;
+            for (int j = 0; j < i; ++j) {
+                if (oldIndexes.get(j) < oldIndexes.get(i)) {
+                    lengths[i] = Math.max(lengths[i], lengths[j] + 1);
+                }
+            }
+            best = Math.max(best, lengths[i]);
+        }
+        return best;
+    }
+}
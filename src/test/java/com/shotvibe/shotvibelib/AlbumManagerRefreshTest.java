@@ -0,0 +1,201 @@
+package com.shotvibe.shotvibelib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the background part of an album refresh (RefreshAlbumContentsTrigerrableAction) against
+ * a fake HTTPLib. The part that runs on the main thread can't run here, there is no main looper
+ */
+public class AlbumManagerRefreshTest {
+    private static final long ALBUM_ID = 1;
+
+    private static final class FakeResponse extends HTTPResponse {
+        FakeResponse(String url, int statusCode) {
+            mUrl = url;
+            mStatusCode = statusCode;
+        }
+
+        @Override
+        public String getMethod() {
+            return "GET";
+        }
+
+        @Override
+        public String getUrl() {
+            return mUrl;
+        }
+
+        @Override
+        public long getRequestTime() {
+            return 0;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return mStatusCode;
+        }
+
+        // A not modified response has no body, so nothing may try to parse one
+
+        @Override
+        public JSONObject bodyAsJSONObject() {
+            throw new AssertionError("The body of a " + mStatusCode + " response was parsed");
+        }
+
+        @Override
+        public JSONArray bodyAsJSONArray() {
+            throw new AssertionError("The body of a " + mStatusCode + " response was parsed");
+        }
+
+        @Override
+        public String bodyAsUTF8String() {
+            throw new AssertionError("The body of a " + mStatusCode + " response was parsed");
+        }
+
+        @Override
+        public String getHeaderValue(String headerName) {
+            return null;
+        }
+
+        private final String mUrl;
+        private final int mStatusCode;
+    }
+
+    private static final class FakeHTTPLib implements HTTPLib {
+        @Override
+        public HTTPResponse sendRequest(String httpMethod, String url, Map<String, String> requestHeaders, String body) {
+            assertEquals("GET", httpMethod);
+            assertEquals(ShotVibeAPI.BASE_URL + "/albums/" + ALBUM_ID + "/", url);
+            mRequestHeaders.add(new java.util.HashMap<String, String>(requestHeaders));
+            return new FakeResponse(url, HTTP_NOT_MODIFIED);
+        }
+
+        @Override
+        public HTTPResponse sendRequest(String httpMethod, String url, Map<String, String> requestHeaders, JSONObject body) {
+            throw new AssertionError("Unexpected request: " + httpMethod + " " + url);
+        }
+
+        @Override
+        public HTTPResponse sendRequest(String httpMethod, String url, Map<String, String> requestHeaders, JSONArray body) {
+            throw new AssertionError("Unexpected request: " + httpMethod + " " + url);
+        }
+
+        @Override
+        public HTTPResponse sendRequestFile(String httpMethod, String url, Map<String, String> requestHeaders, String filePath) {
+            throw new AssertionError("Unexpected request: " + httpMethod + " " + url);
+        }
+
+        final java.util.ArrayList<Map<String, String>> mRequestHeaders = new java.util.ArrayList<Map<String, String>>();
+    }
+
+    private static final class NoUploads implements UploadManager, MediaUploader {
+        @Override
+        public List<AlbumPhoto> getUploadingPhotos(long albumId) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<String> getUploadingOriginalPhotoIds() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void uploadPhotos(long albumId, List<PhotoUploadRequest> photoUploadRequests) {
+            fail("Nothing is uploaded during a refresh");
+        }
+
+        @Override
+        public void setListener(UploadManager.Listener listener) {
+        }
+
+        @Override
+        public String getUploadsDir() {
+            return null;
+        }
+
+        @Override
+        public List<AlbumUploadingMedia> getUploadingMedia(long albumId) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void setListener(MediaUploader.Listener listener) {
+        }
+
+        @Override
+        public void cleanCompletedUploads(ArrayList<AlbumPhoto> photos) {
+            fail("The main thread part of the refresh can't run in the tests");
+        }
+    }
+
+    private JdbcSQLConnection mConn;
+    private FakeHTTPLib mHttpLib;
+    private AlbumManager mAlbumManager;
+
+    @Before
+    public void setUp() throws SQLException {
+        mConn = new JdbcSQLConnection();
+        ShotVibeDB db = JdbcSQLConnection.openShotVibeDB(mConn);
+        mHttpLib = new FakeHTTPLib();
+        ShotVibeAPI api = new ShotVibeAPI(mHttpLib, new NetworkStatusManager(), new AuthData(1, "token", "US"));
+        NoUploads noUploads = new NoUploads();
+        mAlbumManager = new AlbumManager(api, db, null, noUploads, noUploads);
+    }
+
+    @After
+    public void tearDown() {
+        mConn.close();
+    }
+
+    @Test
+    public void notModifiedAlbumIsNotParsedOrWritten() throws SQLException {
+        AlbumContentsCache cache = mAlbumManager.getAlbumContentsCache();
+        AlbumContents album = TestAlbums.album(ALBUM_ID, 20, 3, 2, 2);
+        cache.setAlbumContents(ALBUM_ID, album);
+        // Loads the album into the cache
+        assertNotNull(cache.getAlbumContents(ALBUM_ID));
+
+        mConn.resetCounts();
+        AlbumManager.RefreshAlbumContentsTrigerrableAction action = mAlbumManager.new RefreshAlbumContentsTrigerrableAction(ALBUM_ID);
+        AlbumManager.RefreshAlbumContentsResult result = action.runAction();
+        action.actionComplete(result);
+
+        assertEquals(1, mHttpLib.mRequestHeaders.size());
+        // The etag goes back to the server exactly as it sent it in its ETag header
+        assertEquals("\"" + album.getEtag() + "\"", mHttpLib.mRequestHeaders.get(0).get("If-None-Match"));
+        assertEquals("Token token", mHttpLib.mRequestHeaders.get(0).get("Authorization"));
+
+        assertTrue(result.notModified);
+        assertNull(result.albumContents);
+        assertNull(result.error);
+
+        // Only the stored etag was read
+        assertEquals(1, mConn.getQueryCount());
+        assertEquals(0, mConn.getUpdateCount());
+        assertEquals(0, mConn.getPrepareCount());
+        // Still cached, so the cache entry was not invalidated by a write either
+        assertNotNull(cache.peekAlbumContents(ALBUM_ID));
+    }
+
+    @Test
+    public void albumWithoutEtagIsRequestedUnconditionally() {
+        AlbumManager.RefreshAlbumContentsTrigerrableAction action = mAlbumManager.new RefreshAlbumContentsTrigerrableAction(ALBUM_ID);
+        action.runAction();
+
+        assertEquals(1, mHttpLib.mRequestHeaders.size());
+        assertFalse(mHttpLib.mRequestHeaders.get(0).containsKey("If-None-Match"));
+    }
+}
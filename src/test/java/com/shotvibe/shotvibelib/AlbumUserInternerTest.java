@@ -0,0 +1,104 @@
+package com.shotvibe.shotvibelib;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class AlbumUserInternerTest {
+    @Test
+    public void sameValuesShareOneObject() {
+        AlbumUserInterner users = new AlbumUserInterner();
+        AlbumUser a = users.intern(1, "nick", null, "http://avatar", 3);
+        AlbumUser b = users.intern(1, "nick", null, "http://avatar", 3);
+        AlbumUser other = users.intern(2, "nick", null, "http://avatar", 3);
+
+        assertSame(a, b);
+        assertNotSame(a, other);
+        assertEquals(1, users.getHitCount());
+    }
+
+    @Test
+    public void differentValuesAreKept() {
+        AlbumUserInterner users = new AlbumUserInterner();
+        AlbumUser author = users.intern(1, "nick", null, "http://avatar", 3);
+        AlbumUser member = users.intern(1, "nick", DateTime.FromTimeStamp(1000), "http://avatar", 3);
+        AlbumUser renamed = users.intern(1, "new nick", null, "http://avatar", 3);
+
+        assertNotSame(author, member);
+        assertEquals(1000, member.getLastOnline().getTimeStamp());
+        assertEquals("new nick", renamed.getMemberNickname());
+        // The first object stays interned
+        assertSame(author, users.intern(1, "nick", null, "http://avatar", 3));
+    }
+
+    @Test
+    public void missingUserRowIsRejectedLikeBefore() {
+        // A LEFT OUTER JOIN without a matching user row gives null values. Comparing them to an
+        // interned user must not throw a NullPointerException, the AlbumUser constructor rejects
+        // them as it did before there was an interner
+        AlbumUserInterner users = new AlbumUserInterner();
+        users.intern(1, "nick", null, "http://avatar", 3);
+        for (int i = 0; i < 2; ++i) {
+            try {
+                users.intern(1, i == 0 ? null : "nick", null, i == 0 ? "http://avatar" : null, 3);
+                fail("Expected an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void albumFromDatabaseHasOneObjectPerUser() throws SQLException {
+        final int numPhotos = 200;
+        final int numUsers = 5;
+        final int glancesPerPhoto = 3;
+        final int commentsPerPhoto = 3;
+
+        JdbcSQLConnection conn = new JdbcSQLConnection();
+        try {
+            ShotVibeDB db = JdbcSQLConnection.openShotVibeDB(conn);
+            AlbumContents album = TestAlbums.album(1, numPhotos, numUsers, glancesPerPhoto, commentsPerPhoto);
+            ArrayList<AlbumSummary> albums = new ArrayList<AlbumSummary>();
+            albums.add(TestAlbums.summary(album));
+            db.setAlbumList(albums);
+            db.setAlbumContents(1, album);
+
+            AlbumContents stored = db.getAlbumContents(1);
+
+            Set<AlbumUser> distinct = Collections.newSetFromMap(new IdentityHashMap<AlbumUser, Boolean>());
+            int references = 0;
+            distinct.add(stored.getCreator());
+            references++;
+            for (AlbumMember member : stored.getMembers()) {
+                distinct.add(member.getUser());
+                references++;
+            }
+            for (AlbumPhoto photo : stored.getPhotos()) {
+                AlbumServerPhoto serverPhoto = photo.getServerPhoto();
+                distinct.add(serverPhoto.getAuthor());
+                references++;
+                for (AlbumPhotoGlance glance : serverPhoto.getGlances()) {
+                    distinct.add(glance.getAuthor());
+                    references++;
+                }
+                for (AlbumPhotoComment comment : serverPhoto.getComments()) {
+                    distinct.add(comment.getAuthor());
+                    references++;
+                }
+            }
+
+            assertEquals(1 + numUsers + numPhotos * (1 + glancesPerPhoto + commentsPerPhoto), references);
+            assertEquals(numUsers, distinct.size());
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.shotvibe.shotvibelib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CachingSQLConnectionTest {
+    private JdbcSQLConnection mConn;
+
+    @Before
+    public void setUp() throws SQLException {
+        mConn = new JdbcSQLConnection();
+        mConn.update("CREATE TABLE t (a INTEGER, b TEXT)");
+        mConn.resetCounts();
+    }
+
+    @After
+    public void tearDown() {
+        mConn.close();
+    }
+
+    private static final String INSERT_A = "INSERT INTO t (a) VALUES (?)";
+    private static final String INSERT_B = "INSERT INTO t (b) VALUES (?)";
+    private static final String DELETE_A = "DELETE FROM t WHERE a=?";
+
+    @Test
+    public void repeatedUpdateIsCompiledOnce() throws SQLException {
+        CachingSQLConnection caching = new CachingSQLConnection(mConn);
+        for (int i = 0; i < 100; ++i) {
+            caching.update(INSERT_A, SQLValues.create().add(i));
+        }
+
+        assertEquals(1, mConn.getPrepareCount());
+        assertEquals(100, mConn.getUpdateCount());
+        assertEquals(1, caching.getCachedStatementCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedStatementIsEvicted() throws SQLException {
+        CachingSQLConnection caching = new CachingSQLConnection(mConn, 2);
+        caching.update(INSERT_A, SQLValues.create().add(1));
+        caching.update(INSERT_B, SQLValues.create().add("x"));
+        caching.update(INSERT_A, SQLValues.create().add(2));
+        // Evicts INSERT_B, which was used less recently than INSERT_A
+        caching.update(DELETE_A, SQLValues.create().add(1));
+        assertEquals(3, mConn.getPrepareCount());
+        assertEquals(1, caching.getEvictedStatementCount());
+
+        caching.update(INSERT_A, SQLValues.create().add(3));
+        assertEquals(3, mConn.getPrepareCount());
+
+        caching.update(INSERT_B, SQLValues.create().add("y"));
+        assertEquals(4, mConn.getPrepareCount());
+        assertEquals(2, caching.getEvictedStatementCount());
+        assertEquals(2, caching.getCachedStatementCount());
+    }
+
+    @Test
+    public void shotVibeDBCompilesEachStatementOncePerConnection() throws SQLException {
+        ShotVibeDB db = JdbcSQLConnection.openShotVibeDB(mConn);
+        ArrayList<AlbumSummary> albums = new ArrayList<AlbumSummary>();
+        for (int i = 1; i <= 3; ++i) {
+            albums.add(TestAlbums.summary(TestAlbums.album(i, 0, 1, 0, 0)));
+        }
+        db.setAlbumList(albums);
+
+        mConn.resetCounts();
+        db.setAlbumContents(1, TestAlbums.album(1, 100, 5, 2, 2));
+        // Each statement that setAlbumList hasn't already compiled is compiled once, however
+        // many of the 100 photos, 200 glances and 200 comments it writes
+        assertEquals(5, mConn.getPrepareCount());
+        int firstUpdates = mConn.getUpdateCount();
+
+        // Larger albums reuse the same compiled statements
+        mConn.resetCounts();
+        db.setAlbumContents(2, TestAlbums.album(2, 200, 5, 2, 2));
+        db.setAlbumContents(3, TestAlbums.album(3, 300, 5, 2, 2));
+        assertEquals(0, mConn.getPrepareCount());
+        assertTrue(mConn.getUpdateCount() > 4 * firstUpdates);
+    }
+}
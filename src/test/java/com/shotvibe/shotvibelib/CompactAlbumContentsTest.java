@@ -0,0 +1,165 @@
+package com.shotvibe.shotvibelib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactAlbumContentsTest {
+    private static final int[] ALBUM_SIZES = { 10, 100, 1000 };
+
+    private static void checkPhotosEqual(AlbumServerPhoto expected, AlbumServerPhoto actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getMediaType(), actual.getMediaType());
+        assertSame(expected.getVideo(), actual.getVideo());
+        assertEquals(expected.getClientUploadId(), actual.getClientUploadId());
+        assertEquals(expected.getYouTubeId(), actual.getYouTubeId());
+        assertEquals(expected.getUrl(), actual.getUrl());
+        assertSame(expected.getAuthor(), actual.getAuthor());
+        assertEquals(expected.getDateAdded().getTimeStamp(), actual.getDateAdded().getTimeStamp());
+        assertEquals(expected.getGlobalGlanceScore(), actual.getGlobalGlanceScore());
+        assertEquals(expected.getMyGlanceScoreDelta(), actual.getMyGlanceScoreDelta());
+
+        assertEquals(expected.getGlances().size(), actual.getGlances().size());
+        for (int i = 0; i < expected.getGlances().size(); ++i) {
+            assertSame(expected.getGlances().get(i), actual.getGlances().get(i));
+        }
+        assertEquals(expected.getComments().size(), actual.getComments().size());
+        for (int i = 0; i < expected.getComments().size(); ++i) {
+            assertSame(expected.getComments().get(i), actual.getComments().get(i));
+        }
+    }
+
+    private static void checkAlbumsEqual(AlbumContents expected, AlbumContents actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getEtag(), actual.getEtag());
+        assertEquals(expected.getName(), actual.getName());
+        assertSame(expected.getCreator(), actual.getCreator());
+        assertEquals(expected.getDateUpdated().getTimeStamp(), actual.getDateUpdated().getTimeStamp());
+        assertEquals(expected.getMembers().size(), actual.getMembers().size());
+
+        assertEquals(expected.getPhotos().size(), actual.getPhotos().size());
+        for (int i = 0; i < expected.getPhotos().size(); ++i) {
+            checkPhotosEqual(expected.getPhotos().get(i).getServerPhoto(), actual.getPhotos().get(i).getServerPhoto());
+        }
+    }
+
+    @Test
+    public void roundTripKeepsAllValues() {
+        for (int numPhotos : ALBUM_SIZES) {
+            // Every third photo has glances and comments, the rest have neither
+            AlbumContents album = TestAlbums.album(1, numPhotos, 5, 2, 3);
+            for (int i = 0; i < numPhotos; ++i) {
+                if (i % 3 != 0) {
+                    album.getPhotos().get(i).getServerPhoto().getGlances().clear();
+                    album.getPhotos().get(i).getServerPhoto().getComments().clear();
+                }
+            }
+
+            CompactAlbumContents compact = CompactAlbumContents.fromAlbumContents(album);
+            assertEquals(numPhotos, compact.getPhotoCount());
+            checkAlbumsEqual(album, compact.toAlbumContents());
+
+            for (int i = 0; i < numPhotos; i += 7) {
+                checkPhotosEqual(album.getPhotos().get(i).getServerPhoto(), compact.getPhoto(i).getServerPhoto());
+            }
+        }
+    }
+
+    @Test
+    public void videoAndYouTubeValuesAreKept() {
+        AlbumUser author = TestAlbums.user(1);
+
+        AlbumServerPhoto.Params video = new AlbumServerPhoto.Params();
+        video.id = "video";
+        video.mediaType = MediaType.VIDEO;
+        video.video = new AlbumServerVideo(AlbumServerVideo.Status.READY, "http://videos/1.mp4", "http://videos/1.jpg", 12);
+        video.clientUploadId = "upload1";
+        video.url = "http://photos/video.jpg";
+        video.author = author;
+        video.dateAdded = DateTime.FromTimeStamp(1);
+        video.glances = new ArrayList<AlbumPhotoGlance>();
+        video.comments = new ArrayList<AlbumPhotoComment>();
+
+        AlbumServerPhoto.Params youTube = new AlbumServerPhoto.Params();
+        youTube.id = "youtube";
+        youTube.mediaType = MediaType.YOUTUBE;
+        youTube.youtubeId = "dQw4w9WgXcQ";
+        youTube.url = "http://photos/youtube.jpg";
+        youTube.author = author;
+        youTube.dateAdded = DateTime.FromTimeStamp(2);
+        youTube.glances = new ArrayList<AlbumPhotoGlance>();
+        youTube.comments = new ArrayList<AlbumPhotoComment>();
+
+        AlbumContents album = TestAlbums.album(1, 3, 1, 0, 0);
+        album.getPhotos().add(1, new AlbumPhoto(new AlbumServerPhoto(video)));
+        album.getPhotos().add(new AlbumPhoto(new AlbumServerPhoto(youTube)));
+
+        checkAlbumsEqual(album, CompactAlbumContents.fromAlbumContents(album).toAlbumContents());
+    }
+
+    @Test
+    public void returnedListsCanBeModified() {
+        AlbumContents album = TestAlbums.album(1, 10, 3, 2, 2);
+        CompactAlbumContents compact = CompactAlbumContents.fromAlbumContents(album);
+
+        AlbumContents first = compact.toAlbumContents();
+        first.getPhotos().clear();
+        first.getMembers().clear();
+        compact.getPhoto(4).getServerPhoto().getGlances().clear();
+        compact.getPhoto(4).getServerPhoto().getComments().clear();
+
+        checkAlbumsEqual(album, compact.toAlbumContents());
+        assertEquals(2, compact.getPhoto(4).getServerPhoto().getGlances().size());
+        assertEquals(2, compact.getPhoto(4).getServerPhoto().getComments().size());
+    }
+
+    @Test
+    public void uploadingPhotosAreRejected() {
+        AlbumContents album = TestAlbums.album(1, 2, 1, 0, 0);
+        album.getPhotos().add(new AlbumPhoto(AlbumUploadingPhoto.NewSaving("/tmp/1.jpg")));
+        try {
+            CompactAlbumContents.fromAlbumContents(album);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void cacheKeepsLargeAlbumsInCompactForm() throws SQLException {
+        JdbcSQLConnection conn = new JdbcSQLConnection();
+        try {
+            ShotVibeDB db = JdbcSQLConnection.openShotVibeDB(conn);
+            AlbumContentsCache cache = new AlbumContentsCache(db, 5000, 100);
+
+            ArrayList<AlbumSummary> albums = new ArrayList<AlbumSummary>();
+            for (int i = 0; i < ALBUM_SIZES.length; ++i) {
+                albums.add(TestAlbums.summary(TestAlbums.album(i + 1, ALBUM_SIZES[i], 5, 2, 2)));
+            }
+            cache.setAlbumList(albums);
+
+            for (int i = 0; i < ALBUM_SIZES.length; ++i) {
+                long albumId = i + 1;
+                cache.setAlbumContents(albumId, TestAlbums.album(albumId, ALBUM_SIZES[i], 5, 2, 2));
+                assertNull(cache.peekAlbumContents(albumId));
+
+                // The 10 photo album is cached as is, the 100 and 1000 photo albums in compact form
+                AlbumContents loaded = cache.getAlbumContents(albumId);
+                AlbumContents cached = cache.peekAlbumContents(albumId);
+                checkAlbumsEqual(loaded, cached);
+                for (AlbumPhoto photo : cached.getPhotos()) {
+                    assertEquals(2, photo.getServerPhoto().getGlances().size());
+                    assertEquals(2, photo.getServerPhoto().getComments().size());
+                }
+            }
+            assertEquals(1110, cache.getCachedPhotoCount());
+            assertTrue(cache.getHitCount() >= ALBUM_SIZES.length);
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.shotvibe.shotvibelib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JSONTokenReaderTest {
+    private static final String DOCUMENT = ""
+            + " {\"a\\\"b\": [1, -23, 4.0, \"x\\u0041y\\n\", true, false, null, {\"nested\": [[], {}]}],"
+            + " \"c\" : \"plain\", \"big\": 12345678901, \"exp\": 1.5e3}\n";
+
+    /**
+     * Hands out the input a few characters at a time, like a network stream, so that tokens
+     * continue past the end of the reader's buffer
+     */
+    private static final class ChunkedSource implements JSONCharSource {
+        ChunkedSource(String input, int chunkSize) {
+            mInput = input;
+            mChunkSize = chunkSize;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int count) {
+            if (mPos == mInput.length()) {
+                return -1;
+            }
+            int n = Math.min(Math.min(count, mChunkSize), mInput.length() - mPos);
+            mInput.getChars(mPos, mPos + n, buffer, offset);
+            mPos += n;
+            return n;
+        }
+
+        private final String mInput;
+        private final int mChunkSize;
+        private int mPos = 0;
+    }
+
+    @Test
+    public void readsAllTokenTypes() throws JSONException {
+        checkDocument(new JSONTokenReader(DOCUMENT));
+    }
+
+    @Test
+    public void readsTokensThatSpanChunks() throws JSONException {
+        for (int chunkSize = 1; chunkSize <= 8; ++chunkSize) {
+            checkDocument(new JSONTokenReader(new ChunkedSource(DOCUMENT, chunkSize)));
+        }
+    }
+
+    private static void checkDocument(JSONTokenReader reader) throws JSONException {
+        reader.beginObject();
+        assertEquals("a\"b", reader.nextName());
+        reader.beginArray();
+        assertEquals(1, reader.nextLong());
+        assertEquals(-23, reader.nextLong());
+        assertEquals(4, reader.nextInt());
+        assertEquals("xAy\n", reader.nextString());
+        assertTrue(reader.nextBoolean());
+        assertFalse(reader.nextBoolean());
+        reader.nextNull();
+        reader.skipValue();
+        assertFalse(reader.hasNext());
+        reader.endArray();
+        assertEquals("c", reader.nextName());
+        assertEquals("plain", reader.nextString());
+        assertEquals("big", reader.nextName());
+        assertEquals(12345678901L, reader.nextLong());
+        assertEquals("exp", reader.nextName());
+        assertEquals("1.5e3", reader.nextString());
+        reader.endObject();
+        assertEquals(JSONTokenReader.Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void readsEscapeSequences() throws JSONException {
+        JSONTokenReader reader = new JSONTokenReader("[\"\\u00e9t\\u00E9 \\u4e2d\\\\ \\/ \\b\\f\\r\\t\"]");
+        reader.beginArray();
+        assertEquals("\u00e9t\u00e9 \u4e2d\\ / \b\f\r\t", reader.nextString());
+        reader.endArray();
+    }
+
+    @Test
+    public void readsLongStringsOfEscapes() throws JSONException {
+        // A caption in a non-Latin script arrives with every character escaped
+        final int length = 200000;
+        StringBuilder json = new StringBuilder("[\"");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < length; ++i) {
+            char c = (char) (0x4e00 + (i % 1000));
+            json.append("\\u").append(Integer.toHexString(c));
+            expected.append(c);
+        }
+        json.append("\"]");
+
+        JSONTokenReader reader = new JSONTokenReader(new ChunkedSource(json.toString(), 1000));
+        reader.beginArray();
+        assertEquals(expected.toString(), reader.nextString());
+        reader.endArray();
+    }
+
+    @Test
+    public void rejectsInvalidDocuments() {
+        String[] invalid = {
+                "[\"unterminated",
+                "[\"bad escape \\x\"]",
+                "[\"bad unicode \\u12g4\"]",
+                "[\"ends in escape \\",
+                "[1 2]",
+                "{\"a\" 1}",
+                "[tru]",
+                "[1] 2"
+        };
+        for (String json : invalid) {
+            try {
+                JSONTokenReader reader = new JSONTokenReader(json);
+                reader.skipValue();
+                reader.peek();
+                fail("Expected a JSONException for: " + json);
+            } catch (JSONException e) {
+                // Expected
+            }
+        }
+    }
+}
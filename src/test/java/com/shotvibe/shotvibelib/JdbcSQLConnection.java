@@ -0,0 +1,414 @@
+package com.shotvibe.shotvibelib;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * A SQLConnection for tests, backed by an in-memory SQLite database through sqlite-jdbc.
+ *
+ * Behaves like the platform connections: transactions nest, and the outermost endTransaction
+ * commits only if every level called setTransactionSuccesful. It also counts the queries,
+ * updates and statement compilations that go through it, and records the text and values of
+ * every query and update so that tests can look at their query plans.
+ *
+ * Not thread safe
+ */
+public class JdbcSQLConnection implements SQLConnection {
+    // Where executeSQLScript looks for the scripts, relative to the module directory that the
+    // tests run in
+    private static final String ASSETS_DIR = "src/main/assets/";
+
+    public static final class RecordedQuery {
+        RecordedQuery(String query, Object[] values) {
+            this.query = query;
+            this.values = values;
+        }
+
+        public final String query;
+        public final Object[] values;
+    }
+
+    public JdbcSQLConnection() {
+        try {
+            mConn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        } catch (java.sql.SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static ShotVibeDB openShotVibeDB(JdbcSQLConnection conn) throws SQLException {
+        ShotVibeDB.Recipe recipe = new ShotVibeDB.Recipe();
+        conn.beginTransaction();
+        try {
+            recipe.populateNewDB(conn);
+            conn.setTransactionSuccesful();
+        } finally {
+            conn.endTransaction();
+        }
+        return recipe.openDB(conn);
+    }
+
+    @Override
+    public void beginTransaction() {
+        beginReadTransaction();
+    }
+
+    @Override
+    public void beginReadTransaction() {
+        try {
+            if (mTransactionDepth == 0) {
+                mConn.setAutoCommit(false);
+                mTransactionFailed = false;
+            }
+        } catch (java.sql.SQLException e) {
+            throw new RuntimeException(e);
+        }
+        mTransactionDepth++;
+        mLevelSuccessful = false;
+    }
+
+    @Override
+    public void setTransactionSuccesful() {
+        mLevelSuccessful = true;
+    }
+
+    @Override
+    public void endTransaction() {
+        if (mTransactionDepth == 0) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        if (!mLevelSuccessful) {
+            mTransactionFailed = true;
+        }
+        mLevelSuccessful = false;
+        mTransactionDepth--;
+
+        if (mTransactionDepth == 0) {
+            try {
+                if (mTransactionFailed) {
+                    mConn.rollback();
+                } else {
+                    mConn.commit();
+                }
+                mConn.setAutoCommit(true);
+            } catch (java.sql.SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Override
+    public SQLCursor query(String query) throws SQLException {
+        return query(query, SQLValues.create());
+    }
+
+    @Override
+    public SQLCursor query(String query, SQLValues sqlValues) throws SQLException {
+        mQueryCount++;
+        mRecordedQueries.add(new RecordedQuery(query, toObjects(sqlValues)));
+
+        try {
+            PreparedStatement statement = mConn.prepareStatement(query);
+            bind(statement, sqlValues);
+            return new Cursor(statement, statement.executeQuery());
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    @Override
+    public void update(String query) throws SQLException {
+        update(query, SQLValues.create());
+    }
+
+    @Override
+    public void update(String query, SQLValues sqlValues) throws SQLException {
+        mUpdateCount++;
+        mRecordedQueries.add(new RecordedQuery(query, toObjects(sqlValues)));
+
+        try {
+            PreparedStatement statement = mConn.prepareStatement(query);
+            try {
+                bind(statement, sqlValues);
+                mChanges = statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    @Override
+    public int changes() {
+        return mChanges;
+    }
+
+    @Override
+    public SQLStatement prepareStatement(final String query) throws SQLException {
+        mPrepareCount++;
+
+        final PreparedStatement statement;
+        try {
+            statement = mConn.prepareStatement(query);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(e);
+        }
+
+        return new SQLStatement() {
+            @Override
+            public void update(SQLValues sqlValues) throws SQLException {
+                mUpdateCount++;
+                mRecordedQueries.add(new RecordedQuery(query, toObjects(sqlValues)));
+
+                try {
+                    statement.clearParameters();
+                    bind(statement, sqlValues);
+                    mChanges = statement.executeUpdate();
+                } catch (java.sql.SQLException e) {
+                    throw new SQLException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    statement.close();
+                } catch (java.sql.SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void executeSQLScript(String filename) throws SQLException {
+        String script;
+        try {
+            script = new String(Files.readAllBytes(Paths.get(ASSETS_DIR + filename)), Charset.forName("UTF-8"));
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+
+        // The scripts have no semicolons inside of comments or strings
+        StringBuilder withoutComments = new StringBuilder();
+        for (String line : script.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                withoutComments.append(line).append('\n');
+            }
+        }
+
+        try {
+            Statement statement = mConn.createStatement();
+            try {
+                for (String sql : withoutComments.toString().split(";")) {
+                    if (!sql.trim().isEmpty()) {
+                        statement.executeUpdate(sql);
+                    }
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * @return The rows of EXPLAIN QUERY PLAN for the query, one "detail" string per row
+     */
+    public java.util.ArrayList<String> explainQueryPlan(RecordedQuery recordedQuery) throws SQLException {
+        java.util.ArrayList<String> result = new java.util.ArrayList<String>();
+        try {
+            PreparedStatement statement = mConn.prepareStatement("EXPLAIN QUERY PLAN " + recordedQuery.query);
+            try {
+                for (int i = 0; i < recordedQuery.values.length; ++i) {
+                    statement.setObject(i + 1, recordedQuery.values[i]);
+                }
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    result.add(resultSet.getString("detail"));
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(e);
+        }
+        return result;
+    }
+
+    /**
+     * @return The queries and updates that were run since the last call to resetCounts, in order
+     */
+    public List<RecordedQuery> getRecordedQueries() {
+        return mRecordedQueries;
+    }
+
+    public int getQueryCount() {
+        return mQueryCount;
+    }
+
+    public int getUpdateCount() {
+        return mUpdateCount;
+    }
+
+    public int getPrepareCount() {
+        return mPrepareCount;
+    }
+
+    public void resetCounts() {
+        mQueryCount = 0;
+        mUpdateCount = 0;
+        mPrepareCount = 0;
+        mRecordedQueries.clear();
+    }
+
+    public void close() {
+        try {
+            mConn.close();
+        } catch (java.sql.SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void bind(PreparedStatement statement, SQLValues sqlValues) throws java.sql.SQLException {
+        for (int i = 0; i < sqlValues.size(); ++i) {
+            switch (sqlValues.getType(i)) {
+                case NULL:
+                    statement.setNull(i + 1, java.sql.Types.NULL);
+                    break;
+                case INT:
+                    statement.setInt(i + 1, sqlValues.getInt(i));
+                    break;
+                case LONG:
+                    statement.setLong(i + 1, sqlValues.getLong(i));
+                    break;
+                case DOUBLE:
+                    statement.setDouble(i + 1, sqlValues.getDouble(i));
+                    break;
+                case STRING:
+                    statement.setString(i + 1, sqlValues.getString(i));
+                    break;
+            }
+        }
+    }
+
+    private static Object[] toObjects(SQLValues sqlValues) {
+        Object[] result = new Object[sqlValues.size()];
+        for (int i = 0; i < sqlValues.size(); ++i) {
+            switch (sqlValues.getType(i)) {
+                case NULL:
+                    result[i] = null;
+                    break;
+                case INT:
+                    result[i] = sqlValues.getInt(i);
+                    break;
+                case LONG:
+                    result[i] = sqlValues.getLong(i);
+                    break;
+                case DOUBLE:
+                    result[i] = sqlValues.getDouble(i);
+                    break;
+                case STRING:
+                    result[i] = sqlValues.getString(i);
+                    break;
+            }
+        }
+        return result;
+    }
+
+    private static final class Cursor implements SQLCursor {
+        Cursor(PreparedStatement statement, ResultSet resultSet) {
+            mStatement = statement;
+            mResultSet = resultSet;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            try {
+                return mResultSet.next();
+            } catch (java.sql.SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public int getInt(int columnIndex) throws SQLException {
+            try {
+                return mResultSet.getInt(columnIndex + 1);
+            } catch (java.sql.SQLException e) {
+                throw new SQLException(e);
+            }
+        }
+
+        @Override
+        public long getLong(int columnIndex) throws SQLException {
+            try {
+                return mResultSet.getLong(columnIndex + 1);
+            } catch (java.sql.SQLException e) {
+                throw new SQLException(e);
+            }
+        }
+
+        @Override
+        public double getDouble(int columnIndex) throws SQLException {
+            try {
+                return mResultSet.getDouble(columnIndex + 1);
+            } catch (java.sql.SQLException e) {
+                throw new SQLException(e);
+            }
+        }
+
+        @Override
+        public String getString(int columnIndex) throws SQLException {
+            try {
+                return mResultSet.getString(columnIndex + 1);
+            } catch (java.sql.SQLException e) {
+                throw new SQLException(e);
+            }
+        }
+
+        @Override
+        public boolean isNull(int columnIndex) throws SQLException {
+            try {
+                return mResultSet.getObject(columnIndex + 1) == null;
+            } catch (java.sql.SQLException e) {
+                throw new SQLException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                mStatement.close();
+            } catch (java.sql.SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private final PreparedStatement mStatement;
+        private final ResultSet mResultSet;
+    }
+
+    private final Connection mConn;
+
+    private int mTransactionDepth = 0;
+    private boolean mLevelSuccessful = false;
+    private boolean mTransactionFailed = false;
+
+    private int mChanges = 0;
+
+    private int mQueryCount = 0;
+    private int mUpdateCount = 0;
+    private int mPrepareCount = 0;
+    private final java.util.ArrayList<RecordedQuery> mRecordedQueries = new java.util.ArrayList<RecordedQuery>();
+}
@@ -0,0 +1,138 @@
+package com.shotvibe.shotvibelib;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LongPairHashMapTest {
+    @Test
+    public void zeroAndNegativeKeys() {
+        long[][] keys = {
+                { 0, 0 },
+                { 0, -1 },
+                { -1, 0 },
+                { -1, -1 },
+                { Long.MIN_VALUE, Long.MAX_VALUE },
+                { Long.MAX_VALUE, Long.MIN_VALUE },
+                { Long.MIN_VALUE, 0 }
+        };
+
+        LongPairHashMap<String> map = new LongPairHashMap<String>();
+        for (long[] k : keys) {
+            assertFalse(map.containsKey(k[0], k[1]));
+            assertNull(map.put(k[0], k[1], k[0] + "," + k[1]));
+        }
+        assertEquals(keys.length, map.size());
+
+        for (long[] k : keys) {
+            assertTrue(map.containsKey(k[0], k[1]));
+            assertEquals(k[0] + "," + k[1], map.get(k[0], k[1]));
+        }
+
+        // Replacing keeps the size
+        assertEquals("0,0", map.put(0, 0, "zero"));
+        assertEquals("zero", map.get(0, 0));
+        assertEquals(keys.length, map.size());
+
+        assertFalse(map.containsKey(1, 0));
+        assertFalse(map.containsKey(0, 1));
+    }
+
+    @Test
+    public void collidingKeys() {
+        // key1 * M + key2 is the same for all of these keys, so they all start probing at the
+        // same slot whatever the capacity is
+        final long m = 0x9E3779B97F4A7C15L;
+        final int n = 40;
+
+        LongPairHashMap<Integer> map = new LongPairHashMap<Integer>();
+        for (int i = 0; i < n; ++i) {
+            map.put(i, -i * m, i);
+        }
+        assertEquals(n, map.size());
+        for (int i = 0; i < n; ++i) {
+            assertEquals(Integer.valueOf(i), map.get(i, -i * m));
+        }
+
+        // Removing from the middle of the probe sequence must not hide the entries after it
+        for (int i = 0; i < n; i += 2) {
+            assertEquals(Integer.valueOf(i), map.remove(i, -i * m));
+        }
+        assertEquals(n / 2, map.size());
+        for (int i = 0; i < n; ++i) {
+            assertEquals(i % 2 != 0, map.containsKey(i, -i * m));
+        }
+
+        for (int i = 0; i < n; i += 2) {
+            assertNull(map.put(i, -i * m, -i));
+        }
+        for (int i = 0; i < n; ++i) {
+            assertEquals(Integer.valueOf(i % 2 == 0 ? -i : i), map.get(i, -i * m));
+        }
+    }
+
+    @Test
+    public void growsFromDefaultCapacity() {
+        final int n = 10000;
+
+        LongPairHashMap<Integer> map = new LongPairHashMap<Integer>();
+        for (int i = 0; i < n; ++i) {
+            assertNull(map.put(i / 100, i % 100 - 50, i));
+            assertEquals(i + 1, map.size());
+        }
+
+        for (int i = 0; i < n; ++i) {
+            assertEquals(Integer.valueOf(i), map.get(i / 100, i % 100 - 50));
+        }
+        assertEquals(n, map.values().size());
+        assertFalse(map.containsKey(n / 100, 0));
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(7);
+        LongPairHashMap<Integer> map = new LongPairHashMap<Integer>(4);
+        java.util.HashMap<String, Integer> expected = new java.util.HashMap<String, Integer>();
+
+        for (int op = 0; op < 50000; ++op) {
+            // A small range of keys, so that there are many replacements and removals
+            long key1 = random.nextInt(21) - 10;
+            long key2 = random.nextInt(21) - 10;
+            String key = key1 + "," + key2;
+
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, op), map.put(key1, key2, op));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), map.remove(key1, key2));
+                    break;
+                default:
+                    assertEquals(expected.containsKey(key), map.containsKey(key1, key2));
+                    assertEquals(expected.get(key), map.get(key1, key2));
+                    break;
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(0, 0));
+    }
+
+    @Test
+    public void rejectsNullValues() {
+        try {
+            new LongPairHashMap<String>().put(1, 2, null);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.shotvibe.shotvibelib;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class SQLValuesTest {
+    private static SQLValues mixedValues(int count) {
+        SQLValues values = SQLValues.create();
+        for (int i = 0; i < count; ++i) {
+            switch (i % 5) {
+                case 0:
+                    values.addNull();
+                    break;
+                case 1:
+                    values.add(i);
+                    break;
+                case 2:
+                    values.add((long) i << 40);
+                    break;
+                case 3:
+                    values.add(i / 4.0);
+                    break;
+                default:
+                    values.add("s" + i);
+                    break;
+            }
+        }
+        return values;
+    }
+
+    private static void checkMixedValues(SQLValues values, int count) {
+        assertEquals(count, values.size());
+        for (int i = 0; i < count; ++i) {
+            switch (i % 5) {
+                case 0:
+                    assertEquals(SQLValues.Type.NULL, values.getType(i));
+                    break;
+                case 1:
+                    assertEquals(i, values.getInt(i));
+                    break;
+                case 2:
+                    assertEquals((long) i << 40, values.getLong(i));
+                    break;
+                case 3:
+                    assertEquals(i / 4.0, values.getDouble(i), 0.0);
+                    break;
+                default:
+                    assertEquals("s" + i, values.getString(i));
+                    break;
+            }
+        }
+    }
+
+    @Test
+    public void indexedGettersReturnValuesOfEveryType() {
+        // More values than the initial capacity, so that the arrays grow
+        checkMixedValues(mixedValues(100), 100);
+    }
+
+    @Test
+    public void valuesOfOneTypeOnly() {
+        SQLValues strings = SQLValues.create();
+        SQLValues longs = SQLValues.create();
+        for (int i = 0; i < 20; ++i) {
+            strings.add("s" + i);
+            longs.add((long) -i);
+        }
+        for (int i = 0; i < 20; ++i) {
+            assertEquals("s" + i, strings.getString(i));
+            assertEquals(-i, longs.getLong(i));
+        }
+    }
+
+    @Test
+    public void iteratorReturnsSameValues() {
+        SQLValues values = mixedValues(23);
+        int i = 0;
+        for (SQLValues.Val val : values) {
+            assertEquals(values.getType(i), val.getType());
+            switch (val.getType()) {
+                case INT:
+                    assertEquals(values.getInt(i), val.getIntValue());
+                    break;
+                case LONG:
+                    assertEquals(values.getLong(i), val.getLongValue());
+                    break;
+                case DOUBLE:
+                    assertEquals(values.getDouble(i), val.getDoubleValue(), 0.0);
+                    break;
+                case STRING:
+                    assertEquals(values.getString(i), val.getStringValue());
+                    break;
+                default:
+                    break;
+            }
+            ++i;
+        }
+        assertEquals(23, i);
+
+        Iterator<SQLValues.Val> empty = SQLValues.create().iterator();
+        assertFalse(empty.hasNext());
+        try {
+            empty.next();
+            fail("Expected a NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void resetAllowsReuse() {
+        SQLValues values = mixedValues(30);
+        values.reset();
+        assertEquals(0, values.size());
+        assertFalse(values.iterator().hasNext());
+
+        values.add(7).add("x");
+        assertEquals(2, values.size());
+        assertEquals(7, values.getInt(0));
+        assertEquals("x", values.getString(1));
+    }
+
+    @Test
+    public void wrongTypeOrIndexIsRejected() {
+        SQLValues values = SQLValues.create().add(1).add("a");
+        try {
+            values.getString(0);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            values.getInt(2);
+            fail("Expected an IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.shotvibe.shotvibelib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the statements that the ShotVibeDB reads and writes issue, for albums of different
+ * sizes. The counts must not grow with the number of photos
+ */
+public class ShotVibeDBQueryCountTest {
+    private static final int[] ALBUM_SIZES = { 10, 100, 1000 };
+
+    private JdbcSQLConnection mConn;
+    private ShotVibeDB mDB;
+
+    @Before
+    public void setUp() throws SQLException {
+        mConn = new JdbcSQLConnection();
+        mDB = JdbcSQLConnection.openShotVibeDB(mConn);
+    }
+
+    @After
+    public void tearDown() {
+        mConn.close();
+    }
+
+    private AlbumContents storeAlbum(long albumId, int numPhotos) throws SQLException {
+        AlbumContents album = TestAlbums.album(albumId, numPhotos, 5, 2, 2);
+        ArrayList<AlbumSummary> albums = new ArrayList<AlbumSummary>();
+        albums.add(TestAlbums.summary(album));
+        mDB.setAlbumList(albums);
+        mDB.setAlbumContents(albumId, album);
+        return album;
+    }
+
+    @Test
+    public void getAlbumContentsQueryCountIsConstant() throws SQLException {
+        for (int i = 0; i < ALBUM_SIZES.length; ++i) {
+            long albumId = i + 1;
+            int numPhotos = ALBUM_SIZES[i];
+            storeAlbum(albumId, numPhotos);
+
+            mConn.resetCounts();
+            AlbumContents stored = mDB.getAlbumContents(albumId);
+
+            // The album, its photos, glances, comments and members
+            assertEquals("queries for " + numPhotos + " photos", 5, mConn.getQueryCount());
+            assertEquals(0, mConn.getUpdateCount());
+
+            assertEquals(numPhotos, stored.getPhotos().size());
+            for (AlbumPhoto photo : stored.getPhotos()) {
+                assertEquals(2, photo.getServerPhoto().getGlances().size());
+                assertEquals(2, photo.getServerPhoto().getComments().size());
+            }
+        }
+    }
+
+    @Test
+    public void getAlbumGridSkipsGlancesAndComments() throws SQLException {
+        for (int i = 0; i < ALBUM_SIZES.length; ++i) {
+            long albumId = i + 1;
+            int numPhotos = ALBUM_SIZES[i];
+            storeAlbum(albumId, numPhotos);
+
+            mConn.resetCounts();
+            AlbumContents grid = mDB.getAlbumGrid(albumId);
+
+            // The album, its photos and members, 2 queries fewer than getAlbumContents
+            assertEquals("queries for " + numPhotos + " photos", 3, mConn.getQueryCount());
+            for (JdbcSQLConnection.RecordedQuery query : mConn.getRecordedQueries()) {
+                assertFalse(query.query, query.query.contains("photo_glance"));
+                assertFalse(query.query, query.query.contains("photo_comment"));
+            }
+
+            assertFalse(grid.arePhotoDetailsLoaded());
+            assertEquals(numPhotos, grid.getPhotos().size());
+            for (AlbumPhoto photo : grid.getPhotos()) {
+                assertTrue(photo.getServerPhoto().getGlances().isEmpty());
+                assertTrue(photo.getServerPhoto().getComments().isEmpty());
+            }
+
+            // The details of a photo are then read on their own when it is opened
+            mConn.resetCounts();
+            String photoId = grid.getPhotos().get(numPhotos / 2).getServerPhoto().getId();
+            AlbumPhotoDetails details = mDB.getPhotoDetails(albumId, photoId);
+            assertEquals(2, mConn.getQueryCount());
+            assertEquals(photoId, details.getPhotoId());
+            assertEquals(2, details.getGlances().size());
+            assertEquals(2, details.getComments().size());
+        }
+    }
+
+    @Test
+    public void getAlbumListQueryCountIsConstant() throws SQLException {
+        final int[] albumCounts = { 50, 500, 5000 };
+        for (int numAlbums : albumCounts) {
+            JdbcSQLConnection conn = new JdbcSQLConnection();
+            try {
+                ShotVibeDB db = JdbcSQLConnection.openShotVibeDB(conn);
+                ArrayList<AlbumSummary> albums = new ArrayList<AlbumSummary>();
+                for (int albumId = 1; albumId <= numAlbums; ++albumId) {
+                    albums.add(TestAlbums.summary(TestAlbums.album(albumId, 0, 1, 0, 0)));
+                }
+                db.setAlbumList(albums);
+                // Between 0 and 3 photos, so that some albums have fewer than the 2 latest photos
+                for (int albumId = 1; albumId <= numAlbums; ++albumId) {
+                    db.setAlbumContents(albumId, TestAlbums.album(albumId, albumId % 4, 2, 0, 0));
+                }
+
+                conn.resetCounts();
+                ArrayList<AlbumSummary> stored = db.getAlbumList();
+
+                // The albums, and the latest photos of all of them
+                assertEquals("queries for " + numAlbums + " albums", 2, conn.getQueryCount());
+                assertEquals(numAlbums, stored.size());
+                for (AlbumSummary album : stored) {
+                    int numPhotos = (int) (album.getId() % 4);
+                    ArrayList<AlbumPhoto> latest = album.getLatestPhotos();
+                    assertEquals(Math.min(numPhotos, 2), latest.size());
+                    for (int i = 0; i < latest.size(); ++i) {
+                        // Newest first
+                        String expectedId = "a" + album.getId() + "p" + (numPhotos - 1 - i);
+                        assertEquals(expectedId, latest.get(i).getServerPhoto().getId());
+                    }
+                }
+            } finally {
+                conn.close();
+            }
+        }
+    }
+}
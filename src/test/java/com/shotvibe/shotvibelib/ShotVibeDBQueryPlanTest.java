@@ -0,0 +1,220 @@
+package com.shotvibe.shotvibelib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the hot ShotVibeDB reads and writes against SQLite, and checks the EXPLAIN QUERY PLAN of
+ * every statement that they issued: none of them may scan a whole table, and the queries that the
+ * schema v12 composite indexes were made for must use them.
+ *
+ * Every check is done both on a freshly created database and on a version 11 database that was
+ * upgraded with ShotVibeDBMigrations
+ */
+public class ShotVibeDBQueryPlanTest {
+    private static final long ALBUM_ID = 1;
+
+    // The v11 indexes that upgradeFromVersion_11_to_12 replaces
+    private static final String[] VERSION_11_INDEXES = {
+            "CREATE INDEX photo_index ON photo(photo_album)",
+            "CREATE INDEX photo_num_index ON photo(num)",
+            "CREATE INDEX photo_comment_index ON photo_comment(photo_id)",
+            "CREATE INDEX photo_comment_date_created_index ON photo_comment(date_created)"
+    };
+
+    private static final String[] VERSION_12_INDEXES = {
+            "photo_album_num_index",
+            "photo_glance_photo_num_index",
+            "photo_comment_photo_date_created_index",
+            "photo_photo_id_index"
+    };
+
+    private JdbcSQLConnection mConn;
+
+    @Before
+    public void setUp() {
+        mConn = new JdbcSQLConnection();
+    }
+
+    @After
+    public void tearDown() {
+        mConn.close();
+    }
+
+    @Test
+    public void newDatabaseUsesIndexes() throws SQLException {
+        checkQueryPlans(JdbcSQLConnection.openShotVibeDB(mConn));
+    }
+
+    @Test
+    public void upgradedDatabaseUsesIndexes() throws SQLException {
+        checkQueryPlans(openUpgradedFromVersion11());
+    }
+
+    @Test
+    public void upgradedDatabaseHasSameIndexesAsNewDatabase() throws SQLException {
+        JdbcSQLConnection newConn = new JdbcSQLConnection();
+        try {
+            JdbcSQLConnection.openShotVibeDB(newConn);
+            openUpgradedFromVersion11();
+
+            assertEquals(getIndexNames(newConn), getIndexNames(mConn));
+        } finally {
+            newConn.close();
+        }
+    }
+
+    private ShotVibeDB openUpgradedFromVersion11() throws SQLException {
+        ShotVibeDB.Recipe recipe = new ShotVibeDB.Recipe();
+        mConn.beginTransaction();
+        try {
+            // The v11 schema only differs from the current one in its indexes
+            recipe.populateNewDB(mConn);
+            for (String index : VERSION_12_INDEXES) {
+                mConn.update("DROP INDEX " + index);
+            }
+            for (String index : VERSION_11_INDEXES) {
+                mConn.update(index);
+            }
+
+            recipe.upgradeDB(mConn, 11);
+            mConn.setTransactionSuccesful();
+        } finally {
+            mConn.endTransaction();
+        }
+        return recipe.openDB(mConn);
+    }
+
+    private void checkQueryPlans(ShotVibeDB db) throws SQLException {
+        AlbumContents album = TestAlbums.album(ALBUM_ID, 50, 5, 3, 3);
+        ArrayList<AlbumSummary> albums = new ArrayList<AlbumSummary>();
+        albums.add(TestAlbums.summary(album));
+        albums.add(TestAlbums.summary(TestAlbums.album(ALBUM_ID + 1, 0, 1, 0, 0)));
+        db.setAlbumList(albums);
+
+        mConn.resetCounts();
+        db.setAlbumContents(ALBUM_ID, album);
+        checkNoFullScans("setAlbumContents (new album)", null);
+
+        mConn.resetCounts();
+        // Replaces most of the photos, so that the stale rows are deleted as well
+        db.setAlbumContents(ALBUM_ID, TestAlbums.album(ALBUM_ID, 10, 5, 2, 2));
+        checkNoFullScans("setAlbumContents (changed album)", null);
+        db.setAlbumContents(ALBUM_ID, album);
+
+        mConn.resetCounts();
+        db.getAlbumContents(ALBUM_ID);
+        checkNoFullScans("getAlbumContents", null);
+        checkAlbumPhotosQuery("getAlbumContents");
+        checkPlan("getAlbumContents", "JOIN photo_glance", "photo_glance_photo_num_index");
+        // The comments of the whole album are sorted by date across all of the photos, so a
+        // sort is needed whichever of the (photo_id, ...) indexes is used to find them
+        checkPlan("getAlbumContents", "JOIN photo_comment", "photo_comment USING");
+
+        mConn.resetCounts();
+        db.getAlbumGrid(ALBUM_ID);
+        checkNoFullScans("getAlbumGrid", null);
+        checkAlbumPhotosQuery("getAlbumGrid");
+
+        mConn.resetCounts();
+        db.getPhotoDetails(ALBUM_ID, album.getPhotos().get(3).getServerPhoto().getId());
+        checkNoFullScans("getPhotoDetails", null);
+        checkPlan("getPhotoDetails", "JOIN photo_glance", "photo_glance_photo_num_index");
+        checkPlan("getPhotoDetails", "JOIN photo_comment", "photo_comment_photo_date_created_index");
+        checkNoSort("getPhotoDetails", "JOIN photo_comment");
+        checkNoSort("getPhotoDetails", "JOIN photo_glance");
+
+        mConn.resetCounts();
+        db.getAlbumPhotoWindow(ALBUM_ID, 10, 20);
+        checkNoFullScans("getAlbumPhotoWindow", null);
+        checkPlan("getAlbumPhotoWindow", "ORDER BY photo.num", "photo_album_num_index");
+        checkNoSort("getAlbumPhotoWindow", "ORDER BY photo.num");
+
+        mConn.resetCounts();
+        db.getAlbumList();
+        // The album list shows every album, so reading the whole album table is expected
+        checkNoFullScans("getAlbumList", "album");
+        checkPlan("getAlbumList", "AS latest", "photo_album_num_index");
+    }
+
+    private void checkAlbumPhotosQuery(String operation) throws SQLException {
+        checkPlan(operation, "ORDER BY photo.num", "photo_album_num_index");
+        checkNoSort(operation, "ORDER BY photo.num");
+    }
+
+    /**
+     * @param allowedTable A table that may be scanned, or null
+     */
+    private void checkNoFullScans(String operation, String allowedTable) throws SQLException {
+        assertFalse(operation + " did not run any statements", mConn.getRecordedQueries().isEmpty());
+
+        for (JdbcSQLConnection.RecordedQuery query : mConn.getRecordedQueries()) {
+            for (String step : mConn.explainQueryPlan(query)) {
+                // "SCAN TABLE t" in older versions of SQLite, "SCAN t" in newer ones. Both also
+                // cover a scan of a whole index ("SCAN TABLE t USING COVERING INDEX i")
+                if (step.startsWith("SCAN ")) {
+                    String table = step.startsWith("SCAN TABLE ")
+                            ? step.substring("SCAN TABLE ".length()).split(" ")[0]
+                            : step.substring("SCAN ".length()).split(" ")[0];
+                    if (!table.equals(allowedTable)) {
+                        fail(operation + " scans " + table + ": " + step + "\n" + query.query);
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkPlan(String operation, String queryPart, String expectedStep) throws SQLException {
+        List<String> plan = findPlan(operation, queryPart);
+        for (String step : plan) {
+            if (step.contains(expectedStep)) {
+                return;
+            }
+        }
+        fail(operation + ": the query with \"" + queryPart + "\" does not use " + expectedStep + ": " + plan);
+    }
+
+    private void checkNoSort(String operation, String queryPart) throws SQLException {
+        List<String> plan = findPlan(operation, queryPart);
+        for (String step : plan) {
+            assertFalse(operation + ": the query with \"" + queryPart + "\" needs a sort: " + plan,
+                    step.startsWith("USE TEMP B-TREE FOR ORDER BY"));
+        }
+    }
+
+    private List<String> findPlan(String operation, String queryPart) throws SQLException {
+        for (JdbcSQLConnection.RecordedQuery query : mConn.getRecordedQueries()) {
+            if (query.query.startsWith("SELECT") && query.query.contains(queryPart)) {
+                return mConn.explainQueryPlan(query);
+            }
+        }
+        fail(operation + " did not run a query with \"" + queryPart + "\"");
+        return null;
+    }
+
+    private static java.util.ArrayList<String> getIndexNames(JdbcSQLConnection conn) throws SQLException {
+        java.util.ArrayList<String> result = new java.util.ArrayList<String>();
+        SQLCursor cursor = conn.query(""
+                + "SELECT name, sql"
+                + " FROM sqlite_master"
+                + " WHERE type='index'"
+                + " ORDER BY name");
+        try {
+            while (cursor.moveToNext()) {
+                result.add(cursor.getString(0) + ": " + cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        assertTrue(result.size() > 0);
+        return result;
+    }
+}
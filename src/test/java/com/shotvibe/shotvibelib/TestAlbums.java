@@ -0,0 +1,73 @@
+package com.shotvibe.shotvibelib;
+
+/**
+ * Builds synthetic albums for the tests
+ */
+final class TestAlbums {
+    private TestAlbums() {
+        // Not used
+    }
+
+    static AlbumUser user(long userId) {
+        return new AlbumUser(userId, "user" + userId, null, "http://avatars/" + userId + ".jpg", (int) (userId % 7));
+    }
+
+    static AlbumServerPhoto serverPhoto(String photoId, AlbumUser author, long dateAdded, ArrayList<AlbumPhotoGlance> glances, ArrayList<AlbumPhotoComment> comments) {
+        AlbumServerPhoto.Params params = new AlbumServerPhoto.Params();
+        params.id = photoId;
+        params.mediaType = MediaType.PHOTO;
+        params.url = "http://photos/" + photoId + ".jpg";
+        params.author = author;
+        params.dateAdded = DateTime.FromTimeStamp(dateAdded);
+        params.glances = glances;
+        params.comments = comments;
+        params.globalGlanceScore = glances.size();
+        params.myGlanceScoreDelta = 0;
+        return new AlbumServerPhoto(params);
+    }
+
+    /**
+     * @param albumId Also used to make the photo ids unique across albums
+     * @param numPhotos
+     * @param numUsers The authors of the photos, glances and comments are chosen from this many
+     *                 users, who are all members of the album
+     * @param glancesPerPhoto
+     * @param commentsPerPhoto
+     */
+    static AlbumContents album(long albumId, int numPhotos, int numUsers, int glancesPerPhoto, int commentsPerPhoto) {
+        ArrayList<AlbumUser> users = new ArrayList<AlbumUser>();
+        for (int i = 0; i < numUsers; ++i) {
+            users.add(user(i + 1));
+        }
+
+        ArrayList<AlbumPhoto> photos = new ArrayList<AlbumPhoto>();
+        for (int i = 0; i < numPhotos; ++i) {
+            ArrayList<AlbumPhotoGlance> glances = new ArrayList<AlbumPhotoGlance>();
+            for (int g = 0; g < Math.min(glancesPerPhoto, numUsers); ++g) {
+                glances.add(new AlbumPhotoGlance(users.get((i + g) % numUsers), "emoticon" + g));
+            }
+
+            ArrayList<AlbumPhotoComment> comments = new ArrayList<AlbumPhotoComment>();
+            for (int c = 0; c < commentsPerPhoto; ++c) {
+                comments.add(new AlbumPhotoComment(users.get((i + c) % numUsers), c + 1, DateTime.FromTimeStamp(1000000L * (i + c)), "comment " + c));
+            }
+
+            String photoId = "a" + albumId + "p" + i;
+            photos.add(new AlbumPhoto(serverPhoto(photoId, users.get(i % numUsers), 1000000L * i, glances, comments)));
+        }
+
+        ArrayList<AlbumMember> members = new ArrayList<AlbumMember>();
+        for (AlbumUser user : users) {
+            members.add(new AlbumMember(user, user.getMemberId() == 1, 1, AlbumMember.InviteStatus.JOINED));
+        }
+
+        return new AlbumContents(albumId, "etag" + albumId, "album " + albumId, users.get(0),
+                DateTime.FromTimeStamp(0), DateTime.FromTimeStamp(1000000L * numPhotos), 0, null, photos, members);
+    }
+
+    static AlbumSummary summary(AlbumContents album) {
+        return new AlbumSummary(album.getId(), album.getEtag(), album.getName(), album.getCreator(),
+                album.getDateCreated(), album.getDateUpdated(), album.getNumNewPhotos(), album.getLastAccess(),
+                new ArrayList<AlbumPhoto>());
+    }
+}
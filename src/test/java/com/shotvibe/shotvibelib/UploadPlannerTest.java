@@ -0,0 +1,217 @@
+package com.shotvibe.shotvibelib;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the incremental UploadPlanner against the full computation of the plan that
+ * UploadSystemDirector used before it, with random sequences of adds, updates and removes
+ */
+public class UploadPlannerTest {
+    private static final int NUM_RUNS = 2000;
+    private static final int STEPS_PER_RUN = 80;
+
+    @Test
+    public void emptyPlannerHasNoPlan() {
+        UploadPlanner planner = new UploadPlanner();
+        assertEquals(UploadPlanner.Phase.Idle, planner.getPhase());
+        assertNull(planner.getUploadPlan());
+    }
+
+    @Test
+    public void matchesFullComputationForRandomChanges() {
+        for (int run = 0; run < NUM_RUNS; ++run) {
+            checkRandomRun(run);
+        }
+    }
+
+    private static void checkRandomRun(long seed) {
+        Random random = new Random(seed);
+        ArrayList<UploadingPhoto> photos = new ArrayList<UploadingPhoto>();
+        UploadPlanner planner = new UploadPlanner();
+        int nextFile = 0;
+
+        for (int step = 0; step < STEPS_PER_RUN; ++step) {
+            String context = "seed " + seed + ", step " + step;
+
+            int op = random.nextInt(6);
+            if (op == 0 || photos.isEmpty()) {
+                UploadingPhoto photo = random.nextBoolean()
+                        ? newQueuedPhoto("tmp" + nextFile)
+                        : randomPhoto(random, "tmp" + nextFile);
+                nextFile++;
+                photos.add(photo);
+                planner.add(photo);
+            } else if (op == 1) {
+                int index = random.nextInt(photos.size());
+                String tmpFile = photos.get(index).getTmpFilename();
+                photos.remove(index);
+                planner.remove(tmpFile);
+            } else {
+                int index = random.nextInt(photos.size());
+                UploadingPhoto photo = photos.get(index);
+                UploadingPhoto updated = op == 2
+                        ? randomPhoto(random, photo.getTmpFilename())
+                        : nextPhoto(photo);
+                if (updated == null) {
+                    photos.remove(index);
+                    planner.remove(photo.getTmpFilename());
+                } else {
+                    photos.set(index, updated);
+                    planner.update(updated);
+                }
+            }
+
+            UploadSystemDirector.UploadPlan expected = getUploadPlan(photos);
+            assertSamePlan(context, expected, planner.getUploadPlan());
+            assertSamePlan(context + " (rebuilt)", expected, new UploadPlanner(photos).getUploadPlan());
+
+            for (UploadingPhoto photo : photos) {
+                String tmpFile = photo.getTmpFilename();
+                assertEquals(context + ", isPlannedForAlbum " + tmpFile,
+                        expected != null && expected.uploadForAlbum != null && containsForAlbum(expected.uploadForAlbum, tmpFile),
+                        planner.isPlannedForAlbum(tmpFile));
+                assertEquals(context + ", isPlannedOriginal " + tmpFile,
+                        expected != null && expected.uploadOriginals != null,
+                        planner.isPlannedOriginal(tmpFile));
+            }
+        }
+    }
+
+    /**
+     * The full computation of the plan, as UploadSystemDirector did it before UploadPlanner
+     */
+    private static UploadSystemDirector.UploadPlan getUploadPlan(List<UploadingPhoto> uploadingPhotos) {
+        ArrayList<UploadSystemDirector.UploadPlan.ForAlbum> uploadForAlbum = new ArrayList<UploadSystemDirector.UploadPlan.ForAlbum>();
+        ArrayList<UploadSystemDirector.UploadPlan.Original> uploadOriginals = new ArrayList<UploadSystemDirector.UploadPlan.Original>();
+
+        boolean allAddedToAlbum = true;
+
+        for (UploadingPhoto photo : uploadingPhotos) {
+            if (photo.getUploadState() == UploadingPhoto.UploadState.Queued) {
+                allAddedToAlbum = false;
+                if (photo.getUploadStrategy() != UploadingPhoto.UploadStrategy.Unknown) {
+                    uploadForAlbum.add(new UploadSystemDirector.UploadPlan.ForAlbum(photo.getTmpFilename(), photo.getUploadStrategy()));
+                }
+            } else if (allAddedToAlbum && photo.getUploadState() == UploadingPhoto.UploadState.AddedToAlbum) {
+                uploadOriginals.add(new UploadSystemDirector.UploadPlan.Original(photo.getTmpFilename(), photo.getPhotoId()));
+            } else {
+                allAddedToAlbum = false;
+            }
+        }
+
+        if (allAddedToAlbum) {
+            if (!uploadOriginals.isEmpty()) {
+                return UploadSystemDirector.UploadPlan.CreateUploadPlanOriginals(uploadOriginals);
+            } else {
+                return null;
+            }
+        } else {
+            if (!uploadForAlbum.isEmpty()) {
+                return UploadSystemDirector.UploadPlan.CreateUploadPlanForAlbum(uploadForAlbum);
+            } else {
+                return null;
+            }
+        }
+    }
+
+    private static void assertSamePlan(String context, UploadSystemDirector.UploadPlan expected, UploadSystemDirector.UploadPlan actual) {
+        if (expected == null) {
+            assertNull(context, actual);
+            return;
+        }
+        assertNotNull(context, actual);
+
+        if (expected.uploadForAlbum != null) {
+            assertNotNull(context + ", uploadForAlbum", actual.uploadForAlbum);
+            assertNull(context + ", uploadOriginals", actual.uploadOriginals);
+            assertEquals(context + ", uploadForAlbum size", expected.uploadForAlbum.size(), actual.uploadForAlbum.size());
+            for (int i = 0; i < expected.uploadForAlbum.size(); ++i) {
+                assertEquals(context + ", uploadForAlbum " + i, expected.uploadForAlbum.get(i).uploadFile, actual.uploadForAlbum.get(i).uploadFile);
+                assertEquals(context + ", uploadForAlbum " + i, expected.uploadForAlbum.get(i).uploadStrategy, actual.uploadForAlbum.get(i).uploadStrategy);
+            }
+        } else {
+            assertNotNull(context + ", uploadOriginals", actual.uploadOriginals);
+            assertNull(context + ", uploadForAlbum", actual.uploadForAlbum);
+            assertEquals(context + ", uploadOriginals size", expected.uploadOriginals.size(), actual.uploadOriginals.size());
+            for (int i = 0; i < expected.uploadOriginals.size(); ++i) {
+                assertEquals(context + ", uploadOriginals " + i, expected.uploadOriginals.get(i).uploadFile, actual.uploadOriginals.get(i).uploadFile);
+                assertEquals(context + ", uploadOriginals " + i, expected.uploadOriginals.get(i).photoId, actual.uploadOriginals.get(i).photoId);
+            }
+        }
+    }
+
+    private static boolean containsForAlbum(List<UploadSystemDirector.UploadPlan.ForAlbum> items, String tmpFile) {
+        for (UploadSystemDirector.UploadPlan.ForAlbum item : items) {
+            if (item.uploadFile.equals(tmpFile)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static UploadingPhoto newQueuedPhoto(String tmpFile) {
+        return new UploadingPhoto(1, tmpFile, UploadingPhoto.UploadStrategy.Unknown, UploadingPhoto.UploadState.Queued, null);
+    }
+
+    /**
+     * @return Any valid photo, in any state
+     */
+    private static UploadingPhoto randomPhoto(Random random, String tmpFile) {
+        UploadingPhoto.UploadStrategy[] strategies = UploadingPhoto.UploadStrategy.values();
+        UploadingPhoto.UploadStrategy uploadStrategy = strategies[random.nextInt(strategies.length)];
+
+        UploadingPhoto.UploadState uploadState;
+        if (uploadStrategy == UploadingPhoto.UploadStrategy.Unknown) {
+            uploadState = UploadingPhoto.UploadState.Queued;
+        } else if (uploadStrategy == UploadingPhoto.UploadStrategy.UploadTwoStage && random.nextBoolean()) {
+            // Often enough that all of the photos are AddedToAlbum now and then
+            uploadState = UploadingPhoto.UploadState.AddedToAlbum;
+        } else {
+            UploadingPhoto.UploadState[] states = UploadingPhoto.UploadState.values();
+            do {
+                uploadState = states[random.nextInt(states.length)];
+            } while (uploadState == UploadingPhoto.UploadState.AddedToAlbum
+                    && uploadStrategy != UploadingPhoto.UploadStrategy.UploadTwoStage);
+        }
+
+        String photoId = uploadState == UploadingPhoto.UploadState.Queued ? null : "photo_" + tmpFile;
+        return new UploadingPhoto(1, tmpFile, uploadStrategy, uploadState, photoId);
+    }
+
+    /**
+     * @return The photo in the state that it normally goes to next, or null if it is normally
+     * removed
+     */
+    private static UploadingPhoto nextPhoto(UploadingPhoto photo) {
+        String tmpFile = photo.getTmpFilename();
+        UploadingPhoto.UploadStrategy uploadStrategy = photo.getUploadStrategy();
+
+        if (uploadStrategy == UploadingPhoto.UploadStrategy.Unknown) {
+            uploadStrategy = tmpFile.hashCode() % 2 == 0
+                    ? UploadingPhoto.UploadStrategy.UploadTwoStage
+                    : UploadingPhoto.UploadStrategy.UploadOriginalDirectly;
+            return new UploadingPhoto(1, tmpFile, uploadStrategy, UploadingPhoto.UploadState.Queued, null);
+        }
+
+        switch (photo.getUploadState()) {
+            case Queued:
+                return new UploadingPhoto(1, tmpFile, uploadStrategy, UploadingPhoto.UploadState.Uploaded, "photo_" + tmpFile);
+            case Uploaded:
+                return new UploadingPhoto(1, tmpFile, uploadStrategy, UploadingPhoto.UploadState.AddingToAlbum, photo.getPhotoId());
+            case AddingToAlbum:
+                if (uploadStrategy == UploadingPhoto.UploadStrategy.UploadTwoStage) {
+                    return new UploadingPhoto(1, tmpFile, uploadStrategy, UploadingPhoto.UploadState.AddedToAlbum, photo.getPhotoId());
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.shotvibe.shotvibelib;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UploadingPhotoStoreTest {
+    private static final int[] STORE_SIZES = { 10, 100, 1000 };
+
+    private static UploadingPhoto queuedPhoto(String tmpFile) {
+        return new UploadingPhoto(1, tmpFile, UploadingPhoto.UploadStrategy.Unknown, UploadingPhoto.UploadState.Queued, null);
+    }
+
+    private static UploadingPhoto uploadedPhoto(String tmpFile, String photoId) {
+        return new UploadingPhoto(1, tmpFile, UploadingPhoto.UploadStrategy.UploadTwoStage, UploadingPhoto.UploadState.Uploaded, photoId);
+    }
+
+    /**
+     * Even photos are Queued, odd photos are Uploaded with the photo id "photo_" + tmp file
+     */
+    private static UploadingPhoto photo(int i) {
+        String tmpFile = "tmp" + i;
+        return i % 2 == 0 ? queuedPhoto(tmpFile) : uploadedPhoto(tmpFile, "photo_" + tmpFile);
+    }
+
+    /**
+     * Checks the order of getAll and of the iterator, and both lookups of every photo
+     */
+    private static void checkStore(java.util.List<UploadingPhoto> expected, UploadingPhotoStore store) {
+        assertEquals(expected.size(), store.size());
+        assertEquals(expected.isEmpty(), store.isEmpty());
+
+        ArrayList<UploadingPhoto> all = store.getAll();
+        assertEquals(expected.size(), all.size());
+        Iterator<UploadingPhoto> iter = store.iterator();
+        for (int i = 0; i < expected.size(); ++i) {
+            UploadingPhoto photo = expected.get(i);
+            assertSame(photo, all.get(i));
+            assertSame(photo, iter.next());
+            assertSame(photo, store.get(photo.getTmpFilename()));
+            if (photo.getUploadState() != UploadingPhoto.UploadState.Queued) {
+                assertSame(photo, store.getByPhotoId(photo.getPhotoId()));
+            }
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void lookupsAtEverySize() {
+        for (int numPhotos : STORE_SIZES) {
+            java.util.ArrayList<UploadingPhoto> photos = new java.util.ArrayList<UploadingPhoto>();
+            UploadingPhotoStore store = new UploadingPhotoStore();
+            for (int i = 0; i < numPhotos; ++i) {
+                photos.add(photo(i));
+                store.add(photos.get(i));
+            }
+            checkStore(photos, store);
+            checkStore(photos, new UploadingPhotoStore(photos));
+
+            // Queued photos are not indexed by the photo id that they will have later
+            assertNull(store.getByPhotoId("photo_tmp0"));
+            assertNull(store.get("tmp" + numPhotos));
+            assertNull(store.getByPhotoId("photo_tmp" + numPhotos));
+        }
+    }
+
+    @Test
+    public void replaceKeepsPosition() {
+        java.util.ArrayList<UploadingPhoto> photos = new java.util.ArrayList<UploadingPhoto>();
+        for (int i = 0; i < 10; ++i) {
+            photos.add(photo(i));
+        }
+        UploadingPhotoStore store = new UploadingPhotoStore(photos);
+
+        // Queued to Uploaded adds the photo id to the index
+        UploadingPhoto uploaded = uploadedPhoto("tmp4", "photo_tmp4");
+        assertSame(photos.get(4), store.replace(uploaded));
+        photos.set(4, uploaded);
+        checkStore(photos, store);
+
+        // A new photo id replaces the old one in the index
+        UploadingPhoto renamed = uploadedPhoto("tmp5", "other_tmp5");
+        assertSame(photos.get(5), store.replace(renamed));
+        photos.set(5, renamed);
+        checkStore(photos, store);
+        assertNull(store.getByPhotoId("photo_tmp5"));
+
+        try {
+            store.replace(queuedPhoto("tmp10"));
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void removalKeepsOrderAcrossCompaction() {
+        for (int numPhotos : STORE_SIZES) {
+            java.util.ArrayList<UploadingPhoto> photos = new java.util.ArrayList<UploadingPhoto>();
+            for (int i = 0; i < numPhotos; ++i) {
+                photos.add(photo(i));
+            }
+            UploadingPhotoStore store = new UploadingPhotoStore(photos);
+
+            // Remove 3 out of every 4 photos in a random order, which empties more than half of
+            // the slots
+            java.util.ArrayList<UploadingPhoto> kept = new java.util.ArrayList<UploadingPhoto>();
+            java.util.ArrayList<UploadingPhoto> removed = new java.util.ArrayList<UploadingPhoto>();
+            for (int i = 0; i < numPhotos; ++i) {
+                (i % 4 == 1 ? kept : removed).add(photos.get(i));
+            }
+            java.util.Collections.shuffle(removed, new Random(numPhotos));
+            for (UploadingPhoto photo : removed) {
+                assertSame(photo, store.remove(photo.getTmpFilename()));
+            }
+            checkStore(kept, store);
+            assertNull(store.remove("tmp0"));
+            assertNull(store.getByPhotoId("photo_tmp3"));
+
+            // Photos that are added after compaction go at the end
+            for (int i = numPhotos; i < numPhotos + 5; ++i) {
+                kept.add(photo(i));
+                store.add(kept.get(kept.size() - 1));
+            }
+            checkStore(kept, store);
+        }
+    }
+
+    @Test
+    public void matchesList() {
+        Random random = new Random(23);
+        java.util.ArrayList<UploadingPhoto> expected = new java.util.ArrayList<UploadingPhoto>();
+        UploadingPhotoStore store = new UploadingPhotoStore();
+        int nextFile = 0;
+
+        for (int op = 0; op < 20000; ++op) {
+            // Adding slightly more often than removing, so that the store grows to a few
+            // hundred photos and is compacted many times along the way
+            int choice = expected.isEmpty() ? 0 : random.nextInt(7);
+            if (choice < 3) {
+                UploadingPhoto photo = photo(nextFile++);
+                expected.add(photo);
+                store.add(photo);
+            } else if (choice < 5) {
+                int index = random.nextInt(expected.size());
+                UploadingPhoto photo = expected.remove(index);
+                assertSame(photo, store.remove(photo.getTmpFilename()));
+            } else {
+                int index = random.nextInt(expected.size());
+                String tmpFile = expected.get(index).getTmpFilename();
+                UploadingPhoto updated = uploadedPhoto(tmpFile, "photo" + op);
+                assertSame(expected.set(index, updated), store.replace(updated));
+            }
+
+            if (op % 1000 == 0) {
+                checkStore(expected, store);
+            }
+        }
+        checkStore(expected, store);
+    }
+
+    @Test
+    public void rejectsNullAndDuplicatePhotos() {
+        UploadingPhotoStore store = new UploadingPhotoStore();
+        store.add(photo(1));
+        try {
+            store.add(photo(1));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            store.add(null);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals(1, store.size());
+
+        Iterator<UploadingPhoto> iter = new UploadingPhotoStore().iterator();
+        assertFalse(iter.hasNext());
+        try {
+            iter.next();
+            fail("Expected a NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // Expected
+        }
+        assertTrue(store.iterator().hasNext());
+    }
+}